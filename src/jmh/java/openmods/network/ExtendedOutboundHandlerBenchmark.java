@@ -0,0 +1,83 @@
+package openmods.network;
+
+import com.google.common.collect.Lists;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.Collection;
+import java.util.List;
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.fml.common.network.FMLOutboundHandler;
+import net.minecraftforge.fml.common.network.NetworkRegistry;
+import net.minecraftforge.fml.common.network.handshake.NetworkDispatcher;
+import net.minecraftforge.fml.common.network.internal.FMLProxyPacket;
+import net.minecraftforge.fml.relauncher.Side;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Target selection and dispatch of single packet to many receivers.
+ * Dispatchers are stubs without connection, so this measures only OpenMods side (every packet goes through {@link NetworkDispatcher#sendProxy(FMLProxyPacket)}).
+ */
+@State(Scope.Thread)
+public class ExtendedOutboundHandlerBenchmark {
+
+	private static final IPacketTargetSelector<Collection<NetworkDispatcher>> SELECTOR = new IPacketTargetSelector<Collection<NetworkDispatcher>>() {
+		@Override
+		public boolean isAllowedOnSide(Side side) {
+			return side == Side.SERVER;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public Collection<NetworkDispatcher> castArg(Object arg) {
+			return (Collection<NetworkDispatcher>)arg;
+		}
+
+		@Override
+		public void listDispatchers(Collection<NetworkDispatcher> arg, Collection<NetworkDispatcher> result) {
+			result.addAll(arg);
+		}
+	};
+
+	@Param({ "1", "10", "100" })
+	public int receivers;
+
+	@Param({ "64", "4096" })
+	public int payloadSize;
+
+	private EmbeddedChannel channel;
+
+	private ByteBuf payload;
+
+	@Setup
+	public void setup() {
+		final List<NetworkDispatcher> dispatchers = Lists.newArrayList();
+		for (int i = 0; i < receivers; i++)
+			// stub only, so invocations are not recorded
+			dispatchers.add(Mockito.mock(NetworkDispatcher.class, Mockito.withSettings().stubOnly()));
+
+		channel = new EmbeddedChannel(new ExtendedOutboundHandler());
+		channel.attr(NetworkRegistry.FML_CHANNEL).set("bench");
+		channel.attr(NetworkRegistry.CHANNEL_SOURCE).set(Side.SERVER);
+		channel.attr(ExtendedOutboundHandler.MESSAGETARGET).set(SELECTOR);
+		channel.attr(FMLOutboundHandler.FML_MESSAGETARGETARGS).set(dispatchers);
+
+		payload = Unpooled.buffer(payloadSize).writeZero(payloadSize);
+	}
+
+	@TearDown
+	public void tearDown() {
+		channel.finish();
+	}
+
+	@Benchmark
+	public void send() {
+		channel.write(new FMLProxyPacket(new PacketBuffer(payload.duplicate()), "bench"));
+	}
+}
@@ -0,0 +1,27 @@
+package openmods.network;
+
+/**
+ * Counts messages sent through {@link LoopbackChannel} during benchmark run.
+ * JMH reports only time (and allocation, with gc profiler), so average size is printed to benchmark output.
+ */
+public class MessageStats {
+
+	private final String label;
+
+	private long messageCount;
+
+	public MessageStats(String label) {
+		this.label = label;
+	}
+
+	public void count() {
+		messageCount++;
+	}
+
+	public void report(LoopbackChannel channel) {
+		if (messageCount == 0) return;
+		System.out.printf("%n%s: %.1f bytes/message, %.2f packets/message%n", label,
+				(double)channel.byteCount() / messageCount,
+				(double)channel.packetCount() / messageCount);
+	}
+}
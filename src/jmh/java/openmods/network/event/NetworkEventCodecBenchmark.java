@@ -0,0 +1,147 @@
+package openmods.network.event;
+
+import com.google.common.base.Strings;
+import net.minecraft.network.PacketBuffer;
+import openmods.network.LoopbackChannel;
+import openmods.network.MessageStats;
+import openmods.network.StubRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Encoding and full server to client transfer of network events through {@link NetworkEventCodec}
+ */
+@State(Scope.Thread)
+public class NetworkEventCodecBenchmark {
+
+	// typical block/entity notification
+	public static class SmallEvent extends NetworkEvent {
+		public int x = 1234;
+		public int y = 64;
+		public int z = -5678;
+
+		@Override
+		protected void readFromStream(PacketBuffer input) {
+			x = input.readVarInt();
+			y = input.readVarInt();
+			z = input.readVarInt();
+		}
+
+		@Override
+		protected void writeToStream(PacketBuffer output) {
+			output.writeVarInt(x);
+			output.writeVarInt(y);
+			output.writeVarInt(z);
+		}
+	}
+
+	public static class TextEvent extends NetworkEvent {
+		public String text = Strings.repeat("Lorem ipsum ", 8);
+
+		@Override
+		protected void readFromStream(PacketBuffer input) {
+			text = input.readString(Short.MAX_VALUE);
+		}
+
+		@Override
+		protected void writeToStream(PacketBuffer output) {
+			output.writeString(text);
+		}
+	}
+
+	public static class BulkEvent extends NetworkEvent {
+		public byte[] data = new byte[4096];
+
+		@Override
+		protected void readFromStream(PacketBuffer input) {
+			data = input.readByteArray();
+		}
+
+		@Override
+		protected void writeToStream(PacketBuffer output) {
+			output.writeByteArray(data);
+		}
+	}
+
+	private static void register(StubRegistry<Class<?>, NetworkEventEntry> registry, Class<? extends NetworkEvent> cls) {
+		registry.register(cls, new NetworkEventEntry() {
+			@Override
+			public Class<? extends NetworkEvent> getPacketType() {
+				return cls;
+			}
+
+			@Override
+			public NetworkEvent createPacket() {
+				try {
+					return cls.newInstance();
+				} catch (ReflectiveOperationException e) {
+					throw new RuntimeException(e);
+				}
+			}
+
+			@Override
+			public EventDirection getDirection() {
+				return EventDirection.S2C;
+			}
+		});
+	}
+
+	@Param({ "small", "text", "bulk" })
+	public String event;
+
+	private LoopbackChannel channel;
+
+	private NetworkEvent message;
+
+	private MessageStats stats;
+
+	@Setup
+	public void setup() {
+		final StubRegistry<Class<?>, NetworkEventEntry> registry = new StubRegistry<>();
+		register(registry, SmallEvent.class);
+		register(registry, TextEvent.class);
+		register(registry, BulkEvent.class);
+
+		channel = new LoopbackChannel(NetworkEventDispatcher.CHANNEL_NAME, new NetworkEventCodec(registry.get()));
+
+		switch (event) {
+			case "small":
+				message = new SmallEvent();
+				break;
+			case "text":
+				message = new TextEvent();
+				break;
+			case "bulk":
+				message = new BulkEvent();
+				break;
+			default:
+				throw new IllegalArgumentException(event);
+		}
+
+		stats = new MessageStats("event " + event);
+	}
+
+	@TearDown
+	public void tearDown() {
+		stats.report(channel);
+		channel.close();
+	}
+
+	@Benchmark
+	public Object encode() {
+		channel.serverChannel().writeOutbound(message);
+		return channel.serverChannel().readOutbound();
+	}
+
+	@Benchmark
+	public void roundTrip(Blackhole bh) {
+		channel.sendToClient(message);
+		bh.consume(channel.readOnClient());
+		stats.count();
+	}
+}
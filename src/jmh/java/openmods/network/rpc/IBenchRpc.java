@@ -0,0 +1,47 @@
+package openmods.network.rpc;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+
+/**
+ * Representative RPC signatures, from no arguments to mix of nullable objects
+ */
+public interface IBenchRpc {
+	public void noArgs();
+
+	public void threeArgs(int a, float b, boolean c);
+
+	public void eightArgs(int a, long b, short c, byte d, boolean e, double f, float g, String h);
+
+	public void objects(String a, @NullableArg String b, int[] c, @NullableArg Integer d);
+
+	public static final Map<String, Object[]> SAMPLE_ARGS = ImmutableMap.of(
+			"noArgs", new Object[] {},
+			"threeArgs", new Object[] { 5, 2.5f, true },
+			"eightArgs", new Object[] { 1, 2L, (short)3, (byte)4, false, 6.0, 7.0f, "eight" },
+			"objects", new Object[] { "first", null, new int[] { 1, 2, 3, 4 }, 1024 });
+
+	public static class Target implements IBenchRpc {
+		public long sink;
+
+		@Override
+		public void noArgs() {
+			sink++;
+		}
+
+		@Override
+		public void threeArgs(int a, float b, boolean c) {
+			sink += a + (long)b + (c? 1 : 0);
+		}
+
+		@Override
+		public void eightArgs(int a, long b, short c, byte d, boolean e, double f, float g, String h) {
+			sink += a + b + c + d + (e? 1 : 0) + (long)f + (long)g + h.length();
+		}
+
+		@Override
+		public void objects(String a, String b, int[] c, Integer d) {
+			sink += a.length() + (b != null? b.length() : 0) + c.length + (d != null? d : 0);
+		}
+	}
+}
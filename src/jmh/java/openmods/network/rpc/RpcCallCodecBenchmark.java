@@ -0,0 +1,113 @@
+package openmods.network.rpc;
+
+import java.lang.reflect.Method;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.fml.relauncher.Side;
+import openmods.OpenMods;
+import openmods.network.LoopbackChannel;
+import openmods.network.MessageStats;
+import openmods.network.StubPlayers;
+import openmods.network.StubRegistry;
+import openmods.proxy.IOpenModsProxy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Encoding and full client to server transfer of single RPC calls through {@link RpcCallCodec}
+ */
+@State(Scope.Thread)
+public class RpcCallCodecBenchmark {
+
+	public static class BenchTarget implements IRpcTarget {
+		private int id;
+
+		public BenchTarget(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public Object getTarget() {
+			return null;
+		}
+
+		@Override
+		public void writeToStream(PacketBuffer output) {
+			output.writeVarInt(id);
+		}
+
+		@Override
+		public void readFromStreamStream(Side side, EntityPlayer player, PacketBuffer input) {
+			id = input.readVarInt();
+		}
+
+		@Override
+		public void afterCall() {}
+	}
+
+	@Param({ "noArgs", "threeArgs", "eightArgs", "objects" })
+	public String signature;
+
+	private LoopbackChannel channel;
+
+	private RpcCall call;
+
+	private IOpenModsProxy prevProxy;
+
+	private MessageStats stats;
+
+	@Setup
+	public void setup() {
+		prevProxy = StubPlayers.installProxy(StubPlayers.create(1));
+
+		final StubRegistry<Class<?>, TargetTypeProvider> targets = new StubRegistry<>();
+		targets.register(BenchTarget.class, new TargetTypeProvider() {
+			@Override
+			public IRpcTarget createRpcTarget() {
+				return new BenchTarget(0);
+			}
+
+			@Override
+			public Class<? extends IRpcTarget> getTargetClass() {
+				return BenchTarget.class;
+			}
+		});
+
+		final StubRegistry<Method, MethodEntry> methods = new StubRegistry<>();
+		MethodEntry selected = null;
+		for (Method m : IBenchRpc.class.getMethods()) {
+			final MethodEntry entry = new MethodEntry(m);
+			methods.register(m, entry);
+			if (m.getName().equals(signature)) selected = entry;
+		}
+
+		channel = new LoopbackChannel(RpcCallDispatcher.CHANNEL_NAME, new RpcCallCodec(targets.get(), methods.get()));
+		call = new RpcCall(new BenchTarget(1234), selected, IBenchRpc.SAMPLE_ARGS.get(signature));
+		stats = new MessageStats("rpc " + signature);
+	}
+
+	@TearDown
+	public void tearDown() {
+		stats.report(channel);
+		channel.close();
+		OpenMods.proxy = prevProxy;
+	}
+
+	@Benchmark
+	public Object encode() {
+		channel.clientChannel().writeOutbound(call);
+		return channel.clientChannel().readOutbound();
+	}
+
+	@Benchmark
+	public void roundTrip(Blackhole bh) {
+		channel.sendToServer(call);
+		bh.consume(channel.readOnServer());
+		stats.count();
+	}
+}
@@ -0,0 +1,54 @@
+package openmods.network.rpc;
+
+import io.netty.buffer.Unpooled;
+import java.lang.reflect.Method;
+import net.minecraft.network.PacketBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares reflective RPC decoding and dispatch with generated invocations.
+ */
+@State(Scope.Thread)
+public class RpcInvocationBenchmark {
+
+	@Param({ "noArgs", "threeArgs", "eightArgs", "objects" })
+	public String signature;
+
+	private MethodEntry entry;
+
+	private Method method;
+
+	private PacketBuffer encoded;
+
+	private final IBenchRpc.Target target = new IBenchRpc.Target();
+
+	@Setup
+	public void setup() {
+		for (Method m : IBenchRpc.class.getMethods())
+			if (m.getName().equals(signature)) method = m;
+
+		entry = new MethodEntry(method);
+		encoded = new PacketBuffer(Unpooled.buffer());
+		entry.paramsCodec.writeArgs(encoded, IBenchRpc.SAMPLE_ARGS.get(signature));
+	}
+
+	@Benchmark
+	public long reflection() throws Exception {
+		encoded.readerIndex(0);
+		method.invoke(target, entry.paramsCodec.readArgs(encoded));
+		return target.sink;
+	}
+
+	@Benchmark
+	public long generated() {
+		encoded.readerIndex(0);
+		final RpcInvocation invocation = entry.createInvocation();
+		invocation.read(encoded);
+		invocation.invoke(target);
+		return target.sink;
+	}
+}
@@ -0,0 +1,71 @@
+package openmods.serializable;
+
+import net.minecraft.nbt.NBTTagCompound;
+import openmods.serializable.cls.ClassNbtSerializersProvider;
+import openmods.serializable.cls.Serialize;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reflective and generated NBT serializers for classes with {@link Serialize} fields, i.e. saved tile entity state
+ */
+@State(Scope.Thread)
+public class ClassNbtSerializerBenchmark {
+
+	public enum Mode {
+		IDLE, RUNNING, BLOCKED
+	}
+
+	public static class TileState {
+		@Serialize
+		public int progress = 1234;
+		@Serialize
+		public int energy = 64000;
+		@Serialize
+		public float rotation = 12.5f;
+		@Serialize
+		public boolean active = true;
+		@Serialize
+		public Mode mode = Mode.RUNNING;
+		@Serialize
+		public String owner = "benchmark";
+		@Serialize
+		public Integer target = null;
+	}
+
+	@Param({ "false", "true" })
+	public boolean generated;
+
+	private IObjectNbtSerializer<TileState> serializer;
+
+	private TileState source;
+
+	private TileState target;
+
+	private NBTTagCompound saved;
+
+	@Setup
+	public void setup() {
+		serializer = new ClassNbtSerializersProvider(generated).getSerializer(TileState.class);
+		source = new TileState();
+		target = new TileState();
+		saved = new NBTTagCompound();
+		serializer.writeToNBT(source, saved);
+	}
+
+	@Benchmark
+	public Object write() {
+		final NBTTagCompound tag = new NBTTagCompound();
+		serializer.writeToNBT(source, tag);
+		return tag;
+	}
+
+	@Benchmark
+	public Object read() {
+		serializer.readFromNBT(target, saved);
+		return target;
+	}
+}
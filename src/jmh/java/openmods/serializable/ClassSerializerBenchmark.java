@@ -0,0 +1,118 @@
+package openmods.serializable;
+
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import net.minecraft.network.PacketBuffer;
+import openmods.serializable.cls.ClassSerializersProvider;
+import openmods.serializable.cls.FieldEncoding;
+import openmods.serializable.cls.Serialize;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reflective and generated serializers for classes with {@link Serialize} fields (i.e. {@link openmods.network.event.SerializableNetworkEvent})
+ */
+@State(Scope.Thread)
+public class ClassSerializerBenchmark {
+
+	// only primitives, like most events
+	public static class PrimitiveFields {
+		@Serialize
+		public int x = 1234;
+		@Serialize
+		public int y = 64;
+		@Serialize
+		public int z = -5678;
+		@Serialize
+		public float yaw = 12.5f;
+		@Serialize
+		public float pitch = -3.25f;
+		@Serialize
+		public boolean flag = true;
+	}
+
+	// same as PrimitiveFields, with compact encodings
+	public static class EncodedFields {
+		@Serialize(encoding = FieldEncoding.ZIGZAG)
+		public int x = 1234;
+		@Serialize(encoding = FieldEncoding.VARINT)
+		public int y = 64;
+		@Serialize(encoding = FieldEncoding.ZIGZAG)
+		public int z = -5678;
+		@Serialize
+		public float yaw = 12.5f;
+		@Serialize
+		public float pitch = -3.25f;
+		@Serialize(encoding = FieldEncoding.PACKED)
+		public boolean flag = true;
+	}
+
+	public static class MixedFields {
+		@Serialize
+		public int id = 42;
+		@Serialize
+		public double value = 0.125;
+		@Serialize
+		public String name = "benchmark";
+		@Serialize
+		public String missing = null;
+		@Serialize(nullable = false)
+		public Integer boxed = 7;
+	}
+
+	@Param({ "false", "true" })
+	public boolean generated;
+
+	@Param({ "primitive", "encoded", "mixed" })
+	public String fields;
+
+	private IObjectSerializer<Object> serializer;
+
+	private Object source;
+
+	private Object target;
+
+	private PacketBuffer buffer;
+
+	@Setup
+	public void setup() throws IOException {
+		final ClassSerializersProvider provider = new ClassSerializersProvider(generated);
+		switch (fields) {
+			case "primitive":
+				source = new PrimitiveFields();
+				target = new PrimitiveFields();
+				break;
+			case "encoded":
+				source = new EncodedFields();
+				target = new EncodedFields();
+				break;
+			case "mixed":
+				source = new MixedFields();
+				target = new MixedFields();
+				break;
+			default:
+				throw new IllegalArgumentException(fields);
+		}
+
+		serializer = provider.getSerializer(source);
+		buffer = new PacketBuffer(Unpooled.buffer(256));
+	}
+
+	@Benchmark
+	public Object write() throws IOException {
+		buffer.clear();
+		serializer.writeToStream(source, buffer);
+		return buffer;
+	}
+
+	@Benchmark
+	public Object roundTrip() throws IOException {
+		buffer.clear();
+		serializer.writeToStream(source, buffer);
+		serializer.readFromStream(target, buffer);
+		return target;
+	}
+}
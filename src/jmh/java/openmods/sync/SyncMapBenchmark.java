@@ -0,0 +1,113 @@
+package openmods.sync;
+
+import com.google.common.collect.Lists;
+import java.io.IOException;
+import java.util.List;
+import net.minecraft.nbt.NBTTagCompound;
+import openmods.network.MessageStats;
+import openmods.sync.SyncMapServer.UpdateStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Single sync map tick (collecting changes, encoding, transfer and applying on client), see {@link SyncLoopback}
+ */
+@State(Scope.Thread)
+public class SyncMapBenchmark {
+
+	@Param({ "8", "64" })
+	public int objectCount;
+
+	@Param({ "1", "8" })
+	public int changesPerTick;
+
+	// "int" - only SyncableInt fields, "mixed" - ints, strings and int arrays, "nbt" - SyncableNBT with single entry changed per update
+	@Param({ "int", "mixed", "nbt" })
+	public String fields;
+
+	private final List<Runnable> modifiers = Lists.newArrayList();
+
+	private SyncLoopback loopback;
+
+	private MessageStats stats;
+
+	private int nextModified;
+
+	@Setup
+	public void setup() throws IOException {
+		loopback = new SyncLoopback();
+		final SyncLoopback.ServerMap map = loopback.createMap(UpdateStrategy.WITH_INITIAL_PACKET);
+
+		final String[] strings = { "first value", "second value" };
+		for (int i = 0; i < objectCount; i++) {
+			final String name = "field" + i;
+			if (fields.equals("nbt")) {
+				registerNbt(map, name, i);
+				continue;
+			}
+
+			switch (fields.equals("mixed")? i % 3 : 0) {
+				case 0: {
+					final SyncableInt value = new SyncableInt(i);
+					map.registerObject(name, value);
+					modifiers.add(() -> value.modify(1));
+					break;
+				}
+				case 1: {
+					final SyncableString value = new SyncableString(strings[0]);
+					map.registerObject(name, value);
+					modifiers.add(() -> value.setValue(value.getValue() == strings[0]? strings[1] : strings[0]));
+					break;
+				}
+				default: {
+					final SyncableIntArray value = new SyncableIntArray(new int[16]);
+					final int slot = i % 16;
+					map.registerObject(name, value);
+					modifiers.add(() -> value.setValue(slot, value.getValue(slot) + 1));
+					break;
+				}
+			}
+		}
+
+		map.connect();
+		loopback.channel().resetCounters();
+		stats = new MessageStats("sync " + fields + " " + objectCount + "/" + changesPerTick);
+	}
+
+	private void registerNbt(SyncLoopback.ServerMap map, String name, int index) {
+		final NBTTagCompound initial = new NBTTagCompound();
+		initial.setString("owner", "field" + index);
+		initial.setInteger("progress", 0);
+		for (int slot = 0; slot < 8; slot++)
+			initial.setInteger("slot" + slot, slot);
+
+		final SyncableNBT value = new SyncableNBT(initial);
+		map.registerObject(name, value);
+		modifiers.add(() -> {
+			final NBTTagCompound tag = value.getValue();
+			tag.setInteger("progress", tag.getInteger("progress") + 1);
+			value.setValue(tag);
+		});
+	}
+
+	@TearDown
+	public void tearDown() {
+		stats.report(loopback.channel());
+		loopback.channel().close();
+	}
+
+	@Benchmark
+	public void tick() {
+		for (int i = 0; i < changesPerTick; i++) {
+			modifiers.get(nextModified).run();
+			nextModified = (nextModified + 1) % objectCount;
+		}
+
+		loopback.tick();
+		stats.count();
+	}
+}
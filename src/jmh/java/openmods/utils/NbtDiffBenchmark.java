@@ -0,0 +1,111 @@
+package openmods.utils;
+
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.common.util.Constants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Patch created by {@link NbtDiff} compared with full tag (as written by {@link openmods.sync.SyncableNBT} when patch is not used)
+ */
+@State(Scope.Thread)
+public class NbtDiffBenchmark {
+
+	// number of entries in inventory-like list
+	@Param({ "4", "32" })
+	public int size;
+
+	// number of list entries modified between prev and current
+	@Param({ "1", "4" })
+	public int changes;
+
+	private NBTTagCompound prev;
+
+	private NBTTagCompound current;
+
+	private PacketBuffer buffer;
+
+	private PacketBuffer patch;
+
+	private PacketBuffer full;
+
+	private static NBTTagCompound createTag(int size) {
+		final NBTTagCompound result = new NBTTagCompound();
+		result.setString("owner", "benchmark");
+		result.setInteger("energy", 64000);
+		result.setFloat("rotation", 12.5f);
+
+		final NBTTagList items = new NBTTagList();
+		for (int i = 0; i < size; i++) {
+			final NBTTagCompound item = new NBTTagCompound();
+			item.setString("id", "minecraft:stone");
+			item.setByte("Count", (byte)1);
+			item.setShort("Damage", (short)i);
+			items.appendTag(item);
+		}
+		result.setTag("items", items);
+		return result;
+	}
+
+	@Setup
+	public void setup() {
+		prev = createTag(size);
+		current = prev.copy();
+		current.setInteger("energy", 63000);
+		final NBTTagList items = current.getTagList("items", Constants.NBT.TAG_COMPOUND);
+		for (int i = 0; i < Math.min(changes, size); i++)
+			items.getCompoundTagAt(i).setByte("Count", (byte)2);
+
+		buffer = new PacketBuffer(Unpooled.buffer());
+
+		patch = new PacketBuffer(Unpooled.buffer());
+		NbtDiff.writePatch(patch, prev, current);
+		full = new PacketBuffer(Unpooled.buffer());
+		full.writeCompoundTag(current);
+		System.out.printf("%nnbt %d/%d: patch %d bytes, full %d bytes%n", size, changes, patch.readableBytes(), full.readableBytes());
+	}
+
+	@TearDown
+	public void tearDown() {
+		buffer.release();
+		patch.release();
+		full.release();
+	}
+
+	@Benchmark
+	public int writePatch() {
+		buffer.clear();
+		NbtDiff.writePatch(buffer, prev, current);
+		return buffer.writerIndex();
+	}
+
+	@Benchmark
+	public int writeFull() {
+		buffer.clear();
+		buffer.writeCompoundTag(current);
+		return buffer.writerIndex();
+	}
+
+	@Benchmark
+	public Object applyPatch() throws IOException {
+		// receiver keeps its own copy, so patch is applied to copy of previous value
+		final NBTTagCompound target = prev.copy();
+		patch.readerIndex(0);
+		NbtDiff.applyPatch(patch, target);
+		return target;
+	}
+
+	@Benchmark
+	public Object readFull() throws IOException {
+		full.readerIndex(0);
+		return full.readCompoundTag();
+	}
+}
@@ -19,7 +19,71 @@ public class LibConfig {
 	@ConfigProperty(category = "feature", name = "calculatorCommands", comment = "Enables command line calculator")
 	public static boolean enableCalculatorCommands = true;
 
+	@ConfigProperty(category = "debug", name = "generatedClassSerializers", comment = "Use generated code (instead of reflection) for serializing classes with @Serialize fields to packets and NBT")
+	public static boolean generatedClassSerializers = true;
+
 	@ConfigProperty(category = "debug", name = "tessellatorPoolLimit", comment = "Maximum allowed size of tessellator pool")
 	public static int tessellatorPoolLimit = 20;
 
+	@OnLineModifiable
+	@ConfigProperty(category = "sync", name = "coalescePackets", comment = "Merge all sync map updates sent to single player during tick into one packet")
+	public static boolean coalesceSyncPackets = true;
+
+	@OnLineModifiable
+	@ConfigProperty(category = "sync", name = "coalescedPacketLimit", comment = "Size (in bytes) of merged sync packet after which it's sent immediately")
+	public static int coalescedSyncPacketLimit = 32 * 1024;
+
+	@OnLineModifiable
+	@ConfigProperty(category = "sync", name = "midTierDistance", comment = "Distance (in blocks) after which players receive updates from distance tiered sync maps less often")
+	public static double syncMidTierDistance = 24;
+
+	@OnLineModifiable
+	@ConfigProperty(category = "sync", name = "midTierInterval", comment = "Number of ticks between updates for players in mid distance tier")
+	public static int syncMidTierInterval = 5;
+
+	@OnLineModifiable
+	@ConfigProperty(category = "sync", name = "farTierDistance", comment = "Distance (in blocks) after which players receive updates from distance tiered sync maps rarely")
+	public static double syncFarTierDistance = 64;
+
+	@OnLineModifiable
+	@ConfigProperty(category = "sync", name = "farTierInterval", comment = "Number of ticks between updates for players in far distance tier")
+	public static int syncFarTierInterval = 20;
+
+	@OnLineModifiable
+	@ConfigProperty(category = "sync", name = "asyncEncoding", comment = "If true, sync map updates will be serialized outside server thread (values are still copied on server thread)")
+	public static boolean asyncSyncEncoding = false;
+
+	@ConfigProperty(category = "sync", name = "encoderThreads", comment = "Number of threads used for serializing sync map updates, when asyncEncoding is enabled")
+	public static int syncEncoderThreads = 2;
+
+	@ConfigProperty(category = "sync", name = "encoderQueueSize", comment = "Maximum number of updates waiting for every encoder thread. When full, server thread will wait")
+	public static int syncEncoderQueueSize = 1024;
+
+	@ConfigProperty(category = "sync", name = "metrics", comment = "Collect sync statistics on startup (can be also enabled by om_sync_s/om_sync_c commands)")
+	public static boolean syncMetrics = false;
+
+	@OnLineModifiable
+	@ConfigProperty(category = "rpc", name = "batchSizeLimit", comment = "Size (in bytes) of batched RPC packet after which it's sent immediately")
+	public static int rpcBatchSizeLimit = 16 * 1024;
+
+	@OnLineModifiable
+	@ConfigProperty(category = "network", name = "encodeBroadcastOnce", comment = "Serialize packets sent to many players only once (disable if other mods modify network pipeline)")
+	public static boolean encodeBroadcastOnce = true;
+
+	@OnLineModifiable
+	@ConfigProperty(category = "network", name = "outboundBytesPerTick", comment = "Average number of bytes per tick that can be sent to single player through OpenMods channels before sync updates are deferred (0 - unlimited). Updates are also deferred when connection can't keep up")
+	public static int outboundBytesPerTick = 0;
+
+	@OnLineModifiable
+	@ConfigProperty(category = "network", name = "deferThrottledSync", comment = "If true, sync map updates for players over outbound budget are merged and sent when connection catches up")
+	public static boolean deferThrottledSync = true;
+
+	@OnLineModifiable
+	@ConfigProperty(category = "network", name = "eventPoolSize", comment = "Maximum number of idle instances kept for every pooled network event type")
+	public static int networkEventPoolSize = 64;
+
+	@OnLineModifiable
+	@ConfigProperty(category = "debug", name = "checkPooledEvents", comment = "Fail when pooled network event is used after being recycled (always enabled in development environment)")
+	public static boolean checkPooledEvents = false;
+
 }
@@ -27,7 +27,9 @@ import openmods.entity.EntityBlock;
 import openmods.fakeplayer.FakePlayerPool;
 import openmods.integration.Integration;
 import openmods.model.textureditem.ItemTextureCapability;
+import openmods.network.OutboundBudget;
 import openmods.network.rpc.MethodEntry;
+import openmods.network.rpc.RpcBatchFlusher;
 import openmods.network.rpc.RpcCallDispatcher;
 import openmods.network.rpc.TargetTypeProvider;
 import openmods.network.rpc.targets.EntityRpcTarget;
@@ -37,7 +39,9 @@ import openmods.proxy.IOpenModsProxy;
 import openmods.reflection.TypeVariableHolderHandler;
 import openmods.source.ClassSourceCollector;
 import openmods.source.CommandSource;
+import openmods.sync.CommandSyncMetrics;
 import openmods.sync.SyncChannelHolder;
+import openmods.sync.SyncPacketAggregator;
 import openmods.sync.SyncableBlock;
 import openmods.sync.SyncableBlockState;
 import openmods.sync.SyncableBoolean;
@@ -60,8 +64,10 @@ import openmods.sync.SyncableTank;
 import openmods.sync.SyncableUUID;
 import openmods.sync.SyncableUnsignedByte;
 import openmods.sync.SyncableVarInt;
+import openmods.utils.WatcherSnapshotCache;
 import openmods.utils.bitmap.IRpcDirectionBitMap;
 import openmods.utils.bitmap.IRpcIntBitMap;
+import openmods.utils.io.PacketChunker;
 import openmods.world.DelayedActionTickHandler;
 import openmods.world.DropCapture;
 
@@ -163,6 +169,16 @@ public class OpenMods {
 
 		MinecraftForge.EVENT_BUS.register(DelayedActionTickHandler.INSTANCE);
 
+		MinecraftForge.EVENT_BUS.register(SyncPacketAggregator.INSTANCE);
+
+		MinecraftForge.EVENT_BUS.register(WatcherSnapshotCache.INSTANCE);
+
+		MinecraftForge.EVENT_BUS.register(RpcBatchFlusher.INSTANCE);
+
+		MinecraftForge.EVENT_BUS.register(OutboundBudget.INSTANCE);
+
+		MinecraftForge.EVENT_BUS.register(PacketChunker.EvictionTicker.INSTANCE);
+
 		MinecraftForge.EVENT_BUS.register(ConfigStorage.instance);
 
 		collector = new ClassSourceCollector(evt.getAsmData());
@@ -191,5 +207,6 @@ public class OpenMods {
 	public void severStart(FMLServerStartingEvent evt) {
 		evt.registerServerCommand(new CommandConfig("om_config_s", true));
 		evt.registerServerCommand(new CommandSource("om_source_s", true, collector));
+		evt.registerServerCommand(new CommandSyncMetrics("om_sync_s", true));
 	}
 }
@@ -9,8 +9,10 @@ import io.netty.channel.ChannelPromise;
 import io.netty.util.AttributeKey;
 import java.util.Collection;
 import java.util.Map;
+import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraftforge.fml.common.network.FMLEmbeddedChannel;
 import net.minecraftforge.fml.common.network.FMLOutboundHandler;
+import net.minecraftforge.fml.common.network.FMLOutboundHandler.OutboundTarget;
 import net.minecraftforge.fml.common.network.NetworkRegistry;
 import net.minecraftforge.fml.common.network.handshake.NetworkDispatcher;
 import net.minecraftforge.fml.common.network.internal.FMLProxyPacket;
@@ -34,14 +36,19 @@ public class ExtendedOutboundHandler extends ChannelOutboundHandlerAdapter {
 
 		final Channel channel = ctx.channel();
 
+		final FMLProxyPacket pkt = (FMLProxyPacket)msg;
+
 		final IPacketTargetSelector<?> target = channel.attr(MESSAGETARGET).get();
 		if (target == null) {
+			// FML handles sending, so only single player targets can be cheaply accounted
+			if (channel.attr(FMLOutboundHandler.FML_MESSAGETARGET).get() == OutboundTarget.PLAYER) {
+				final Object player = channel.attr(FMLOutboundHandler.FML_MESSAGETARGETARGS).get();
+				if (player instanceof EntityPlayerMP) OutboundBudget.record((EntityPlayerMP)player, pkt.payload().readableBytes());
+			}
 			ctx.write(msg);
 			return;
 		}
 
-		final FMLProxyPacket pkt = (FMLProxyPacket)msg;
-
 		final Side channelSide = channel.attr(NetworkRegistry.CHANNEL_SOURCE).get();
 
 		Preconditions.checkState(target.isAllowedOnSide(channelSide), "Packet not allowed on side");
@@ -52,8 +59,7 @@ public class ExtendedOutboundHandler extends ChannelOutboundHandlerAdapter {
 
 		try {
 			final Collection<NetworkDispatcher> dispatchers = getDispatchers(target, arg);
-			for (NetworkDispatcher dispatcher : dispatchers)
-				dispatcher.sendProxy(pkt);
+			PacketBroadcaster.sendToDispatchers(pkt, dispatchers);
 
 		} catch (Throwable t) {
 
@@ -0,0 +1,191 @@
+package openmods.network;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import java.util.concurrent.atomic.LongAdder;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.network.NetHandlerPlayServer;
+import net.minecraft.network.NetworkManager;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent.Phase;
+import net.minecraftforge.fml.common.gameevent.TickEvent.ServerTickEvent;
+import net.minecraftforge.fml.common.network.handshake.NetworkDispatcher;
+import openmods.LibConfig;
+import openmods.reflection.FieldAccess;
+
+/**
+ * Per-connection accounting of bytes sent to clients through OpenMods channels.
+ * <p>
+ * Connection is throttled when Netty channel is not writable (outbound buffer above high water mark)
+ * or when it used more than {@link LibConfig#outboundBytesPerTick} bytes per tick. Unused budget is not carried over to next tick, but excess is,
+ * so single large packet keeps connection throttled for few ticks.
+ * <p>
+ * Throttling is advisory: senders that can merge their data (like sync maps) should defer it, other messages are sent anyway and only counted.
+ * Local connections are never throttled.
+ */
+public class OutboundBudget {
+
+	public static final OutboundBudget INSTANCE = new OutboundBudget();
+
+	private static final AttributeKey<ConnectionBudget> BUDGET = AttributeKey.valueOf("om:outboundBudget");
+
+	private static final FieldAccess<NetworkManager> DISPATCHER_MANAGER = FieldAccess.create(NetworkDispatcher.class, "manager");
+
+	private OutboundBudget() {}
+
+	private enum ThrottleState {
+		NONE,
+		UNWRITABLE,
+		BUDGET
+	}
+
+	private static class ConnectionBudget {
+		private long used;
+
+		private long lastTick;
+
+		private ThrottleState throttleState = ThrottleState.NONE;
+
+		public ConnectionBudget(long tick) {
+			this.lastTick = tick;
+		}
+
+		public synchronized void record(long bytes, long tick, long budget) {
+			drain(tick, budget);
+			used += bytes;
+		}
+
+		public synchronized boolean isExhausted(long tick, long budget) {
+			drain(tick, budget);
+			return used >= budget;
+		}
+
+		/**
+		 * @return true if connection was not already throttled for same reason
+		 */
+		public synchronized boolean updateThrottleState(ThrottleState state) {
+			final ThrottleState prev = throttleState;
+			throttleState = state;
+			return state != ThrottleState.NONE && state != prev;
+		}
+
+		private void drain(long tick, long budget) {
+			final long elapsed = tick - lastTick;
+			if (elapsed > 0) {
+				used = Math.max(0, used - elapsed * budget);
+				lastTick = tick;
+			}
+		}
+	}
+
+	// updated only by server thread
+	private static volatile long currentTick;
+
+	private static final LongAdder throttledUnwritable = new LongAdder();
+
+	private static final LongAdder throttledBudget = new LongAdder();
+
+	private static final LongAdder bypassed = new LongAdder();
+
+	private static ConnectionBudget getBudget(Channel channel) {
+		final Attribute<ConnectionBudget> attr = channel.attr(BUDGET);
+		final ConnectionBudget budget = attr.get();
+		if (budget != null) return budget;
+
+		final ConnectionBudget newBudget = new ConnectionBudget(currentTick);
+		final ConnectionBudget prev = attr.setIfAbsent(newBudget);
+		return prev != null? prev : newBudget;
+	}
+
+	private static NetworkManager getManager(EntityPlayerMP player) {
+		// fake players have no connection
+		final NetHandlerPlayServer connection = player.connection;
+		return connection != null? connection.netManager : null;
+	}
+
+	/**
+	 * Adds bytes sent to connection. Can be called from any thread.
+	 */
+	public static void record(NetworkManager manager, int bytes) {
+		final int budget = LibConfig.outboundBytesPerTick;
+		if (budget <= 0 || manager == null || manager.isLocalChannel()) return;
+
+		final Channel channel = manager.channel();
+		if (channel != null) getBudget(channel).record(bytes, currentTick, budget);
+	}
+
+	public static void record(EntityPlayerMP player, int bytes) {
+		record(getManager(player), bytes);
+	}
+
+	/**
+	 * For packets sent directly with {@link NetworkDispatcher#sendProxy}, which skips OpenMods outbound handlers.
+	 */
+	public static void record(NetworkDispatcher dispatcher, int bytes) {
+		record(DISPATCHER_MANAGER.get(dispatcher), bytes);
+	}
+
+	public static boolean isThrottled(NetworkManager manager) {
+		if (manager == null || manager.isLocalChannel()) return false;
+
+		final Channel channel = manager.channel();
+		if (channel == null) return false;
+
+		// checked for every map and player, so counters are only updated when connection becomes throttled
+		final ConnectionBudget connection = getBudget(channel);
+		if (!channel.isWritable()) {
+			if (connection.updateThrottleState(ThrottleState.UNWRITABLE)) throttledUnwritable.increment();
+			return true;
+		}
+
+		final int budget = LibConfig.outboundBytesPerTick;
+		if (budget > 0 && connection.isExhausted(currentTick, budget)) {
+			if (connection.updateThrottleState(ThrottleState.BUDGET)) throttledBudget.increment();
+			return true;
+		}
+
+		connection.updateThrottleState(ThrottleState.NONE);
+		return false;
+	}
+
+	public static boolean isThrottled(EntityPlayerMP player) {
+		return isThrottled(getManager(player));
+	}
+
+	/**
+	 * Should be called when critical data is sent to throttled connection
+	 */
+	public static void recordBypass() {
+		bypassed.increment();
+	}
+
+	/**
+	 * @return number of times connection became throttled due to full outbound buffer
+	 */
+	public static long getThrottledUnwritableCount() {
+		return throttledUnwritable.sum();
+	}
+
+	/**
+	 * @return number of times connection became throttled due to exhausted budget
+	 */
+	public static long getThrottledBudgetCount() {
+		return throttledBudget.sum();
+	}
+
+	public static long getBypassCount() {
+		return bypassed.sum();
+	}
+
+	public static void resetCounters() {
+		throttledUnwritable.reset();
+		throttledBudget.reset();
+		bypassed.reset();
+	}
+
+	@SubscribeEvent
+	public void onServerTick(ServerTickEvent evt) {
+		if (evt.phase == Phase.START) currentTick++;
+	}
+}
@@ -0,0 +1,138 @@
+package openmods.network;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.EventLoop;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import net.minecraft.network.EnumConnectionState;
+import net.minecraft.network.EnumPacketDirection;
+import net.minecraft.network.NetworkManager;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.network.play.server.SPacketCustomPayload;
+import net.minecraftforge.fml.common.network.handshake.NetworkDispatcher;
+import net.minecraftforge.fml.common.network.internal.FMLProxyPacket;
+import openmods.LibConfig;
+import openmods.Log;
+import openmods.reflection.FieldAccess;
+import openmods.utils.io.PacketBuffers;
+import openmods.utils.io.PacketBuffers.SizeHint;
+
+/**
+ * Sends single proxy packet to many dispatchers.
+ * For remote connections vanilla packet is serialized once and every channel gets duplicate of same buffer (released by channel encoders).
+ * Writes are grouped per event loop, so every loop gets single task that writes and flushes all its channels.
+ * Local connections and packets that FML would split go through normal {@link NetworkDispatcher#sendProxy(FMLProxyPacket)}.
+ * Payload size is recorded in {@link OutboundBudget} of every receiver.
+ */
+public class PacketBroadcaster {
+
+	// FML splits larger payloads into multiple packets
+	private static final int MAX_SINGLE_PACKET_PAYLOAD = 0x100000 - 0x50;
+
+	private static final int MIN_FAST_PATH_RECEIVERS = 2;
+
+	private static final FieldAccess<NetworkManager> DISPATCHER_MANAGER = FieldAccess.create(NetworkDispatcher.class, "manager");
+
+	private static final SizeHint encodedSizeHint = new SizeHint(256);
+
+	private static volatile boolean fastPathFailed;
+
+	public static void sendToDispatchers(FMLProxyPacket pkt, Collection<NetworkDispatcher> dispatchers) {
+		final int payloadSize = pkt.payload().readableBytes();
+		if (!LibConfig.encodeBroadcastOnce || fastPathFailed ||
+				dispatchers.size() < MIN_FAST_PATH_RECEIVERS ||
+				payloadSize >= MAX_SINGLE_PACKET_PAYLOAD) {
+			sendSeparately(pkt, dispatchers);
+			return;
+		}
+
+		final List<NetworkDispatcher> remoteDispatchers = Lists.newArrayListWithCapacity(dispatchers.size());
+		final Map<EventLoop, List<Channel>> remoteChannels = Maps.newIdentityHashMap();
+		for (NetworkDispatcher dispatcher : dispatchers) {
+			final NetworkManager manager = DISPATCHER_MANAGER.get(dispatcher);
+			OutboundBudget.record(manager, payloadSize);
+			if (canWriteDirectly(manager)) {
+				final Channel channel = manager.channel();
+				List<Channel> loopChannels = remoteChannels.get(channel.eventLoop());
+				if (loopChannels == null) {
+					loopChannels = Lists.newArrayList();
+					remoteChannels.put(channel.eventLoop(), loopChannels);
+				}
+				loopChannels.add(channel);
+				remoteDispatchers.add(dispatcher);
+			} else {
+				dispatcher.sendProxy(pkt);
+			}
+		}
+
+		if (remoteDispatchers.isEmpty()) return;
+
+		final ByteBuf encoded;
+		try {
+			encoded = encode(pkt);
+		} catch (Throwable t) {
+			// unexpected vanilla/FML version, don't try again
+			Log.warn(t, "Failed to encode broadcast packet, falling back to per-player sending");
+			fastPathFailed = true;
+			// already recorded in budget
+			for (NetworkDispatcher dispatcher : remoteDispatchers)
+				dispatcher.sendProxy(pkt);
+			return;
+		}
+
+		for (Map.Entry<EventLoop, List<Channel>> e : remoteChannels.entrySet()) {
+			final List<Channel> channels = e.getValue();
+			// every channel releases its duplicate after encoding (or on failed write)
+			encoded.retain(channels.size());
+			try {
+				e.getKey().execute(() -> {
+					for (Channel channel : channels)
+						channel.writeAndFlush(encoded.duplicate()).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+				});
+			} catch (RejectedExecutionException ex) {
+				// loop is shutting down, connections are lost anyway
+				encoded.release(channels.size());
+			}
+		}
+
+		PacketBuffers.release(encoded, encodedSizeHint);
+	}
+
+	private static void sendSeparately(FMLProxyPacket pkt, Collection<NetworkDispatcher> dispatchers) {
+		final int payloadSize = pkt.payload().readableBytes();
+		for (NetworkDispatcher dispatcher : dispatchers) {
+			OutboundBudget.record(DISPATCHER_MANAGER.get(dispatcher), payloadSize);
+			dispatcher.sendProxy(pkt);
+		}
+	}
+
+	private static boolean canWriteDirectly(NetworkManager manager) {
+		// local connections pass packet objects without serialization
+		return manager != null &&
+				!manager.isLocalChannel() &&
+				manager.isChannelOpen() &&
+				manager.channel().attr(NetworkManager.PROTOCOL_ATTRIBUTE_KEY).get() == EnumConnectionState.PLAY;
+	}
+
+	// same bytes as vanilla packet encoder would produce, compression, framing and encryption is still done per channel
+	private static ByteBuf encode(FMLProxyPacket pkt) throws Exception {
+		final SPacketCustomPayload packet = new SPacketCustomPayload(pkt.channel(), new PacketBuffer(pkt.payload().duplicate()));
+		final Integer packetId = EnumConnectionState.PLAY.getPacketId(EnumPacketDirection.CLIENTBOUND, packet);
+
+		final PacketBuffer output = PacketBuffers.scratch(encodedSizeHint);
+		try {
+			output.writeVarInt(packetId);
+			packet.writePacketData(output);
+		} catch (Throwable t) {
+			output.release();
+			throw t;
+		}
+		return output;
+	}
+}
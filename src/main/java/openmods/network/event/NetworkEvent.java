@@ -17,39 +17,68 @@ public abstract class NetworkEvent extends Event {
 
 	NetworkDispatcher dispatcher;
 
+	// set by codec, based on event registration
+	boolean handledOnNetworkThread;
+
 	public EntityPlayer sender;
 
 	public Side side;
 
+	// only set for events created by pool
+	NetworkEventPool pool;
+
+	boolean recycled;
+
 	protected abstract void readFromStream(PacketBuffer input) throws IOException;
 
 	protected abstract void writeToStream(PacketBuffer output) throws IOException;
 
 	protected void appendLogInfo(List<String> info) {}
 
+	/**
+	 * Called before pooled event (see {@link NetworkEventMeta#pooled()}) is returned to pool. Should restore all fields to state after construction.
+	 * Base class fields, cancellation and result are reset by framework.
+	 */
+	protected void reset() {}
+
+	void recycle() {
+		if (pool != null) pool.release(this);
+	}
+
+	void checkNotRecycled() {
+		if (recycled && NetworkEventPool.checksEnabled()) throw new IllegalStateException("Event " + this + " used after being returned to pool");
+	}
+
 	public void reply(NetworkEvent reply) {
+		checkNotRecycled();
+		reply.checkNotRecycled();
 		Preconditions.checkState(dispatcher != null, "Can't call this method outside event handler");
 		reply.dispatcher = dispatcher;
 		this.replies.add(reply);
 	}
 
 	public void sendToAll() {
+		checkNotRecycled();
 		NetworkEventManager.dispatcher().senders.global.sendMessage(this);
 	}
 
 	public void sendToServer() {
+		checkNotRecycled();
 		NetworkEventManager.dispatcher().senders.client.sendMessage(this);
 	}
 
 	public void sendToPlayer(EntityPlayer player) {
+		checkNotRecycled();
 		NetworkEventManager.dispatcher().senders.player.sendMessage(this, player);
 	}
 
 	public void sendToEntity(Entity entity) {
+		checkNotRecycled();
 		NetworkEventManager.dispatcher().senders.entity.sendMessage(this, entity);
 	}
 
 	public List<Object> serialize() {
+		checkNotRecycled();
 		return NetworkEventManager.dispatcher().senders.serialize(this);
 	}
 }
@@ -1,7 +1,6 @@
 package openmods.network.event;
 
 import com.google.common.base.Preconditions;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
@@ -17,6 +16,7 @@ import net.minecraftforge.registries.IForgeRegistry;
 import openmods.Log;
 import openmods.OpenMods;
 import openmods.utils.CommonRegistryCallbacks;
+import openmods.utils.io.PacketBuffers;
 
 @Sharable
 public class NetworkEventCodec extends MessageToMessageCodec<FMLProxyPacket, NetworkEvent> {
@@ -31,7 +31,13 @@ public class NetworkEventCodec extends MessageToMessageCodec<FMLProxyPacket, Net
 	protected void encode(ChannelHandlerContext ctx, NetworkEvent msg, List<Object> out) throws IOException {
 		final Channel channel = ctx.channel();
 		final Side side = channel.attr(NetworkRegistry.CHANNEL_SOURCE).get();
+		out.add(createPacket(msg, side));
+	}
 
+	// doesn't touch channel state, so can be also used outside pipeline (i.e. for replies sent from network thread)
+	// pooled events are returned to pool after encoding
+	FMLProxyPacket createPacket(NetworkEvent msg, Side side) throws IOException {
+		msg.checkNotRecycled();
 		final NetworkEventEntry entry = CommonRegistryCallbacks.getObjectToEntryMap(registry).get(msg.getClass());
 		Preconditions.checkState(entry != null, "Can't find registration for class %s", msg.getClass());
 		final int id = CommonRegistryCallbacks.getEntryIdMap(registry).get(entry);
@@ -40,13 +46,15 @@ public class NetworkEventCodec extends MessageToMessageCodec<FMLProxyPacket, Net
 		Preconditions.checkState(validator != null && validator.validateSend(side),
 				"Invalid direction: sending packet %s on side %s", msg.getClass(), side);
 
-		final PacketBuffer buf = new PacketBuffer(Unpooled.buffer());
+		final PacketBuffer buf = PacketBuffers.payload(entry.sizeHint);
 		buf.writeVarInt(id);
 		msg.writeToStream(buf);
+		entry.sizeHint.update(buf.writerIndex());
 
 		final FMLProxyPacket packet = new FMLProxyPacket(buf, NetworkEventDispatcher.CHANNEL_NAME);
 		packet.setDispatcher(msg.dispatcher);
-		out.add(packet);
+		msg.recycle();
+		return packet;
 	}
 
 	@Override
@@ -65,6 +73,7 @@ public class NetworkEventCodec extends MessageToMessageCodec<FMLProxyPacket, Net
 		final NetworkEvent event = type.createPacket();
 		event.readFromStream(payload);
 		event.dispatcher = msg.getDispatcher();
+		event.handledOnNetworkThread = type.isHandledOnNetworkThread();
 
 		event.side = side;
 
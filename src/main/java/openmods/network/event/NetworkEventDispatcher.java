@@ -17,7 +17,8 @@ public class NetworkEventDispatcher extends Dispatcher {
 	public final Senders senders;
 
 	public NetworkEventDispatcher(IForgeRegistry<NetworkEventEntry> registry) {
-		this.channels = NetworkRegistry.INSTANCE.newChannel(CHANNEL_NAME, new NetworkEventCodec(registry), new NetworkEventInboundHandler());
+		final NetworkEventCodec codec = new NetworkEventCodec(registry);
+		this.channels = NetworkRegistry.INSTANCE.newChannel(CHANNEL_NAME, codec, new NetworkEventInboundHandler(codec));
 		ExtendedOutboundHandler.install(this.channels);
 
 		this.senders = new Senders();
@@ -3,17 +3,24 @@ package openmods.network.event;
 import com.google.common.base.Preconditions;
 import net.minecraft.util.ResourceLocation;
 import net.minecraftforge.registries.IForgeRegistryEntry;
+import openmods.utils.io.PacketBuffers.SizeHint;
 
 public abstract class NetworkEventEntry implements IForgeRegistryEntry<NetworkEventEntry> {
 
 	private ResourceLocation name;
 
+	public final SizeHint sizeHint = new SizeHint();
+
 	public abstract Class<? extends NetworkEvent> getPacketType();
 
 	public abstract NetworkEvent createPacket();
 
 	public abstract EventDirection getDirection();
 
+	public boolean isHandledOnNetworkThread() {
+		return false;
+	}
+
 	@Override
 	public NetworkEventEntry setRegistryName(ResourceLocation name) {
 		Preconditions.checkState(this.name == null, "Name already set, %s->%s", this.name, name);
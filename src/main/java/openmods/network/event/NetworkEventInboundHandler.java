@@ -6,22 +6,65 @@ import io.netty.channel.SimpleChannelInboundHandler;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.fml.common.network.FMLOutboundHandler;
 import net.minecraftforge.fml.common.network.FMLOutboundHandler.OutboundTarget;
+import net.minecraftforge.fml.common.network.NetworkRegistry;
+import net.minecraftforge.fml.common.network.handshake.NetworkDispatcher;
+import net.minecraftforge.fml.common.network.internal.FMLProxyPacket;
+import net.minecraftforge.fml.relauncher.Side;
+import openmods.Log;
+import openmods.network.OutboundBudget;
 import openmods.utils.NetUtils;
 
+/**
+ * Ordering: events from single connection handled on main thread are posted in order of arrival, interleaved with vanilla packets.
+ * Events marked with {@link NetworkEventMeta#networkThread()} are posted immediately, in order of arrival among themselves,
+ * so they may be handled before earlier main thread events from same connection. Events from different connections may be handled concurrently.
+ * Replies are sent after handler finishes, on same thread. Pooled events are recycled after that, even if handler failed.
+ * Failures of network thread handlers are logged, so they don't reach channel pipeline.
+ */
 @Sharable
 public class NetworkEventInboundHandler extends SimpleChannelInboundHandler<NetworkEvent> {
 
+	private final NetworkEventCodec codec;
+
+	public NetworkEventInboundHandler(NetworkEventCodec codec) {
+		this.codec = codec;
+	}
+
 	@Override
 	protected void channelRead0(final ChannelHandlerContext ctx, final NetworkEvent msg) throws Exception {
-		NetUtils.executeSynchronized(ctx, () -> {
-			// TODO asynchronous events, once needed
-			MinecraftForge.EVENT_BUS.post(msg);
-			msg.dispatcher = null;
+		if (msg.handledOnNetworkThread) {
+			try {
+				NetworkEventManager.NETWORK_THREAD_BUS.post(msg);
+				final NetworkDispatcher dispatcher = msg.dispatcher;
+				msg.dispatcher = null;
 
-			for (NetworkEvent reply : msg.replies) {
-				ctx.channel().attr(FMLOutboundHandler.FML_MESSAGETARGET).set(OutboundTarget.REPLY);
-				ctx.writeAndFlush(reply);
+				// embedded channel is used by main thread, so replies skip it (and ExtendedOutboundHandler accounting)
+				final Side side = ctx.channel().attr(NetworkRegistry.CHANNEL_SOURCE).get();
+				for (NetworkEvent reply : msg.replies) {
+					final FMLProxyPacket packet = codec.createPacket(reply, side);
+					if (side == Side.SERVER) OutboundBudget.record(dispatcher, packet.payload().readableBytes());
+					dispatcher.sendProxy(packet);
+				}
+			} catch (Throwable t) {
+				// don't let handler failure reach pipeline, connection should stay usable
+				Log.warn(t, "Failed to handle network event %s", msg);
+			} finally {
+				msg.recycle();
 			}
-		});
+		} else {
+			NetUtils.executeSynchronized(ctx, () -> {
+				try {
+					MinecraftForge.EVENT_BUS.post(msg);
+					msg.dispatcher = null;
+
+					for (NetworkEvent reply : msg.replies) {
+						ctx.channel().attr(FMLOutboundHandler.FML_MESSAGETARGET).set(OutboundTarget.REPLY);
+						ctx.writeAndFlush(reply);
+					}
+				} finally {
+					msg.recycle();
+				}
+			});
+		}
 	}
 }
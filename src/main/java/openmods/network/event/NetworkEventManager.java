@@ -1,13 +1,18 @@
 package openmods.network.event;
 
-import java.lang.reflect.Constructor;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.collect.Maps;
+import java.util.Map;
 import net.minecraft.util.ResourceLocation;
 import net.minecraftforge.event.RegistryEvent;
 import net.minecraftforge.fml.common.Mod.EventBusSubscriber;
+import net.minecraftforge.fml.common.eventhandler.EventBus;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.registries.IForgeRegistry;
 import net.minecraftforge.registries.RegistryBuilder;
 import openmods.OpenMods;
+import openmods.reflection.ConstructorAccessorFactory;
 import openmods.utils.CommonRegistryCallbacks;
 import openmods.utils.RegistrationContextBase;
 
@@ -16,10 +21,27 @@ public class NetworkEventManager {
 
 	private static NetworkEventDispatcher DISPATCHER;
 
+	/**
+	 * Receives events marked with {@link NetworkEventMeta#networkThread()}. Handlers are called from network threads, possibly concurrently.
+	 */
+	public static final EventBus NETWORK_THREAD_BUS = new EventBus();
+
 	public static NetworkEventDispatcher dispatcher() {
 		return DISPATCHER;
 	}
 
+	private static final Map<Class<? extends NetworkEvent>, NetworkEventPool> POOLS = Maps.newConcurrentMap();
+
+	/**
+	 * Returns instance of event marked with {@link NetworkEventMeta#pooled()}. It will be returned to pool after it's sent, so it must not be used afterwards.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends NetworkEvent> T acquire(Class<T> cls) {
+		final NetworkEventPool pool = POOLS.get(cls);
+		Preconditions.checkArgument(pool != null, "Event %s is not registered as pooled", cls);
+		return (T)pool.acquire();
+	}
+
 	private static class Callbacks extends CommonRegistryCallbacks<Class<? extends NetworkEvent>, NetworkEventEntry> {
 		@Override
 		protected Class<? extends NetworkEvent> getWrappedObject(NetworkEventEntry entry) {
@@ -54,12 +76,16 @@ public class NetworkEventManager {
 			final NetworkEventMeta meta = cls.getAnnotation(NetworkEventMeta.class);
 
 			final EventDirection direction = (meta != null)? meta.direction() : EventDirection.ANY;
+			final boolean networkThread = meta != null && meta.networkThread();
 
-			final Constructor<? extends NetworkEvent> ctor;
-			try {
-				ctor = cls.getConstructor();
-			} catch (Exception e) {
-				throw new IllegalArgumentException("Class " + cls + " has no parameterless constructor");
+			final Supplier<? extends NetworkEvent> ctor = ConstructorAccessorFactory.create(cls);
+
+			final NetworkEventPool pool;
+			if (meta != null && meta.pooled()) {
+				pool = new NetworkEventPool(ctor);
+				POOLS.put(cls, pool);
+			} else {
+				pool = null;
 			}
 
 			final ResourceLocation eventId = new ResourceLocation(domain, cls.getName());
@@ -70,13 +96,14 @@ public class NetworkEventManager {
 					return direction;
 				}
 
+				@Override
+				public boolean isHandledOnNetworkThread() {
+					return networkThread;
+				}
+
 				@Override
 				public NetworkEvent createPacket() {
-					try {
-						return ctor.newInstance();
-					} catch (ReflectiveOperationException e) {
-						throw new RuntimeException(e);
-					}
+					return pool != null? pool.acquire() : ctor.get();
 				}
 
 				@Override
@@ -9,4 +9,17 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface NetworkEventMeta {
 	public EventDirection direction() default EventDirection.ANY;
+
+	/**
+	 * If true, received events are posted on {@link NetworkEventManager#NETWORK_THREAD_BUS} directly from network thread, instead of being scheduled on main thread.
+	 * Use only for events that don't touch world or other game state.
+	 */
+	public boolean networkThread() default false;
+
+	/**
+	 * If true, instances are reused. Received events are returned to pool after handler (and replies) finish, so handlers must not keep references to them.
+	 * Outbound events obtained with {@link NetworkEventManager#acquire(Class)} are returned to pool after first send, so they can't be sent twice.
+	 * State must be cleared in {@link NetworkEvent#reset()}.
+	 */
+	public boolean pooled() default false;
 }
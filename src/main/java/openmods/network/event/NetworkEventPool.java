@@ -0,0 +1,103 @@
+package openmods.network.event;
+
+import com.google.common.base.Supplier;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.minecraft.launchwrapper.Launch;
+import net.minecraftforge.fml.common.eventhandler.Event;
+import net.minecraftforge.fml.common.eventhandler.EventPriority;
+import openmods.LibConfig;
+import openmods.Log;
+import openmods.reflection.FieldAccess;
+
+/**
+ * Idle instances of single event type marked with {@link NetworkEventMeta#pooled()}.
+ * Can be used from any thread. Instances above {@link LibConfig#networkEventPoolSize} are left for GC.
+ */
+class NetworkEventPool {
+
+	private static final FieldAccess<EventPriority> EVENT_PHASE = findPhaseField();
+
+	private static final boolean DEV_ENVIRONMENT = isDevEnvironment();
+
+	private static FieldAccess<EventPriority> findPhaseField() {
+		try {
+			return FieldAccess.create(Event.class, "phase");
+		} catch (Throwable t) {
+			// older Forge, nothing to reset
+			return null;
+		}
+	}
+
+	private static boolean isDevEnvironment() {
+		if (Launch.blackboard == null) return false;
+		final Boolean deobfuscated = (Boolean)Launch.blackboard.get("fml.deobfuscatedEnvironment");
+		return deobfuscated != null && deobfuscated;
+	}
+
+	static boolean checksEnabled() {
+		return DEV_ENVIRONMENT || LibConfig.checkPooledEvents;
+	}
+
+	private final Supplier<? extends NetworkEvent> factory;
+
+	private final Queue<NetworkEvent> idle = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger idleCount = new AtomicInteger();
+
+	public NetworkEventPool(Supplier<? extends NetworkEvent> factory) {
+		this.factory = factory;
+	}
+
+	public NetworkEvent acquire() {
+		final NetworkEvent event = idle.poll();
+		if (event != null) {
+			idleCount.decrementAndGet();
+			event.recycled = false;
+			return event;
+		}
+
+		final NetworkEvent newEvent = factory.get();
+		newEvent.pool = this;
+		return newEvent;
+	}
+
+	public void release(NetworkEvent event) {
+		if (event.recycled) {
+			// never put same instance in queue twice
+			if (checksEnabled()) throw new IllegalStateException("Event " + event + " already recycled");
+			return;
+		}
+
+		try {
+			resetState(event);
+		} catch (Throwable t) {
+			Log.warn(t, "Failed to reset event %s, dropping", event);
+			return;
+		} finally {
+			event.recycled = true;
+		}
+
+		if (idleCount.incrementAndGet() <= LibConfig.networkEventPoolSize) {
+			idle.offer(event);
+		} else {
+			idleCount.decrementAndGet();
+		}
+	}
+
+	private static void resetState(NetworkEvent event) {
+		event.dispatcher = null;
+		event.sender = null;
+		event.side = null;
+		event.handledOnNetworkThread = false;
+		event.replies.clear();
+
+		// bus refuses to post event with phase already set
+		if (EVENT_PHASE != null) EVENT_PHASE.set(event, null);
+		if (event.isCancelable()) event.setCanceled(false);
+		if (event.hasResult()) event.setResult(Event.Result.DEFAULT);
+
+		event.reset();
+	}
+}
@@ -4,6 +4,7 @@ import com.google.common.base.Preconditions;
 import java.lang.reflect.Method;
 import net.minecraft.util.ResourceLocation;
 import net.minecraftforge.registries.IForgeRegistryEntry;
+import openmods.utils.io.PacketBuffers.SizeHint;
 
 public class MethodEntry implements IForgeRegistryEntry<MethodEntry> {
 
@@ -13,11 +14,33 @@ public class MethodEntry implements IForgeRegistryEntry<MethodEntry> {
 
 	public final MethodParamsCodec paramsCodec;
 
+	public final SizeHint sizeHint = new SizeHint();
+
+	private volatile boolean invocationGenerated;
+
+	private RpcInvocation invocationPrototype;
+
 	public MethodEntry(Method method) {
 		this.method = method;
 		this.paramsCodec = new MethodParamsCodec(method);
 	}
 
+	/**
+	 * @return new invocation for decoding call or null, if method should be called via reflection
+	 */
+	public RpcInvocation createInvocation() {
+		if (!invocationGenerated) {
+			synchronized (this) {
+				if (!invocationGenerated) {
+					invocationPrototype = RpcInvocationFactory.createPrototype(method, paramsCodec);
+					invocationGenerated = true;
+				}
+			}
+		}
+
+		return invocationPrototype != null? invocationPrototype.create() : null;
+	}
+
 	@Override
 	public MethodEntry setRegistryName(ResourceLocation name) {
 		Preconditions.checkState(this.name == null, "Name already set, %s->%s", this.name, name);
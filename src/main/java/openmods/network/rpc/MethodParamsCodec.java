@@ -89,6 +89,15 @@ public class MethodParamsCodec {
 		}
 	}
 
+	public void writeArg(PacketBuffer output, int argIndex, Object value) {
+		final MethodParam param = params[argIndex];
+		try {
+			writeArg(output, argIndex, param.serializer, param.isNullable, value);
+		} catch (Exception e) {
+			throw new RuntimeException(String.format("Failed to write argument %d from method %s", argIndex, method), e);
+		}
+	}
+
 	private static void writeArg(PacketBuffer output, int argIndex, IStreamWriter<Object> writer, boolean isNullable, Object value) throws IOException {
 		if (isNullable) {
 			if (value == null) {
@@ -119,6 +128,15 @@ public class MethodParamsCodec {
 		return result;
 	}
 
+	public Object readArg(PacketBuffer input, int argIndex) {
+		final MethodParam param = params[argIndex];
+		try {
+			return readArg(input, param.serializer, param.isNullable);
+		} catch (Exception e) {
+			throw new RuntimeException(String.format("Failed to read argument %d from method %s", argIndex, method), e);
+		}
+	}
+
 	private static Object readArg(PacketBuffer input, IStreamReader<Object> reader, boolean isNullable) throws IOException {
 		if (isNullable) {
 			boolean hasValue = input.readBoolean();
@@ -0,0 +1,61 @@
+package openmods.network.rpc;
+
+import com.google.common.collect.Lists;
+import java.util.List;
+import net.minecraftforge.fml.common.FMLCommonHandler;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent.ClientTickEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent.Phase;
+import net.minecraftforge.fml.common.gameevent.TickEvent.RenderTickEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent.ServerTickEvent;
+import net.minecraftforge.fml.relauncher.Side;
+
+/**
+ * Flushes {@link RpcBatchingSender}s with pending calls at the end of tick (server) or tick and frame (client).
+ * Batch is flushed on side of thread that started it.
+ */
+public class RpcBatchFlusher {
+
+	public static final RpcBatchFlusher INSTANCE = new RpcBatchFlusher();
+
+	private RpcBatchFlusher() {}
+
+	private final List<RpcBatchingSender> pendingServer = Lists.newArrayList();
+
+	private final List<RpcBatchingSender> pendingClient = Lists.newArrayList();
+
+	void schedule(RpcBatchingSender sender) {
+		final List<RpcBatchingSender> pending = FMLCommonHandler.instance().getEffectiveSide() == Side.SERVER? pendingServer : pendingClient;
+		synchronized (pending) {
+			pending.add(sender);
+		}
+	}
+
+	private static void flush(List<RpcBatchingSender> pending) {
+		final RpcBatchingSender[] senders;
+		synchronized (pending) {
+			if (pending.isEmpty()) return;
+			senders = pending.toArray(new RpcBatchingSender[pending.size()]);
+			pending.clear();
+		}
+
+		for (RpcBatchingSender sender : senders)
+			sender.flush();
+	}
+
+	@SubscribeEvent
+	public void onServerTick(ServerTickEvent evt) {
+		if (evt.phase == Phase.END) flush(pendingServer);
+	}
+
+	@SubscribeEvent
+	public void onClientTick(ClientTickEvent evt) {
+		if (evt.phase == Phase.END) flush(pendingClient);
+	}
+
+	@SubscribeEvent
+	public void onRenderTick(RenderTickEvent evt) {
+		// GUI calls are usually made from input handlers, so don't wait for next tick
+		if (evt.phase == Phase.END) flush(pendingClient);
+	}
+}
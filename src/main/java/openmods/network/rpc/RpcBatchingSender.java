@@ -0,0 +1,109 @@
+package openmods.network.rpc;
+
+import com.google.common.base.Preconditions;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import java.util.Collection;
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.fml.common.network.internal.FMLProxyPacket;
+import net.minecraftforge.registries.IForgeRegistry;
+import openmods.LibConfig;
+import openmods.network.senders.IPacketSender;
+import openmods.utils.io.PacketBuffers;
+import openmods.utils.io.PacketBuffers.SizeHint;
+
+/**
+ * Sender that merges RPC calls into single packet, sent at the end of tick (see {@link RpcBatchFlusher}) or when size limit is reached.
+ * Consecutive calls to same target share target header.
+ * Batch format: {@link RpcCallCodec#BATCH_MARKER}, then groups of (target id, target data, (method id + 1, args)*, 0).
+ * Other messages flush pending calls first, so order is preserved for messages sent via single instance.
+ */
+public class RpcBatchingSender implements IPacketSender {
+
+	private final IPacketSender delegate;
+
+	private final IForgeRegistry<TargetTypeProvider> targetRegistry;
+
+	private final IForgeRegistry<MethodEntry> methodRegistry;
+
+	private final SizeHint batchSizeHint = new SizeHint(256);
+
+	private PacketBuffer batch;
+
+	// position of target header of currently open group in batch
+	private int groupHeaderStart = -1;
+
+	private int groupHeaderLength;
+
+	RpcBatchingSender(IPacketSender delegate, IForgeRegistry<TargetTypeProvider> targetRegistry, IForgeRegistry<MethodEntry> methodRegistry) {
+		this.delegate = delegate;
+		this.targetRegistry = targetRegistry;
+		this.methodRegistry = methodRegistry;
+	}
+
+	@Override
+	public void sendMessage(Object msg) {
+		if (msg instanceof RpcCall) {
+			final RpcCall call = (RpcCall)msg;
+			final PacketBuffer buffer = PacketBuffers.scratch(call.method.sizeHint);
+			try {
+				RpcCallCodec.writeTarget(buffer, targetRegistry, call.target);
+				final int targetHeaderLength = buffer.writerIndex();
+				RpcCallCodec.writeMethodId(buffer, methodRegistry, call.method);
+				call.method.paramsCodec.writeArgs(buffer, call.args);
+				appendEncodedCall(buffer, targetHeaderLength);
+			} finally {
+				PacketBuffers.release(buffer, call.method.sizeHint);
+			}
+		} else {
+			flush();
+			delegate.sendMessage(msg);
+		}
+	}
+
+	@Override
+	public void sendMessages(Collection<Object> msgs) {
+		for (Object msg : msgs)
+			sendMessage(msg);
+	}
+
+	/**
+	 * @param call encoded single call (target header, method id, args), readable bytes are consumed. Buffer is copied, caller keeps ownership
+	 */
+	synchronized void appendEncodedCall(ByteBuf call, int targetHeaderLength) {
+		Preconditions.checkArgument(targetHeaderLength <= call.readableBytes(), "Invalid header length");
+
+		if (batch == null) {
+			batch = PacketBuffers.payload(batchSizeHint);
+			batch.writeVarInt(RpcCallCodec.BATCH_MARKER);
+			groupHeaderStart = -1;
+			RpcBatchFlusher.INSTANCE.schedule(this);
+		}
+
+		final ByteBuf targetHeader = call.readSlice(targetHeaderLength);
+		if (groupHeaderStart < 0 || groupHeaderLength != targetHeaderLength || !ByteBufUtil.equals(batch, groupHeaderStart, targetHeader, 0, targetHeaderLength)) {
+			if (groupHeaderStart >= 0) batch.writeVarInt(0);
+			groupHeaderStart = batch.writerIndex();
+			groupHeaderLength = targetHeaderLength;
+			batch.writeBytes(targetHeader);
+		}
+
+		// 0 is used as group terminator
+		final int methodId = new PacketBuffer(call).readVarInt();
+		batch.writeVarInt(methodId + 1);
+		batch.writeBytes(call);
+
+		if (batch.writerIndex() >= LibConfig.rpcBatchSizeLimit) flush();
+	}
+
+	public synchronized void flush() {
+		if (batch == null) return;
+
+		batch.writeVarInt(0);
+		batchSizeHint.update(batch.writerIndex());
+		final PacketBuffer payload = batch;
+		batch = null;
+		groupHeaderStart = -1;
+		delegate.sendMessage(new FMLProxyPacket(payload, RpcCallDispatcher.CHANNEL_NAME));
+	}
+}
@@ -7,9 +7,20 @@ public class RpcCall {
 
 	public final Object[] args;
 
+	// decoded arguments, if method has generated invocation (args are null then)
+	public final RpcInvocation invocation;
+
 	public RpcCall(IRpcTarget target, MethodEntry method, Object[] args) {
 		this.target = target;
 		this.method = method;
 		this.args = args;
+		this.invocation = null;
+	}
+
+	public RpcCall(IRpcTarget target, MethodEntry method, RpcInvocation invocation) {
+		this.target = target;
+		this.method = method;
+		this.args = null;
+		this.invocation = invocation;
 	}
 }
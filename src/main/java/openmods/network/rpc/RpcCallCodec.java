@@ -2,10 +2,11 @@ package openmods.network.rpc;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.BiMap;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageCodec;
+import java.io.IOException;
 import java.util.List;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.network.INetHandler;
@@ -16,10 +17,14 @@ import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.registries.IForgeRegistry;
 import openmods.OpenMods;
 import openmods.utils.CommonRegistryCallbacks;
+import openmods.utils.io.PacketBuffers;
 
 @Sharable
 public class RpcCallCodec extends MessageToMessageCodec<FMLProxyPacket, RpcCall> {
 
+	// target ids are limited to 0..0xFF, so this value can't start single call
+	static final int BATCH_MARKER = 0x100;
+
 	private final IForgeRegistry<TargetTypeProvider> targetRegistry;
 
 	private final IForgeRegistry<MethodEntry> methodRegistry;
@@ -31,58 +36,97 @@ public class RpcCallCodec extends MessageToMessageCodec<FMLProxyPacket, RpcCall>
 
 	@Override
 	protected void encode(ChannelHandlerContext ctx, RpcCall call, List<Object> out) throws Exception {
-		final PacketBuffer output = new PacketBuffer(Unpooled.buffer());
+		final PacketBuffer output = PacketBuffers.payload(call.method.sizeHint);
 
-		{
-			final IRpcTarget targetWrapper = call.target;
-			int targetId = CommonRegistryCallbacks.mapObjectToId(targetRegistry, targetWrapper.getClass());
-			output.writeVarInt(targetId);
-			targetWrapper.writeToStream(output);
-		}
-
-		{
-			final BiMap<MethodEntry, Integer> eventIdMap = CommonRegistryCallbacks.getEntryIdMap(methodRegistry);
-			int methodId = eventIdMap.get(call.method);
-			output.writeVarInt(methodId);
-			MethodParamsCodec paramsCodec = call.method.paramsCodec;
-			paramsCodec.writeArgs(output, call.args);
-		}
+		writeCallHeader(output, targetRegistry, methodRegistry, call.target, call.method);
+		MethodParamsCodec paramsCodec = call.method.paramsCodec;
+		paramsCodec.writeArgs(output, call.args);
+		call.method.sizeHint.update(output.writerIndex());
 
 		FMLProxyPacket packet = new FMLProxyPacket(output, RpcCallDispatcher.CHANNEL_NAME);
 		out.add(packet);
 	}
 
+	// also used by generated proxies, which write arguments directly
+	static void writeCallHeader(PacketBuffer output, IForgeRegistry<TargetTypeProvider> targetRegistry, IForgeRegistry<MethodEntry> methodRegistry, IRpcTarget target, MethodEntry method) {
+		writeTarget(output, targetRegistry, target);
+		writeMethodId(output, methodRegistry, method);
+	}
+
+	static void writeTarget(PacketBuffer output, IForgeRegistry<TargetTypeProvider> targetRegistry, IRpcTarget target) {
+		int targetId = CommonRegistryCallbacks.mapObjectToId(targetRegistry, target.getClass());
+		output.writeVarInt(targetId);
+		try {
+			target.writeToStream(output);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	static void writeMethodId(PacketBuffer output, IForgeRegistry<MethodEntry> methodRegistry, MethodEntry method) {
+		final BiMap<MethodEntry, Integer> eventIdMap = CommonRegistryCallbacks.getEntryIdMap(methodRegistry);
+		int methodId = eventIdMap.get(method);
+		output.writeVarInt(methodId);
+	}
+
 	@Override
 	protected void decode(ChannelHandlerContext ctx, FMLProxyPacket msg, List<Object> out) throws Exception {
 		final PacketBuffer input = new PacketBuffer(msg.payload());
 
 		final Side side = ctx.channel().attr(NetworkRegistry.CHANNEL_SOURCE).get();
 
-		final IRpcTarget target;
-		final MethodEntry method;
-		final Object[] args;
+		final int targetId = input.readVarInt();
+		if (targetId == BATCH_MARKER) {
+			decodeBatch(input, side, getPlayer(msg), out);
+		} else {
+			final IRpcTarget target = readTarget(targetId, input, side, getPlayer(msg));
+			final RpcCall call = readCall(target, input.readVarInt(), input);
 
-		{
-			final int targetId = input.readVarInt();
-			final BiMap<Integer, TargetTypeProvider> idToEntryMap = CommonRegistryCallbacks.getEntryIdMap(targetRegistry).inverse();
-			final TargetTypeProvider entry = idToEntryMap.get(targetId);
-			target = entry.createRpcTarget();
-			EntityPlayer player = getPlayer(msg);
-			target.readFromStreamStream(side, player, input);
+			int bufferJunkSize = input.readableBytes();
+			Preconditions.checkState(bufferJunkSize == 0, "%s junk bytes left in buffer, method = %s", bufferJunkSize, call.method);
+			out.add(call);
 		}
 
-		{
-			final BiMap<MethodEntry, Integer> eventIdMap = CommonRegistryCallbacks.getEntryIdMap(methodRegistry);
-			final int methodId = input.readVarInt();
-			method = eventIdMap.inverse().get(methodId);
-			args = method.paramsCodec.readArgs(input);
+		input.release();
+	}
+
+	// see RpcBatchingSender for format
+	private void decodeBatch(PacketBuffer input, Side side, EntityPlayer player, List<Object> out) throws IOException {
+		while (input.isReadable()) {
+			final int targetId = input.readVarInt();
+			final int targetDataStart = input.readerIndex();
+			IRpcTarget target = readTarget(targetId, input, side, player);
+			final ByteBuf targetData = input.slice(targetDataStart, input.readerIndex() - targetDataStart);
+
+			int methodId;
+			while ((methodId = input.readVarInt()) != 0) {
+				// every call gets own target instance, same as unbatched calls
+				if (target == null) target = readTarget(targetId, new PacketBuffer(targetData.duplicate()), side, player);
+				out.add(readCall(target, methodId - 1, input));
+				target = null;
+			}
 		}
+	}
 
-		int bufferJunkSize = input.readableBytes();
-		Preconditions.checkState(bufferJunkSize == 0, "%s junk bytes left in buffer, method = %s", bufferJunkSize, method);
+	private IRpcTarget readTarget(int targetId, PacketBuffer input, Side side, EntityPlayer player) throws IOException {
+		final BiMap<Integer, TargetTypeProvider> idToEntryMap = CommonRegistryCallbacks.getEntryIdMap(targetRegistry).inverse();
+		final TargetTypeProvider entry = idToEntryMap.get(targetId);
+		final IRpcTarget target = entry.createRpcTarget();
+		target.readFromStreamStream(side, player, input);
+		return target;
+	}
 
-		out.add(new RpcCall(target, method, args));
-		input.release();
+	private RpcCall readCall(IRpcTarget target, int methodId, PacketBuffer input) {
+		final BiMap<MethodEntry, Integer> eventIdMap = CommonRegistryCallbacks.getEntryIdMap(methodRegistry);
+		final MethodEntry method = eventIdMap.inverse().get(methodId);
+		final RpcInvocation invocation = method.createInvocation();
+		if (invocation != null) {
+			invocation.read(input);
+			return new RpcCall(target, method, invocation);
+		} else {
+			final Object[] args = method.paramsCodec.readArgs(input);
+			return new RpcCall(target, method, args);
+		}
 	}
 
 	protected EntityPlayer getPlayer(FMLProxyPacket msg) {
@@ -71,6 +71,10 @@ public class RpcCallDispatcher extends Dispatcher {
 
 	private final RpcProxyFactory proxyFactory;
 
+	private final IForgeRegistry<MethodEntry> methodRegistry;
+
+	private final IForgeRegistry<TargetTypeProvider> targetRegistry;
+
 	private final Map<Side, FMLEmbeddedChannel> channels;
 
 	private RpcCallDispatcher(IForgeRegistry<MethodEntry> methodRegistry, IForgeRegistry<TargetTypeProvider> targetRegistry) {
@@ -79,7 +83,9 @@ public class RpcCallDispatcher extends Dispatcher {
 
 		this.senders = new Senders();
 
-		this.proxyFactory = new RpcProxyFactory(methodRegistry);
+		this.methodRegistry = methodRegistry;
+		this.targetRegistry = targetRegistry;
+		this.proxyFactory = new RpcProxyFactory(methodRegistry, targetRegistry);
 	}
 
 	@Override
@@ -91,6 +97,13 @@ public class RpcCallDispatcher extends Dispatcher {
 		return proxyFactory.createProxy(getClass().getClassLoader(), sender, wrapper, mainIntf, extraIntf);
 	}
 
+	/**
+	 * Creates sender that merges calls made during single tick into one packet. Calls should be sent only via returned sender, otherwise order is not guaranteed.
+	 */
+	public RpcBatchingSender createBatchingSender(IPacketSender sender) {
+		return new RpcBatchingSender(sender, targetRegistry, methodRegistry);
+	}
+
 	public static final String ID_FIELDS_SEPARATOR = ";";
 
 	public static class MethodRegistrationContext extends RegistrationContextBase<MethodEntry> {
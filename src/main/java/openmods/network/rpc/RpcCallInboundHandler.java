@@ -16,7 +16,8 @@ public class RpcCallInboundHandler extends SimpleChannelInboundHandler<RpcCall>
 			try {
 				Object target = msg.target.getTarget();
 				Preconditions.checkNotNull(target, "Target wrapper %s returned null object");
-				msg.method.method.invoke(target, msg.args);
+				if (msg.invocation != null) msg.invocation.invoke(target);
+				else msg.method.method.invoke(target, msg.args);
 				msg.target.afterCall();
 			} catch (Throwable t) {
 				throw SneakyThrower.sneakyThrow(t);
@@ -0,0 +1,33 @@
+package openmods.network.rpc;
+
+import net.minecraft.network.PacketBuffer;
+
+/**
+ * Decoded RPC call with typed argument fields, generated by {@link RpcInvocationFactory} for every method.
+ * Public only because generated classes are defined in separate class loader.
+ */
+public abstract class RpcInvocation {
+
+	private final MethodParamsCodec codec;
+
+	protected RpcInvocation(MethodParamsCodec codec) {
+		this.codec = codec;
+	}
+
+	protected MethodParamsCodec getCodec() {
+		return codec;
+	}
+
+	protected Object readArg(PacketBuffer input, int argIndex) {
+		return codec.readArg(input, argIndex);
+	}
+
+	/**
+	 * Creates new, empty invocation of same method
+	 */
+	public abstract RpcInvocation create();
+
+	public abstract void read(PacketBuffer input);
+
+	public abstract void invoke(Object target);
+}
@@ -0,0 +1,164 @@
+package openmods.network.rpc;
+
+import com.google.common.collect.Maps;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import openmods.Log;
+import openmods.reflection.AsmCodecUtils;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Generates {@link RpcInvocation} classes, which read arguments into typed fields and call target method without reflection.
+ * Primitive arguments are read directly from buffer, other types use {@link MethodParamsCodec}.
+ */
+public class RpcInvocationFactory implements Opcodes {
+
+	private static final String BASE_CLS = Type.getInternalName(RpcInvocation.class);
+
+	private static final String CODEC_DESC = Type.getDescriptor(MethodParamsCodec.class);
+
+	private static final String CTOR_DESC = "(" + CODEC_DESC + ")V";
+
+	private static final String READ_ARG_DESC = "(" + AsmCodecUtils.BUFFER_DESC + "I)Ljava/lang/Object;";
+
+	private static class InvocationClassLoader extends ClassLoader {
+		private InvocationClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		public Class<?> define(byte[] data) {
+			return defineClass(null, data, 0, data.length);
+		}
+	}
+
+	private static final Map<ClassLoader, InvocationClassLoader> loaders = Maps.newIdentityHashMap();
+
+	private static final AtomicInteger counter = new AtomicInteger();
+
+	private static synchronized InvocationClassLoader getLoader(ClassLoader parent) {
+		InvocationClassLoader result = loaders.get(parent);
+		if (result == null) {
+			result = new InvocationClassLoader(parent);
+			loaders.put(parent, result);
+		}
+		return result;
+	}
+
+	/**
+	 * @return prototype invocation (see {@link RpcInvocation#create()}) or null, if method can't be called from generated code
+	 */
+	public static RpcInvocation createPrototype(Method method, MethodParamsCodec codec) {
+		final Class<?> intf = method.getDeclaringClass();
+		final ClassLoader loader = intf.getClassLoader();
+		if (loader == null || !AsmCodecUtils.isAccessible(loader, intf)) return null;
+
+		for (Class<?> param : method.getParameterTypes())
+			if (!AsmCodecUtils.isAccessible(loader, param)) return null;
+
+		try {
+			final String name = Type.getInternalName(intf) + "$$rpc_invocation$" + counter.incrementAndGet();
+			final byte[] classData = createInvocationClassData(name, method);
+			final Class<?> cls = getLoader(loader).define(classData);
+			return (RpcInvocation)cls.getConstructor(MethodParamsCodec.class).newInstance(codec);
+		} catch (Throwable t) {
+			Log.warn(t, "Failed to generate RPC invocation for %s, using reflection", method);
+			return null;
+		}
+	}
+
+	private static String fieldName(int argIndex) {
+		return "arg" + argIndex;
+	}
+
+	private static byte[] createInvocationClassData(String name, Method method) {
+		final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+
+		writer.visit(V1_6, ACC_PUBLIC | ACC_SUPER | ACC_SYNTHETIC, name, null, BASE_CLS, null);
+		writer.visitSource(".dynamic", null);
+
+		final Class<?>[] params = method.getParameterTypes();
+
+		for (int i = 0; i < params.length; i++)
+			writer.visitField(ACC_PRIVATE | ACC_SYNTHETIC, fieldName(i), Type.getDescriptor(params[i]), null, null).visitEnd();
+
+		{
+			MethodVisitor mv = writer.visitMethod(ACC_PUBLIC | ACC_SYNTHETIC, "<init>", CTOR_DESC, null, null);
+			mv.visitCode();
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitMethodInsn(INVOKESPECIAL, BASE_CLS, "<init>", CTOR_DESC, false);
+			mv.visitInsn(RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		{
+			MethodVisitor mv = writer.visitMethod(ACC_PUBLIC | ACC_SYNTHETIC, "create", "()" + Type.getDescriptor(RpcInvocation.class), null, null);
+			mv.visitCode();
+			mv.visitTypeInsn(NEW, name);
+			mv.visitInsn(DUP);
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitMethodInsn(INVOKEVIRTUAL, BASE_CLS, "getCodec", "()" + CODEC_DESC, false);
+			mv.visitMethodInsn(INVOKESPECIAL, name, "<init>", CTOR_DESC, false);
+			mv.visitInsn(ARETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		{
+			MethodVisitor mv = writer.visitMethod(ACC_PUBLIC | ACC_SYNTHETIC, "read", "(" + AsmCodecUtils.BUFFER_DESC + ")V", null, null);
+			mv.visitCode();
+
+			for (int i = 0; i < params.length; i++) {
+				final Class<?> param = params[i];
+				mv.visitVarInsn(ALOAD, 0);
+
+				if (AsmCodecUtils.canUseDirectAccess(param)) {
+					mv.visitVarInsn(ALOAD, 1);
+					AsmCodecUtils.readPrimitive(mv, param);
+				} else {
+					mv.visitVarInsn(ALOAD, 0);
+					mv.visitVarInsn(ALOAD, 1);
+					AsmCodecUtils.pushInt(mv, i);
+					mv.visitMethodInsn(INVOKEVIRTUAL, BASE_CLS, "readArg", READ_ARG_DESC, false);
+					AsmCodecUtils.castAndUnbox(mv, param);
+				}
+
+				mv.visitFieldInsn(PUTFIELD, name, fieldName(i), Type.getDescriptor(param));
+			}
+
+			mv.visitInsn(RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		{
+			final String intfName = Type.getInternalName(method.getDeclaringClass());
+			MethodVisitor mv = writer.visitMethod(ACC_PUBLIC | ACC_SYNTHETIC, "invoke", "(Ljava/lang/Object;)V", null, null);
+			mv.visitCode();
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitTypeInsn(CHECKCAST, intfName);
+
+			for (int i = 0; i < params.length; i++) {
+				mv.visitVarInsn(ALOAD, 0);
+				mv.visitFieldInsn(GETFIELD, name, fieldName(i), Type.getDescriptor(params[i]));
+			}
+
+			mv.visitMethodInsn(INVOKEINTERFACE, intfName, method.getName(), Type.getMethodDescriptor(method), true);
+			final int returnSize = Type.getReturnType(method).getSize();
+			if (returnSize == 1) mv.visitInsn(POP);
+			else if (returnSize == 2) mv.visitInsn(POP2);
+			mv.visitInsn(RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		writer.visitEnd();
+
+		return writer.toByteArray();
+	}
+}
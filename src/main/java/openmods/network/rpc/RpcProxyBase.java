@@ -0,0 +1,104 @@
+package openmods.network.rpc;
+
+import io.netty.buffer.Unpooled;
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.fml.common.network.internal.FMLProxyPacket;
+import net.minecraftforge.registries.IForgeRegistry;
+import openmods.network.senders.IPacketSender;
+import openmods.utils.io.PacketBuffers;
+
+/**
+ * Base class for proxies generated by {@link RpcProxyFactory}. Generated methods write arguments directly into call buffer.
+ * Public only because generated classes are defined in separate class loader.
+ */
+public abstract class RpcProxyBase {
+
+	private static class Scratch {
+		private final PacketBuffer buffer = new PacketBuffer(Unpooled.buffer());
+		private boolean inUse;
+	}
+
+	// reused between calls, since most calls are small and made from single thread
+	private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+	private final IForgeRegistry<TargetTypeProvider> targetRegistry;
+
+	private final IForgeRegistry<MethodEntry> methodRegistry;
+
+	private final IPacketSender sender;
+
+	private final IRpcTarget target;
+
+	private final MethodEntry[] methods;
+
+	protected RpcProxyBase(IForgeRegistry<TargetTypeProvider> targetRegistry, IForgeRegistry<MethodEntry> methodRegistry, IPacketSender sender, IRpcTarget target, MethodEntry[] methods) {
+		this.targetRegistry = targetRegistry;
+		this.methodRegistry = methodRegistry;
+		this.sender = sender;
+		this.target = target;
+		this.methods = methods;
+	}
+
+	/**
+	 * @return buffer with call header or null, if method is not registered
+	 */
+	protected PacketBuffer startCall(int methodIndex) {
+		final MethodEntry method = methods[methodIndex];
+		if (method == null) return null;
+
+		final Scratch s = scratch.get();
+		final PacketBuffer buffer;
+		if (s.inUse) {
+			// nested call from argument serializer
+			buffer = PacketBuffers.scratch();
+		} else {
+			s.inUse = true;
+			buffer = s.buffer;
+			buffer.clear();
+		}
+
+		try {
+			RpcCallCodec.writeTarget(buffer, targetRegistry, target);
+			// reader index is not used until call is finished, so it stores end of target header
+			buffer.readerIndex(buffer.writerIndex());
+			RpcCallCodec.writeMethodId(buffer, methodRegistry, method);
+		} catch (RuntimeException e) {
+			releaseBuffer(buffer);
+			throw e;
+		}
+		return buffer;
+	}
+
+	protected void writeArg(PacketBuffer buffer, int methodIndex, int argIndex, Object value) {
+		try {
+			methods[methodIndex].paramsCodec.writeArg(buffer, argIndex, value);
+		} catch (RuntimeException e) {
+			releaseBuffer(buffer);
+			throw e;
+		}
+	}
+
+	protected void finishCall(PacketBuffer buffer) {
+		final int targetHeaderLength = buffer.readerIndex();
+		buffer.readerIndex(0);
+
+		if (sender instanceof RpcBatchingSender) {
+			try {
+				((RpcBatchingSender)sender).appendEncodedCall(buffer, targetHeaderLength);
+			} finally {
+				releaseBuffer(buffer);
+			}
+			return;
+		}
+
+		final PacketBuffer payload = new PacketBuffer(Unpooled.copiedBuffer(buffer));
+		releaseBuffer(buffer);
+		sender.sendMessage(new FMLProxyPacket(payload, RpcCallDispatcher.CHANNEL_NAME));
+	}
+
+	private static void releaseBuffer(PacketBuffer buffer) {
+		final Scratch s = scratch.get();
+		if (s.buffer == buffer) s.inUse = false;
+		else buffer.release();
+	}
+}
@@ -1,19 +1,80 @@
 package openmods.network.rpc;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import net.minecraftforge.registries.IForgeRegistry;
+import openmods.Log;
 import openmods.network.senders.IPacketSender;
+import openmods.reflection.AsmCodecUtils;
 import openmods.utils.CommonRegistryCallbacks;
 import org.apache.commons.lang3.ArrayUtils;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
 
-public class RpcProxyFactory {
+/**
+ * Creates RPC proxies. Proxy classes are generated for every interface set, so calls write arguments directly to packet buffer.
+ * Primitive arguments are written without boxing, other types use {@link MethodParamsCodec}.
+ * Falls back to {@link Proxy} when interfaces are not accessible from generated class.
+ */
+public class RpcProxyFactory implements Opcodes {
+
+	private static final String BASE_CLS = Type.getInternalName(RpcProxyBase.class);
+
+	private static final String CTOR_DESC = Type.getConstructorDescriptor(RpcProxyBase.class.getDeclaredConstructors()[0]);
+
+	private static final String START_CALL_DESC = "(I)" + AsmCodecUtils.BUFFER_DESC;
+
+	private static final String WRITE_ARG_DESC = "(" + AsmCodecUtils.BUFFER_DESC + "IILjava/lang/Object;)V";
+
+	private static final String FINISH_CALL_DESC = "(" + AsmCodecUtils.BUFFER_DESC + ")V";
+
+	private static class ProxyClassLoader extends ClassLoader {
+		private final Map<List<Class<?>>, ProxyClass> proxyClasses = Maps.newHashMap();
+
+		private ProxyClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		public Class<?> define(byte[] data) {
+			return defineClass(null, data, 0, data.length);
+		}
+	}
+
+	private static class ProxyClass {
+		private final Constructor<?> ctor;
+
+		private final List<Method> methods;
+
+		public ProxyClass(Constructor<?> ctor, List<Method> methods) {
+			this.ctor = ctor;
+			this.methods = methods;
+		}
+	}
+
+	private static final AtomicInteger proxyCounter = new AtomicInteger();
 
 	private final IForgeRegistry<MethodEntry> registry;
 
-	RpcProxyFactory(IForgeRegistry<MethodEntry> registry) {
+	private final IForgeRegistry<TargetTypeProvider> targetRegistry;
+
+	private final Map<ClassLoader, ProxyClassLoader> proxyLoaders = Maps.newIdentityHashMap();
+
+	RpcProxyFactory(IForgeRegistry<MethodEntry> registry, IForgeRegistry<TargetTypeProvider> targetRegistry) {
 		this.registry = registry;
+		this.targetRegistry = targetRegistry;
 	}
 
 	@SuppressWarnings("unchecked")
@@ -22,6 +83,19 @@ public class RpcProxyFactory {
 
 		final Map<Method, MethodEntry> methodMap = CommonRegistryCallbacks.getObjectToEntryMap(registry);
 
+		final ProxyClass proxyClass = getProxyClass(loader, allInterfaces);
+		if (proxyClass != null) {
+			final MethodEntry[] entries = new MethodEntry[proxyClass.methods.size()];
+			for (int i = 0; i < entries.length; i++)
+				entries[i] = methodMap.get(proxyClass.methods.get(i));
+
+			try {
+				return (T)proxyClass.ctor.newInstance(targetRegistry, registry, sender, wrapper, entries);
+			} catch (ReflectiveOperationException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
 		Object proxy = Proxy.newProxyInstance(loader, allInterfaces, (self, method, args) -> {
 			final MethodEntry entry = methodMap.get(method);
 			if (entry != null) {
@@ -33,4 +107,165 @@ public class RpcProxyFactory {
 
 		return (T)proxy;
 	}
+
+	private synchronized ProxyClass getProxyClass(ClassLoader loader, Class<?>[] interfaces) {
+		ProxyClassLoader proxyLoader = proxyLoaders.get(loader);
+		if (proxyLoader == null) {
+			proxyLoader = new ProxyClassLoader(loader);
+			proxyLoaders.put(loader, proxyLoader);
+		}
+
+		final List<Class<?>> key = ImmutableList.copyOf(interfaces);
+		if (proxyLoader.proxyClasses.containsKey(key)) return proxyLoader.proxyClasses.get(key);
+
+		ProxyClass result = null;
+		if (canImplement(loader, interfaces)) {
+			try {
+				result = createProxyClass(proxyLoader, interfaces);
+			} catch (Throwable t) {
+				Log.warn(t, "Failed to generate RPC proxy for %s, using reflection", key);
+			}
+		}
+
+		proxyLoader.proxyClasses.put(key, result);
+		return result;
+	}
+
+	private static boolean canImplement(ClassLoader loader, Class<?>[] interfaces) {
+		for (Class<?> intf : interfaces)
+			if (!AsmCodecUtils.isAccessible(loader, intf)) return false;
+
+		return true;
+	}
+
+	private static List<Method> collectMethods(Class<?>[] interfaces) {
+		final List<Method> result = Lists.newArrayList();
+		final Set<String> signatures = Sets.newHashSet();
+
+		for (Class<?> intf : interfaces) {
+			for (Method m : intf.getMethods()) {
+				if (Modifier.isStatic(m.getModifiers())) continue;
+				// like in java.lang.reflect.Proxy, first interface wins for duplicated methods
+				if (signatures.add(m.getName() + Type.getMethodDescriptor(m))) result.add(m);
+			}
+		}
+
+		return result;
+	}
+
+	private static ProxyClass createProxyClass(ProxyClassLoader loader, Class<?>[] interfaces) throws ReflectiveOperationException {
+		final List<Method> methods = collectMethods(interfaces);
+		final String name = Type.getInternalName(interfaces[interfaces.length - 1]) + "$$rpc_proxy$" + proxyCounter.incrementAndGet();
+		final byte[] classData = createProxyClassData(name, interfaces, methods);
+		final Class<?> cls = loader.define(classData);
+		return new ProxyClass(cls.getConstructors()[0], methods);
+	}
+
+	private static byte[] createProxyClassData(String name, Class<?>[] interfaces, List<Method> methods) {
+		final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+
+		final String[] interfaceNames = new String[interfaces.length];
+		for (int i = 0; i < interfaces.length; i++)
+			interfaceNames[i] = Type.getInternalName(interfaces[i]);
+
+		writer.visit(V1_6, ACC_PUBLIC | ACC_SUPER | ACC_SYNTHETIC, name, null, BASE_CLS, interfaceNames);
+		writer.visitSource(".dynamic", null);
+
+		{
+			MethodVisitor mv = writer.visitMethod(ACC_PUBLIC | ACC_SYNTHETIC, "<init>", CTOR_DESC, null, null);
+			mv.visitCode();
+			mv.visitVarInsn(ALOAD, 0);
+			final Type[] argTypes = Type.getArgumentTypes(CTOR_DESC);
+			for (int i = 0; i < argTypes.length; i++)
+				mv.visitVarInsn(ALOAD, i + 1);
+			mv.visitMethodInsn(INVOKESPECIAL, BASE_CLS, "<init>", CTOR_DESC, false);
+			mv.visitInsn(RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		for (int i = 0; i < methods.size(); i++)
+			addProxyMethod(writer, i, methods.get(i));
+
+		writer.visitEnd();
+
+		return writer.toByteArray();
+	}
+
+	private static void addProxyMethod(ClassWriter writer, int methodIndex, Method method) {
+		final MethodVisitor mv = writer.visitMethod(ACC_PUBLIC | ACC_SYNTHETIC, method.getName(), Type.getMethodDescriptor(method), null, null);
+		mv.visitCode();
+
+		final Class<?>[] params = method.getParameterTypes();
+
+		int bufferSlot = 1;
+		for (Class<?> param : params)
+			bufferSlot += Type.getType(param).getSize();
+
+		mv.visitVarInsn(ALOAD, 0);
+		AsmCodecUtils.pushInt(mv, methodIndex);
+		mv.visitMethodInsn(INVOKEVIRTUAL, BASE_CLS, "startCall", START_CALL_DESC, false);
+		mv.visitVarInsn(ASTORE, bufferSlot);
+
+		final Label registered = new Label();
+		mv.visitVarInsn(ALOAD, bufferSlot);
+		mv.visitJumpInsn(IFNONNULL, registered);
+		returnDefault(mv, method.getReturnType());
+		mv.visitLabel(registered);
+
+		int slot = 1;
+		for (int i = 0; i < params.length; i++) {
+			final Class<?> param = params[i];
+			final Type paramType = Type.getType(param);
+			if (AsmCodecUtils.canUseDirectAccess(param)) {
+				mv.visitVarInsn(ALOAD, bufferSlot);
+				mv.visitVarInsn(paramType.getOpcode(ILOAD), slot);
+				AsmCodecUtils.writePrimitive(mv, param);
+			} else {
+				mv.visitVarInsn(ALOAD, 0);
+				mv.visitVarInsn(ALOAD, bufferSlot);
+				AsmCodecUtils.pushInt(mv, methodIndex);
+				AsmCodecUtils.pushInt(mv, i);
+				mv.visitVarInsn(paramType.getOpcode(ILOAD), slot);
+				if (param.isPrimitive()) AsmCodecUtils.box(mv, param);
+				mv.visitMethodInsn(INVOKEVIRTUAL, BASE_CLS, "writeArg", WRITE_ARG_DESC, false);
+			}
+
+			slot += paramType.getSize();
+		}
+
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitVarInsn(ALOAD, bufferSlot);
+		mv.visitMethodInsn(INVOKEVIRTUAL, BASE_CLS, "finishCall", FINISH_CALL_DESC, false);
+		returnDefault(mv, method.getReturnType());
+
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	// same as reflection proxy - RPC methods are void, ignored ones get default value
+	private static void returnDefault(MethodVisitor mv, Class<?> returnType) {
+		final Type type = Type.getType(returnType);
+		switch (type.getSort()) {
+			case Type.VOID:
+				mv.visitInsn(RETURN);
+				return;
+			case Type.LONG:
+				mv.visitInsn(LCONST_0);
+				break;
+			case Type.FLOAT:
+				mv.visitInsn(FCONST_0);
+				break;
+			case Type.DOUBLE:
+				mv.visitInsn(DCONST_0);
+				break;
+			case Type.OBJECT:
+			case Type.ARRAY:
+				mv.visitInsn(ACONST_NULL);
+				break;
+			default:
+				mv.visitInsn(ICONST_0);
+		}
+		mv.visitInsn(type.getOpcode(IRETURN));
+	}
 }
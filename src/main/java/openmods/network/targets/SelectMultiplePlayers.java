@@ -7,6 +7,7 @@ import net.minecraftforge.fml.relauncher.Side;
 import openmods.Log;
 import openmods.network.IPacketTargetSelector;
 import openmods.utils.NetUtils;
+import openmods.utils.WatcherSnapshot;
 
 public class SelectMultiplePlayers implements IPacketTargetSelector<Collection<EntityPlayerMP>> {
 
@@ -19,6 +20,11 @@ public class SelectMultiplePlayers implements IPacketTargetSelector<Collection<E
 
 	@Override
 	public void listDispatchers(Collection<EntityPlayerMP> players, Collection<NetworkDispatcher> result) {
+		if (players instanceof WatcherSnapshot) {
+			result.addAll(((WatcherSnapshot)players).getDispatchers());
+			return;
+		}
+
 		for (EntityPlayerMP player : players) {
 			NetworkDispatcher dispatcher = NetUtils.getPlayerDispatcher(player);
 			if (dispatcher != null) result.add(dispatcher);
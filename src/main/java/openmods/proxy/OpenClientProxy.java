@@ -47,6 +47,7 @@ import openmods.model.textureditem.TexturedItemModel;
 import openmods.model.variant.VariantModel;
 import openmods.renderer.CommandGlDebug;
 import openmods.source.CommandSource;
+import openmods.sync.CommandSyncMetrics;
 import openmods.utils.CachedFactory;
 import openmods.utils.SneakyThrower;
 import openmods.utils.render.FramebufferBlitter;
@@ -109,6 +110,7 @@ public final class OpenClientProxy implements IOpenModsProxy {
 		ClientCommandHandler.instance.registerCommand(new CommandConfig("om_config_c", false));
 		ClientCommandHandler.instance.registerCommand(new CommandSource("om_source_c", false, OpenMods.instance.getCollector()));
 		ClientCommandHandler.instance.registerCommand(new CommandGlDebug());
+		ClientCommandHandler.instance.registerCommand(new CommandSyncMetrics("om_sync_c", false));
 
 		if (LibConfig.enableCalculatorCommands) {
 			final ICommandComponent commandRoot = new CommandCalcFactory(new File(getMinecraftDir(), "scripts")).getRoot();
@@ -0,0 +1,110 @@
+package openmods.reflection;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Primitives;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import openmods.serializable.SerializerRegistry;
+import openmods.utils.io.TypeRW;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Helpers for generated classes that read and write {@link net.minecraft.network.PacketBuffer} (RPC proxies and invocations, class serializers).
+ * Generated code calls only {@link io.netty.buffer.ByteBuf} methods, since {@link net.minecraft.network.PacketBuffer} methods are obfuscated outside development environment.
+ */
+public class AsmCodecUtils implements Opcodes {
+
+	public static final String BYTE_BUF_CLS = "io/netty/buffer/ByteBuf";
+
+	public static final String BUFFER_DESC = "Lnet/minecraft/network/PacketBuffer;";
+
+	private static final String BYTE_BUF_DESC = "L" + BYTE_BUF_CLS + ";";
+
+	// same encoding as default serializers in TypeRW
+	private static final Map<Class<?>, String> PRIMITIVE_WRITERS = ImmutableMap.<Class<?>, String> builder()
+			.put(int.class, "writeInt")
+			.put(long.class, "writeLong")
+			.put(short.class, "writeShort")
+			.put(byte.class, "writeByte")
+			.put(boolean.class, "writeBoolean")
+			.put(char.class, "writeChar")
+			.put(float.class, "writeFloat")
+			.put(double.class, "writeDouble")
+			.build();
+
+	private static final Map<Class<?>, String> PRIMITIVE_READERS = ImmutableMap.<Class<?>, String> builder()
+			.put(int.class, "readInt")
+			.put(long.class, "readLong")
+			.put(short.class, "readShort")
+			.put(byte.class, "readByte")
+			.put(boolean.class, "readBoolean")
+			.put(char.class, "readChar")
+			.put(float.class, "readFloat")
+			.put(double.class, "readDouble")
+			.build();
+
+	/**
+	 * Returns true if type is primitive encoded by default serializer, so {@link io.netty.buffer.ByteBuf} methods can be used directly.
+	 */
+	public static boolean canUseDirectAccess(Class<?> type) {
+		// primitive serializers can't be replaced at the moment, but check anyway
+		return type.isPrimitive() && SerializerRegistry.instance.findSerializer(type) == TypeRW.STREAM_SERIALIZERS.get(type);
+	}
+
+	// expects buffer and value on stack
+	public static void writePrimitive(MethodVisitor mv, Class<?> type) {
+		final boolean widened = type == short.class || type == byte.class || type == char.class;
+		final String argDesc = widened? "I" : Type.getDescriptor(type);
+		mv.visitMethodInsn(INVOKEVIRTUAL, BYTE_BUF_CLS, PRIMITIVE_WRITERS.get(type), "(" + argDesc + ")" + BYTE_BUF_DESC, false);
+		mv.visitInsn(POP);
+	}
+
+	// expects buffer on stack
+	public static void readPrimitive(MethodVisitor mv, Class<?> type) {
+		mv.visitMethodInsn(INVOKEVIRTUAL, BYTE_BUF_CLS, PRIMITIVE_READERS.get(type), "()" + Type.getDescriptor(type), false);
+	}
+
+	public static void box(MethodVisitor mv, Class<?> primitive) {
+		final String wrapperName = Type.getInternalName(Primitives.wrap(primitive));
+		mv.visitMethodInsn(INVOKESTATIC, wrapperName, "valueOf", "(" + Type.getDescriptor(primitive) + ")L" + wrapperName + ";", false);
+	}
+
+	// expects Object on stack
+	public static void castAndUnbox(MethodVisitor mv, Class<?> type) {
+		if (type.isPrimitive()) {
+			final String wrapperName = Type.getInternalName(Primitives.wrap(type));
+			mv.visitTypeInsn(CHECKCAST, wrapperName);
+			mv.visitMethodInsn(INVOKEVIRTUAL, wrapperName, type.getName() + "Value", "()" + Type.getDescriptor(type), false);
+		} else if (type != Object.class) {
+			mv.visitTypeInsn(CHECKCAST, Type.getInternalName(type));
+		}
+	}
+
+	public static void pushInt(MethodVisitor mv, int value) {
+		if (value >= -1 && value <= 5) mv.visitInsn(ICONST_0 + value);
+		else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) mv.visitIntInsn(BIPUSH, value);
+		else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) mv.visitIntInsn(SIPUSH, value);
+		else mv.visitLdcInsn(value);
+	}
+
+	/**
+	 * Checks if class can be referenced from generated class defined in child of given loader
+	 */
+	public static boolean isAccessible(ClassLoader loader, Class<?> cls) {
+		while (cls.isArray())
+			cls = cls.getComponentType();
+
+		if (cls.isPrimitive()) return true;
+
+		for (Class<?> c = cls; c != null; c = c.getEnclosingClass())
+			if (!Modifier.isPublic(c.getModifiers())) return false;
+
+		try {
+			return Class.forName(cls.getName(), false, loader) == cls;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package openmods.reflection;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.Maps;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import openmods.Log;
+import openmods.utils.SneakyThrower;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Creates suppliers that call parameterless constructor of class directly from generated code, instead of {@link Constructor#newInstance(Object...)}.
+ * Generated class is defined in child of class loader of target class, so class and constructor must be public. Otherwise reflection is used.
+ */
+public class ConstructorAccessorFactory implements Opcodes {
+
+	private static final String SUPPLIER_CLS = Type.getInternalName(Supplier.class);
+
+	private static class AccessorClassLoader extends ClassLoader {
+		private AccessorClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		public Class<?> define(byte[] data) {
+			return defineClass(null, data, 0, data.length);
+		}
+	}
+
+	private static final Map<ClassLoader, AccessorClassLoader> loaders = Maps.newIdentityHashMap();
+
+	private static final AtomicInteger counter = new AtomicInteger();
+
+	private static synchronized AccessorClassLoader getLoader(ClassLoader parent) {
+		AccessorClassLoader result = loaders.get(parent);
+		if (result == null) {
+			result = new AccessorClassLoader(parent);
+			loaders.put(parent, result);
+		}
+		return result;
+	}
+
+	private static boolean isAccessible(Class<?> cls, Constructor<?> ctor) {
+		if (!Modifier.isPublic(ctor.getModifiers()) || Modifier.isAbstract(cls.getModifiers())) return false;
+
+		for (Class<?> c = cls; c != null; c = c.getEnclosingClass())
+			if (!Modifier.isPublic(c.getModifiers())) return false;
+
+		// generated class must see Supplier from same loader as we do
+		try {
+			return Class.forName(Supplier.class.getName(), false, cls.getClassLoader()) == Supplier.class;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @throws IllegalArgumentException if class has no parameterless constructor
+	 */
+	public static <T> Supplier<T> create(Class<T> cls) {
+		final Constructor<T> ctor;
+		try {
+			ctor = cls.getConstructor();
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException("Class " + cls + " has no public parameterless constructor");
+		}
+
+		if (cls.getClassLoader() != null && isAccessible(cls, ctor)) {
+			try {
+				return createGenerated(cls);
+			} catch (Throwable t) {
+				Log.warn(t, "Failed to generate constructor accessor for %s, using reflection", cls);
+			}
+		}
+
+		return createReflective(ctor);
+	}
+
+	static <T> Supplier<T> createReflective(Constructor<T> ctor) {
+		ctor.setAccessible(true);
+		return () -> {
+			try {
+				return ctor.newInstance();
+			} catch (ReflectiveOperationException e) {
+				throw new RuntimeException(e);
+			}
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> Supplier<T> createGenerated(Class<T> cls) throws Exception {
+		final String targetCls = Type.getInternalName(cls);
+		final String name = "openmods/reflection/generated/Ctor$" + counter.incrementAndGet();
+
+		final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		writer.visit(V1_6, ACC_PUBLIC | ACC_SUPER | ACC_SYNTHETIC | ACC_FINAL, name, null, "java/lang/Object", new String[] { SUPPLIER_CLS });
+		writer.visitSource(".dynamic", null);
+
+		{
+			final MethodVisitor mv = writer.visitMethod(ACC_PUBLIC | ACC_SYNTHETIC, "<init>", "()V", null, null);
+			mv.visitCode();
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+			mv.visitInsn(RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		{
+			final MethodVisitor mv = writer.visitMethod(ACC_PUBLIC | ACC_SYNTHETIC, "get", "()Ljava/lang/Object;", null, null);
+			mv.visitCode();
+			mv.visitTypeInsn(NEW, targetCls);
+			mv.visitInsn(DUP);
+			mv.visitMethodInsn(INVOKESPECIAL, targetCls, "<init>", "()V", false);
+			mv.visitInsn(ARETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		writer.visitEnd();
+
+		final Class<?> accessorCls = getLoader(cls.getClassLoader()).define(writer.toByteArray());
+		try {
+			return (Supplier<T>)accessorCls.newInstance();
+		} catch (Throwable t) {
+			throw SneakyThrower.sneakyThrow(t);
+		}
+	}
+}
@@ -0,0 +1,9 @@
+package openmods.serializable;
+
+import net.minecraft.nbt.NBTTagCompound;
+
+public interface IObjectNbtSerializer<T> {
+	public void readFromNBT(T object, NBTTagCompound tag);
+
+	public void writeToNBT(T object, NBTTagCompound tag);
+}
@@ -6,7 +6,8 @@ import com.google.common.collect.Maps;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 import net.minecraft.network.PacketBuffer;
 import openmods.reflection.ConstructorAccess;
 import openmods.reflection.TypeUtils;
@@ -21,17 +22,28 @@ import openmods.utils.io.IStreamSerializer;
 import openmods.utils.io.IStreamWriter;
 import openmods.utils.io.TypeRW;
 
+/**
+ * Can be used from any thread. Serializers found by providers are cached by type (including parameterized types),
+ * so every type is resolved once, unless it's requested concurrently by multiple threads.
+ */
 public class SerializerRegistry {
 
 	public static final SerializerRegistry instance = new SerializerRegistry();
 
-	private final Map<Class<?>, IStreamSerializer<?>> serializers = Maps.newHashMap(TypeRW.STREAM_SERIALIZERS);
+	// registered and cached serializers. Types created by JDK reflection and by Guava have compatible equals/hashCode
+	private final ConcurrentMap<Type, IStreamSerializer<?>> serializers = Maps.newConcurrentMap();
 
-	private final List<ISerializerProvider> providers = Lists.newArrayList();
+	private final List<ISerializerProvider> providers = Lists.newCopyOnWriteArrayList();
 
-	private final List<IGenericSerializerProvider> genericProviders = Lists.newArrayList();
+	private final List<IGenericSerializerProvider> genericProviders = Lists.newCopyOnWriteArrayList();
+
+	private final LongAdder cacheHits = new LongAdder();
+
+	private final LongAdder cacheMisses = new LongAdder();
 
 	{
+		serializers.putAll(TypeRW.STREAM_SERIALIZERS);
+
 		providers.add(new EnumSerializerProvider());
 		providers.add(new ArraySerializerProvider());
 		providers.add(new ClassSerializerProvider());
@@ -49,7 +61,7 @@ public class SerializerRegistry {
 
 	public <T> void register(Class<? extends T> target, IStreamSerializer<T> serializer) {
 		Preconditions.checkArgument(target != Object.class, "Can't register serializer for Object");
-		final IStreamSerializer<?> prev = serializers.put(target, serializer);
+		final IStreamSerializer<?> prev = serializers.putIfAbsent(target, serializer);
 		Preconditions.checkState(prev == null, "Duplicate serializer for %s", target);
 	}
 
@@ -86,40 +98,61 @@ public class SerializerRegistry {
 		providers.add(provider);
 	}
 
-	private IStreamSerializer<?> findClassSerializer(Class<?> cls, IStreamSerializer<?> serializer) {
+	private IStreamSerializer<?> findClassSerializer(Class<?> cls) {
 		for (ISerializerProvider provider : providers) {
-			serializer = provider.getSerializer(cls);
-			if (serializer != null) {
-				serializers.put(cls, serializer);
-				return serializer;
-			}
+			final IStreamSerializer<?> serializer = provider.getSerializer(cls);
+			if (serializer != null) return serializer;
 		}
 
 		return null;
 	}
 
-	@SuppressWarnings("unchecked")
-	public <T> IStreamSerializer<T> findSerializer(Class<? extends T> cls) {
-		IStreamSerializer<?> serializer = serializers.get(cls);
+	protected IStreamSerializer<?> findGenericSerializer(Type type) {
+		for (IGenericSerializerProvider provider : genericProviders) {
+			final IStreamSerializer<?> serializer = provider.getSerializer(type);
+			if (serializer != null) return serializer;
+		}
+
+		return null;
+	}
+
+	private IStreamSerializer<?> findCachedSerializer(Type type) {
+		final IStreamSerializer<?> cached = serializers.get(type);
+		if (cached != null) {
+			cacheHits.increment();
+			return cached;
+		}
 
-		if (serializer == null) serializer = findClassSerializer(cls, serializer);
+		cacheMisses.increment();
+		// not computeIfAbsent, since providers call registry recursively (i.e. for fields or components)
+		final IStreamSerializer<?> serializer = (type instanceof Class)? findClassSerializer((Class<?>)type) : findGenericSerializer(type);
+		if (serializer == null) return null;
 
-		return (IStreamSerializer<T>)serializer;
+		final IStreamSerializer<?> prev = serializers.putIfAbsent(type, serializer);
+		return prev != null? prev : serializer;
 	}
 
-	public IStreamSerializer<Object> findSerializer(Type type) {
-		if (type instanceof Class) return findSerializer((Class<?>)type);
-		return findGenericSerializer(type);
+	@SuppressWarnings("unchecked")
+	public <T> IStreamSerializer<T> findSerializer(Class<? extends T> cls) {
+		return (IStreamSerializer<T>)findCachedSerializer(cls);
 	}
 
 	@SuppressWarnings("unchecked")
-	protected IStreamSerializer<Object> findGenericSerializer(Type type) {
-		for (IGenericSerializerProvider provider : genericProviders) {
-			IStreamSerializer<?> serializer = provider.getSerializer(type);
-			if (serializer != null) return (IStreamSerializer<Object>)serializer;
-		}
+	public IStreamSerializer<Object> findSerializer(Type type) {
+		return (IStreamSerializer<Object>)findCachedSerializer(type);
+	}
 
-		return null;
+	public long cacheHits() {
+		return cacheHits.sum();
+	}
+
+	public long cacheMisses() {
+		return cacheMisses.sum();
+	}
+
+	public void resetCounters() {
+		cacheHits.reset();
+		cacheMisses.reset();
 	}
 
 	public <T> T createFromStream(PacketBuffer input, Class<? extends T> cls) throws IOException {
@@ -0,0 +1,82 @@
+package openmods.serializable.cls;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Set;
+import net.minecraft.nbt.NBTTagCompound;
+import openmods.reflection.FieldAccess;
+import openmods.serializable.IObjectNbtSerializer;
+
+/**
+ * Reflection based NBT serializer. Each field is stored directly in target compound, under its own name.
+ * Null values are not stored, and absent (or invalid) entries leave fields unchanged.
+ */
+public class ClassNbtSerializerBuilder<T> {
+
+	private static class SerializableField extends FieldAccess<Object> {
+		private final NbtSerializedField spec;
+
+		public SerializableField(Class<?> ownerCls, Field field) {
+			super(field);
+			this.spec = new NbtSerializedField(ownerCls, field);
+		}
+	}
+
+	private static class FieldsSerializer<T> implements IObjectNbtSerializer<T> {
+
+		private final List<SerializableField> fields;
+
+		public FieldsSerializer(List<SerializableField> fields) {
+			this.fields = ImmutableList.copyOf(fields);
+		}
+
+		@Override
+		public void readFromNBT(T object, NBTTagCompound tag) {
+			for (SerializableField field : fields) {
+				final NbtSerializedField spec = field.spec;
+				if (NbtFields.has(tag, spec.name, spec.serializer)) {
+					final Object value = spec.serializer.readFromNBT(tag, spec.name);
+					if (value != null) field.set(object, value);
+				}
+			}
+		}
+
+		@Override
+		public void writeToNBT(T object, NBTTagCompound tag) {
+			for (SerializableField field : fields) {
+				final NbtSerializedField spec = field.spec;
+				final Object value = field.get(object);
+				if (value != null) spec.serializer.writeToNBT(value, tag, spec.name);
+				else if (spec.isNullable) NbtFields.remove(tag, spec.name);
+				else throw new NullPointerException("Non-nullable " + field.field + " has null value");
+			}
+		}
+	}
+
+	private final Class<? extends T> ownerClass;
+
+	private final List<SerializableField> fields = Lists.newArrayList();
+
+	private final Set<Field> addedFields = Sets.newHashSet();
+
+	public ClassNbtSerializerBuilder(Class<? extends T> ownerClass) {
+		this.ownerClass = ownerClass;
+	}
+
+	public void appendField(Field field) {
+		Preconditions.checkArgument(field.getDeclaringClass().isAssignableFrom(ownerClass), "%s does not belong to %s", field, ownerClass);
+
+		final boolean newlyAdded = addedFields.add(field);
+		Preconditions.checkState(newlyAdded, "%s already added", field);
+
+		fields.add(new SerializableField(ownerClass, field));
+	}
+
+	public IObjectNbtSerializer<T> create() {
+		return new FieldsSerializer<>(fields);
+	}
+}
@@ -0,0 +1,326 @@
+package openmods.serializable.cls;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.minecraft.nbt.NBTTagCompound;
+import openmods.Log;
+import openmods.reflection.AsmCodecUtils;
+import openmods.serializable.IObjectNbtSerializer;
+import openmods.serializable.cls.NbtSerializedField.Kind;
+import openmods.utils.io.INBTSerializer;
+import openmods.utils.io.INbtChecker;
+import openmods.utils.io.INbtReader;
+import openmods.utils.io.INbtWriter;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Generates {@link IObjectNbtSerializer} classes that access fields directly. Primitive (and boxed) fields are stored with {@link NbtFields} methods, without boxing.
+ * Output is identical to serializers created by {@link ClassNbtSerializerBuilder}.
+ */
+class ClassNbtSerializerGenerator implements Opcodes {
+
+	private static final String OBJECT_NBT_SERIALIZER_CLS = Type.getInternalName(IObjectNbtSerializer.class);
+
+	private static final String NBT_SERIALIZER_DESC = Type.getDescriptor(INBTSerializer.class);
+
+	private static final String NBT_READER_CLS = Type.getInternalName(INbtReader.class);
+
+	private static final String NBT_WRITER_CLS = Type.getInternalName(INbtWriter.class);
+
+	private static final String NBT_CHECKER_DESC = Type.getDescriptor(INbtChecker.class);
+
+	private static final String NBT_FIELDS_CLS = Type.getInternalName(NbtFields.class);
+
+	private static final String TAG_DESC = Type.getDescriptor(NBTTagCompound.class);
+
+	private static final String NAME_DESC = "Ljava/lang/String;";
+
+	private static final String OBJECT_ARRAY_DESC = "[Ljava/lang/Object;";
+
+	private static final String CTOR_DESC = "(" + OBJECT_ARRAY_DESC + ")V";
+
+	private static final String SERIALIZER_METHOD_DESC = "(Ljava/lang/Object;" + TAG_DESC + ")V";
+
+	private static final String NPE_CLS = Type.getInternalName(NullPointerException.class);
+
+	// locals: this, object, tag, typed object, field value
+	private static final int TYPED_OBJECT_LOCAL = 3;
+
+	private static final int VALUE_LOCAL = 4;
+
+	private static class SerializerClassLoader extends ClassLoader {
+		private SerializerClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		public Class<?> define(byte[] data) {
+			return defineClass(null, data, 0, data.length);
+		}
+	}
+
+	private static final Map<ClassLoader, SerializerClassLoader> loaders = Maps.newIdentityHashMap();
+
+	private static final AtomicInteger counter = new AtomicInteger();
+
+	private static synchronized SerializerClassLoader getLoader(ClassLoader parent) {
+		SerializerClassLoader result = loaders.get(parent);
+		if (result == null) {
+			result = new SerializerClassLoader(parent);
+			loaders.put(parent, result);
+		}
+		return result;
+	}
+
+	private static class FieldEntry {
+		public final NbtSerializedField spec;
+
+		// index of serializer (or enum constants) in constants
+		public final int constantIndex;
+
+		public FieldEntry(NbtSerializedField spec, int constantIndex) {
+			this.spec = spec;
+			this.constantIndex = constantIndex;
+		}
+
+		public String name() {
+			return spec.field.getName();
+		}
+
+		public Class<?> type() {
+			return spec.field.getType();
+		}
+
+		public String desc() {
+			return Type.getDescriptor(spec.field.getType());
+		}
+	}
+
+	/**
+	 * @return serializer or null, if fields can't be accessed from generated code
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> IObjectNbtSerializer<T> tryCreate(Class<? extends T> cls, Collection<Field> fields) {
+		final ClassLoader loader = cls.getClassLoader();
+		if (loader == null ||
+				!AsmCodecUtils.isAccessible(loader, cls) ||
+				!AsmCodecUtils.isAccessible(loader, IObjectNbtSerializer.class) ||
+				!AsmCodecUtils.isAccessible(loader, NbtFields.class) ||
+				!AsmCodecUtils.isAccessible(loader, NBTTagCompound.class)) return null;
+
+		final List<FieldEntry> entries = Lists.newArrayList();
+		final List<Object> constants = Lists.newArrayList();
+		for (Field f : fields) {
+			final NbtSerializedField spec = new NbtSerializedField(cls, f);
+
+			final int modifiers = f.getModifiers();
+			if (Modifier.isFinal(modifiers) || Modifier.isStatic(modifiers) || !Modifier.isPublic(modifiers)) return null;
+			if (!AsmCodecUtils.isAccessible(loader, f.getType()) || !AsmCodecUtils.isAccessible(loader, spec.type)) return null;
+
+			int constantIndex = -1;
+			if (spec.kind == Kind.SERIALIZER) {
+				constantIndex = constants.size();
+				constants.add(spec.serializer);
+			} else if (spec.kind == Kind.ENUM) {
+				constantIndex = constants.size();
+				constants.add(spec.type.getEnumConstants());
+			}
+
+			entries.add(new FieldEntry(spec, constantIndex));
+		}
+
+		try {
+			final String name = Type.getInternalName(cls) + "$$nbt$" + counter.incrementAndGet();
+			final byte[] classData = createSerializerClassData(name, cls, entries, constants);
+			final Class<?> serializerCls = getLoader(loader).define(classData);
+			return (IObjectNbtSerializer<T>)serializerCls.getConstructor(Object[].class).newInstance((Object)constants.toArray());
+		} catch (Throwable t) {
+			Log.warn(t, "Failed to generate NBT serializer for %s, using reflection", cls);
+			return null;
+		}
+	}
+
+	private static String constantFieldName(int index) {
+		return "constant" + index;
+	}
+
+	private static String constantDesc(Object constant) {
+		return constant instanceof INBTSerializer? NBT_SERIALIZER_DESC : OBJECT_ARRAY_DESC;
+	}
+
+	private static void loadConstant(MethodVisitor mv, String name, List<Object> constants, int index) {
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitFieldInsn(GETFIELD, name, constantFieldName(index), constantDesc(constants.get(index)));
+	}
+
+	private static void loadTagAndName(MethodVisitor mv, FieldEntry field) {
+		mv.visitVarInsn(ALOAD, 2);
+		mv.visitLdcInsn(field.spec.name);
+	}
+
+	private static String valueDesc(Kind kind) {
+		return Type.getDescriptor(kind.type);
+	}
+
+	private static void createReadMethod(ClassWriter writer, String name, String ownerCls, List<FieldEntry> fields, List<Object> constants) {
+		final MethodVisitor mv = writer.visitMethod(ACC_PUBLIC | ACC_SYNTHETIC, "readFromNBT", SERIALIZER_METHOD_DESC, null, null);
+		mv.visitCode();
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitTypeInsn(CHECKCAST, ownerCls);
+		mv.visitVarInsn(ASTORE, TYPED_OBJECT_LOCAL);
+
+		for (FieldEntry field : fields) {
+			final Kind kind = field.spec.kind;
+			final Label skip = new Label();
+
+			// absent entries are skipped, field keeps current value
+			loadTagAndName(mv, field);
+			if (kind == Kind.SERIALIZER) {
+				loadConstant(mv, name, constants, field.constantIndex);
+				mv.visitMethodInsn(INVOKESTATIC, NBT_FIELDS_CLS, "has", "(" + TAG_DESC + NAME_DESC + NBT_CHECKER_DESC + ")Z", false);
+			} else {
+				AsmCodecUtils.pushInt(mv, kind.tagType);
+				mv.visitMethodInsn(INVOKESTATIC, NBT_FIELDS_CLS, "has", "(" + TAG_DESC + NAME_DESC + "I)Z", false);
+			}
+			mv.visitJumpInsn(IFEQ, skip);
+
+			if (kind == Kind.SERIALIZER || kind == Kind.ENUM) {
+				if (kind == Kind.SERIALIZER) {
+					loadConstant(mv, name, constants, field.constantIndex);
+					loadTagAndName(mv, field);
+					mv.visitMethodInsn(INVOKEINTERFACE, NBT_READER_CLS, "readFromNBT", "(" + TAG_DESC + NAME_DESC + ")Ljava/lang/Object;", true);
+				} else {
+					loadTagAndName(mv, field);
+					loadConstant(mv, name, constants, field.constantIndex);
+					mv.visitMethodInsn(INVOKESTATIC, NBT_FIELDS_CLS, "readEnum", "(" + TAG_DESC + NAME_DESC + OBJECT_ARRAY_DESC + ")Ljava/lang/Object;", false);
+				}
+
+				// invalid values (like out of range ordinals) are also skipped
+				mv.visitVarInsn(ASTORE, VALUE_LOCAL);
+				mv.visitVarInsn(ALOAD, VALUE_LOCAL);
+				mv.visitJumpInsn(IFNULL, skip);
+				mv.visitVarInsn(ALOAD, TYPED_OBJECT_LOCAL);
+				mv.visitVarInsn(ALOAD, VALUE_LOCAL);
+				AsmCodecUtils.castAndUnbox(mv, field.type());
+			} else {
+				mv.visitVarInsn(ALOAD, TYPED_OBJECT_LOCAL);
+				loadTagAndName(mv, field);
+				mv.visitMethodInsn(INVOKESTATIC, NBT_FIELDS_CLS, "read" + kind.methodSuffix, "(" + TAG_DESC + NAME_DESC + ")" + valueDesc(kind), false);
+				if (field.spec.isBoxed()) AsmCodecUtils.box(mv, kind.type);
+			}
+
+			mv.visitFieldInsn(PUTFIELD, ownerCls, field.name(), field.desc());
+			mv.visitLabel(skip);
+		}
+
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	private static void createWriteMethod(ClassWriter writer, String name, String ownerCls, List<FieldEntry> fields, List<Object> constants) {
+		final MethodVisitor mv = writer.visitMethod(ACC_PUBLIC | ACC_SYNTHETIC, "writeToNBT", SERIALIZER_METHOD_DESC, null, null);
+		mv.visitCode();
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitTypeInsn(CHECKCAST, ownerCls);
+		mv.visitVarInsn(ASTORE, TYPED_OBJECT_LOCAL);
+
+		for (FieldEntry field : fields) {
+			final Kind kind = field.spec.kind;
+
+			if (field.type().isPrimitive()) {
+				loadTagAndName(mv, field);
+				mv.visitVarInsn(ALOAD, TYPED_OBJECT_LOCAL);
+				mv.visitFieldInsn(GETFIELD, ownerCls, field.name(), field.desc());
+				mv.visitMethodInsn(INVOKESTATIC, NBT_FIELDS_CLS, "write" + kind.methodSuffix, "(" + TAG_DESC + NAME_DESC + valueDesc(kind) + ")V", false);
+				continue;
+			}
+
+			final Label notNull = new Label();
+			final Label end = new Label();
+
+			mv.visitVarInsn(ALOAD, TYPED_OBJECT_LOCAL);
+			mv.visitFieldInsn(GETFIELD, ownerCls, field.name(), field.desc());
+			mv.visitVarInsn(ASTORE, VALUE_LOCAL);
+			mv.visitVarInsn(ALOAD, VALUE_LOCAL);
+			mv.visitJumpInsn(IFNONNULL, notNull);
+			if (field.spec.isNullable) {
+				loadTagAndName(mv, field);
+				mv.visitMethodInsn(INVOKESTATIC, NBT_FIELDS_CLS, "remove", "(" + TAG_DESC + NAME_DESC + ")V", false);
+				mv.visitJumpInsn(GOTO, end);
+			} else {
+				mv.visitTypeInsn(NEW, NPE_CLS);
+				mv.visitInsn(DUP);
+				mv.visitLdcInsn("Non-nullable " + field.spec.field + " has null value");
+				mv.visitMethodInsn(INVOKESPECIAL, NPE_CLS, "<init>", "(Ljava/lang/String;)V", false);
+				mv.visitInsn(ATHROW);
+			}
+
+			mv.visitLabel(notNull);
+			if (kind == Kind.SERIALIZER) {
+				loadConstant(mv, name, constants, field.constantIndex);
+				mv.visitVarInsn(ALOAD, VALUE_LOCAL);
+				loadTagAndName(mv, field);
+				mv.visitMethodInsn(INVOKEINTERFACE, NBT_WRITER_CLS, "writeToNBT", "(Ljava/lang/Object;" + TAG_DESC + NAME_DESC + ")V", true);
+			} else {
+				loadTagAndName(mv, field);
+				mv.visitVarInsn(ALOAD, VALUE_LOCAL);
+				// unboxes wrappers, casts fields with resolved type variables
+				AsmCodecUtils.castAndUnbox(mv, kind.type);
+				mv.visitMethodInsn(INVOKESTATIC, NBT_FIELDS_CLS, "write" + kind.methodSuffix, "(" + TAG_DESC + NAME_DESC + valueDesc(kind) + ")V", false);
+			}
+			mv.visitLabel(end);
+		}
+
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	private static byte[] createSerializerClassData(String name, Class<?> cls, List<FieldEntry> fields, List<Object> constants) {
+		final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+
+		writer.visit(V1_6, ACC_PUBLIC | ACC_SUPER | ACC_SYNTHETIC | ACC_FINAL, name, null, "java/lang/Object", new String[] { OBJECT_NBT_SERIALIZER_CLS });
+		writer.visitSource(".dynamic", null);
+
+		for (int i = 0; i < constants.size(); i++)
+			writer.visitField(ACC_PRIVATE | ACC_FINAL | ACC_SYNTHETIC, constantFieldName(i), constantDesc(constants.get(i)), null, null).visitEnd();
+
+		{
+			final MethodVisitor mv = writer.visitMethod(ACC_PUBLIC | ACC_SYNTHETIC, "<init>", CTOR_DESC, null, null);
+			mv.visitCode();
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+
+			for (int i = 0; i < constants.size(); i++) {
+				final String desc = constantDesc(constants.get(i));
+				mv.visitVarInsn(ALOAD, 0);
+				mv.visitVarInsn(ALOAD, 1);
+				AsmCodecUtils.pushInt(mv, i);
+				mv.visitInsn(AALOAD);
+				mv.visitTypeInsn(CHECKCAST, Type.getType(desc).getInternalName());
+				mv.visitFieldInsn(PUTFIELD, name, constantFieldName(i), desc);
+			}
+
+			mv.visitInsn(RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		final String ownerCls = Type.getInternalName(cls);
+		createReadMethod(writer, name, ownerCls, fields, constants);
+		createWriteMethod(writer, name, ownerCls, fields, constants);
+
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+}
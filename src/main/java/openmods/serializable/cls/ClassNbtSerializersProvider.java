@@ -0,0 +1,70 @@
+package openmods.serializable.cls;
+
+import com.google.common.collect.Maps;
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentMap;
+import net.minecraft.nbt.NBTTagCompound;
+import openmods.LibConfig;
+import openmods.serializable.IObjectNbtSerializer;
+
+/**
+ * Stores {@link Serialize} fields (same ones as used by {@link ClassSerializersProvider}) directly in compound, one entry per field.
+ */
+public class ClassNbtSerializersProvider {
+	public static final ClassNbtSerializersProvider instance = new ClassNbtSerializersProvider(true);
+
+	private final boolean allowGenerated;
+
+	// used from network threads too, so lookups can't go through (unsynchronized) CachedFactory
+	private final ConcurrentMap<Class<?>, IObjectNbtSerializer<?>> cache = Maps.newConcurrentMap();
+
+	/**
+	 * @param allowGenerated if false, only reflection based serializers are created
+	 */
+	public ClassNbtSerializersProvider(boolean allowGenerated) {
+		this.allowGenerated = allowGenerated;
+	}
+
+	private IObjectNbtSerializer<?> create(Class<?> key) {
+		final Collection<Field> fields = ClassSerializersProvider.instance.getFields(key);
+
+		if (allowGenerated && LibConfig.generatedClassSerializers) {
+			final IObjectNbtSerializer<?> generated = ClassNbtSerializerGenerator.tryCreate(key, fields);
+			if (generated != null) return generated;
+		}
+
+		ClassNbtSerializerBuilder<Object> builder = new ClassNbtSerializerBuilder<>(key);
+
+		for (Field f : fields)
+			builder.appendField(f);
+
+		return builder.create();
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> IObjectNbtSerializer<T> getSerializer(Class<? extends T> cls) {
+		IObjectNbtSerializer<?> serializer = cache.get(cls);
+		if (serializer == null) {
+			// may be created twice on concurrent first use, but only one instance is published
+			serializer = create(cls);
+			final IObjectNbtSerializer<?> prev = cache.putIfAbsent(cls, serializer);
+			if (prev != null) serializer = prev;
+		}
+		return (IObjectNbtSerializer<T>)serializer;
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> IObjectNbtSerializer<T> getSerializer(T object) {
+		return getSerializer((Class<? extends T>)object.getClass());
+	}
+
+	public void readFromNBT(Object object, NBTTagCompound tag) {
+		getSerializer(object).readFromNBT(object, tag);
+	}
+
+	public void writeToNBT(Object object, NBTTagCompound tag) {
+		getSerializer(object).writeToNBT(object, tag);
+	}
+
+}
@@ -4,37 +4,51 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
-import com.google.common.reflect.TypeToken;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBuf;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.List;
 import java.util.Set;
 import net.minecraft.network.PacketBuffer;
 import openmods.reflection.FieldAccess;
-import openmods.reflection.TypeUtils;
 import openmods.serializable.IObjectSerializer;
-import openmods.serializable.SerializerRegistry;
-import openmods.utils.bitstream.InputBitStream;
-import openmods.utils.bitstream.OutputBitStream;
 import openmods.utils.io.IStreamSerializer;
-import openmods.utils.io.StreamAdapters;
 import openmods.utils.io.StreamUtils;
 
 public class ClassSerializerBuilder<T> {
 
 	private static class SerializableField extends FieldAccess<Object> {
+		private final SerializedField spec;
 		private final IStreamSerializer<Object> serializer;
 		private final boolean isNullable;
+		private final Object[] enumConstants;
 
-		public SerializableField(Class<?> ownerCls, Field field, boolean isNullable) {
+		public SerializableField(Class<?> ownerCls, Field field) {
 			super(field);
+			this.spec = new SerializedField(ownerCls, field);
+			this.serializer = spec.serializer;
+			this.isNullable = spec.isNullable;
+			this.enumConstants = (spec.isPacked() && !spec.isPackedBoolean())? spec.enumConstants() : null;
+		}
+
+		public Object readPacked(ByteBuf header, int firstBit) {
+			if (enumConstants == null) return NullableSerializer.getBit(header, firstBit);
 
-			this.isNullable = isNullable;
+			int ordinal = 0;
+			for (int i = 0; i < spec.packedBits; i++)
+				ordinal = (ordinal << 1) | (NullableSerializer.getBit(header, firstBit + i)? 1 : 0);
+			return FieldEncodings.getEnumConstant(spec.type, enumConstants, ordinal);
+		}
 
-			final TypeToken<?> fieldType = TypeUtils.resolveFieldType(ownerCls, field);
-			this.serializer = SerializerRegistry.instance.findSerializer(fieldType.getType());
-			Preconditions.checkNotNull(serializer, "Invalid field %s type", field);
+		public void writePacked(Object value, ByteBuf header, int firstBit) {
+			if (enumConstants == null) {
+				if (value != null && (Boolean)value) NullableSerializer.setBit(header, firstBit);
+			} else {
+				// null values are marked in null bits, but still use space
+				final int ordinal = value != null? ((Enum<?>)value).ordinal() : 0;
+				for (int i = 0; i < spec.packedBits; i++)
+					if ((ordinal & (1 << (spec.packedBits - 1 - i))) != 0) NullableSerializer.setBit(header, firstBit + i);
+			}
 		}
 	}
 
@@ -64,50 +78,82 @@ public class ClassSerializerBuilder<T> {
 		}
 	}
 
+	// header contains null bits of nullable fields, followed by bits of packed fields
+	// it's reserved in place before payload and filled while fields are written, so no intermediate buffer is needed
 	private static class NullableSerializer<T> implements IObjectSerializer<T> {
 
-		private final List<SerializableField> fields;
+		private final SerializableField[] fields;
 
-		private final int nullBytesCount;
+		// header bit of field, or -1
+		private final int[] nullBits;
 
-		public NullableSerializer(List<SerializableField> fields, int nullBytesCount) {
-			this.fields = ImmutableList.copyOf(fields);
-			this.nullBytesCount = nullBytesCount;
+		// first header bit of packed field value, or -1
+		private final int[] packedBits;
+
+		private final int headerBytesCount;
+
+		public NullableSerializer(List<SerializableField> fields, int nullableCount, int headerBytesCount) {
+			this.fields = fields.toArray(new SerializableField[fields.size()]);
+			this.nullBits = new int[this.fields.length];
+			this.packedBits = new int[this.fields.length];
+			this.headerBytesCount = headerBytesCount;
+
+			int nullBit = 0;
+			int packedBit = nullableCount;
+			for (int i = 0; i < this.fields.length; i++) {
+				final SerializableField field = this.fields[i];
+				nullBits[i] = field.isNullable? nullBit++ : -1;
+				if (field.spec.isPacked()) {
+					packedBits[i] = packedBit;
+					packedBit += field.spec.packedBits;
+				} else {
+					packedBits[i] = -1;
+				}
+			}
+		}
+
+		// same bit order as OutputBitStream: first bit in highest bit of first byte
+		static boolean getBit(ByteBuf header, int bit) {
+			return (header.getByte(bit >> 3) & (0x80 >> (bit & 7))) != 0;
+		}
+
+		static void setBit(ByteBuf header, int bit) {
+			final int index = bit >> 3;
+			header.setByte(index, header.getByte(index) | (0x80 >> (bit & 7)));
 		}
 
 		@Override
 		public void readFromStream(T object, PacketBuffer input) throws IOException {
-			final byte[] nullBits = StreamUtils.readBytes(input, nullBytesCount);
-			final InputBitStream nullBitStream = new InputBitStream(StreamAdapters.createSource(nullBits));
-
-			for (SerializableField field : fields) {
-				final boolean isNull = field.isNullable && nullBitStream.readBit();
-				final Object value = isNull? null : field.serializer.readFromStream(input);
-				field.set(object, value);
+			final ByteBuf header = input.readSlice(headerBytesCount);
+
+			for (int i = 0; i < fields.length; i++) {
+				final SerializableField field = fields[i];
+				final boolean isNull = nullBits[i] >= 0 && getBit(header, nullBits[i]);
+				if (packedBits[i] >= 0) {
+					final Object value = field.readPacked(header, packedBits[i]);
+					field.set(object, isNull? null : value);
+				} else {
+					final Object value = isNull? null : field.serializer.readFromStream(input);
+					field.set(object, value);
+				}
 			}
 		}
 
 		@Override
 		public void writeToStream(T object, PacketBuffer output) throws IOException {
-			final OutputBitStream nullBitsStream = new OutputBitStream(StreamAdapters.createSink(output));
+			final int headerStart = output.writerIndex();
+			output.writeZero(headerBytesCount);
+			// slice indices are fixed, so it stays valid even if output is reallocated by payload writes
+			final ByteBuf header = output.slice(headerStart, headerBytesCount);
 
-			final PacketBuffer payload = new PacketBuffer(Unpooled.buffer());
-			for (SerializableField field : fields) {
+			for (int i = 0; i < fields.length; i++) {
+				final SerializableField field = fields[i];
 				final Object value = field.get(object);
-				if (field.isNullable) {
-					if (value == null) {
-						nullBitsStream.writeBit(true);
-					} else {
-						nullBitsStream.writeBit(false);
-						field.serializer.writeToStream(value, payload);
-					}
-				} else {
-					field.serializer.writeToStream(value, payload);
-				}
-			}
+				if (value == null && nullBits[i] >= 0) setBit(header, nullBits[i]);
+				else if (packedBits[i] < 0) field.serializer.writeToStream(value, output);
 
-			nullBitsStream.flush();
-			output.writeBytes(payload);
+				if (packedBits[i] >= 0) field.writePacked(value, header, packedBits[i]);
+			}
 		}
 	}
 
@@ -119,6 +165,8 @@ public class ClassSerializerBuilder<T> {
 
 	private int nullableCount = 0;
 
+	private int packedBitsCount = 0;
+
 	public ClassSerializerBuilder(Class<? extends T> ownerClass) {
 		this.ownerClass = ownerClass;
 	}
@@ -129,17 +177,17 @@ public class ClassSerializerBuilder<T> {
 		final boolean newlyAdded = addedFields.add(field);
 		Preconditions.checkState(newlyAdded, "%s already added", field);
 
-		Serialize annotation = field.getAnnotation(Serialize.class);
-		final boolean isNullable = !field.getType().isPrimitive() && (annotation != null && annotation.nullable());
-
-		if (isNullable) nullableCount++;
+		final SerializableField serializableField = new SerializableField(ownerClass, field);
+		if (serializableField.isNullable) nullableCount++;
+		if (serializableField.spec.isPacked()) packedBitsCount += serializableField.spec.packedBits;
 
-		fields.add(new SerializableField(ownerClass, field, isNullable));
+		fields.add(serializableField);
 	}
 
 	public IObjectSerializer<T> create() {
-		return (nullableCount != 0)
-				? new NullableSerializer<>(fields, StreamUtils.bitsToBytes(nullableCount))
+		final boolean hasHeader = nullableCount != 0 || fields.stream().anyMatch(f -> f.spec.isPacked());
+		return hasHeader
+				? new NullableSerializer<>(fields, nullableCount, StreamUtils.bitsToBytes(nullableCount + packedBitsCount))
 				: new NonNullableSerializer<>(fields);
 	}
 }
@@ -0,0 +1,502 @@
+package openmods.serializable.cls;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import openmods.Log;
+import openmods.reflection.AsmCodecUtils;
+import openmods.serializable.IObjectSerializer;
+import openmods.utils.io.IStreamReader;
+import openmods.utils.io.IStreamSerializer;
+import openmods.utils.io.IStreamWriter;
+import openmods.utils.io.StreamUtils;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Generates {@link IObjectSerializer} classes that access fields directly. Primitive fields are read and written with buffer methods (or {@link FieldEncodings}), without boxing.
+ * Output is identical to serializers created by {@link ClassSerializerBuilder}.
+ */
+class ClassSerializerGenerator implements Opcodes {
+
+	private static final String OBJECT_SERIALIZER_CLS = Type.getInternalName(IObjectSerializer.class);
+
+	private static final String STREAM_SERIALIZER_DESC = Type.getDescriptor(IStreamSerializer.class);
+
+	private static final String STREAM_READER_CLS = Type.getInternalName(IStreamReader.class);
+
+	private static final String STREAM_WRITER_CLS = Type.getInternalName(IStreamWriter.class);
+
+	private static final String OBJECT_ARRAY_DESC = "[Ljava/lang/Object;";
+
+	private static final String CTOR_DESC = "(" + OBJECT_ARRAY_DESC + ")V";
+
+	private static final String FIELD_ENCODINGS_CLS = Type.getInternalName(FieldEncodings.class);
+
+	private static final String BYTE_BUF_DESC = "L" + AsmCodecUtils.BYTE_BUF_CLS + ";";
+
+	private static final String ENUM_CLS = Type.getInternalName(Enum.class);
+
+	private static final String SERIALIZER_METHOD_DESC = "(Ljava/lang/Object;" + AsmCodecUtils.BUFFER_DESC + ")V";
+
+	private static final String NPE_CLS = Type.getInternalName(NullPointerException.class);
+
+	// locals: this, object, buffer, typed object
+	private static final int TYPED_OBJECT_LOCAL = 3;
+
+	private static final int FIRST_FREE_LOCAL = 4;
+
+	private static class SerializerClassLoader extends ClassLoader {
+		private SerializerClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		public Class<?> define(byte[] data) {
+			return defineClass(null, data, 0, data.length);
+		}
+	}
+
+	private static final Map<ClassLoader, SerializerClassLoader> loaders = Maps.newIdentityHashMap();
+
+	private static final AtomicInteger counter = new AtomicInteger();
+
+	private static synchronized SerializerClassLoader getLoader(ClassLoader parent) {
+		SerializerClassLoader result = loaders.get(parent);
+		if (result == null) {
+			result = new SerializerClassLoader(parent);
+			loaders.put(parent, result);
+		}
+		return result;
+	}
+
+	private enum Access {
+		// primitive, written with buffer methods
+		DIRECT,
+		// primitive, written with static methods from FieldEncodings
+		ENCODED,
+		// stored in header
+		PACKED,
+		SERIALIZER
+	}
+
+	private static class FieldEntry {
+		public final SerializedField spec;
+
+		public final Access access;
+
+		// index of serializer (or enum constants for packed fields) in constants
+		public final int constantIndex;
+
+		// -1 for non-nullable fields
+		public final int nullBit;
+
+		// first header bit of packed field value
+		public int packedBit = -1;
+
+		public FieldEntry(SerializedField spec, Access access, int constantIndex, int nullBit) {
+			this.spec = spec;
+			this.access = access;
+			this.constantIndex = constantIndex;
+			this.nullBit = nullBit;
+		}
+
+		public String name() {
+			return spec.field.getName();
+		}
+
+		public Class<?> type() {
+			return spec.field.getType();
+		}
+
+		public String desc() {
+			return Type.getDescriptor(spec.field.getType());
+		}
+	}
+
+	private static Access selectAccess(SerializedField spec) {
+		if (spec.isPacked()) return Access.PACKED;
+
+		final Class<?> type = spec.field.getType();
+		if (!type.isPrimitive()) return Access.SERIALIZER;
+
+		switch (spec.encoding) {
+			case DEFAULT:
+			case FIXED:
+				return AsmCodecUtils.canUseDirectAccess(type)? Access.DIRECT : Access.SERIALIZER;
+			case VARINT:
+			case ZIGZAG:
+				return Access.ENCODED;
+			default:
+				return Access.SERIALIZER;
+		}
+	}
+
+	/**
+	 * @return serializer or null, if fields can't be accessed from generated code
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> IObjectSerializer<T> tryCreate(Class<? extends T> cls, Collection<Field> fields) {
+		final ClassLoader loader = cls.getClassLoader();
+		if (loader == null ||
+				!AsmCodecUtils.isAccessible(loader, cls) ||
+				!AsmCodecUtils.isAccessible(loader, IObjectSerializer.class) ||
+				!AsmCodecUtils.isAccessible(loader, FieldEncodings.class)) return null;
+
+		for (Field f : fields) {
+			final int modifiers = f.getModifiers();
+			if (Modifier.isFinal(modifiers) || Modifier.isStatic(modifiers) || !Modifier.isPublic(modifiers)) return null;
+			if (!AsmCodecUtils.isAccessible(loader, f.getType())) return null;
+		}
+
+		final List<FieldEntry> entries = Lists.newArrayList();
+		final List<Object> constants = Lists.newArrayList();
+		int nullableCount = 0;
+		for (Field f : fields) {
+			final SerializedField spec = new SerializedField(cls, f);
+			final int nullBit = spec.isNullable? nullableCount++ : -1;
+			final Access access = selectAccess(spec);
+
+			int constantIndex = -1;
+			if (access == Access.SERIALIZER) {
+				constantIndex = constants.size();
+				constants.add(spec.serializer);
+			} else if (access == Access.PACKED && !spec.isPackedBoolean()) {
+				constantIndex = constants.size();
+				constants.add(spec.enumConstants());
+			}
+
+			entries.add(new FieldEntry(spec, access, constantIndex, nullBit));
+		}
+
+		// packed values follow null bits
+		int headerBits = nullableCount;
+		for (FieldEntry entry : entries) {
+			if (entry.access == Access.PACKED) {
+				entry.packedBit = headerBits;
+				headerBits += entry.spec.packedBits;
+			}
+		}
+
+		try {
+			final String name = Type.getInternalName(cls) + "$$serializer$" + counter.incrementAndGet();
+			final byte[] classData = createSerializerClassData(name, cls, entries, constants, headerBits);
+			final Class<?> serializerCls = getLoader(loader).define(classData);
+			return (IObjectSerializer<T>)serializerCls.getConstructor(Object[].class).newInstance((Object)constants.toArray());
+		} catch (Throwable t) {
+			Log.warn(t, "Failed to generate serializer for %s, using reflection", cls);
+			return null;
+		}
+	}
+
+	private static String constantFieldName(int index) {
+		return "constant" + index;
+	}
+
+	private static String constantDesc(Object constant) {
+		return constant instanceof IStreamSerializer? STREAM_SERIALIZER_DESC : OBJECT_ARRAY_DESC;
+	}
+
+	// same bit order as OutputBitStream: first bit in highest bit of first byte
+	private static int headerMask(int bit) {
+		return 0x80 >> (bit & 7);
+	}
+
+	private static int headerLocal(int bit) {
+		return FIRST_FREE_LOCAL + (bit >> 3);
+	}
+
+	private static void loadConstant(MethodVisitor mv, String name, List<Object> constants, int index) {
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitFieldInsn(GETFIELD, name, constantFieldName(index), constantDesc(constants.get(index)));
+	}
+
+	private static void callEncoder(MethodVisitor mv, String prefix, Class<?> type, boolean write) {
+		final String suffix = type == long.class? "Long" : "Int";
+		final String valueDesc = type == long.class? "J" : "I";
+		if (write) {
+			mv.visitMethodInsn(INVOKESTATIC, FIELD_ENCODINGS_CLS, "write" + prefix + suffix, "(" + BYTE_BUF_DESC + valueDesc + ")V", false);
+		} else {
+			mv.visitMethodInsn(INVOKESTATIC, FIELD_ENCODINGS_CLS, "read" + prefix + suffix, "(" + BYTE_BUF_DESC + ")" + valueDesc, false);
+			if (type == short.class) mv.visitInsn(I2S);
+		}
+	}
+
+	private static String encoderPrefix(FieldEncoding encoding) {
+		return encoding == FieldEncoding.ZIGZAG? "ZigZag" : "Var";
+	}
+
+	// leaves value of packed field on stack, expects header bytes in locals
+	private static void readPackedValue(MethodVisitor mv, String name, List<Object> constants, FieldEntry field) {
+		if (field.spec.isPackedBoolean()) {
+			final Label isFalse = new Label();
+			final Label end = new Label();
+			mv.visitVarInsn(ILOAD, headerLocal(field.packedBit));
+			AsmCodecUtils.pushInt(mv, headerMask(field.packedBit));
+			mv.visitInsn(IAND);
+			mv.visitJumpInsn(IFEQ, isFalse);
+			mv.visitInsn(ICONST_1);
+			mv.visitJumpInsn(GOTO, end);
+			mv.visitLabel(isFalse);
+			mv.visitInsn(ICONST_0);
+			mv.visitLabel(end);
+			if (!field.type().isPrimitive()) AsmCodecUtils.box(mv, boolean.class);
+		} else {
+			loadConstant(mv, name, constants, field.constantIndex);
+			mv.visitInsn(ICONST_0);
+			final int bits = field.spec.packedBits;
+			for (int i = 0; i < bits; i++) {
+				final int bit = field.packedBit + i;
+				final Label notSet = new Label();
+				mv.visitVarInsn(ILOAD, headerLocal(bit));
+				AsmCodecUtils.pushInt(mv, headerMask(bit));
+				mv.visitInsn(IAND);
+				mv.visitJumpInsn(IFEQ, notSet);
+				AsmCodecUtils.pushInt(mv, 1 << (bits - 1 - i));
+				mv.visitInsn(IOR);
+				mv.visitLabel(notSet);
+			}
+			mv.visitInsn(AALOAD);
+			AsmCodecUtils.castAndUnbox(mv, field.type());
+		}
+	}
+
+	// expects header byte on stack, sets bit if needed
+	private static void writePackedBit(MethodVisitor mv, String ownerCls, FieldEntry field, int valueBit, int mask) {
+		final Label skip = new Label();
+
+		// nullable values are already in locals
+		if (field.nullBit >= 0) {
+			mv.visitVarInsn(ALOAD, FIRST_FREE_LOCAL + field.nullBit);
+			mv.visitJumpInsn(IFNULL, skip);
+			mv.visitVarInsn(ALOAD, FIRST_FREE_LOCAL + field.nullBit);
+		} else {
+			mv.visitVarInsn(ALOAD, TYPED_OBJECT_LOCAL);
+			mv.visitFieldInsn(GETFIELD, ownerCls, field.name(), field.desc());
+		}
+
+		if (field.spec.isPackedBoolean()) {
+			if (!field.type().isPrimitive()) AsmCodecUtils.castAndUnbox(mv, boolean.class);
+		} else {
+			mv.visitTypeInsn(CHECKCAST, ENUM_CLS);
+			mv.visitMethodInsn(INVOKEVIRTUAL, ENUM_CLS, "ordinal", "()I", false);
+			AsmCodecUtils.pushInt(mv, 1 << (field.spec.packedBits - 1 - valueBit));
+			mv.visitInsn(IAND);
+		}
+
+		mv.visitJumpInsn(IFEQ, skip);
+		AsmCodecUtils.pushInt(mv, mask);
+		mv.visitInsn(IOR);
+		mv.visitLabel(skip);
+	}
+
+	private static byte[] createSerializerClassData(String name, Class<?> cls, List<FieldEntry> fields, List<Object> constants, int headerBits) {
+		final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+
+		writer.visit(V1_6, ACC_PUBLIC | ACC_SUPER | ACC_SYNTHETIC | ACC_FINAL, name, null, "java/lang/Object", new String[] { OBJECT_SERIALIZER_CLS });
+		writer.visitSource(".dynamic", null);
+
+		for (int i = 0; i < constants.size(); i++)
+			writer.visitField(ACC_PRIVATE | ACC_FINAL | ACC_SYNTHETIC, constantFieldName(i), constantDesc(constants.get(i)), null, null).visitEnd();
+
+		{
+			final MethodVisitor mv = writer.visitMethod(ACC_PUBLIC | ACC_SYNTHETIC, "<init>", CTOR_DESC, null, null);
+			mv.visitCode();
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+
+			for (int i = 0; i < constants.size(); i++) {
+				final String desc = constantDesc(constants.get(i));
+				mv.visitVarInsn(ALOAD, 0);
+				mv.visitVarInsn(ALOAD, 1);
+				AsmCodecUtils.pushInt(mv, i);
+				mv.visitInsn(AALOAD);
+				mv.visitTypeInsn(CHECKCAST, Type.getType(desc).getInternalName());
+				mv.visitFieldInsn(PUTFIELD, name, constantFieldName(i), desc);
+			}
+
+			mv.visitInsn(RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		final String ownerCls = Type.getInternalName(cls);
+
+		{
+			final MethodVisitor mv = writer.visitMethod(ACC_PUBLIC | ACC_SYNTHETIC, "readFromStream", SERIALIZER_METHOD_DESC, null, null);
+			mv.visitCode();
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitTypeInsn(CHECKCAST, ownerCls);
+			mv.visitVarInsn(ASTORE, TYPED_OBJECT_LOCAL);
+
+			// header is stored in locals, one byte per local
+			final int headerBytesCount = StreamUtils.bitsToBytes(headerBits);
+			for (int i = 0; i < headerBytesCount; i++) {
+				mv.visitVarInsn(ALOAD, 2);
+				AsmCodecUtils.readPrimitive(mv, byte.class);
+				mv.visitVarInsn(ISTORE, FIRST_FREE_LOCAL + i);
+			}
+
+			for (FieldEntry field : fields) {
+				final Label end = new Label();
+				if (field.nullBit >= 0) {
+					final Label notNull = new Label();
+					mv.visitVarInsn(ILOAD, headerLocal(field.nullBit));
+					AsmCodecUtils.pushInt(mv, headerMask(field.nullBit));
+					mv.visitInsn(IAND);
+					mv.visitJumpInsn(IFEQ, notNull);
+					mv.visitVarInsn(ALOAD, TYPED_OBJECT_LOCAL);
+					mv.visitInsn(ACONST_NULL);
+					mv.visitFieldInsn(PUTFIELD, ownerCls, field.name(), field.desc());
+					mv.visitJumpInsn(GOTO, end);
+					mv.visitLabel(notNull);
+				}
+
+				mv.visitVarInsn(ALOAD, TYPED_OBJECT_LOCAL);
+				switch (field.access) {
+					case DIRECT:
+						mv.visitVarInsn(ALOAD, 2);
+						AsmCodecUtils.readPrimitive(mv, field.type());
+						break;
+					case ENCODED:
+						mv.visitVarInsn(ALOAD, 2);
+						callEncoder(mv, encoderPrefix(field.spec.encoding), field.type(), false);
+						break;
+					case PACKED:
+						readPackedValue(mv, name, constants, field);
+						break;
+					case SERIALIZER:
+						loadConstant(mv, name, constants, field.constantIndex);
+						mv.visitVarInsn(ALOAD, 2);
+						mv.visitMethodInsn(INVOKEINTERFACE, STREAM_READER_CLS, "readFromStream", "(" + AsmCodecUtils.BUFFER_DESC + ")Ljava/lang/Object;", true);
+						AsmCodecUtils.castAndUnbox(mv, field.type());
+						break;
+				}
+				mv.visitFieldInsn(PUTFIELD, ownerCls, field.name(), field.desc());
+				mv.visitLabel(end);
+			}
+
+			mv.visitInsn(RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		{
+			final MethodVisitor mv = writer.visitMethod(ACC_PUBLIC | ACC_SYNTHETIC, "writeToStream", SERIALIZER_METHOD_DESC, null, null);
+			mv.visitCode();
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitTypeInsn(CHECKCAST, ownerCls);
+			mv.visitVarInsn(ASTORE, TYPED_OBJECT_LOCAL);
+
+			// nullable values are read once and kept in locals, so header can be written before values, without intermediate buffer
+			int nullableCount = 0;
+			for (FieldEntry field : fields) {
+				if (field.nullBit >= 0) {
+					mv.visitVarInsn(ALOAD, TYPED_OBJECT_LOCAL);
+					mv.visitFieldInsn(GETFIELD, ownerCls, field.name(), field.desc());
+					mv.visitVarInsn(ASTORE, FIRST_FREE_LOCAL + field.nullBit);
+					nullableCount++;
+				}
+			}
+
+			// header bit -> field, for packed bits
+			final FieldEntry[] packedBitOwners = new FieldEntry[headerBits];
+			for (FieldEntry field : fields)
+				for (int i = 0; i < field.spec.packedBits; i++)
+					packedBitOwners[field.packedBit + i] = field;
+
+			for (int firstBit = 0; firstBit < headerBits; firstBit += 8) {
+				mv.visitInsn(ICONST_0);
+				final int lastBit = Math.min(firstBit + 8, headerBits);
+				for (int bit = firstBit; bit < lastBit; bit++) {
+					if (bit < nullableCount) {
+						final Label notNull = new Label();
+						mv.visitVarInsn(ALOAD, FIRST_FREE_LOCAL + bit);
+						mv.visitJumpInsn(IFNONNULL, notNull);
+						AsmCodecUtils.pushInt(mv, headerMask(bit));
+						mv.visitInsn(IOR);
+						mv.visitLabel(notNull);
+					} else {
+						final FieldEntry owner = packedBitOwners[bit];
+						writePackedBit(mv, ownerCls, owner, bit - owner.packedBit, headerMask(bit));
+					}
+				}
+
+				mv.visitVarInsn(ALOAD, 2);
+				mv.visitInsn(SWAP);
+				AsmCodecUtils.writePrimitive(mv, byte.class);
+			}
+
+			// same as ClassSerializerBuilder: only classes without header check non-nullable fields
+			final boolean checkNonNullable = headerBits == 0 && !Iterables.any(fields, f -> f.access == Access.PACKED);
+
+			for (FieldEntry field : fields) {
+				switch (field.access) {
+					case DIRECT:
+						mv.visitVarInsn(ALOAD, 2);
+						mv.visitVarInsn(ALOAD, TYPED_OBJECT_LOCAL);
+						mv.visitFieldInsn(GETFIELD, ownerCls, field.name(), field.desc());
+						AsmCodecUtils.writePrimitive(mv, field.type());
+						break;
+					case ENCODED:
+						mv.visitVarInsn(ALOAD, 2);
+						mv.visitVarInsn(ALOAD, TYPED_OBJECT_LOCAL);
+						mv.visitFieldInsn(GETFIELD, ownerCls, field.name(), field.desc());
+						callEncoder(mv, encoderPrefix(field.spec.encoding), field.type(), true);
+						break;
+					case PACKED:
+						break;
+					case SERIALIZER:
+						if (field.nullBit >= 0) {
+							final Label isNull = new Label();
+							mv.visitVarInsn(ALOAD, FIRST_FREE_LOCAL + field.nullBit);
+							mv.visitJumpInsn(IFNULL, isNull);
+							loadConstant(mv, name, constants, field.constantIndex);
+							mv.visitVarInsn(ALOAD, FIRST_FREE_LOCAL + field.nullBit);
+							mv.visitVarInsn(ALOAD, 2);
+							mv.visitMethodInsn(INVOKEINTERFACE, STREAM_WRITER_CLS, "writeToStream", SERIALIZER_METHOD_DESC, true);
+							mv.visitLabel(isNull);
+						} else {
+							loadConstant(mv, name, constants, field.constantIndex);
+							mv.visitVarInsn(ALOAD, TYPED_OBJECT_LOCAL);
+							mv.visitFieldInsn(GETFIELD, ownerCls, field.name(), field.desc());
+
+							if (field.type().isPrimitive()) {
+								// primitive with custom serializer
+								AsmCodecUtils.box(mv, field.type());
+							} else if (checkNonNullable) {
+								final Label notNull = new Label();
+								mv.visitInsn(DUP);
+								mv.visitJumpInsn(IFNONNULL, notNull);
+								mv.visitTypeInsn(NEW, NPE_CLS);
+								mv.visitInsn(DUP);
+								mv.visitLdcInsn("Non-nullable " + field.spec.field + " has null value");
+								mv.visitMethodInsn(INVOKESPECIAL, NPE_CLS, "<init>", "(Ljava/lang/String;)V", false);
+								mv.visitInsn(ATHROW);
+								mv.visitLabel(notNull);
+							}
+
+							mv.visitVarInsn(ALOAD, 2);
+							mv.visitMethodInsn(INVOKEINTERFACE, STREAM_WRITER_CLS, "writeToStream", SERIALIZER_METHOD_DESC, true);
+						}
+						break;
+				}
+			}
+
+			mv.visitInsn(RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+}
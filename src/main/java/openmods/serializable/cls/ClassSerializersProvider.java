@@ -1,28 +1,31 @@
 package openmods.serializable.cls;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ConcurrentMap;
 import net.minecraft.network.PacketBuffer;
+import openmods.LibConfig;
 import openmods.serializable.IObjectSerializer;
-import openmods.utils.CachedFactory;
 import openmods.utils.FieldsSelector;
 
 public class ClassSerializersProvider {
-	public static final ClassSerializersProvider instance = new ClassSerializersProvider();
+	public static final ClassSerializersProvider instance = new ClassSerializersProvider(true);
 
-	private final CachedFactory<Class<?>, IObjectSerializer<?>> cache = new CachedFactory<Class<?>, IObjectSerializer<?>>() {
-		@Override
-		protected IObjectSerializer<?> create(Class<?> key) {
-			ClassSerializerBuilder<Object> builder = new ClassSerializerBuilder<>(key);
+	private final boolean allowGenerated;
 
-			for (Field f : SELECTOR.getFields(key))
-				builder.appendField(f);
+	// used from network threads too, so lookups can't go through (unsynchronized) CachedFactory
+	private final ConcurrentMap<Class<?>, IObjectSerializer<?>> cache = Maps.newConcurrentMap();
 
-			return builder.create();
-		}
-	};
+	/**
+	 * @param allowGenerated if false, only reflection based serializers are created
+	 */
+	public ClassSerializersProvider(boolean allowGenerated) {
+		this.allowGenerated = allowGenerated;
+	}
 
 	private final FieldsSelector SELECTOR = new FieldsSelector() {
 		@Override
@@ -37,9 +40,37 @@ public class ClassSerializersProvider {
 		}
 	};
 
+	// @Serialize fields, in serialization order
+	Collection<Field> getFields(Class<?> cls) {
+		return SELECTOR.getFields(cls);
+	}
+
+	private IObjectSerializer<?> create(Class<?> key) {
+		final Collection<Field> fields = SELECTOR.getFields(key);
+
+		if (allowGenerated && LibConfig.generatedClassSerializers) {
+			final IObjectSerializer<?> generated = ClassSerializerGenerator.tryCreate(key, fields);
+			if (generated != null) return generated;
+		}
+
+		ClassSerializerBuilder<Object> builder = new ClassSerializerBuilder<>(key);
+
+		for (Field f : fields)
+			builder.appendField(f);
+
+		return builder.create();
+	}
+
 	@SuppressWarnings("unchecked")
 	public <T> IObjectSerializer<T> getSerializer(Class<? extends T> cls) {
-		return (IObjectSerializer<T>)cache.getOrCreate(cls);
+		IObjectSerializer<?> serializer = cache.get(cls);
+		if (serializer == null) {
+			// may be created twice on concurrent first use, but only one instance is published
+			serializer = create(cls);
+			final IObjectSerializer<?> prev = cache.putIfAbsent(cls, serializer);
+			if (prev != null) serializer = prev;
+		}
+		return (IObjectSerializer<T>)serializer;
 	}
 
 	@SuppressWarnings("unchecked")
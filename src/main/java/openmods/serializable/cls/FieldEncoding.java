@@ -0,0 +1,31 @@
+package openmods.serializable.cls;
+
+/**
+ * Wire format of field marked with {@link Serialize}. Non-default encodings are only allowed for listed types.
+ */
+public enum FieldEncoding {
+	/**
+	 * Serializer registered for field type
+	 */
+	DEFAULT,
+
+	/**
+	 * Fixed width. Same as default for numbers, enum ordinals are written as byte, short or int (depending on number of constants)
+	 */
+	FIXED,
+
+	/**
+	 * Variable length: int, short, long (and wrappers), enums. Negative numbers always take maximal length, use {@link #ZIGZAG} instead
+	 */
+	VARINT,
+
+	/**
+	 * Variable length, with small absolute values taking fewer bytes: int, short, long (and wrappers)
+	 */
+	ZIGZAG,
+
+	/**
+	 * Stored as bits in class header, shared with null flags: booleans (1 bit) and enums with up to 256 constants (up to 8 bits)
+	 */
+	PACKED;
+}
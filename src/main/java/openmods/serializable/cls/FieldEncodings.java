@@ -0,0 +1,268 @@
+package openmods.serializable.cls;
+
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.Primitives;
+import io.netty.buffer.ByteBuf;
+import net.minecraft.network.PacketBuffer;
+import openmods.utils.ByteUtils;
+import openmods.utils.io.IStreamSerializer;
+
+/**
+ * Encoders for non-default {@link FieldEncoding}s. Static methods are also called from generated serializers, so they use only {@link ByteBuf} methods.
+ */
+public class FieldEncodings {
+
+	public static final int MAX_PACKED_ENUM_CONSTANTS = 256;
+
+	// same format as PacketBuffer.writeVarInt
+	public static void writeVarInt(ByteBuf output, int value) {
+		while ((value & ~0x7F) != 0) {
+			output.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		output.writeByte(value);
+	}
+
+	public static int readVarInt(ByteBuf input) {
+		int result = 0;
+		int shift = 0;
+		byte b;
+		do {
+			if (shift >= 35) throw new RuntimeException("VarInt too big");
+			b = input.readByte();
+			result |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+
+		return result;
+	}
+
+	// same format as PacketBuffer.writeVarLong
+	public static void writeVarLong(ByteBuf output, long value) {
+		while ((value & ~0x7FL) != 0) {
+			output.writeByte((int)(value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		output.writeByte((int)value);
+	}
+
+	public static long readVarLong(ByteBuf input) {
+		long result = 0;
+		int shift = 0;
+		byte b;
+		do {
+			if (shift >= 70) throw new RuntimeException("VarLong too big");
+			b = input.readByte();
+			result |= (long)(b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+
+		return result;
+	}
+
+	public static void writeZigZagInt(ByteBuf output, int value) {
+		writeVarInt(output, ByteUtils.zigzagEncode(value));
+	}
+
+	public static int readZigZagInt(ByteBuf input) {
+		return ByteUtils.zigzagDecode(readVarInt(input));
+	}
+
+	public static void writeZigZagLong(ByteBuf output, long value) {
+		writeVarLong(output, (value << 1) ^ (value >> 63));
+	}
+
+	public static long readZigZagLong(ByteBuf input) {
+		final long value = readVarLong(input);
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * @return number of bits needed for ordinals of enum
+	 */
+	public static int enumBits(Class<?> enumCls) {
+		final int count = enumCls.getEnumConstants().length;
+		return count <= 1? 0 : 32 - Integer.numberOfLeadingZeros(count - 1);
+	}
+
+	/**
+	 * @return number of header bits used by packed field of given type
+	 */
+	static int packedBits(Class<?> type) {
+		if (type == boolean.class || type == Boolean.class) return 1;
+
+		Preconditions.checkArgument(type.isEnum(), "Packed encoding can be only used for booleans and enums, got %s", type);
+		final int count = type.getEnumConstants().length;
+		Preconditions.checkArgument(count <= MAX_PACKED_ENUM_CONSTANTS, "Enum %s has too many constants (%s) to be packed", type, count);
+		return enumBits(type);
+	}
+
+	private abstract static class Serializer implements IStreamSerializer<Object> {}
+
+	private static final IStreamSerializer<Object> VAR_INT = new Serializer() {
+		@Override
+		public Object readFromStream(PacketBuffer input) {
+			return readVarInt(input);
+		}
+
+		@Override
+		public void writeToStream(Object o, PacketBuffer output) {
+			writeVarInt(output, (Integer)o);
+		}
+	};
+
+	private static final IStreamSerializer<Object> VAR_SHORT = new Serializer() {
+		@Override
+		public Object readFromStream(PacketBuffer input) {
+			return (short)readVarInt(input);
+		}
+
+		@Override
+		public void writeToStream(Object o, PacketBuffer output) {
+			writeVarInt(output, (Short)o);
+		}
+	};
+
+	private static final IStreamSerializer<Object> VAR_LONG = new Serializer() {
+		@Override
+		public Object readFromStream(PacketBuffer input) {
+			return readVarLong(input);
+		}
+
+		@Override
+		public void writeToStream(Object o, PacketBuffer output) {
+			writeVarLong(output, (Long)o);
+		}
+	};
+
+	private static final IStreamSerializer<Object> ZIGZAG_INT = new Serializer() {
+		@Override
+		public Object readFromStream(PacketBuffer input) {
+			return readZigZagInt(input);
+		}
+
+		@Override
+		public void writeToStream(Object o, PacketBuffer output) {
+			writeZigZagInt(output, (Integer)o);
+		}
+	};
+
+	private static final IStreamSerializer<Object> ZIGZAG_SHORT = new Serializer() {
+		@Override
+		public Object readFromStream(PacketBuffer input) {
+			return (short)readZigZagInt(input);
+		}
+
+		@Override
+		public void writeToStream(Object o, PacketBuffer output) {
+			writeZigZagInt(output, (Short)o);
+		}
+	};
+
+	private static final IStreamSerializer<Object> ZIGZAG_LONG = new Serializer() {
+		@Override
+		public Object readFromStream(PacketBuffer input) {
+			return readZigZagLong(input);
+		}
+
+		@Override
+		public void writeToStream(Object o, PacketBuffer output) {
+			writeZigZagLong(output, (Long)o);
+		}
+	};
+
+	static Object getEnumConstant(Class<?> cls, Object[] values, int ordinal) {
+		if (ordinal < 0 || ordinal >= values.length) throw new ArrayIndexOutOfBoundsException(String.format("Failed to get enum with ordinal %d from class %s", ordinal, cls));
+		return values[ordinal];
+	}
+
+	private static IStreamSerializer<Object> createEnumSerializer(final Class<?> cls, FieldEncoding encoding) {
+		final Object[] values = cls.getEnumConstants();
+
+		if (encoding == FieldEncoding.VARINT) {
+			return new Serializer() {
+				@Override
+				public Object readFromStream(PacketBuffer input) {
+					return getEnumConstant(cls, values, readVarInt(input));
+				}
+
+				@Override
+				public void writeToStream(Object o, PacketBuffer output) {
+					writeVarInt(output, ((Enum<?>)o).ordinal());
+				}
+			};
+		}
+
+		if (values.length <= 0x100) {
+			return new Serializer() {
+				@Override
+				public Object readFromStream(PacketBuffer input) {
+					return getEnumConstant(cls, values, input.readUnsignedByte());
+				}
+
+				@Override
+				public void writeToStream(Object o, PacketBuffer output) {
+					output.writeByte(((Enum<?>)o).ordinal());
+				}
+			};
+		}
+
+		if (values.length <= 0x10000) {
+			return new Serializer() {
+				@Override
+				public Object readFromStream(PacketBuffer input) {
+					return getEnumConstant(cls, values, input.readUnsignedShort());
+				}
+
+				@Override
+				public void writeToStream(Object o, PacketBuffer output) {
+					output.writeShort(((Enum<?>)o).ordinal());
+				}
+			};
+		}
+
+		return new Serializer() {
+			@Override
+			public Object readFromStream(PacketBuffer input) {
+				return getEnumConstant(cls, values, input.readInt());
+			}
+
+			@Override
+			public void writeToStream(Object o, PacketBuffer output) {
+				output.writeInt(((Enum<?>)o).ordinal());
+			}
+		};
+	}
+
+	/**
+	 * @return serializer for encoding or null, if field should use default serializer (i.e. {@link FieldEncoding#FIXED} for numbers)
+	 * @throws IllegalArgumentException if encoding can't be used for type
+	 */
+	static IStreamSerializer<Object> createSerializer(Class<?> type, FieldEncoding encoding) {
+		Preconditions.checkArgument(encoding != FieldEncoding.PACKED, "Packed fields have no serializer");
+		if (encoding == FieldEncoding.DEFAULT) return null;
+
+		if (type.isEnum()) {
+			Preconditions.checkArgument(encoding != FieldEncoding.ZIGZAG, "Zigzag encoding can't be used for enum %s", type);
+			return createEnumSerializer(type, encoding);
+		}
+
+		final Class<?> wrapped = Primitives.wrap(type);
+		if (encoding == FieldEncoding.FIXED && Number.class.isAssignableFrom(wrapped)) return null;
+
+		if (wrapped == Integer.class || wrapped == Short.class || wrapped == Long.class) {
+			switch (encoding) {
+				case VARINT:
+					return wrapped == Integer.class? VAR_INT : (wrapped == Short.class? VAR_SHORT : VAR_LONG);
+				case ZIGZAG:
+					return wrapped == Integer.class? ZIGZAG_INT : (wrapped == Short.class? ZIGZAG_SHORT : ZIGZAG_LONG);
+				default:
+					break;
+			}
+		}
+
+		throw new IllegalArgumentException("Encoding " + encoding + " can't be used for type " + type);
+	}
+}
@@ -0,0 +1,125 @@
+package openmods.serializable.cls;
+
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagInt;
+import openmods.utils.io.INBTSerializer;
+import openmods.utils.io.INbtChecker;
+
+/**
+ * Compound accessors used by generated NBT serializers. Generated code can't call {@link NBTTagCompound} methods directly, since their names are obfuscated at runtime.
+ */
+public final class NbtFields {
+
+	private NbtFields() {}
+
+	public static boolean has(NBTTagCompound tag, String name, int type) {
+		return tag.hasKey(name, type);
+	}
+
+	public static boolean has(NBTTagCompound tag, String name, INbtChecker checker) {
+		final NBTBase value = tag.getTag(name);
+		return value != null && checker.checkTagType(value);
+	}
+
+	public static void remove(NBTTagCompound tag, String name) {
+		tag.removeTag(name);
+	}
+
+	public static void writeBoolean(NBTTagCompound tag, String name, boolean value) {
+		tag.setBoolean(name, value);
+	}
+
+	public static boolean readBoolean(NBTTagCompound tag, String name) {
+		return tag.getBoolean(name);
+	}
+
+	public static void writeByte(NBTTagCompound tag, String name, byte value) {
+		tag.setByte(name, value);
+	}
+
+	public static byte readByte(NBTTagCompound tag, String name) {
+		return tag.getByte(name);
+	}
+
+	public static void writeShort(NBTTagCompound tag, String name, short value) {
+		tag.setShort(name, value);
+	}
+
+	public static short readShort(NBTTagCompound tag, String name) {
+		return tag.getShort(name);
+	}
+
+	public static void writeInt(NBTTagCompound tag, String name, int value) {
+		tag.setInteger(name, value);
+	}
+
+	public static int readInt(NBTTagCompound tag, String name) {
+		return tag.getInteger(name);
+	}
+
+	public static void writeLong(NBTTagCompound tag, String name, long value) {
+		tag.setLong(name, value);
+	}
+
+	public static long readLong(NBTTagCompound tag, String name) {
+		return tag.getLong(name);
+	}
+
+	public static void writeFloat(NBTTagCompound tag, String name, float value) {
+		tag.setFloat(name, value);
+	}
+
+	public static float readFloat(NBTTagCompound tag, String name) {
+		return tag.getFloat(name);
+	}
+
+	public static void writeDouble(NBTTagCompound tag, String name, double value) {
+		tag.setDouble(name, value);
+	}
+
+	public static double readDouble(NBTTagCompound tag, String name) {
+		return tag.getDouble(name);
+	}
+
+	public static void writeString(NBTTagCompound tag, String name, String value) {
+		tag.setString(name, value);
+	}
+
+	public static String readString(NBTTagCompound tag, String name) {
+		return tag.getString(name);
+	}
+
+	// same format as SyncableEnum
+	public static void writeEnum(NBTTagCompound tag, String name, Enum<?> value) {
+		tag.setInteger(name, value.ordinal());
+	}
+
+	/**
+	 * @return null if stored ordinal is out of range
+	 */
+	public static Object readEnum(NBTTagCompound tag, String name, Object[] constants) {
+		final int ordinal = tag.getInteger(name);
+		return (ordinal >= 0 && ordinal < constants.length)? constants[ordinal] : null;
+	}
+
+	static INBTSerializer<Object> createEnumSerializer(Class<?> enumCls) {
+		final Object[] constants = enumCls.getEnumConstants();
+		return new INBTSerializer<Object>() {
+			@Override
+			public Object readFromNBT(NBTTagCompound tag, String name) {
+				return readEnum(tag, name, constants);
+			}
+
+			@Override
+			public void writeToNBT(Object o, NBTTagCompound tag, String name) {
+				writeEnum(tag, name, (Enum<?>)o);
+			}
+
+			@Override
+			public boolean checkTagType(NBTBase tag) {
+				return tag instanceof NBTTagInt;
+			}
+		};
+	}
+}
@@ -0,0 +1,88 @@
+package openmods.serializable.cls;
+
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.Primitives;
+import java.lang.reflect.Field;
+import net.minecraftforge.common.util.Constants;
+import openmods.reflection.TypeUtils;
+import openmods.utils.io.INBTSerializer;
+import openmods.utils.io.TypeRW;
+
+/**
+ * NBT properties of single {@link Serialize} field, shared by reflective and generated NBT serializers.
+ * Value is stored under field name. Encoding is ignored, since NBT has only one representation for each type.
+ */
+class NbtSerializedField {
+
+	enum Kind {
+		BOOLEAN(boolean.class, "Boolean", Constants.NBT.TAG_BYTE),
+		BYTE(byte.class, "Byte", Constants.NBT.TAG_BYTE),
+		SHORT(short.class, "Short", Constants.NBT.TAG_SHORT),
+		INT(int.class, "Int", Constants.NBT.TAG_INT),
+		LONG(long.class, "Long", Constants.NBT.TAG_LONG),
+		FLOAT(float.class, "Float", Constants.NBT.TAG_FLOAT),
+		DOUBLE(double.class, "Double", Constants.NBT.TAG_DOUBLE),
+		STRING(String.class, "String", Constants.NBT.TAG_STRING),
+		ENUM(Enum.class, "Enum", Constants.NBT.TAG_INT),
+		// any other type from TypeRW.NBT_SERIALIZERS
+		SERIALIZER(null, null, -1);
+
+		// type used by NbtFields methods
+		public final Class<?> type;
+
+		public final String methodSuffix;
+
+		public final int tagType;
+
+		private Kind(Class<?> type, String methodSuffix, int tagType) {
+			this.type = type;
+			this.methodSuffix = methodSuffix;
+			this.tagType = tagType;
+		}
+	}
+
+	public final Field field;
+
+	public final String name;
+
+	public final boolean isNullable;
+
+	// raw type after resolving type variables
+	public final Class<?> type;
+
+	public final Kind kind;
+
+	public final INBTSerializer<Object> serializer;
+
+	@SuppressWarnings("unchecked")
+	public NbtSerializedField(Class<?> ownerCls, Field field) {
+		this.field = field;
+		this.name = field.getName();
+
+		final Serialize annotation = field.getAnnotation(Serialize.class);
+		this.isNullable = !field.getType().isPrimitive() && (annotation != null && annotation.nullable());
+		this.type = TypeUtils.resolveFieldType(ownerCls, field).getRawType();
+
+		if (type.isEnum()) {
+			this.kind = Kind.ENUM;
+			this.serializer = NbtFields.createEnumSerializer(type);
+		} else {
+			this.serializer = (INBTSerializer<Object>)TypeRW.NBT_SERIALIZERS.get(type);
+			Preconditions.checkArgument(serializer != null, "Field %s type can't be stored in NBT", field);
+			this.kind = selectKind(type);
+		}
+	}
+
+	private static Kind selectKind(Class<?> type) {
+		final Class<?> unwrapped = Primitives.unwrap(type);
+		for (Kind kind : Kind.values())
+			if (kind.type == unwrapped) return kind;
+
+		return Kind.SERIALIZER;
+	}
+
+	// boxed primitives are unwrapped by generated code
+	public boolean isBoxed() {
+		return kind.type != null && kind.type.isPrimitive() && !type.isPrimitive();
+	}
+}
@@ -12,4 +12,6 @@ public @interface Serialize {
 	public int rank() default 0;
 
 	public boolean nullable() default true;
+
+	public FieldEncoding encoding() default FieldEncoding.DEFAULT;
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+package openmods.serializable.cls;
+
+import com.google.common.base.Preconditions;
+import com.google.common.reflect.TypeToken;
+import java.lang.reflect.Field;
+import java.lang.reflect.Type;
+import openmods.reflection.TypeUtils;
+import openmods.serializable.SerializerRegistry;
+import openmods.utils.io.IStreamSerializer;
+
+/**
+ * Serialization properties of single field, shared by reflective and generated serializers
+ */
+class SerializedField {
+
+	public final Field field;
+
+	public final boolean isNullable;
+
+	public final FieldEncoding encoding;
+
+	// raw type after resolving type variables
+	public final Class<?> type;
+
+	// header bits used by packed fields (zero for other fields and single constant enums)
+	public final int packedBits;
+
+	// null for packed fields
+	public final IStreamSerializer<Object> serializer;
+
+	public SerializedField(Class<?> ownerCls, Field field) {
+		this.field = field;
+
+		final Serialize annotation = field.getAnnotation(Serialize.class);
+		this.isNullable = !field.getType().isPrimitive() && (annotation != null && annotation.nullable());
+		this.encoding = annotation != null? annotation.encoding() : FieldEncoding.DEFAULT;
+
+		final TypeToken<?> fieldType = TypeUtils.resolveFieldType(ownerCls, field);
+		this.type = fieldType.getRawType();
+
+		if (encoding == FieldEncoding.PACKED) {
+			this.packedBits = FieldEncodings.packedBits(type);
+			this.serializer = null;
+		} else {
+			this.packedBits = 0;
+			final IStreamSerializer<Object> encodingSerializer = FieldEncodings.createSerializer(type, encoding);
+			this.serializer = encodingSerializer != null? encodingSerializer : findDefaultSerializer(field, fieldType.getType());
+		}
+	}
+
+	private static IStreamSerializer<Object> findDefaultSerializer(Field field, Type type) {
+		final IStreamSerializer<Object> serializer = SerializerRegistry.instance.findSerializer(type);
+		Preconditions.checkNotNull(serializer, "Invalid field %s type", field);
+		return serializer;
+	}
+
+	public boolean isPacked() {
+		return encoding == FieldEncoding.PACKED;
+	}
+
+	public boolean isPackedBoolean() {
+		return isPacked() && (type == boolean.class || type == Boolean.class);
+	}
+
+	public Object[] enumConstants() {
+		return type.getEnumConstants();
+	}
+}
@@ -2,7 +2,6 @@ package openmods.structured;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Sets;
-import io.netty.buffer.Unpooled;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
@@ -14,6 +13,8 @@ import openmods.structured.Command.ContainerInfo;
 import openmods.structured.Command.Create;
 import openmods.structured.Command.Delete;
 import openmods.structured.Command.UpdateSingle;
+import openmods.utils.io.PacketBuffers;
+import openmods.utils.io.PacketBuffers.SizeHint;
 
 public class StructuredDataMaster<C extends IStructureContainer<E>, E extends IStructureElement> extends StructuredData<C, E> {
 	public static final int CONSISTENCY_CHECK_PERIOD = 10;
@@ -21,6 +22,8 @@ public class StructuredDataMaster<C extends IStructureContainer<E>, E extends IS
 	private final Set<Integer> newContainers = Sets.newTreeSet();
 	private final Set<Integer> deletedContainers = Sets.newTreeSet();
 	private final Set<Integer> modifiedElements = Sets.newTreeSet();
+	private final SizeHint containerPayloadSizeHint = new SizeHint();
+	private final SizeHint elementPayloadSizeHint = new SizeHint();
 	private byte checkCount;
 
 	private int nextElementId;
@@ -182,13 +185,15 @@ public class StructuredDataMaster<C extends IStructureContainer<E>, E extends IS
 
 	private PacketBuffer createContainerPayload(Set<Integer> containerIds) {
 		try {
-			PacketBuffer result = new PacketBuffer(Unpooled.buffer());
+			PacketBuffer result = PacketBuffers.payload(containerPayloadSizeHint);
 
 			for (Integer id : containerIds) {
 				final C c = containers.get(id);
 				if (c instanceof ICustomCreateData) ((ICustomCreateData)c).writeCustomDataFromStream(result);
 			}
 
+			containerPayloadSizeHint.update(result.writerIndex());
+
 			return result;
 		} catch (IOException e) {
 			throw new RuntimeException(e);
@@ -197,12 +202,14 @@ public class StructuredDataMaster<C extends IStructureContainer<E>, E extends IS
 
 	private PacketBuffer createElementPayload(Collection<Integer> ids) {
 		try {
-			PacketBuffer output = new PacketBuffer(Unpooled.buffer());
+			PacketBuffer output = PacketBuffers.payload(elementPayloadSizeHint);
 			for (Integer id : ids) {
 				E element = elements.get(id);
 				element.writeToStream(output);
 			}
 
+			elementPayloadSizeHint.update(output.writerIndex());
+
 			return output;
 		} catch (IOException e) {
 			throw new RuntimeException(e);
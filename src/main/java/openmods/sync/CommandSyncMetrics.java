@@ -0,0 +1,136 @@
+package openmods.sync;
+
+import static openmods.utils.CommandUtils.filterPrefixes;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import net.minecraft.command.CommandException;
+import net.minecraft.command.ICommandSender;
+import net.minecraft.command.NumberInvalidException;
+import net.minecraft.command.SyntaxErrorException;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.text.TextComponentTranslation;
+import openmods.network.OutboundBudget;
+import openmods.sync.SyncMetrics.Counter;
+import openmods.sync.SyncMetrics.Histogram;
+import openmods.utils.SidedCommand;
+
+public class CommandSyncMetrics extends SidedCommand {
+
+	private static final String COMMAND_ENABLE = "enable";
+	private static final String COMMAND_DISABLE = "disable";
+	private static final String COMMAND_RESET = "reset";
+	private static final String COMMAND_TOP = "top";
+	private static final String COMMAND_TIMERS = "timers";
+	private static final String COMMAND_THROTTLE = "throttle";
+
+	private static final int DEFAULT_TOP_COUNT = 10;
+
+	private final List<String> subcommands = ImmutableList.of(COMMAND_ENABLE, COMMAND_DISABLE, COMMAND_RESET, COMMAND_TOP, COMMAND_TIMERS, COMMAND_THROTTLE);
+
+	private final List<String> groups = ImmutableList.of(SyncMetrics.GROUP_OWNER_BYTES, SyncMetrics.GROUP_OWNER_PACKETS, SyncMetrics.GROUP_TYPE_BYTES, SyncMetrics.GROUP_PACKETS, SyncMetrics.GROUP_OWNER_DEFERRED);
+
+	public CommandSyncMetrics(String name, boolean restricted) {
+		super(name, restricted);
+	}
+
+	@Override
+	public String getUsage(ICommandSender icommandsender) {
+		return name + " enable|disable|reset|timers|throttle|top <group> [count]";
+	}
+
+	@Override
+	public void execute(MinecraftServer server, ICommandSender sender, String[] args) throws CommandException {
+		if (args.length < 1) throw new SyntaxErrorException();
+
+		final String subCommand = args[0];
+
+		if (subCommand.equals(COMMAND_ENABLE)) {
+			SyncMetrics.setEnabled(true);
+			sender.sendMessage(new TextComponentTranslation("openmodslib.command.sync_metrics_enabled"));
+		} else if (subCommand.equals(COMMAND_DISABLE)) {
+			SyncMetrics.setEnabled(false);
+			sender.sendMessage(new TextComponentTranslation("openmodslib.command.sync_metrics_disabled"));
+		} else if (subCommand.equals(COMMAND_RESET)) {
+			SyncMetrics.reset();
+			OutboundBudget.resetCounters();
+			sender.sendMessage(new TextComponentTranslation("openmodslib.command.sync_metrics_reset"));
+		} else if (subCommand.equals(COMMAND_TIMERS)) {
+			for (Map.Entry<String, Histogram> e : SyncMetrics.getHistograms().entrySet()) {
+				final Histogram histogram = e.getValue();
+				sender.sendMessage(new TextComponentTranslation("openmodslib.command.sync_metrics_timer",
+						e.getKey(),
+						histogram.count(),
+						toMicros(histogram.mean()),
+						toMicros(histogram.percentileUpperBound(0.99)),
+						toMicros(histogram.max()),
+						TimeUnit.NANOSECONDS.toMillis(histogram.total())));
+			}
+		} else if (subCommand.equals(COMMAND_THROTTLE)) {
+			// always collected, since throttling should be rare
+			sender.sendMessage(new TextComponentTranslation("openmodslib.command.sync_metrics_throttle",
+					OutboundBudget.getThrottledUnwritableCount(),
+					OutboundBudget.getThrottledBudgetCount(),
+					OutboundBudget.getBypassCount()));
+		} else if (subCommand.equals(COMMAND_TOP)) {
+			if (args.length < 2) throw new SyntaxErrorException();
+			final String group = args[1];
+			if (!groups.contains(group)) throw new CommandException("openmodslib.command.sync_metrics_invalid_group", group, Joiner.on(", ").join(groups));
+
+			final int count = args.length > 2? parseCount(args[2]) : DEFAULT_TOP_COUNT;
+			printTop(sender, group, count);
+		} else {
+			throw new CommandException("openmodslib.command.no_subcommand", subCommand);
+		}
+	}
+
+	private static int parseCount(String value) throws CommandException {
+		try {
+			final int result = Integer.parseInt(value);
+			if (result > 0) return result;
+		} catch (NumberFormatException e) {}
+
+		throw new NumberInvalidException("commands.generic.num.invalid", value);
+	}
+
+	private static long toMicros(long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+
+	private static void printTop(ICommandSender sender, String group, int count) {
+		final List<Map.Entry<String, Long>> values = Lists.newArrayList();
+		long total = 0;
+		for (Map.Entry<String, Counter> e : SyncMetrics.getGroup(group).entrySet()) {
+			final long value = e.getValue().get();
+			values.add(Maps.immutableEntry(e.getKey(), value));
+			total += value;
+		}
+
+		sender.sendMessage(new TextComponentTranslation("openmodslib.command.sync_metrics_top", group, values.size(), total));
+
+		values.sort(Map.Entry.<String, Long> comparingByValue().reversed());
+		for (Map.Entry<String, Long> e : values.subList(0, Math.min(count, values.size())))
+			sender.sendMessage(new TextComponentTranslation("openmodslib.command.sync_metrics_entry", e.getKey(), e.getValue()));
+	}
+
+	@Override
+	public List<String> getTabCompletions(MinecraftServer server, ICommandSender sender, String[] args, BlockPos pos) {
+		if (args.length == 1) return filterPrefixes(args[0], subcommands);
+		if (args.length == 2 && args[0].equals(COMMAND_TOP)) return filterPrefixes(args[1], groups);
+
+		return Collections.emptyList();
+	}
+
+	@Override
+	public boolean isUsernameIndex(String[] astring, int i) {
+		return false;
+	}
+
+}
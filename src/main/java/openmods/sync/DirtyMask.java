@@ -0,0 +1,161 @@
+package openmods.sync;
+
+import com.google.common.base.Preconditions;
+import java.util.Arrays;
+
+/**
+ * Bit set used by {@link SyncMapServer} to track dirty objects by slot id.
+ * Slot order matches update packet bitmap order (slot 0 is most significant bit of first byte).
+ * Backing array only grows in {@link #ensureSize(int)}, so {@link #set(int)} never allocates.
+ */
+public final class DirtyMask {
+
+	private static final int WORD_SHIFT = 6;
+
+	private long[] words;
+
+	private int size;
+
+	public DirtyMask(int size) {
+		Preconditions.checkArgument(size >= 0, "Negative size: %s", size);
+		this.size = size;
+		this.words = new long[wordCount(size)];
+	}
+
+	public DirtyMask() {
+		this(0);
+	}
+
+	private static int wordCount(int size) {
+		return (size + 63) >>> WORD_SHIFT;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void ensureSize(int newSize) {
+		if (newSize > size) {
+			size = newSize;
+			final int newWordCount = wordCount(newSize);
+			if (newWordCount > words.length) words = Arrays.copyOf(words, newWordCount);
+		}
+	}
+
+	public void set(int slot) {
+		words[slot >>> WORD_SHIFT] |= 1L << slot;
+	}
+
+	public void clear(int slot) {
+		words[slot >>> WORD_SHIFT] &= ~(1L << slot);
+	}
+
+	public boolean get(int slot) {
+		return (words[slot >>> WORD_SHIFT] & (1L << slot)) != 0;
+	}
+
+	public void clear() {
+		Arrays.fill(words, 0);
+	}
+
+	public boolean isEmpty() {
+		for (long word : words)
+			if (word != 0) return false;
+
+		return true;
+	}
+
+	public int cardinality() {
+		int result = 0;
+		for (long word : words)
+			result += Long.bitCount(word);
+		return result;
+	}
+
+	/**
+	 * @return index of first set bit at or after {@code from} or -1, if there are no more set bits
+	 */
+	public int nextSetBit(int from) {
+		int wordIndex = from >>> WORD_SHIFT;
+		if (wordIndex >= words.length) return -1;
+
+		long word = words[wordIndex] & (-1L << from);
+
+		while (true) {
+			if (word != 0) return (wordIndex << WORD_SHIFT) + Long.numberOfTrailingZeros(word);
+			if (++wordIndex == words.length) return -1;
+			word = words[wordIndex];
+		}
+	}
+
+	/**
+	 * @return index of first clear bit at or after {@code from}, may be equal or larger than {@link #size()}
+	 */
+	public int nextClearBit(int from) {
+		int wordIndex = from >>> WORD_SHIFT;
+		if (wordIndex >= words.length) return from;
+
+		long word = ~words[wordIndex] & (-1L << from);
+
+		while (true) {
+			if (word != 0) return (wordIndex << WORD_SHIFT) + Long.numberOfTrailingZeros(word);
+			if (++wordIndex == words.length) return wordIndex << WORD_SHIFT;
+			word = ~words[wordIndex];
+		}
+	}
+
+	/**
+	 * Moves all bits from this mask to target (which is overwritten) and clears this one.
+	 */
+	public void drainTo(DirtyMask target) {
+		target.ensureSize(size);
+		System.arraycopy(words, 0, target.words, 0, words.length);
+		Arrays.fill(target.words, words.length, target.words.length, 0);
+		clear();
+	}
+
+	public boolean isSubsetOf(DirtyMask other) {
+		for (int i = 0; i < words.length; i++) {
+			final long otherWord = i < other.words.length? other.words[i] : 0;
+			if ((words[i] & ~otherWord) != 0) return false;
+		}
+
+		return true;
+	}
+
+	public boolean intersects(DirtyMask other) {
+		final int commonLength = Math.min(words.length, other.words.length);
+		for (int i = 0; i < commonLength; i++)
+			if ((words[i] & other.words[i]) != 0) return true;
+
+		return false;
+	}
+
+	public void or(DirtyMask other) {
+		ensureSize(other.size);
+		for (int i = 0; i < other.words.length; i++)
+			words[i] |= other.words[i];
+	}
+
+	/**
+	 * Returns byte of packet bitmap, i.e. slots {@code 8*index..8*index+7}, first slot in most significant bit.
+	 */
+	public int getBitmapByte(int index) {
+		final int bits = (int)(words[index >>> 3] >>> ((index & 7) << 3)) & 0xFF;
+		return Integer.reverse(bits) >>> 24;
+	}
+
+	public int bitmapLength() {
+		return (size + 7) / 8;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder result = new StringBuilder("{");
+		for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+			if (result.length() > 1) result.append(',');
+			result.append(i);
+		}
+		return result.append('}').toString();
+	}
+}
@@ -0,0 +1,23 @@
+package openmods.sync;
+
+import java.io.IOException;
+import net.minecraft.network.PacketBuffer;
+
+/**
+ * Syncable object that can send only changes since last {@link #markClean()} in update packets.
+ * Initialization packets still use {@link #writeToStream(PacketBuffer)}, but all update packets are read with {@link #readDeltaFromStream(PacketBuffer)}.
+ */
+public interface IDeltaSyncableObject extends ISyncableObject {
+	/**
+	 * Called before {@link #markClean()}. Receiver has state from initialization packet or previous update,
+	 * but initialization may have been created after some changes, so delta must be safe to apply twice.
+	 */
+	public void writeDeltaToStream(PacketBuffer buf) throws IOException;
+
+	/**
+	 * Whole value in delta format. Used for update packets that can't contain deltas (i.e. cumulative updates for far or throttled receivers).
+	 */
+	public void writeFullToStream(PacketBuffer buf) throws IOException;
+
+	public void readDeltaFromStream(PacketBuffer buf) throws IOException;
+}
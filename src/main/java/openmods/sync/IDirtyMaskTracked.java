@@ -0,0 +1,12 @@
+package openmods.sync;
+
+/**
+ * Implemented by syncable objects that can report dirty state directly to owning map.
+ * Objects that don't implement this interface are polled with {@link ISyncableObject#isDirty()} on every update.
+ */
+public interface IDirtyMaskTracked {
+	/**
+	 * Called by {@link SyncMapServer} on registration. After that {@link ISyncableObject#markDirty()} must set {@code slot} in {@code mask}.
+	 */
+	public void attachDirtyMask(DirtyMask mask, int slot);
+}
@@ -0,0 +1,13 @@
+package openmods.sync;
+
+/**
+ * Optional client-side hook for objects that are not updated every tick (see {@link SyncRate}).
+ */
+public interface IInterpolatedSyncableObject {
+	/**
+	 * Called after new value was read from update packet.
+	 *
+	 * @param expectedInterval minimal number of ticks between updates, as declared on field (0 if not limited)
+	 */
+	public void onRemoteUpdate(int expectedInterval);
+}
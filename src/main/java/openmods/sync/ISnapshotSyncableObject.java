@@ -0,0 +1,14 @@
+package openmods.sync;
+
+/**
+ * Objects that can cheaply copy their state for asynchronous update encoding (see {@link SyncEncoder}).
+ * Called on server thread, before object is marked clean.
+ * Objects not implementing this interface are encoded on server thread.
+ */
+public interface ISnapshotSyncableObject extends ISyncableObject {
+	/**
+	 * @param delta if true, snapshot should write same data as {@link IDeltaSyncableObject#writeDeltaToStream}. Only set for delta objects.
+	 *            If false, delta objects should write same data as {@link IDeltaSyncableObject#writeFullToStream}.
+	 */
+	public ISyncableSnapshot createSnapshot(boolean delta);
+}
@@ -3,5 +3,8 @@ package openmods.sync;
 import java.util.Set;
 
 public interface ISyncListener {
+	/**
+	 * Note: on server side {@code changes} is view of internal state of sync map, valid only during this call.
+	 */
 	public void onSync(Set<ISyncableObject> changes);
 }
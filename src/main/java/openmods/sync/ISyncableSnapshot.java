@@ -0,0 +1,11 @@
+package openmods.sync;
+
+import java.io.IOException;
+import net.minecraft.network.PacketBuffer;
+
+/**
+ * Immutable copy of syncable object state. Written outside server thread, so it can't refer to any mutable data.
+ */
+public interface ISyncableSnapshot {
+	public void writeToStream(PacketBuffer stream) throws IOException;
+}
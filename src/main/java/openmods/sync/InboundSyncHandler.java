@@ -1,11 +1,18 @@
 package openmods.sync;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.network.PacketBuffer;
 import net.minecraft.world.World;
+import net.minecraftforge.fml.common.network.NetworkRegistry;
 import net.minecraftforge.fml.common.network.internal.FMLProxyPacket;
+import net.minecraftforge.fml.relauncher.Side;
+import openmods.Log;
 import openmods.OpenMods;
 import openmods.utils.NetUtils;
 
@@ -22,35 +29,104 @@ public class InboundSyncHandler extends SimpleChannelInboundHandler<FMLProxyPack
 
 	@Override
 	protected void channelRead0(ChannelHandlerContext ctx, final FMLProxyPacket msg) throws Exception {
-		NetUtils.executeSynchronized(ctx, new Runnable() {
-			@Override
-			public void run() {
-				PacketBuffer payload = new PacketBuffer(msg.payload());
-
-				final ISyncMapProvider provider = findSyncMapProvider(payload);
-
-				try {
-					if (provider != null) provider.getSyncMap().readUpdate(payload);
-				} catch (Throwable e) {
-					throw new SyncException(e, provider);
-				}
+		final PacketBuffer payload = new PacketBuffer(msg.payload());
+		final Side side = ctx.channel().attr(NetworkRegistry.CHANNEL_SOURCE).get();
+		if (side == Side.SERVER) {
+			// only packets sent by clients are requests for initialization data, see requestInitialization
+			final EntityPlayer player = OpenMods.proxy.getPlayerFromHandler(msg.handler());
+			if (player instanceof EntityPlayerMP) execute(ctx, () -> readInitializationRequest((EntityPlayerMP)player, payload));
+		} else {
+			execute(ctx, () -> readPayload(payload));
+		}
+	}
+
+	protected void execute(ChannelHandlerContext ctx, Runnable task) {
+		NetUtils.executeSynchronized(ctx, task);
+	}
+
+	private void readPayload(PacketBuffer payload) {
+		// packet may contain updates for multiple owners, see SyncPacketAggregator
+		while (payload.isReadable()) {
+			final int length = payload.readVarInt();
+			final PacketBuffer record = new PacketBuffer(payload.readSlice(length));
+			// records are length-delimited and independent, so failed one doesn't affect rest of packet
+			try {
+				readRecord(record);
+			} catch (Throwable t) {
+				Log.warn(t, "Failed to read sync record");
 			}
+		}
+	}
 
-			private ISyncMapProvider findSyncMapProvider(PacketBuffer payload) {
-				final int ownerType = payload.readVarInt();
+	private void readRecord(PacketBuffer record) {
+		final int recordType = record.readVarInt();
 
-				final World world = OpenMods.proxy.getClientWorld();
+		if (recordType == SyncMap.SCHEMA_RECORD) {
+			SyncSchemaCache.addReceivedSchema(SyncMapSchema.readFromStream(record));
+			return;
+		}
 
-				switch (ownerType) {
-					case SyncMapEntity.OWNER_TYPE:
-						return SyncMapEntity.findOwner(world, payload);
-					case SyncMapTile.OWNER_TYPE:
-						return SyncMapTile.findOwner(world, payload);
-					default:
-						throw new IllegalArgumentException("Unknown sync map owner type: " + ownerType);
-				}
+		final boolean isInit = (recordType & SyncMap.INIT_RECORD_FLAG) != 0;
+		final int ownerType = recordType & ~SyncMap.INIT_RECORD_FLAG;
 
-			}
-		});
+		final int ownerDataStart = record.readerIndex();
+		final ISyncMapProvider provider = findSyncMapProvider(ownerType, record);
+		if (provider == null) return;
+
+		final ByteBuf ownerData = record.slice(ownerDataStart, record.readerIndex() - ownerDataStart);
+		final SyncMap syncMap = provider.getSyncMap();
+		final SyncMapClient clientMap = syncMap instanceof SyncMapClient? (SyncMapClient)syncMap : null;
+
+		if (!isInit && clientMap != null && !clientMap.isInitialized()) {
+			// i.e. initialization referenced unknown schema or was not received yet
+			if (clientMap.markInitializationRequested()) requestInitialization(ownerType, ownerData);
+			return;
+		}
+
+		try {
+			if (isInit) syncMap.readIntializationData(record);
+			else syncMap.readUpdate(record);
+		} catch (Throwable e) {
+			Log.warn(new SyncException(e, provider), "Failed to read sync record, requesting initialization");
+			// some values may be already applied, so map state can't be trusted until it's initialized again
+			if (clientMap != null) clientMap.reset();
+		}
+
+		if (clientMap != null && !clientMap.isInitialized() && clientMap.markInitializationRequested()) requestInitialization(ownerType, ownerData);
+	}
+
+	protected ISyncMapProvider findSyncMapProvider(int ownerType, PacketBuffer payload) {
+		return findSyncMapProvider(OpenMods.proxy.getClientWorld(), ownerType, payload);
+	}
+
+	private static ISyncMapProvider findSyncMapProvider(World world, int ownerType, PacketBuffer payload) {
+		switch (ownerType) {
+			case SyncMapEntity.OWNER_TYPE:
+				return SyncMapEntity.findOwner(world, payload);
+			case SyncMapTile.OWNER_TYPE:
+				return SyncMapTile.findOwner(world, payload);
+			default:
+				throw new IllegalArgumentException("Unknown sync map owner type: " + ownerType);
+		}
+	}
+
+	/**
+	 * Asks server to resend initialization data for map that failed to initialize.
+	 * Owner data is only valid during call.
+	 */
+	protected void requestInitialization(int ownerType, ByteBuf ownerData) {
+		final PacketBuffer request = new PacketBuffer(Unpooled.buffer(ownerData.readableBytes() + 5));
+		request.writeVarInt(ownerType);
+		request.writeBytes(ownerData, ownerData.readerIndex(), ownerData.readableBytes());
+		SyncChannelHolder.INSTANCE.sendToServer(request);
+	}
+
+	private static void readInitializationRequest(EntityPlayerMP player, PacketBuffer payload) {
+		final int ownerType = payload.readVarInt();
+		final ISyncMapProvider provider = findSyncMapProvider(player.world, ownerType, payload);
+		if (provider != null) {
+			final SyncMap syncMap = provider.getSyncMap();
+			if (syncMap instanceof SyncMapServer) ((SyncMapServer)syncMap).resendInitialization(player);
+		}
 	}
 }
@@ -1,18 +1,27 @@
 package openmods.sync;
 
 import com.google.common.collect.Maps;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.Map;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.network.Packet;
 import net.minecraft.network.PacketBuffer;
 import net.minecraftforge.fml.common.network.FMLEmbeddedChannel;
+import net.minecraftforge.fml.common.network.FMLOutboundHandler.OutboundTarget;
 import net.minecraftforge.fml.common.network.NetworkRegistry;
+import net.minecraftforge.fml.common.network.handshake.NetworkDispatcher;
 import net.minecraftforge.fml.common.network.internal.FMLProxyPacket;
 import net.minecraftforge.fml.relauncher.Side;
+import openmods.LibConfig;
 import openmods.network.ExtendedOutboundHandler;
+import openmods.network.PacketBroadcaster;
 import openmods.network.senders.ExtPacketSenderFactory;
+import openmods.network.senders.FmlPacketSenderFactory;
+import openmods.network.senders.IPacketSender;
 import openmods.network.senders.ITargetedPacketSender;
 
 public class SyncChannelHolder {
@@ -23,6 +32,8 @@ public class SyncChannelHolder {
 
 	private final Map<Side, ITargetedPacketSender<Collection<EntityPlayerMP>>> senders = Maps.newEnumMap(Side.class);
 
+	private final IPacketSender serverSender;
+
 	private SyncChannelHolder() {
 		final EnumMap<Side, FMLEmbeddedChannel> channels = NetworkRegistry.INSTANCE.newChannel(CHANNEL_NAME, new InboundSyncHandler());
 
@@ -31,16 +42,59 @@ public class SyncChannelHolder {
 			ExtendedOutboundHandler.install(channel);
 			senders.put(e.getKey(), ExtPacketSenderFactory.createMultiplePlayersSender(channel));
 		}
+
+		serverSender = FmlPacketSenderFactory.createSender(channels.get(Side.CLIENT), OutboundTarget.TOSERVER);
 	}
 
 	public static Packet<?> createPacket(PacketBuffer payload) {
 		return new FMLProxyPacket(payload, CHANNEL_NAME);
 	}
 
+	// Packet payload is sequence of records, each prefixed with varint length
+	static void writeRecord(PacketBuffer output, ByteBuf record) {
+		final int length = record.readableBytes();
+		output.writeVarInt(length);
+		output.writeBytes(record, record.readerIndex(), length);
+	}
+
 	public void sendPayloadToPlayers(PacketBuffer payload, Collection<EntityPlayerMP> players) {
 		FMLProxyPacket packet = new FMLProxyPacket(payload, CHANNEL_NAME);
 		senders.get(Side.SERVER).sendMessage(packet, players);
 	}
 
+	public void sendPayloadToPlayer(PacketBuffer payload, EntityPlayerMP player) {
+		sendPayloadToPlayers(payload, Collections.singleton(player));
+	}
+
+	/**
+	 * Sends single sync record (owner info and sync map data). Depending on config, it may be merged with other records sent during this tick.
+	 */
+	public void sendRecordToPlayers(PacketBuffer record, Collection<EntityPlayerMP> players) {
+		if (LibConfig.coalesceSyncPackets) {
+			SyncPacketAggregator.INSTANCE.append(record, players);
+		} else {
+			final PacketBuffer payload = new PacketBuffer(Unpooled.buffer(record.readableBytes() + 5));
+			writeRecord(payload, record);
+			sendPayloadToPlayers(payload, players);
+		}
+	}
+
+	/**
+	 * Sends single record without going through channel pipeline, so it can be called from any thread.
+	 * Records are never merged.
+	 */
+	public void sendRecordToDispatchers(ByteBuf record, Collection<NetworkDispatcher> dispatchers) {
+		final PacketBuffer payload = new PacketBuffer(Unpooled.buffer(record.readableBytes() + 5));
+		writeRecord(payload, record);
+		PacketBroadcaster.sendToDispatchers(new FMLProxyPacket(payload, CHANNEL_NAME), dispatchers);
+	}
+
+	/**
+	 * Client to server packets are used only for requesting initialization data, see {@link InboundSyncHandler}
+	 */
+	public void sendToServer(PacketBuffer payload) {
+		serverSender.sendMessage(new FMLProxyPacket(payload, CHANNEL_NAME));
+	}
+
 	public static void ensureLoaded() {}
 }
@@ -0,0 +1,99 @@
+package openmods.sync;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import openmods.LibConfig;
+import openmods.Log;
+
+/**
+ * Worker pool for encoding and sending sync map updates outside server thread.
+ * Every owner is always assigned to same single-threaded worker, so its updates are sent in order.
+ * Queues are bounded - when worker can't keep up, server thread waits for free slot.
+ * Tasks rejected by worker (i.e. after shutdown) are executed on calling thread.
+ */
+public class SyncEncoder {
+
+	public static final SyncEncoder INSTANCE = new SyncEncoder();
+
+	private SyncEncoder() {}
+
+	private ExecutorService[] workers;
+
+	// tasks own pooled buffers and carry updates that client can't miss, so they are never dropped - if worker can't accept them, they run on calling thread
+	private static final RejectedExecutionHandler BLOCK_ON_FULL_QUEUE = (task, executor) -> {
+		if (!executor.isShutdown()) {
+			try {
+				executor.getQueue().put(task);
+				// worker may have been shut down while waiting
+				if (!executor.isShutdown() || !executor.remove(task)) return;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				Log.warn(e, "Interrupted while waiting for sync encoder, encoding on calling thread");
+			}
+		}
+
+		task.run();
+	};
+
+	public static boolean isEnabled() {
+		return LibConfig.asyncSyncEncoding;
+	}
+
+	private synchronized ExecutorService[] getWorkers() {
+		if (workers == null) {
+			final ThreadFactory threadFactory = new ThreadFactoryBuilder()
+					.setNameFormat("OpenMods sync encoder #%d")
+					.setDaemon(true)
+					.build();
+
+			final int workerCount = Math.max(1, LibConfig.syncEncoderThreads);
+			workers = new ExecutorService[workerCount];
+			for (int i = 0; i < workerCount; i++) {
+				final BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(Math.max(1, LibConfig.syncEncoderQueueSize));
+				workers[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, queue, threadFactory, BLOCK_ON_FULL_QUEUE);
+			}
+		}
+
+		return workers;
+	}
+
+	private ExecutorService getWorker(Object owner) {
+		final ExecutorService[] workers = getWorkers();
+		final int hash = System.identityHashCode(owner);
+		return workers[(hash & Integer.MAX_VALUE) % workers.length];
+	}
+
+	public void execute(Object owner, Runnable task) {
+		getWorker(owner).execute(() -> {
+			try {
+				task.run();
+			} catch (Throwable t) {
+				Log.warn(t, "Failed to encode sync update");
+			}
+		});
+	}
+
+	/**
+	 * Waits until all tasks of owner submitted before this call are finished.
+	 * Used before sending data that must not be overtaken by older updates (i.e. initialization).
+	 */
+	public void drain(Object owner) {
+		final Future<?> fence = getWorker(owner).submit(() -> {});
+		try {
+			fence.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			Log.warn(e, "Interrupted while waiting for sync encoder");
+		} catch (ExecutionException e) {
+			Log.warn(e, "Failed to wait for sync encoder");
+		}
+	}
+}
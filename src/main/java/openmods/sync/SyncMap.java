@@ -20,6 +20,19 @@ public abstract class SyncMap {
 		}
 	}
 
+	// Initialization data formats. Full form contains names and types of all objects.
+	// Schema reference form contains only SyncMapSchema hash and values, it's only used when receiver already stored schema
+	protected static final int INIT_FULL = 0;
+	protected static final int INIT_SCHEMA_REF = 2;
+
+	// Used instead of owner type in records with SyncMapSchema definitions.
+	// Such records don't depend on owner, so receiver can store schema even if owner of following INIT_SCHEMA_REF record is not available yet
+	static final int SCHEMA_RECORD = 0x40;
+
+	// Added to owner type in records with initialization data, so receiver can tell them apart from updates.
+	// Update records (most of traffic) keep plain owner type
+	static final int INIT_RECORD_FLAG = 0x100;
+
 	// Note: try... methods are non-throwing variants of read/write methods
 	// They are convenient when methods can be called via client-side HUD modifiers
 
@@ -43,6 +56,11 @@ public abstract class SyncMap {
 
 	public abstract void registerObject(String name, ISyncableObject value);
 
+	/**
+	 * Must be called after object is registered.
+	 */
+	public abstract void setUpdateRate(String name, int minInterval, SyncPriority priority);
+
 	public abstract ISyncableObject getObjectById(int id);
 
 	public abstract int getObjectId(ISyncableObject object);
@@ -3,6 +3,7 @@ package openmods.sync;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import io.netty.buffer.ByteBuf;
@@ -13,6 +14,7 @@ import java.util.Map;
 import java.util.Set;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.network.PacketBuffer;
+import openmods.Log;
 import openmods.utils.bitstream.InputBitStream;
 
 public class SyncMapClient extends SyncMap {
@@ -54,13 +56,23 @@ public class SyncMapClient extends SyncMap {
 
 	@Override
 	public void readIntializationData(PacketBuffer dis) throws IOException {
-		final int count = dis.readVarInt();
+		final int format = dis.readVarInt();
+		switch (format) {
+			case INIT_FULL:
+				readFullIntializationData(dis);
+				break;
+			case INIT_SCHEMA_REF:
+				readSchemaRefIntializationData(dis);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown initialization data format: " + format);
+		}
+	}
 
-		final ImmutableList.Builder<ISyncableObject> idToObject = ImmutableList.builder();
+	private void readFullIntializationData(PacketBuffer dis) throws IOException {
+		final int count = dis.readVarInt();
 
-		final ImmutableMap.Builder<ISyncableObject, Integer> objectToId = ImmutableMap.builder();
-
-		final Set<ISyncableObject> changedObjects = Sets.newIdentityHashSet();
+		final List<ISyncableObject> objects = Lists.newArrayListWithCapacity(count);
 
 		for (int i = 0; i < count; i++) {
 			final String id = dis.readString(Short.MAX_VALUE);
@@ -68,21 +80,55 @@ public class SyncMapClient extends SyncMap {
 
 			final SyncableObjectType type = SyncableObjectTypeRegistry.getType(typeId);
 
-			ISyncableObject object = availableObjects.get(id);
-			if (object == null || !type.isValidType(object))
-				object = type.createDummyObject();
+			final ISyncableObject object = findObject(id, type);
+			object.readFromStream(dis);
+
+			objects.add(object);
+		}
+
+		setObjects(objects);
+	}
+
+	private void readSchemaRefIntializationData(PacketBuffer dis) throws IOException {
+		final long hash = dis.readLong();
+		final SyncMapSchema schema = SyncSchemaCache.getReceivedSchema(hash);
+		if (schema == null) {
+			// values can't be parsed without schema, so map stays uninitialized and receiver should ask for full data
+			Log.warn("Unknown sync map schema: %016x, skipping initialization", hash);
+			return;
+		}
+
+		final int count = schema.size();
+		final List<ISyncableObject> objects = Lists.newArrayListWithCapacity(count);
 
+		for (int i = 0; i < count; i++) {
+			final ISyncableObject object = findObject(schema.getName(i), schema.getType(i));
 			object.readFromStream(dis);
+			objects.add(object);
+		}
 
-			idToObject.add(object);
-			objectToId.put(object, i);
+		setObjects(objects);
+	}
+
+	private ISyncableObject findObject(String id, SyncableObjectType type) {
+		final ISyncableObject object = availableObjects.get(id);
+		return (object != null && type.isValidType(object))? object : type.createDummyObject();
+	}
 
+	private void setObjects(List<ISyncableObject> objects) {
+		final ImmutableMap.Builder<ISyncableObject, Integer> objectToId = ImmutableMap.builder();
+		final Set<ISyncableObject> changedObjects = Sets.newIdentityHashSet();
+
+		for (int i = 0; i < objects.size(); i++) {
+			final ISyncableObject object = objects.get(i);
+			objectToId.put(object, i);
 			changedObjects.add(object);
 		}
 
-		this.idToObject = idToObject.build();
+		this.idToObject = ImmutableList.copyOf(objects);
+		this.initializationRequested = false;
 		this.objectToId = objectToId.build();
-		this.bitmapLength = (count + 7) / 8;
+		this.bitmapLength = (objects.size() + 7) / 8;
 
 		notifySyncListeners(updateListeners, Collections.unmodifiableSet(changedObjects));
 	}
@@ -91,11 +137,14 @@ public class SyncMapClient extends SyncMap {
 
 	@Override
 	public void readUpdate(PacketBuffer dis) throws IOException {
-		if (bitmapLength <= 0) {
-			// Initial data not received yet - assuming this is initialization packet
-			readIntializationData(dis);
-			return;
-		}
+		final long start = SyncMetrics.startTimer();
+		readUpdateData(dis);
+		SyncMetrics.stopTimer(SyncMetrics.TIMER_READ_UPDATE, start);
+	}
+
+	private void readUpdateData(PacketBuffer dis) throws IOException {
+		// update can't be parsed without initialization data, receiver should ask for it
+		if (!isInitialized()) return;
 
 		final ByteBuf bitmapData = dis.readSlice(bitmapLength);
 
@@ -105,7 +154,9 @@ public class SyncMapClient extends SyncMap {
 		for (int i = 0; i < idToObject.size(); i++) {
 			if (bitmap.readBit()) {
 				ISyncableObject obj = idToObject.get(i);
-				obj.readFromStream(dis);
+				if (obj instanceof IDeltaSyncableObject) ((IDeltaSyncableObject)obj).readDeltaFromStream(dis);
+				else obj.readFromStream(dis);
+				if (obj instanceof IInterpolatedSyncableObject) ((IInterpolatedSyncableObject)obj).onRemoteUpdate(getUpdateInterval(obj));
 				changes.add(obj);
 			}
 		}
@@ -116,18 +167,56 @@ public class SyncMapClient extends SyncMap {
 
 	private final Map<String, ISyncableObject> availableObjects = Maps.newHashMap();
 
+	private final Map<ISyncableObject, Integer> updateIntervals = Maps.newIdentityHashMap();
+
 	private int bitmapLength = 0;
 
 	private List<ISyncableObject> idToObject;
 
 	private Map<ISyncableObject, Integer> objectToId;
 
+	private boolean initializationRequested;
+
 	@Override
 	public void registerObject(String name, ISyncableObject value) {
 		final ISyncableObject prev = availableObjects.put(name, value);
 		Preconditions.checkState(prev == null, "Duplicate object '%s': %s -> %s", name, value);
 	}
 
+	@Override
+	public void setUpdateRate(String name, int minInterval, SyncPriority priority) {
+		final ISyncableObject object = availableObjects.get(name);
+		Preconditions.checkState(object != null, "Object '%s' not registered", name);
+		updateIntervals.put(object, minInterval);
+	}
+
+	private int getUpdateInterval(ISyncableObject object) {
+		final Integer result = updateIntervals.get(object);
+		return result != null? result : 0;
+	}
+
+	public boolean isInitialized() {
+		return idToObject != null;
+	}
+
+	/**
+	 * Drops initialization data, so updates are ignored until map is initialized again
+	 */
+	public void reset() {
+		idToObject = null;
+		objectToId = null;
+		bitmapLength = 0;
+	}
+
+	/**
+	 * @return true if receiver should ask for initialization data, i.e. it was not requested since last initialization
+	 */
+	public boolean markInitializationRequested() {
+		if (initializationRequested) return false;
+		initializationRequested = true;
+		return true;
+	}
+
 	@Override
 	public ISyncableObject getObjectById(int id) {
 		Preconditions.checkState(idToObject != null, "Initial data not received yet!");
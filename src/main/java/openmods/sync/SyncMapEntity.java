@@ -7,7 +7,7 @@ import net.minecraft.network.PacketBuffer;
 import net.minecraft.world.World;
 import net.minecraft.world.WorldServer;
 import openmods.Log;
-import openmods.utils.NetUtils;
+import openmods.utils.WatcherSnapshotCache;
 
 public class SyncMapEntity extends SyncMapServer {
 
@@ -42,11 +42,21 @@ public class SyncMapEntity extends SyncMapServer {
 
 	@Override
 	protected Set<EntityPlayerMP> getPlayersWatching() {
-		return NetUtils.getPlayersWatchingEntity((WorldServer)owner.world, owner);
+		return WatcherSnapshotCache.INSTANCE.getEntityWatchers((WorldServer)owner.world, owner);
 	}
 
 	@Override
 	protected boolean isInvalid() {
 		return owner.isDead;
 	}
+
+	@Override
+	protected Class<?> getOwnerClass() {
+		return owner.getClass();
+	}
+
+	@Override
+	protected double getDistanceSq(EntityPlayerMP player) {
+		return player.getDistanceSq(owner);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,113 @@
+package openmods.sync;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import net.minecraft.network.PacketBuffer;
+
+/**
+ * Ordered names and types of objects in sync map.
+ * Hash depends only on names and type registry names, so it's stable between server and client.
+ * If receiver already knows schema, initialization packet can contain only hash and values.
+ */
+public class SyncMapSchema {
+
+	private static final ConcurrentMap<Long, SyncMapSchema> INTERNED = Maps.newConcurrentMap();
+
+	private final List<String> names;
+
+	private final List<SyncableObjectType> types;
+
+	private final long hash;
+
+	private SyncMapSchema(List<String> names, List<SyncableObjectType> types) {
+		Preconditions.checkArgument(names.size() == types.size(), "Names and types size mismatch");
+		this.names = ImmutableList.copyOf(names);
+		this.types = ImmutableList.copyOf(types);
+		this.hash = calculateHash(this.names, this.types);
+	}
+
+	private static long calculateHash(List<String> names, List<SyncableObjectType> types) {
+		final Hasher hasher = Hashing.murmur3_128().newHasher();
+		hasher.putInt(names.size());
+		for (int i = 0; i < names.size(); i++) {
+			hasher.putString(names.get(i), StandardCharsets.UTF_8);
+			hasher.putString(String.valueOf(types.get(i).getRegistryName()), StandardCharsets.UTF_8);
+		}
+		return hasher.hash().asLong();
+	}
+
+	public static SyncMapSchema create(List<String> names, List<SyncableObjectType> types) {
+		return new SyncMapSchema(names, types);
+	}
+
+	/**
+	 * Returns shared instance of equal schema. If different schema with same hash is already registered, returns null - such schema should always be sent in full form.
+	 */
+	public static SyncMapSchema intern(SyncMapSchema schema) {
+		final SyncMapSchema prev = INTERNED.putIfAbsent(schema.hash, schema);
+		if (prev == null) return schema;
+		return prev.equals(schema)? prev : null;
+	}
+
+	public void writeToStream(PacketBuffer output) {
+		output.writeVarInt(names.size());
+		for (int i = 0; i < names.size(); i++) {
+			output.writeString(names.get(i));
+			output.writeVarInt(SyncableObjectTypeRegistry.getTypeId(types.get(i)));
+		}
+	}
+
+	public static SyncMapSchema readFromStream(PacketBuffer input) {
+		final int count = input.readVarInt();
+		final List<String> names = Lists.newArrayListWithCapacity(count);
+		final List<SyncableObjectType> types = Lists.newArrayListWithCapacity(count);
+		for (int i = 0; i < count; i++) {
+			names.add(input.readString(Short.MAX_VALUE));
+			types.add(SyncableObjectTypeRegistry.getType(input.readVarInt()));
+		}
+		return new SyncMapSchema(names, types);
+	}
+
+	public long hash() {
+		return hash;
+	}
+
+	public int size() {
+		return names.size();
+	}
+
+	public String getName(int index) {
+		return names.get(index);
+	}
+
+	public SyncableObjectType getType(int index) {
+		return types.get(index);
+	}
+
+	@Override
+	public int hashCode() {
+		return (int)(hash ^ (hash >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) return true;
+		if (!(obj instanceof SyncMapSchema)) return false;
+		final SyncMapSchema other = (SyncMapSchema)obj;
+		return other.hash == this.hash &&
+				other.names.equals(this.names) &&
+				other.types.equals(this.types);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Schema{%016x: %s}", hash, names);
+	}
+}
@@ -1,33 +1,57 @@
 package openmods.sync;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import java.io.IOException;
+import java.util.AbstractSet;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.fml.common.FMLCommonHandler;
+import net.minecraftforge.fml.common.network.handshake.NetworkDispatcher;
+import openmods.LibConfig;
 import openmods.Log;
-import openmods.utils.bitstream.OutputBitStream;
+import openmods.network.OutboundBudget;
+import openmods.network.targets.SelectMultiplePlayers;
+import openmods.utils.io.PacketBuffers;
+import openmods.utils.io.PacketBuffers.SizeHint;
 
 public abstract class SyncMapServer extends SyncMap {
 
 	private final Map<String, ISyncableObject> objects = Maps.newHashMap();
 
 	private static class Entry {
+		private final int id;
 		private final String name;
 		private final ISyncableObject obj;
 		private final SyncableObjectType type;
 
-		public Entry(String name, ISyncableObject obj) {
+		private int minInterval;
+
+		private SyncPriority priority = SyncPriority.HIGH;
+
+		private long nextAllowedTick;
+
+		public Entry(int id, String name, ISyncableObject obj) {
+			this.id = id;
 			this.name = name;
 			this.obj = obj;
 			this.type = SyncableObjectTypeRegistry.getType(obj.getClass());
@@ -37,14 +61,61 @@ public abstract class SyncMapServer extends SyncMap {
 
 	private final List<Entry> orderedEntries = Lists.newArrayList();
 
+	// objects not implementing IDirtyMaskTracked, need to be polled on every update
+	private final List<Entry> untrackedEntries = Lists.newArrayList();
+
+	// set directly by objects in markDirty()
+	private final DirtyMask dirtyObjects = new DirtyMask();
+
+	// changes collected for current update, always empty outside sendUpdates
+	private final DirtyMask pendingChanges = new DirtyMask();
+
+	private final Set<ISyncableObject> pendingChangesView = new PendingChangesView();
+
+	// entries with SyncRate set, empty for most maps
+	private final List<Entry> rateLimitedEntries = Lists.newArrayList();
+
+	// changes not sent yet due to rate limit
+	private final DirtyMask heldChanges = new DirtyMask();
+
+	private final DirtyMask lowPriorityObjects = new DirtyMask();
+
+	private final DirtyMask criticalObjects = new DirtyMask();
+
+	private static class DeferredChanges {
+		private final EntityPlayerMP player;
+
+		private final DirtyMask changes = new DirtyMask();
+
+		public DeferredChanges(EntityPlayerMP player) {
+			this.player = player;
+		}
+	}
+
+	// changes not sent to players over outbound budget, keyed by entity id. Empty for most maps
+	private final TIntObjectMap<DeferredChanges> deferredChanges = new TIntObjectHashMap<>();
+
+	private final SizeHint updateSizeHint = new SizeHint();
+
+	private final SizeHint initSizeHint = new SizeHint(256);
+
 	private final Map<ISyncableObject, Integer> objectToId = Maps.newIdentityHashMap();
 
 	private boolean firstRemoteObjectInitialized = false;
 
 	private int bitmapLength;
 
+	// null if schema hash collides with other schema
+	private SyncMapSchema schema;
+
 	private final IUpdateStrategy updateStrategy;
 
+	// updates handed to SyncEncoder and not sent yet
+	private final AtomicInteger queuedAsyncUpdates = new AtomicInteger();
+
+	// SyncPacketAggregator generation at time of last record appended by this map
+	private volatile long aggregatedGeneration = -1;
+
 	public SyncMapServer(UpdateStrategy strategy) {
 		this.updateStrategy = strategy.create(this);
 	}
@@ -59,12 +130,40 @@ public abstract class SyncMapServer extends SyncMap {
 		}
 
 		final int newId = orderedEntries.size();
-		orderedEntries.add(new Entry(name, value));
+		final Entry entry = new Entry(newId, name, value);
+		orderedEntries.add(entry);
 
 		{
 			final Integer prev = objectToId.put(value, newId);
 			Preconditions.checkState(prev == null, "Duplicate object '%s', %s -> %s", name, prev, newId);
 		}
+
+		dirtyObjects.ensureSize(newId + 1);
+		pendingChanges.ensureSize(newId + 1);
+		heldChanges.ensureSize(newId + 1);
+		lowPriorityObjects.ensureSize(newId + 1);
+		criticalObjects.ensureSize(newId + 1);
+
+		if (value instanceof IDirtyMaskTracked) ((IDirtyMaskTracked)value).attachDirtyMask(dirtyObjects, newId);
+		else untrackedEntries.add(entry);
+	}
+
+	@Override
+	public void setUpdateRate(String name, int minInterval, SyncPriority priority) {
+		final ISyncableObject object = objects.get(name);
+		Preconditions.checkState(object != null, "Object '%s' not registered", name);
+		Preconditions.checkArgument(minInterval >= 0, "Negative interval: %s", minInterval);
+
+		final Entry entry = orderedEntries.get(objectToId.get(object));
+		if (!rateLimitedEntries.contains(entry)) rateLimitedEntries.add(entry);
+		entry.minInterval = minInterval;
+		entry.priority = priority;
+
+		if (priority == SyncPriority.LOW) lowPriorityObjects.set(entry.id);
+		else lowPriorityObjects.clear(entry.id);
+
+		if (priority == SyncPriority.CRITICAL) criticalObjects.set(entry.id);
+		else criticalObjects.clear(entry.id);
 	}
 
 	@Override
@@ -118,7 +217,14 @@ public abstract class SyncMapServer extends SyncMap {
 
 	@Override
 	public void writeInitializationData(PacketBuffer dos) throws IOException {
+		// initialization data is sent outside sync channel, so older updates must be sent before it, or they would overwrite newer values
+		awaitAsyncUpdates();
+		if (aggregatedGeneration == SyncPacketAggregator.INSTANCE.generation()) SyncPacketAggregator.INSTANCE.flush();
+
+		final int start = dos.writerIndex();
 		updateStrategy.writeInitializationData(dos);
+		// receivers not known here
+		SyncMetrics.recordSend(getOwnerClass(), SyncMetrics.PACKET_INIT, dos.writerIndex() - start, 1);
 	}
 
 	private void writeOwnerInfo(PacketBuffer dos) {
@@ -126,12 +232,31 @@ public abstract class SyncMapServer extends SyncMap {
 		writeOwnerData(dos);
 	}
 
-	private void writeSyncObjectInitialization(PacketBuffer dos) throws IOException {
+	private void writeInitOwnerInfo(PacketBuffer dos) {
+		dos.writeVarInt(getOwnerType() | INIT_RECORD_FLAG);
+		writeOwnerData(dos);
+	}
+
+	private void initializeRemoteObjects() {
 		if (!firstRemoteObjectInitialized) {
 			firstRemoteObjectInitialized = true;
 			bitmapLength = (objects.size() + 7) / 8;
+
+			final List<String> names = Lists.newArrayListWithCapacity(orderedEntries.size());
+			final List<SyncableObjectType> types = Lists.newArrayListWithCapacity(orderedEntries.size());
+			for (Entry e : orderedEntries) {
+				names.add(e.name);
+				types.add(e.type);
+			}
+
+			schema = SyncMapSchema.intern(SyncMapSchema.create(names, types));
 		}
+	}
+
+	private void writeSyncObjectInitialization(PacketBuffer dos) throws IOException {
+		initializeRemoteObjects();
 
+		dos.writeVarInt(INIT_FULL);
 		dos.writeVarInt(objects.size());
 
 		for (Entry e : orderedEntries) {
@@ -140,60 +265,293 @@ public abstract class SyncMapServer extends SyncMap {
 			final int typeId = SyncableObjectTypeRegistry.getTypeId(e.type);
 			dos.writeVarInt(typeId);
 
-			e.obj.writeToStream(dos);
+			writeInitObject(dos, e);
 		}
 	}
 
-	private void writeUpdatePacket(PacketBuffer dos, Set<ISyncableObject> changes) throws IOException {
+	private void writeSchemaRecord(PacketBuffer dos) {
+		dos.writeVarInt(SCHEMA_RECORD);
+		schema.writeToStream(dos);
+	}
+
+	private void writeSyncObjectInitializationWithSchemaRef(PacketBuffer dos) throws IOException {
+		Preconditions.checkState(schema != null, "Schema not available");
+
+		dos.writeVarInt(INIT_SCHEMA_REF);
+		dos.writeLong(schema.hash());
+
+		for (Entry e : orderedEntries)
+			writeInitObject(dos, e);
+	}
+
+	private void writeUpdateBitmap(PacketBuffer dos, DirtyMask changes) {
 		Preconditions.checkState(firstRemoteObjectInitialized, "Remote objects not intialized yet");
 
-		final ByteBuf bitmapData = dos.slice(dos.writerIndex(), bitmapLength);
-		bitmapData.clear();
-		dos.writeZero(bitmapLength);
+		// mask uses same bit order as client-side InputBitStream, so bitmap can be copied directly
+		for (int i = 0; i < bitmapLength; i++)
+			dos.writeByte(changes.getBitmapByte(i));
+	}
 
-		final OutputBitStream bitmap = new OutputBitStream(bitmapData::writeByte);
+	// delta objects can write only changes since last update, so cumulative updates must use full form
+	private void writeUpdatePacket(PacketBuffer dos, DirtyMask changes, boolean allowDeltas) throws IOException {
+		writeUpdateBitmap(dos, changes);
 
-		for (Entry e : orderedEntries) {
-			if (changes.contains(e.obj)) {
-				e.obj.writeToStream(dos);
-				bitmap.writeBit(true);
+		for (int i = changes.nextSetBit(0); i >= 0; i = changes.nextSetBit(i + 1))
+			writeObject(dos, orderedEntries.get(i), allowDeltas);
+	}
+
+	// initialization data is read with readFromStream, even for delta objects
+	private static void writeInitObject(PacketBuffer dos, Entry e) throws IOException {
+		final int start = dos.writerIndex();
+		e.obj.writeToStream(dos);
+		SyncMetrics.recordObjectWrite(e.type, dos.writerIndex() - start);
+	}
+
+	private static void writeObject(PacketBuffer dos, Entry e, boolean allowDeltas) throws IOException {
+		final int start = dos.writerIndex();
+		final ISyncableObject obj = e.obj;
+		if (obj instanceof IDeltaSyncableObject) writeDeltaObject(dos, (IDeltaSyncableObject)obj, allowDeltas);
+		else obj.writeToStream(dos);
+		SyncMetrics.recordObjectWrite(e.type, dos.writerIndex() - start);
+	}
+
+	// receiver always reads delta objects with readDeltaFromStream, so full form must still contain mode
+	private static void writeDeltaObject(PacketBuffer dos, IDeltaSyncableObject obj, boolean allowDeltas) throws IOException {
+		if (allowDeltas) obj.writeDeltaToStream(dos);
+		else obj.writeFullToStream(dos);
+	}
+
+	private void sendUpdate(DirtyMask changes, Collection<EntityPlayerMP> targets, boolean allowDeltas) {
+		final Collection<EntityPlayerMP> receivers = deferForThrottledPlayers(changes, targets);
+		if (!receivers.isEmpty()) writeAndSendUpdate(changes, receivers, allowDeltas);
+	}
+
+	private Collection<EntityPlayerMP> deferForThrottledPlayers(DirtyMask changes, Collection<EntityPlayerMP> targets) {
+		final boolean deferEnabled = LibConfig.deferThrottledSync;
+		if (!deferEnabled && deferredChanges.isEmpty()) return targets;
+
+		final boolean critical = changes.intersects(criticalObjects);
+
+		// copied only when first player is skipped
+		List<EntityPlayerMP> receivers = null;
+		int checked = 0;
+		for (EntityPlayerMP player : targets) {
+			if (tryDefer(player, changes, critical, deferEnabled)) {
+				if (receivers == null) receivers = Lists.newArrayList(Iterables.limit(targets, checked));
+			} else if (receivers != null) {
+				receivers.add(player);
+			}
+			checked++;
+		}
+
+		return receivers != null? receivers : targets;
+	}
+
+	private boolean tryDefer(EntityPlayerMP player, DirtyMask changes, boolean critical, boolean deferEnabled) {
+		final int playerId = player.getEntityId();
+		DeferredChanges deferred = deferredChanges.get(playerId);
+		if (deferred != null) {
+			// player already missed some deltas, so this update must be merged too
+			deferred.changes.or(changes);
+			if (critical) {
+				OutboundBudget.recordBypass();
+				deferredChanges.remove(playerId);
+				writeAndSendUpdate(deferred.changes, Collections.singleton(player), false);
 			} else {
-				bitmap.writeBit(false);
+				SyncMetrics.count(SyncMetrics.GROUP_OWNER_DEFERRED, getOwnerClass().getName(), 1);
 			}
+			return true;
 		}
 
-		bitmap.flush();
+		if (!deferEnabled || !OutboundBudget.isThrottled(player)) return false;
+
+		if (critical) {
+			OutboundBudget.recordBypass();
+			return false;
+		}
+
+		deferred = new DeferredChanges(player);
+		deferred.changes.or(changes);
+		deferredChanges.put(playerId, deferred);
+		SyncMetrics.count(SyncMetrics.GROUP_OWNER_DEFERRED, getOwnerClass().getName(), 1);
+		return true;
+	}
+
+	// merged changes are sent in full form, since some deltas were never sent
+	private void sendDeferredChanges() {
+		final boolean deferEnabled = LibConfig.deferThrottledSync;
+		for (EntityPlayerMP player : getPlayersWatching()) {
+			final int playerId = player.getEntityId();
+			final DeferredChanges deferred = deferredChanges.get(playerId);
+			if (deferred != null && !(deferEnabled && OutboundBudget.isThrottled(player))) {
+				deferredChanges.remove(playerId);
+				writeAndSendUpdate(deferred.changes, Collections.singleton(player), false);
+			}
+		}
+
+		// players that are not watching keep their changes until they return
+		deferredChanges.retainEntries((playerId, deferred) -> !deferred.player.hasDisconnected());
+	}
+
+	private void writeAndSendUpdate(DirtyMask changes, Collection<EntityPlayerMP> targets, boolean allowDeltas) {
+		try {
+			if (SyncEncoder.isEnabled()) {
+				sendUpdateAsync(changes, targets, allowDeltas);
+			} else {
+				// async encoding may have been just disabled
+				awaitAsyncUpdates();
+				final long start = SyncMetrics.startTimer();
+				final PacketBuffer deltaPayload = PacketBuffers.scratch(updateSizeHint);
+				try {
+					writeOwnerInfo(deltaPayload);
+					writeUpdatePacket(deltaPayload, changes, allowDeltas);
+					SyncMetrics.stopTimer(SyncMetrics.TIMER_WRITE_UPDATE, start);
+
+					// record is copied into packet, so it can be released immediately
+					sendRecord(deltaPayload, targets);
+					SyncMetrics.recordSend(getOwnerClass(), SyncMetrics.PACKET_DELTA, deltaPayload.readableBytes(), targets.size());
+				} finally {
+					PacketBuffers.release(deltaPayload, updateSizeHint);
+				}
+			}
+		} catch (IOException e) {
+			Log.warn(e, "IOError during delta sync");
+		}
+	}
+
+	private static class EncodedSnapshot implements ISyncableSnapshot {
+		private final ByteBuf buffer;
+		private final int offset;
+		private final int length;
+
+		public EncodedSnapshot(ByteBuf buffer, int offset, int length) {
+			this.buffer = buffer;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public void writeToStream(PacketBuffer stream) {
+			stream.writeBytes(buffer, offset, length);
+		}
+	}
+
+	/**
+	 * Waits for updates queued in {@link SyncEncoder}. Must be called before sending anything from server thread, since older updates could overwrite it on client.
+	 */
+	private void awaitAsyncUpdates() {
+		if (queuedAsyncUpdates.get() > 0) SyncEncoder.INSTANCE.drain(this);
+	}
+
+	// only values are copied here, encoding and sending is done by worker
+	private void sendUpdateAsync(DirtyMask changes, Collection<EntityPlayerMP> targets, boolean allowDeltas) throws IOException {
+		// coalesced records are sent by server thread, so worker only needs players, otherwise it sends directly to connections
+		final boolean coalesce = LibConfig.coalesceSyncPackets;
+		final List<EntityPlayerMP> players = coalesce? ImmutableList.copyOf(targets) : null;
+		final List<NetworkDispatcher> dispatchers = coalesce? null : Lists.newArrayList();
+		if (!coalesce) {
+			SelectMultiplePlayers.INSTANCE.listDispatchers(targets, dispatchers);
+			if (dispatchers.isEmpty()) return;
+		}
+
+		// both buffers are released by worker (or here, if encoding fails before handing them over)
+		final PacketBuffer record = PacketBuffers.scratch(updateSizeHint);
+		PacketBuffer preEncoded = null;
+
+		final int changeCount = changes.cardinality();
+		final List<ISyncableSnapshot> snapshots = Lists.newArrayListWithCapacity(changeCount);
+		// entry list is not safe to access from worker
+		final List<SyncableObjectType> types = SyncMetrics.isEnabled()? Lists.newArrayListWithCapacity(changeCount) : null;
+
+		try {
+			writeOwnerInfo(record);
+			writeUpdateBitmap(record, changes);
+
+			for (int i = changes.nextSetBit(0); i >= 0; i = changes.nextSetBit(i + 1)) {
+				final Entry e = orderedEntries.get(i);
+				if (types != null) types.add(e.type);
+				final ISyncableObject obj = e.obj;
+				final boolean isDelta = obj instanceof IDeltaSyncableObject;
+				if (obj instanceof ISnapshotSyncableObject) {
+					snapshots.add(((ISnapshotSyncableObject)obj).createSnapshot(allowDeltas && isDelta));
+				} else {
+					if (preEncoded == null) preEncoded = PacketBuffers.scratch();
+					final int start = preEncoded.writerIndex();
+					if (isDelta) writeDeltaObject(preEncoded, (IDeltaSyncableObject)obj, allowDeltas);
+					else obj.writeToStream(preEncoded);
+					snapshots.add(new EncodedSnapshot(preEncoded, start, preEncoded.writerIndex() - start));
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			record.release();
+			if (preEncoded != null) preEncoded.release();
+			throw e;
+		}
+
+		final Class<?> ownerCls = getOwnerClass();
+		final ByteBuf preEncodedBuffer = preEncoded;
+		final int receiverCount = coalesce? players.size() : dispatchers.size();
+		queuedAsyncUpdates.incrementAndGet();
+		SyncEncoder.INSTANCE.execute(this, () -> {
+			try {
+				final long start = SyncMetrics.startTimer();
+				for (int i = 0; i < snapshots.size(); i++) {
+					final int objectStart = record.writerIndex();
+					snapshots.get(i).writeToStream(record);
+					if (types != null) SyncMetrics.recordObjectWrite(types.get(i), record.writerIndex() - objectStart);
+				}
+				SyncMetrics.stopTimer(SyncMetrics.TIMER_WRITE_UPDATE, start);
+
+				if (coalesce) {
+					SyncPacketAggregator.INSTANCE.appendFromWorker(record, players);
+					aggregatedGeneration = SyncPacketAggregator.INSTANCE.generation();
+				} else {
+					SyncChannelHolder.INSTANCE.sendRecordToDispatchers(record, dispatchers);
+				}
+				SyncMetrics.recordSend(ownerCls, SyncMetrics.PACKET_DELTA, record.readableBytes(), receiverCount);
+			} catch (IOException e) {
+				Log.warn(e, "IOError during delta sync");
+			} finally {
+				PacketBuffers.release(record, updateSizeHint);
+				if (preEncodedBuffer != null) preEncodedBuffer.release();
+				queuedAsyncUpdates.decrementAndGet();
+			}
+		});
+	}
+
+	/**
+	 * Record buffer is owned by caller, so implementations must copy it, if it's needed after return
+	 */
+	protected void sendRecord(PacketBuffer record, Collection<EntityPlayerMP> targets) {
+		SyncChannelHolder.INSTANCE.sendRecordToPlayers(record, targets);
+		if (LibConfig.coalesceSyncPackets) aggregatedGeneration = SyncPacketAggregator.INSTANCE.generation();
 	}
 
 	protected interface IUpdateStrategy {
-		public void sendUpdates(Set<ISyncableObject> changedObjects);
+		public void sendUpdates(DirtyMask changedObjects);
 
 		public void writeInitializationData(PacketBuffer dos) throws IOException;
 
 		public boolean canSendUpdates();
+
+		public void resendInitialization(EntityPlayerMP player);
 	}
 
 	private class SeparateInitializationPacketStrategy implements IUpdateStrategy {
 
 		@Override
-		public void sendUpdates(Set<ISyncableObject> changedObjects) {
+		public void sendUpdates(DirtyMask changedObjects) {
 			if (changedObjects.isEmpty()) return;
 
 			final Set<EntityPlayerMP> players = getPlayersWatching();
 
-			try {
-				final PacketBuffer deltaPayload = new PacketBuffer(Unpooled.buffer());
-				writeOwnerInfo(deltaPayload);
-				writeUpdatePacket(deltaPayload, changedObjects);
-				SyncChannelHolder.INSTANCE.sendPayloadToPlayers(deltaPayload, players);
-			} catch (IOException e) {
-				Log.warn(e, "IOError during delta sync");
-			}
+			sendUpdate(changedObjects, players, true);
 		}
 
 		@Override
 		public void writeInitializationData(PacketBuffer dos) throws IOException {
 			// owner info not required, as initialization packet is assumed to already be directed
+			// receiver is not known here, so full form with names is always used
 			writeSyncObjectInitialization(dos);
 		}
 
@@ -201,6 +559,11 @@ public abstract class SyncMapServer extends SyncMap {
 		public boolean canSendUpdates() {
 			return firstRemoteObjectInitialized;
 		}
+
+		@Override
+		public void resendInitialization(EntityPlayerMP player) {
+			// initialization data is sent by owner (i.e. in tile description packet) and never references schema
+		}
 	}
 
 	private class SelfInitializingUpdateStrategy implements IUpdateStrategy {
@@ -208,39 +571,80 @@ public abstract class SyncMapServer extends SyncMap {
 		private Set<Integer> knownUsers = Sets.newHashSet();
 
 		@Override
-		public void sendUpdates(Set<ISyncableObject> changes) {
+		public void sendUpdates(DirtyMask changes) {
 			final boolean hasChanges = !changes.isEmpty();
 
-			List<EntityPlayerMP> fullPacketTargets = Lists.newArrayList();
-			List<EntityPlayerMP> deltaPacketTargets = Lists.newArrayList();
+			List<EntityPlayerMP> fullPacketTargets = null;
+			List<EntityPlayerMP> schemaPacketTargets = null;
+			List<EntityPlayerMP> schemaRefPacketTargets = null;
+			List<EntityPlayerMP> deltaPacketTargets = null;
+
+			initializeRemoteObjects();
 
 			Set<EntityPlayerMP> players = getPlayersWatching();
 			for (EntityPlayerMP player : players) {
 				if (knownUsers.contains(player.getEntityId())) {
-					if (hasChanges) deltaPacketTargets.add(player);
+					if (hasChanges) {
+						if (deltaPacketTargets == null) deltaPacketTargets = Lists.newArrayList();
+						deltaPacketTargets.add(player);
+					}
 				} else {
 					knownUsers.add(player.getEntityId());
-					fullPacketTargets.add(player);
+					if (schema == null) {
+						if (fullPacketTargets == null) fullPacketTargets = Lists.newArrayList();
+						fullPacketTargets.add(player);
+					} else {
+						// schema is sent in separate record, so client stores it even if it can't find owner of this map yet
+						if (!SyncSchemaCache.isKnownByPlayer(player, schema)) {
+							if (schemaPacketTargets == null) schemaPacketTargets = Lists.newArrayList();
+							schemaPacketTargets.add(player);
+							SyncSchemaCache.markKnownByPlayer(player, schema);
+						}
+
+						if (schemaRefPacketTargets == null) schemaRefPacketTargets = Lists.newArrayList();
+						schemaRefPacketTargets.add(player);
+					}
 				}
 			}
 
+			if (deltaPacketTargets != null) sendUpdate(changes, deltaPacketTargets, true);
+
+			// receivers of initialization may still have older updates waiting in encoder (i.e. after resendInitialization)
+			if (fullPacketTargets != null || schemaRefPacketTargets != null) awaitAsyncUpdates();
+
 			try {
-				if (!deltaPacketTargets.isEmpty()) {
-					final PacketBuffer deltaPayload = new PacketBuffer(Unpooled.buffer());
-					writeOwnerInfo(deltaPayload);
-					writeUpdatePacket(deltaPayload, changes);
-					SyncChannelHolder.INSTANCE.sendPayloadToPlayers(deltaPayload, deltaPacketTargets);
+				if (fullPacketTargets != null) {
+					final PacketBuffer fullPayload = PacketBuffers.scratch(initSizeHint);
+					try {
+						writeInitOwnerInfo(fullPayload);
+						writeSyncObjectInitialization(fullPayload);
+						sendRecord(fullPayload, fullPacketTargets);
+						SyncMetrics.recordSend(getOwnerClass(), SyncMetrics.PACKET_INIT, fullPayload.readableBytes(), fullPacketTargets.size());
+					} finally {
+						PacketBuffers.release(fullPayload, initSizeHint);
+					}
 				}
-			} catch (IOException e) {
-				Log.warn(e, "IOError during delta sync");
-			}
 
-			try {
-				if (!fullPacketTargets.isEmpty()) {
-					final PacketBuffer fullPayload = new PacketBuffer(Unpooled.buffer());
-					writeOwnerInfo(fullPayload);
-					writeSyncObjectInitialization(fullPayload);
-					SyncChannelHolder.INSTANCE.sendPayloadToPlayers(fullPayload, fullPacketTargets);
+				if (schemaPacketTargets != null) {
+					final PacketBuffer schemaPayload = PacketBuffers.scratch(initSizeHint);
+					try {
+						writeSchemaRecord(schemaPayload);
+						sendRecord(schemaPayload, schemaPacketTargets);
+					} finally {
+						PacketBuffers.release(schemaPayload, initSizeHint);
+					}
+				}
+
+				if (schemaRefPacketTargets != null) {
+					final PacketBuffer fullPayload = PacketBuffers.scratch(initSizeHint);
+					try {
+						writeInitOwnerInfo(fullPayload);
+						writeSyncObjectInitializationWithSchemaRef(fullPayload);
+						sendRecord(fullPayload, schemaRefPacketTargets);
+						SyncMetrics.recordSend(getOwnerClass(), SyncMetrics.PACKET_INIT, fullPayload.readableBytes(), schemaRefPacketTargets.size());
+					} finally {
+						PacketBuffers.release(fullPayload, initSizeHint);
+					}
 				}
 			} catch (IOException e) {
 				Log.warn(e, "IOError during full sync");
@@ -257,6 +661,89 @@ public abstract class SyncMapServer extends SyncMap {
 		public boolean canSendUpdates() {
 			return true;
 		}
+
+		@Override
+		public void resendInitialization(EntityPlayerMP player) {
+			// full initialization (with schema) will be sent on next update
+			knownUsers.remove(player.getEntityId());
+			if (schema != null) SyncSchemaCache.forgetByPlayer(player, schema);
+		}
+	}
+
+	private class DistanceTieredUpdateStrategy extends SeparateInitializationPacketStrategy {
+
+		// changes accumulated since last update of tier, unused for NEAR
+		private final DirtyMask[] tierChanges = new DirtyMask[SyncTier.VALUES.length];
+
+		private final long[] tierNextUpdate = new long[SyncTier.VALUES.length];
+
+		private final TIntObjectMap<SyncTier> playerTiers = new TIntObjectHashMap<>();
+
+		private final TIntSet currentPlayers = new TIntHashSet();
+
+		public DistanceTieredUpdateStrategy() {
+			for (int i = 0; i < tierChanges.length; i++)
+				tierChanges[i] = new DirtyMask(orderedEntries.size());
+		}
+
+		@Override
+		public void sendUpdates(DirtyMask changedObjects) {
+			for (SyncTier tier : SyncTier.VALUES)
+				if (tier != SyncTier.NEAR) tierChanges[tier.ordinal()].or(changedObjects);
+
+			final Set<EntityPlayerMP> players = getPlayersWatching();
+			if (players.isEmpty()) {
+				// new watchers will receive initialization packet with current state
+				for (DirtyMask mask : tierChanges)
+					mask.clear();
+				playerTiers.clear();
+				return;
+			}
+
+			@SuppressWarnings("unchecked")
+			final List<EntityPlayerMP>[] tierPlayers = new List[SyncTier.VALUES.length];
+
+			currentPlayers.clear();
+			for (EntityPlayerMP player : players) {
+				final int playerId = player.getEntityId();
+				final SyncTier tier = SyncTier.select(getDistanceSq(player));
+				final SyncTier prevTier = playerTiers.put(playerId, tier);
+				currentPlayers.add(playerId);
+
+				if (prevTier != null && prevTier != tier && prevTier != SyncTier.NEAR) {
+					// player may have missed changes still waiting in previous tier
+					final DirtyMask missedChanges = tierChanges[prevTier.ordinal()];
+					if (!missedChanges.isEmpty()) sendUpdate(missedChanges, Collections.singleton(player), false);
+				}
+
+				List<EntityPlayerMP> targets = tierPlayers[tier.ordinal()];
+				if (targets == null) {
+					targets = Lists.newArrayList();
+					tierPlayers[tier.ordinal()] = targets;
+				}
+				targets.add(player);
+			}
+
+			playerTiers.retainEntries((playerId, tier) -> currentPlayers.contains(playerId));
+
+			final List<EntityPlayerMP> nearPlayers = tierPlayers[SyncTier.NEAR.ordinal()];
+			if (nearPlayers != null && !changedObjects.isEmpty()) sendUpdate(changedObjects, nearPlayers, true);
+
+			final long now = getCurrentTick();
+			for (SyncTier tier : SyncTier.VALUES) {
+				if (tier == SyncTier.NEAR) continue;
+				final int tierId = tier.ordinal();
+				if (now < tierNextUpdate[tierId]) continue;
+
+				final DirtyMask changes = tierChanges[tierId];
+				final List<EntityPlayerMP> targets = tierPlayers[tierId];
+				if (targets != null && !changes.isEmpty()) {
+					sendUpdate(changes, targets, false);
+					changes.clear();
+					tierNextUpdate[tierId] = now + tier.updateInterval();
+				}
+			}
+		}
 	}
 
 	public enum UpdateStrategy {
@@ -271,20 +758,112 @@ public abstract class SyncMapServer extends SyncMap {
 			protected IUpdateStrategy create(SyncMapServer owner) {
 				return owner.new SeparateInitializationPacketStrategy();
 			}
+		},
+		/**
+		 * Like {@link #WITH_INITIAL_PACKET}, but players farther away receive merged updates less often, see {@link SyncTier}
+		 */
+		WITH_INITIAL_PACKET_DISTANCE_TIERED {
+			@Override
+			protected IUpdateStrategy create(SyncMapServer owner) {
+				return owner.new DistanceTieredUpdateStrategy();
+			}
 		};
 
 		protected abstract IUpdateStrategy create(SyncMapServer owner);
 	}
 
-	private Set<ISyncableObject> listChanges() {
-		Set<ISyncableObject> changes = Sets.newIdentityHashSet();
-		for (Entry e : orderedEntries)
-			if (e.obj.isDirty()) {
-				changes.add(e.obj);
-				e.obj.markClean();
+	private boolean collectChanges() {
+		for (int i = 0; i < untrackedEntries.size(); i++) {
+			final Entry e = untrackedEntries.get(i);
+			if (e.obj.isDirty()) dirtyObjects.set(e.id);
+		}
+
+		if (!rateLimitedEntries.isEmpty()) return collectRateLimitedChanges();
+
+		if (dirtyObjects.isEmpty()) return false;
+
+		dirtyObjects.drainTo(pendingChanges);
+		return true;
+	}
+
+	private boolean collectRateLimitedChanges() {
+		if (dirtyObjects.isEmpty() && heldChanges.isEmpty()) return false;
+
+		dirtyObjects.drainTo(pendingChanges);
+		pendingChanges.or(heldChanges);
+		heldChanges.clear();
+
+		final long now = getCurrentTick();
+
+		for (int i = 0; i < rateLimitedEntries.size(); i++) {
+			final Entry e = rateLimitedEntries.get(i);
+			if (now < e.nextAllowedTick && pendingChanges.get(e.id)) {
+				pendingChanges.clear(e.id);
+				heldChanges.set(e.id);
 			}
+		}
 
-		return changes;
+		if (!pendingChanges.isEmpty() && !pendingChanges.isSubsetOf(lowPriorityObjects)) {
+			// packet will be sent anyway, so held low priority objects can be included
+			for (int i = heldChanges.nextSetBit(0); i >= 0; i = heldChanges.nextSetBit(i + 1)) {
+				if (lowPriorityObjects.get(i)) {
+					heldChanges.clear(i);
+					pendingChanges.set(i);
+				}
+			}
+		}
+
+		for (int i = 0; i < rateLimitedEntries.size(); i++) {
+			final Entry e = rateLimitedEntries.get(i);
+			if (pendingChanges.get(e.id)) e.nextAllowedTick = now + e.minInterval;
+		}
+
+		return !pendingChanges.isEmpty();
+	}
+
+	protected long getCurrentTick() {
+		return FMLCommonHandler.instance().getMinecraftServerInstance().getTickCounter();
+	}
+
+	private void markPendingChangesClean() {
+		// called after sending, since delta objects need their change information while writing
+		for (int i = pendingChanges.nextSetBit(0); i >= 0; i = pendingChanges.nextSetBit(i + 1))
+			orderedEntries.get(i).obj.markClean();
+	}
+
+	// read-only view of pendingChanges, passed to listeners
+	private class PendingChangesView extends AbstractSet<ISyncableObject> {
+
+		@Override
+		public Iterator<ISyncableObject> iterator() {
+			return new AbstractIterator<ISyncableObject>() {
+				private int next = pendingChanges.nextSetBit(0);
+
+				@Override
+				protected ISyncableObject computeNext() {
+					if (next < 0) return endOfData();
+					final ISyncableObject result = orderedEntries.get(next).obj;
+					next = pendingChanges.nextSetBit(next + 1);
+					return result;
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return pendingChanges.cardinality();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return pendingChanges.isEmpty();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			final Integer id = objectToId.get(o);
+			return id != null && pendingChanges.get(id);
+		}
 	}
 
 	protected final Set<ISyncListener> syncListeners = Sets.newIdentityHashSet();
@@ -308,14 +887,28 @@ public abstract class SyncMapServer extends SyncMap {
 	public void sendUpdates() {
 		if (isInvalid() || !updateStrategy.canSendUpdates()) return;
 
-		final Set<ISyncableObject> changedObjects = listChanges();
-		updateStrategy.sendUpdates(changedObjects);
+		final long start = SyncMetrics.startTimer();
+		final boolean hasChanges = collectChanges();
+		SyncMetrics.stopTimer(SyncMetrics.TIMER_COLLECT_CHANGES, start);
+
+		updateStrategy.sendUpdates(pendingChanges);
+
+		if (!deferredChanges.isEmpty()) sendDeferredChanges();
 
-		if (!changedObjects.isEmpty()) {
-			notifySyncListeners(syncListeners, Collections.unmodifiableSet(changedObjects));
+		if (hasChanges) {
+			markPendingChangesClean();
+			if (!syncListeners.isEmpty()) notifySyncListeners(syncListeners, pendingChangesView);
+			pendingChanges.clear();
 		}
 	}
 
+	/**
+	 * Called when client failed to initialize its map (i.e. because it received schema reference, but not schema itself)
+	 */
+	public void resendInitialization(EntityPlayerMP player) {
+		updateStrategy.resendInitialization(player);
+	}
+
 	@Override
 	public boolean trySendUpdates() {
 		sendUpdates();
@@ -345,4 +938,18 @@ public abstract class SyncMapServer extends SyncMap {
 	protected abstract Set<EntityPlayerMP> getPlayersWatching();
 
 	protected abstract boolean isInvalid();
+
+	/**
+	 * Used by distance tiered update strategy
+	 */
+	protected double getDistanceSq(EntityPlayerMP player) {
+		return 0;
+	}
+
+	/**
+	 * Used for grouping metrics
+	 */
+	protected Class<?> getOwnerClass() {
+		return getClass();
+	}
 }
@@ -8,7 +8,7 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 import net.minecraft.world.WorldServer;
 import openmods.tileentity.SyncedTileEntity;
-import openmods.utils.NetUtils;
+import openmods.utils.WatcherSnapshotCache;
 
 public class SyncMapTile extends SyncMapServer {
 
@@ -46,11 +46,21 @@ public class SyncMapTile extends SyncMapServer {
 	@Override
 	protected Set<EntityPlayerMP> getPlayersWatching() {
 		final BlockPos pos = owner.getPos();
-		return NetUtils.getPlayersWatchingBlock((WorldServer)owner.getWorld(), pos.getX(), pos.getZ());
+		return WatcherSnapshotCache.INSTANCE.getBlockWatchers((WorldServer)owner.getWorld(), pos.getX(), pos.getZ());
 	}
 
 	@Override
 	protected boolean isInvalid() {
 		return owner.isInvalid();
 	}
+
+	@Override
+	protected Class<?> getOwnerClass() {
+		return owner.getClass();
+	}
+
+	@Override
+	protected double getDistanceSq(EntityPlayerMP player) {
+		return player.getDistanceSqToCenter(owner.getPos());
+	}
 }
@@ -0,0 +1,162 @@
+package openmods.sync;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import openmods.LibConfig;
+
+/**
+ * Counters and timing histograms for sync subsystem.
+ * Counters are grouped (i.e. bytes per object type), so command can list top entries in group.
+ * When disabled, every call returns after single field read. Safe to use from any thread.
+ */
+public class SyncMetrics {
+
+	public static final String GROUP_TYPE_BYTES = "type_bytes";
+	public static final String GROUP_OWNER_PACKETS = "owner_packets";
+	public static final String GROUP_OWNER_BYTES = "owner_bytes";
+	public static final String GROUP_PACKETS = "packets";
+	public static final String GROUP_OWNER_DEFERRED = "owner_deferred";
+
+	public static final String PACKET_INIT = "init";
+	public static final String PACKET_DELTA = "delta";
+
+	public static final String TIMER_COLLECT_CHANGES = "collect_changes";
+	public static final String TIMER_WRITE_UPDATE = "write_update";
+	public static final String TIMER_READ_UPDATE = "read_update";
+
+	public static class Counter {
+		private final LongAdder value = new LongAdder();
+
+		public void add(long delta) {
+			value.add(delta);
+		}
+
+		public long get() {
+			return value.sum();
+		}
+	}
+
+	/**
+	 * Histogram with power-of-two buckets, so percentiles are only upper bounds.
+	 */
+	public static class Histogram {
+		private final LongAdder[] buckets = new LongAdder[Long.SIZE];
+
+		private final LongAdder total = new LongAdder();
+
+		private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+		public Histogram() {
+			for (int i = 0; i < buckets.length; i++)
+				buckets[i] = new LongAdder();
+		}
+
+		public void record(long value) {
+			// bucket i contains values in [2^i, 2^(i+1))
+			final int bucket = value > 0? Long.SIZE - 1 - Long.numberOfLeadingZeros(value) : 0;
+			buckets[bucket].increment();
+			total.add(value);
+			max.accumulate(value);
+		}
+
+		public long count() {
+			long result = 0;
+			for (LongAdder bucket : buckets)
+				result += bucket.sum();
+			return result;
+		}
+
+		public long total() {
+			return total.sum();
+		}
+
+		public long max() {
+			return max.get();
+		}
+
+		public long mean() {
+			final long count = count();
+			return count > 0? total() / count : 0;
+		}
+
+		public long percentileUpperBound(double percentile) {
+			final long count = count();
+			if (count == 0) return 0;
+
+			final long threshold = (long)Math.ceil(count * percentile);
+			long seen = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				seen += buckets[i].sum();
+				if (seen >= threshold) return Math.min((2L << i) - 1, max());
+			}
+			return max();
+		}
+	}
+
+	private static volatile boolean enabled = LibConfig.syncMetrics;
+
+	private static final ConcurrentMap<String, ConcurrentMap<String, Counter>> counters = Maps.newConcurrentMap();
+
+	private static final ConcurrentMap<String, Histogram> histograms = Maps.newConcurrentMap();
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean enabled) {
+		SyncMetrics.enabled = enabled;
+	}
+
+	public static void reset() {
+		counters.clear();
+		histograms.clear();
+	}
+
+	public static Counter counter(String group, String key) {
+		return counters.computeIfAbsent(group, g -> Maps.newConcurrentMap()).computeIfAbsent(key, k -> new Counter());
+	}
+
+	public static Histogram histogram(String name) {
+		return histograms.computeIfAbsent(name, n -> new Histogram());
+	}
+
+	public static void count(String group, String key, long delta) {
+		if (enabled) counter(group, key).add(delta);
+	}
+
+	/**
+	 * @return start time for {@link #stopTimer(String, long)} or 0, if metrics are disabled
+	 */
+	public static long startTimer() {
+		return enabled? System.nanoTime() : 0;
+	}
+
+	public static void stopTimer(String name, long start) {
+		if (start != 0) histogram(name).record(System.nanoTime() - start);
+	}
+
+	public static void recordObjectWrite(SyncableObjectType type, int bytes) {
+		if (enabled) counter(GROUP_TYPE_BYTES, String.valueOf(type.getRegistryName())).add(bytes);
+	}
+
+	public static void recordSend(Class<?> ownerCls, String packetType, int bytes, int receivers) {
+		if (enabled && receivers > 0) {
+			counter(GROUP_PACKETS, packetType).add(receivers);
+			counter(GROUP_OWNER_PACKETS, ownerCls.getName()).add(receivers);
+			counter(GROUP_OWNER_BYTES, ownerCls.getName()).add((long)bytes * receivers);
+		}
+	}
+
+	public static Map<String, Counter> getGroup(String group) {
+		final Map<String, Counter> result = counters.get(group);
+		return result != null? ImmutableMap.copyOf(result) : ImmutableMap.of();
+	}
+
+	public static Map<String, Histogram> getHistograms() {
+		return ImmutableMap.copyOf(histograms);
+	}
+}
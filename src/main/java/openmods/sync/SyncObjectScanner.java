@@ -35,6 +35,9 @@ public class SyncObjectScanner extends FieldsSelector {
 
 			final String fieldName = field.getName();
 			map.registerObject(fieldName, obj);
+
+			final SyncRate rate = field.getAnnotation(SyncRate.class);
+			if (rate != null) map.setUpdateRate(fieldName, rate.minInterval(), rate.priority());
 		}
 	}
 
@@ -0,0 +1,103 @@
+package openmods.sync;
+
+import com.google.common.collect.Maps;
+import io.netty.buffer.ByteBuf;
+import java.util.Collection;
+import java.util.Map;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.PlayerEvent.PlayerLoggedOutEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent.Phase;
+import net.minecraftforge.fml.common.gameevent.TickEvent.ServerTickEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent.WorldTickEvent;
+import net.minecraftforge.fml.relauncher.Side;
+import openmods.LibConfig;
+import openmods.utils.io.PacketBuffers;
+import openmods.utils.io.PacketBuffers.SizeHint;
+
+/**
+ * Collects sync records (owner info + sync map data) for every player and sends them as single packet at the end of world tick.
+ * Packets are sent only from server thread, but records can be also added by {@link SyncEncoder} workers (see {@link #appendFromWorker}).
+ */
+public class SyncPacketAggregator {
+
+	public static final SyncPacketAggregator INSTANCE = new SyncPacketAggregator();
+
+	private SyncPacketAggregator() {}
+
+	private final Map<EntityPlayerMP, PacketBuffer> pendingPackets = Maps.newIdentityHashMap();
+
+	private final SizeHint packetSizeHint = new SizeHint(256);
+
+	// incremented on every flush, so owners can check if their records were already sent
+	private volatile long generation;
+
+	public synchronized void append(ByteBuf record, Collection<EntityPlayerMP> players) {
+		for (EntityPlayerMP player : players) {
+			final PacketBuffer packet = appendRecord(record, player);
+			if (packet.writerIndex() >= LibConfig.coalescedSyncPacketLimit) {
+				pendingPackets.remove(player);
+				send(packet, player);
+			}
+		}
+	}
+
+	/**
+	 * Same as {@link #append}, but can be called from any thread. Packets over size limit are sent on next flush.
+	 */
+	public synchronized void appendFromWorker(ByteBuf record, Collection<EntityPlayerMP> players) {
+		for (EntityPlayerMP player : players)
+			appendRecord(record, player);
+	}
+
+	private PacketBuffer appendRecord(ByteBuf record, EntityPlayerMP player) {
+		PacketBuffer packet = pendingPackets.get(player);
+		if (packet == null) {
+			packet = PacketBuffers.payload(packetSizeHint);
+			pendingPackets.put(player, packet);
+		}
+
+		SyncChannelHolder.writeRecord(packet, record);
+		return packet;
+	}
+
+	/**
+	 * Records appended when generation had same value are not flushed yet
+	 */
+	public long generation() {
+		return generation;
+	}
+
+	public synchronized void flush() {
+		generation++;
+		if (pendingPackets.isEmpty()) return;
+
+		for (Map.Entry<EntityPlayerMP, PacketBuffer> e : pendingPackets.entrySet())
+			send(e.getValue(), e.getKey());
+
+		pendingPackets.clear();
+	}
+
+	private void send(PacketBuffer packet, EntityPlayerMP player) {
+		packetSizeHint.update(packet.writerIndex());
+		SyncChannelHolder.INSTANCE.sendPayloadToPlayer(packet, player);
+	}
+
+	@SubscribeEvent
+	public void onWorldTick(WorldTickEvent evt) {
+		if (evt.side == Side.SERVER && evt.phase == Phase.END) flush();
+	}
+
+	@SubscribeEvent
+	public void onServerTick(ServerTickEvent evt) {
+		// catches updates sent outside of world ticks (i.e. from scheduled tasks)
+		if (evt.phase == Phase.END) flush();
+	}
+
+	@SubscribeEvent
+	public synchronized void onPlayerLogout(PlayerLoggedOutEvent evt) {
+		final PacketBuffer packet = pendingPackets.remove(evt.player);
+		if (packet != null) packet.release();
+	}
+}
@@ -0,0 +1,16 @@
+package openmods.sync;
+
+public enum SyncPriority {
+	/**
+	 * Field may be held until its interval passes, but it will be sent earlier if update packet is sent anyway
+	 */
+	LOW,
+	/**
+	 * Field is sent as soon as its interval passes, triggering update packet
+	 */
+	HIGH,
+	/**
+	 * Like {@link #HIGH}, but update is also sent to players over their outbound budget (see {@link openmods.network.OutboundBudget})
+	 */
+	CRITICAL
+}
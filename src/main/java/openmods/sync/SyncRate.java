@@ -0,0 +1,20 @@
+package openmods.sync;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Limits how often synced field is sent to clients. Read by {@link SyncObjectScanner}.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SyncRate {
+	/**
+	 * Minimum number of ticks between two updates of field
+	 */
+	public int minInterval() default 0;
+
+	public SyncPriority priority() default SyncPriority.HIGH;
+}
@@ -0,0 +1,68 @@
+package openmods.sync;
+
+import com.google.common.collect.Maps;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import java.util.Map;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraftforge.fml.common.Mod.EventBusSubscriber;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.network.FMLNetworkEvent.ClientConnectedToServerEvent;
+import net.minecraftforge.fml.common.network.FMLNetworkEvent.ClientDisconnectionFromServerEvent;
+
+/**
+ * Tracks which {@link SyncMapSchema}s were already sent over connection.
+ * Server side state is stored in player connection, so it's dropped together with it.
+ */
+@EventBusSubscriber
+public class SyncSchemaCache {
+
+	private static final AttributeKey<TLongSet> KNOWN_SCHEMAS = AttributeKey.valueOf("om:knownSyncSchemas");
+
+	// client has only one connection, so there is no need to store it in channel
+	private static final Map<Long, SyncMapSchema> receivedSchemas = Maps.newConcurrentMap();
+
+	private static TLongSet getKnownSchemas(EntityPlayerMP player) {
+		final Channel channel = player.connection.netManager.channel();
+		final Attribute<TLongSet> attr = channel.attr(KNOWN_SCHEMAS);
+		TLongSet result = attr.get();
+		if (result == null) {
+			result = new TLongHashSet();
+			attr.set(result);
+		}
+		return result;
+	}
+
+	public static boolean isKnownByPlayer(EntityPlayerMP player, SyncMapSchema schema) {
+		return getKnownSchemas(player).contains(schema.hash());
+	}
+
+	public static void markKnownByPlayer(EntityPlayerMP player, SyncMapSchema schema) {
+		getKnownSchemas(player).add(schema.hash());
+	}
+
+	public static void forgetByPlayer(EntityPlayerMP player, SyncMapSchema schema) {
+		getKnownSchemas(player).remove(schema.hash());
+	}
+
+	public static void addReceivedSchema(SyncMapSchema schema) {
+		receivedSchemas.put(schema.hash(), schema);
+	}
+
+	public static SyncMapSchema getReceivedSchema(long hash) {
+		return receivedSchemas.get(hash);
+	}
+
+	@SubscribeEvent
+	public static void onConnect(ClientConnectedToServerEvent evt) {
+		receivedSchemas.clear();
+	}
+
+	@SubscribeEvent
+	public static void onDisconnect(ClientDisconnectionFromServerEvent evt) {
+		receivedSchemas.clear();
+	}
+}
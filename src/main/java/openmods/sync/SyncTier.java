@@ -0,0 +1,42 @@
+package openmods.sync;
+
+import openmods.LibConfig;
+
+/**
+ * Distance tiers used by {@link SyncMapServer.UpdateStrategy#WITH_INITIAL_PACKET_DISTANCE_TIERED}.
+ * Players in farther tiers receive merged updates less often.
+ */
+public enum SyncTier {
+	NEAR {
+		@Override
+		public int updateInterval() {
+			return 1;
+		}
+	},
+	MID {
+		@Override
+		public int updateInterval() {
+			return LibConfig.syncMidTierInterval;
+		}
+	},
+	FAR {
+		@Override
+		public int updateInterval() {
+			return LibConfig.syncFarTierInterval;
+		}
+	};
+
+	public static final SyncTier[] VALUES = values();
+
+	public abstract int updateInterval();
+
+	public static SyncTier select(double distanceSq) {
+		final double farDistance = LibConfig.syncFarTierDistance;
+		if (distanceSq >= farDistance * farDistance) return FAR;
+
+		final double midDistance = LibConfig.syncMidTierDistance;
+		if (distanceSq >= midDistance * midDistance) return MID;
+
+		return NEAR;
+	}
+}
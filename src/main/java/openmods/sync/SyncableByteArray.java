@@ -2,11 +2,20 @@ package openmods.sync;
 
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.network.PacketBuffer;
+import openmods.utils.ByteUtils;
 
-public class SyncableByteArray extends SyncableObjectBase implements ISyncableValueProvider<byte[]> {
+public class SyncableByteArray extends SyncableObjectBase implements ISyncableValueProvider<byte[]>, IDeltaSyncableObject {
+
+	private static final int DELTA_FULL = 0;
+	private static final int DELTA_RANGES = 1;
 
 	private byte[] value = new byte[0];
 
+	// elements modified with setValue(int, byte) since last markClean
+	private final DirtyMask changedElements = new DirtyMask();
+
+	private boolean fullUpdateRequired;
+
 	public SyncableByteArray() {}
 
 	public SyncableByteArray(byte[] val) {
@@ -20,11 +29,46 @@ public class SyncableByteArray extends SyncableObjectBase implements ISyncableVa
 		}
 	}
 
+	public void setValue(int offset, byte newValue) {
+		if (value[offset] != newValue) {
+			value[offset] = newValue;
+			markElementDirty(offset);
+		}
+	}
+
+	public byte getValue(int offset) {
+		return value[offset];
+	}
+
 	@Override
 	public byte[] getValue() {
 		return value;
 	}
 
+	private int size() {
+		return value != null? value.length : 0;
+	}
+
+	private void markElementDirty(int offset) {
+		changedElements.ensureSize(value.length);
+		changedElements.set(offset);
+		super.markDirty();
+	}
+
+	@Override
+	public void markDirty() {
+		// no information about changed elements, so whole array must be sent
+		fullUpdateRequired = true;
+		super.markDirty();
+	}
+
+	@Override
+	public void markClean() {
+		changedElements.clear();
+		fullUpdateRequired = false;
+		super.markClean();
+	}
+
 	@Override
 	public void readFromStream(PacketBuffer stream) {
 		value = stream.readByteArray();
@@ -39,6 +83,62 @@ public class SyncableByteArray extends SyncableObjectBase implements ISyncableVa
 		}
 	}
 
+	private int deltaUpdateSize() {
+		int result = 1; // terminator
+		int prevEnd = 0;
+		for (int start = changedElements.nextSetBit(0); start >= 0; start = changedElements.nextSetBit(prevEnd)) {
+			final int end = Math.min(changedElements.nextClearBit(start), value.length);
+			result += ByteUtils.varIntSize(end - start) + ByteUtils.varIntSize(start - prevEnd) + (end - start);
+			prevEnd = end;
+		}
+
+		return result;
+	}
+
+	@Override
+	public void writeDeltaToStream(PacketBuffer stream) {
+		final int size = size();
+		if (fullUpdateRequired || changedElements.size() > size || deltaUpdateSize() >= ByteUtils.varIntSize(size) + size) {
+			writeFullToStream(stream);
+			return;
+		}
+
+		// sequence of (length, gap from previous range, values), terminated by zero length
+		stream.writeByte(DELTA_RANGES);
+		int prevEnd = 0;
+		for (int start = changedElements.nextSetBit(0); start >= 0; start = changedElements.nextSetBit(prevEnd)) {
+			final int end = Math.min(changedElements.nextClearBit(start), value.length);
+			stream.writeVarInt(end - start);
+			stream.writeVarInt(start - prevEnd);
+			stream.writeBytes(value, start, end - start);
+			prevEnd = end;
+		}
+		stream.writeVarInt(0);
+	}
+
+	@Override
+	public void writeFullToStream(PacketBuffer stream) {
+		stream.writeByte(DELTA_FULL);
+		writeToStream(stream);
+	}
+
+	@Override
+	public void readDeltaFromStream(PacketBuffer stream) {
+		final int mode = stream.readByte();
+		if (mode == DELTA_FULL) {
+			readFromStream(stream);
+			return;
+		}
+
+		int position = 0;
+		int length;
+		while ((length = stream.readVarInt()) != 0) {
+			position += stream.readVarInt();
+			stream.readBytes(value, position, length);
+			position += length;
+		}
+	}
+
 	@Override
 	public void writeToNBT(NBTTagCompound nbt, String name) {
 		nbt.setByteArray(name, value);
@@ -46,7 +146,7 @@ public class SyncableByteArray extends SyncableObjectBase implements ISyncableVa
 
 	@Override
 	public void readFromNBT(NBTTagCompound nbt, String name) {
-		nbt.getByteArray(name);
+		value = nbt.getByteArray(name);
 	}
 
 }
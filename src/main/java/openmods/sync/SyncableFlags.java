@@ -177,7 +177,7 @@ public abstract class SyncableFlags extends SyncableObjectBase implements IRpcIn
 	@Override
 	public void markClean() {
 		previousValue = value;
-		dirty = false;
+		super.markClean();
 	}
 
 	@Override
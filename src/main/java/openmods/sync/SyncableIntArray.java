@@ -3,11 +3,20 @@ package openmods.sync;
 import java.util.Arrays;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.network.PacketBuffer;
+import openmods.utils.ByteUtils;
 
-public class SyncableIntArray extends SyncableObjectBase implements ISyncableValueProvider<int[]> {
+public class SyncableIntArray extends SyncableObjectBase implements ISyncableValueProvider<int[]>, IDeltaSyncableObject {
+
+	private static final int DELTA_FULL = 0;
+	private static final int DELTA_RANGES = 1;
 
 	private int[] value;
 
+	// elements modified with setValue(int, int) since last markClean
+	private final DirtyMask changedElements = new DirtyMask();
+
+	private boolean fullUpdateRequired;
+
 	public SyncableIntArray(int[] value) {
 		this.value = value;
 	}
@@ -26,7 +35,7 @@ public class SyncableIntArray extends SyncableObjectBase implements ISyncableVal
 	public void setValue(int offset, int newValue) {
 		if (value[offset] != newValue) {
 			value[offset] = newValue;
-			markDirty();
+			markElementDirty(offset);
 		}
 	}
 
@@ -48,6 +57,26 @@ public class SyncableIntArray extends SyncableObjectBase implements ISyncableVal
 		return size() == 0;
 	}
 
+	private void markElementDirty(int offset) {
+		changedElements.ensureSize(value.length);
+		changedElements.set(offset);
+		super.markDirty();
+	}
+
+	@Override
+	public void markDirty() {
+		// no information about changed elements, so whole array must be sent
+		fullUpdateRequired = true;
+		super.markDirty();
+	}
+
+	@Override
+	public void markClean() {
+		changedElements.clear();
+		fullUpdateRequired = false;
+		super.markClean();
+	}
+
 	@Override
 	public void readFromStream(PacketBuffer stream) {
 		final int length = stream.readVarInt();
@@ -64,6 +93,69 @@ public class SyncableIntArray extends SyncableObjectBase implements ISyncableVal
 		}
 	}
 
+	private int fullUpdateSize() {
+		final int size = size();
+		return ByteUtils.varIntSize(size) + size * 4;
+	}
+
+	private int deltaUpdateSize() {
+		int result = 1; // terminator
+		int prevEnd = 0;
+		for (int start = changedElements.nextSetBit(0); start >= 0; start = changedElements.nextSetBit(prevEnd)) {
+			final int end = Math.min(changedElements.nextClearBit(start), value.length);
+			result += ByteUtils.varIntSize(end - start) + ByteUtils.varIntSize(start - prevEnd);
+			for (int i = start; i < end; i++)
+				result += ByteUtils.varIntSize(ByteUtils.zigzagEncode(value[i]));
+			prevEnd = end;
+		}
+
+		return result;
+	}
+
+	@Override
+	public void writeDeltaToStream(PacketBuffer stream) {
+		if (fullUpdateRequired || changedElements.size() > size() || deltaUpdateSize() >= fullUpdateSize()) {
+			writeFullToStream(stream);
+			return;
+		}
+
+		// sequence of (length, gap from previous range, values), terminated by zero length
+		stream.writeByte(DELTA_RANGES);
+		int prevEnd = 0;
+		for (int start = changedElements.nextSetBit(0); start >= 0; start = changedElements.nextSetBit(prevEnd)) {
+			final int end = Math.min(changedElements.nextClearBit(start), value.length);
+			stream.writeVarInt(end - start);
+			stream.writeVarInt(start - prevEnd);
+			for (int i = start; i < end; i++)
+				stream.writeVarInt(ByteUtils.zigzagEncode(value[i]));
+			prevEnd = end;
+		}
+		stream.writeVarInt(0);
+	}
+
+	@Override
+	public void writeFullToStream(PacketBuffer stream) {
+		stream.writeByte(DELTA_FULL);
+		writeToStream(stream);
+	}
+
+	@Override
+	public void readDeltaFromStream(PacketBuffer stream) {
+		final int mode = stream.readByte();
+		if (mode == DELTA_FULL) {
+			readFromStream(stream);
+			return;
+		}
+
+		int position = 0;
+		int length;
+		while ((length = stream.readVarInt()) != 0) {
+			position += stream.readVarInt();
+			for (int i = 0; i < length; i++)
+				value[position++] = ByteUtils.zigzagDecode(stream.readVarInt());
+		}
+	}
+
 	@Override
 	public void writeToNBT(NBTTagCompound tag, String name) {
 		tag.setIntArray(name, value);
@@ -7,7 +7,7 @@ import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.network.PacketBuffer;
 import net.minecraftforge.common.util.Constants;
 
-public class SyncableItemStack extends SyncableObjectBase {
+public class SyncableItemStack extends SyncableObjectBase implements ISnapshotSyncableObject {
 
 	@Nonnull
 	private ItemStack stack = ItemStack.EMPTY;
@@ -23,6 +23,12 @@ public class SyncableItemStack extends SyncableObjectBase {
 
 	}
 
+	@Override
+	public ISyncableSnapshot createSnapshot(boolean delta) {
+		final ItemStack copy = stack.copy();
+		return stream -> stream.writeItemStack(copy);
+	}
+
 	@Override
 	public void writeToNBT(NBTTagCompound nbt, String name) {
 		if (stack.isEmpty()) {
@@ -3,14 +3,25 @@ package openmods.sync;
 import java.io.IOException;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.network.PacketBuffer;
+import openmods.utils.NbtDiff;
 
-/***
- * Note: you must manually .markDirty() right now
+/**
+ * Update packets contain only patch against last sent value (see {@link NbtDiff}), unless full tag is smaller.
+ * Internal tag is never modified in place, so last sent value doesn't need to be copied.
  */
-public class SyncableNBT extends SyncableObjectBase implements ISyncableValueProvider<NBTTagCompound> {
+public class SyncableNBT extends SyncableObjectBase implements ISyncableValueProvider<NBTTagCompound>, IDeltaSyncableObject, ISnapshotSyncableObject {
+
+	private static final int DELTA_FULL = 0;
+	private static final int DELTA_PATCH = 1;
 
 	private NBTTagCompound tag;
 
+	// value that receivers have after last update, null if unknown
+	private NBTTagCompound lastSentTag;
+
+	// size of last full write, used as estimate when deciding if patch is worth sending
+	private int lastFullSize = Integer.MAX_VALUE;
+
 	public SyncableNBT() {
 		tag = new NBTTagCompound();
 	}
@@ -25,28 +36,97 @@ public class SyncableNBT extends SyncableObjectBase implements ISyncableValuePro
 	}
 
 	public void setValue(NBTTagCompound tag) {
-		this.tag = tag.copy();
+		if (!this.tag.equals(tag)) {
+			this.tag = tag.copy();
+			markDirty();
+		}
+	}
+
+	@Override
+	public void markClean() {
+		lastSentTag = tag;
+		super.markClean();
 	}
 
 	@Override
 	public void readFromStream(PacketBuffer stream) throws IOException {
 		this.tag = stream.readCompoundTag();
-
 	}
 
 	@Override
 	public void writeToStream(PacketBuffer stream) {
+		// some receivers will have unsent changes, patch against last sent value may not be enough for them
+		if (tag != lastSentTag) lastSentTag = null;
+
+		final int start = stream.writerIndex();
 		stream.writeCompoundTag(this.tag);
+		lastFullSize = stream.writerIndex() - start;
+	}
+
+	@Override
+	public void writeDeltaToStream(PacketBuffer stream) {
+		if (!tryWritePatch(stream, lastSentTag, tag, lastFullSize)) writeFullToStream(stream);
+	}
+
+	@Override
+	public void writeFullToStream(PacketBuffer stream) {
+		stream.writeByte(DELTA_FULL);
+		writeToStream(stream);
+	}
+
+	// tags are never modified in place, so references are enough
+	@Override
+	public ISyncableSnapshot createSnapshot(boolean delta) {
+		final NBTTagCompound current = tag;
+		if (!delta) {
+			if (current != lastSentTag) lastSentTag = null;
+			return stream -> {
+				stream.writeByte(DELTA_FULL);
+				stream.writeCompoundTag(current);
+			};
+		}
+
+		final NBTTagCompound prev = lastSentTag;
+		final int fullSize = lastFullSize;
+		return stream -> {
+			if (!tryWritePatch(stream, prev, current, fullSize)) {
+				stream.writeByte(DELTA_FULL);
+				stream.writeCompoundTag(current);
+			}
+		};
+	}
+
+	private static boolean tryWritePatch(PacketBuffer stream, NBTTagCompound prev, NBTTagCompound current, int fullSize) {
+		if (prev == null) return false;
+
+		final int start = stream.writerIndex();
+		stream.writeByte(DELTA_PATCH);
+		NbtDiff.writePatch(stream, prev, current);
+		if (stream.writerIndex() - start <= fullSize) return true;
+
+		stream.writerIndex(start);
+		return false;
+	}
+
+	@Override
+	public void readDeltaFromStream(PacketBuffer stream) throws IOException {
+		final int mode = stream.readByte();
+		if (mode == DELTA_FULL) {
+			readFromStream(stream);
+		} else {
+			NbtDiff.applyPatch(stream, tag);
+		}
 	}
 
 	@Override
 	public void writeToNBT(NBTTagCompound nbt, String name) {
-		nbt.setTag(name, nbt);
+		nbt.setTag(name, tag.copy());
 	}
 
 	@Override
 	public void readFromNBT(NBTTagCompound nbt, String name) {
-		nbt.getCompoundTag(name);
+		tag = nbt.getCompoundTag(name).copy();
+		lastSentTag = null;
 	}
 
 }
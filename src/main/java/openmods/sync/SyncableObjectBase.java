@@ -1,9 +1,13 @@
 package openmods.sync;
 
-public abstract class SyncableObjectBase implements ISyncableObject {
+public abstract class SyncableObjectBase implements ISyncableObject, IDirtyMaskTracked {
 
 	protected boolean dirty = false;
 
+	private DirtyMask dirtyMask;
+
+	private int dirtyMaskSlot;
+
 	@Override
 	public boolean isDirty() {
 		return dirty;
@@ -12,10 +16,19 @@ public abstract class SyncableObjectBase implements ISyncableObject {
 	@Override
 	public void markClean() {
 		dirty = false;
+		if (dirtyMask != null) dirtyMask.clear(dirtyMaskSlot);
 	}
 
 	@Override
 	public void markDirty() {
 		dirty = true;
+		if (dirtyMask != null) dirtyMask.set(dirtyMaskSlot);
+	}
+
+	@Override
+	public void attachDirtyMask(DirtyMask mask, int slot) {
+		this.dirtyMask = mask;
+		this.dirtyMaskSlot = slot;
+		if (dirty) mask.set(slot);
 	}
 }
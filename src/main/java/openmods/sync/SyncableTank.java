@@ -11,10 +11,14 @@ import net.minecraftforge.fluids.FluidStack;
 import openmods.api.IValueProvider;
 import openmods.liquids.GenericTank;
 
-public class SyncableTank extends GenericTank implements ISyncableObject, IValueProvider<FluidStack> {
+public class SyncableTank extends GenericTank implements ISyncableObject, ISnapshotSyncableObject, IDirtyMaskTracked, IValueProvider<FluidStack> {
 
 	private boolean dirty = false;
 
+	private DirtyMask dirtyMask;
+
+	private int dirtyMaskSlot;
+
 	public SyncableTank() {
 		super(0);
 	}
@@ -39,11 +43,20 @@ public class SyncableTank extends GenericTank implements ISyncableObject, IValue
 	@Override
 	public void markClean() {
 		dirty = false;
+		if (dirtyMask != null) dirtyMask.clear(dirtyMaskSlot);
 	}
 
 	@Override
 	public void markDirty() {
 		dirty = true;
+		if (dirtyMask != null) dirtyMask.set(dirtyMaskSlot);
+	}
+
+	@Override
+	public void attachDirtyMask(DirtyMask mask, int slot) {
+		this.dirtyMask = mask;
+		this.dirtyMaskSlot = slot;
+		if (dirty) mask.set(slot);
 	}
 
 	@Override
@@ -63,6 +76,16 @@ public class SyncableTank extends GenericTank implements ISyncableObject, IValue
 
 	@Override
 	public void writeToStream(PacketBuffer stream) {
+		writeFluid(stream, fluid);
+	}
+
+	@Override
+	public ISyncableSnapshot createSnapshot(boolean delta) {
+		final FluidStack copy = fluid != null? fluid.copy() : null;
+		return stream -> writeFluid(stream, copy);
+	}
+
+	private static void writeFluid(PacketBuffer stream, @Nullable FluidStack fluid) {
 		if (fluid != null) {
 			stream.writeBoolean(true);
 			final String id = FluidRegistry.getFluidName(fluid.getFluid());
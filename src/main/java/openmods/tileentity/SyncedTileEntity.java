@@ -26,6 +26,7 @@ import openmods.sync.SyncMapServer.UpdateStrategy;
 import openmods.sync.SyncMapTile;
 import openmods.sync.SyncObjectScanner;
 import openmods.sync.drops.DropTagSerializer;
+import openmods.utils.io.PacketBuffers;
 
 public abstract class SyncedTileEntity extends OpenTileEntity implements ISyncMapProvider {
 
@@ -110,15 +111,17 @@ public abstract class SyncedTileEntity extends OpenTileEntity implements ISyncMa
 	}
 
 	private NBTTagCompound serializeInitializationData(NBTTagCompound tag) {
-		final PacketBuffer tmp = new PacketBuffer(Unpooled.buffer());
+		final PacketBuffer tmp = PacketBuffers.scratch();
 		try {
 			getSyncMap().writeInitializationData(tmp);
+			byte[] data = new byte[tmp.readableBytes()];
+			tmp.readBytes(data);
+			tag.setByteArray(TAG_SYNC_INIT, data);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
+		} finally {
+			tmp.release();
 		}
-		byte[] data = new byte[tmp.readableBytes()];
-		tmp.readBytes(data);
-		tag.setByteArray(TAG_SYNC_INIT, data);
 
 		return tag;
 	}
@@ -126,8 +129,7 @@ public abstract class SyncedTileEntity extends OpenTileEntity implements ISyncMa
 	private void applyInitializationData(NBTTagCompound tag) {
 		if (tag.hasKey(TAG_SYNC_INIT, Constants.NBT.TAG_BYTE_ARRAY)) {
 			final byte[] syncInit = tag.getByteArray(TAG_SYNC_INIT);
-			final PacketBuffer tmp = new PacketBuffer(Unpooled.buffer());
-			tmp.writeBytes(syncInit);
+			final PacketBuffer tmp = new PacketBuffer(Unpooled.wrappedBuffer(syncInit));
 
 			try {
 				getSyncMap().readIntializationData(tmp);
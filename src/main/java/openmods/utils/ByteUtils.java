@@ -120,6 +120,23 @@ public class ByteUtils {
 		return result;
 	}
 
+	public static int zigzagEncode(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	public static int zigzagDecode(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	public static int varIntSize(int value) {
+		// same encoding as PacketBuffer.writeVarInt, negative values always take 5 bytes
+		if ((value & 0xFFFFFF80) == 0) return 1;
+		if ((value & 0xFFFFC000) == 0) return 2;
+		if ((value & 0xFFE00000) == 0) return 3;
+		if ((value & 0xF0000000) == 0) return 4;
+		return 5;
+	}
+
 	public static int nextPowerOf2(int v) {
 		v--;
 		v |= v >> 1;
@@ -0,0 +1,293 @@
+package openmods.utils;
+
+import java.io.IOException;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagByte;
+import net.minecraft.nbt.NBTTagByteArray;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagDouble;
+import net.minecraft.nbt.NBTTagFloat;
+import net.minecraft.nbt.NBTTagInt;
+import net.minecraft.nbt.NBTTagIntArray;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.nbt.NBTTagLong;
+import net.minecraft.nbt.NBTTagShort;
+import net.minecraft.nbt.NBTTagString;
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.common.util.Constants;
+
+/**
+ * Structural diff of NBT compounds. Patch contains removed keys, changed values and patches of nested compounds and lists.
+ * Patches contain only absolute values, so applying same patch twice gives same result.
+ */
+public class NbtDiff {
+
+	private static final int OP_END = 0;
+	private static final int OP_REMOVE = 1;
+	private static final int OP_SET = 2;
+	private static final int OP_PATCH_COMPOUND = 3;
+	private static final int OP_PATCH_LIST = 4;
+
+	private static final String WRAPPER_KEY = "v";
+
+	/**
+	 * Writes patch that transforms {@code prev} into {@code current}.
+	 *
+	 * @return true if patch is not empty
+	 */
+	public static boolean writePatch(PacketBuffer output, NBTTagCompound prev, NBTTagCompound current) {
+		final int start = output.writerIndex();
+
+		for (String key : prev.getKeySet()) {
+			if (!current.hasKey(key)) {
+				output.writeByte(OP_REMOVE);
+				output.writeString(key);
+			}
+		}
+
+		for (String key : current.getKeySet()) {
+			final NBTBase currentValue = current.getTag(key);
+			final NBTBase prevValue = prev.getTag(key);
+			if (currentValue == prevValue) continue;
+
+			final int currentType = currentValue.getId();
+			if (prevValue == null || prevValue.getId() != currentType) {
+				writeSet(output, key, currentValue);
+			} else if (currentType == Constants.NBT.TAG_COMPOUND) {
+				final int opStart = output.writerIndex();
+				output.writeByte(OP_PATCH_COMPOUND);
+				output.writeString(key);
+				if (!writePatch(output, (NBTTagCompound)prevValue, (NBTTagCompound)currentValue)) output.writerIndex(opStart);
+			} else if (currentType == Constants.NBT.TAG_LIST && ((NBTTagList)prevValue).getTagType() == ((NBTTagList)currentValue).getTagType()) {
+				final int opStart = output.writerIndex();
+				output.writeByte(OP_PATCH_LIST);
+				output.writeString(key);
+				if (!writeListPatch(output, (NBTTagList)prevValue, (NBTTagList)currentValue)) output.writerIndex(opStart);
+			} else if (!currentValue.equals(prevValue)) {
+				writeSet(output, key, currentValue);
+			}
+		}
+
+		final boolean hasChanges = output.writerIndex() != start;
+		output.writeByte(OP_END);
+		return hasChanges;
+	}
+
+	private static void writeSet(PacketBuffer output, String key, NBTBase value) {
+		output.writeByte(OP_SET);
+		output.writeString(key);
+		output.writeByte(value.getId());
+		writeTag(output, value);
+	}
+
+	// list patch: new size, element type, then (index gap, operation) pairs, terminated by 0
+	private static boolean writeListPatch(PacketBuffer output, NBTTagList prev, NBTTagList current) {
+		final int prevCount = prev.tagCount();
+		final int currentCount = current.tagCount();
+
+		output.writeVarInt(currentCount);
+		output.writeByte(current.getTagType());
+		boolean hasChanges = prevCount != currentCount;
+
+		int lastIndex = -1;
+		for (int i = 0; i < currentCount; i++) {
+			final NBTBase currentValue = current.get(i);
+			if (i < prevCount) {
+				final NBTBase prevValue = prev.get(i);
+				if (prevValue.getId() == Constants.NBT.TAG_COMPOUND) {
+					final int opStart = output.writerIndex();
+					output.writeVarInt(i - lastIndex);
+					output.writeByte(OP_PATCH_COMPOUND);
+					if (writePatch(output, (NBTTagCompound)prevValue, (NBTTagCompound)currentValue)) {
+						lastIndex = i;
+						hasChanges = true;
+					} else {
+						output.writerIndex(opStart);
+					}
+					continue;
+				}
+
+				if (prevValue.equals(currentValue)) continue;
+			}
+
+			output.writeVarInt(i - lastIndex);
+			output.writeByte(OP_SET);
+			writeTag(output, currentValue);
+			lastIndex = i;
+			hasChanges = true;
+		}
+
+		output.writeVarInt(0);
+		return hasChanges;
+	}
+
+	public static void applyPatch(PacketBuffer input, NBTTagCompound target) throws IOException {
+		int op;
+		while ((op = input.readByte()) != OP_END) {
+			final String key = input.readString(Short.MAX_VALUE);
+			switch (op) {
+				case OP_REMOVE:
+					target.removeTag(key);
+					break;
+				case OP_SET: {
+					final int type = input.readByte();
+					target.setTag(key, readTag(input, type));
+					break;
+				}
+				case OP_PATCH_COMPOUND: {
+					NBTBase value = target.getTag(key);
+					if (!(value instanceof NBTTagCompound)) {
+						value = new NBTTagCompound();
+						target.setTag(key, value);
+					}
+					applyPatch(input, (NBTTagCompound)value);
+					break;
+				}
+				case OP_PATCH_LIST: {
+					NBTBase value = target.getTag(key);
+					if (!(value instanceof NBTTagList)) {
+						value = new NBTTagList();
+						target.setTag(key, value);
+					}
+					applyListPatch(input, (NBTTagList)value);
+					break;
+				}
+				default:
+					throw new IllegalArgumentException("Invalid NBT patch operation: " + op);
+			}
+		}
+	}
+
+	private static void applyListPatch(PacketBuffer input, NBTTagList target) throws IOException {
+		final int count = input.readVarInt();
+		final int elementType = input.readByte();
+
+		while (target.tagCount() > count)
+			target.removeTag(target.tagCount() - 1);
+
+		int index = -1;
+		int gap;
+		while ((gap = input.readVarInt()) != 0) {
+			index += gap;
+			final int op = input.readByte();
+			switch (op) {
+				case OP_SET: {
+					final NBTBase value = readTag(input, elementType);
+					if (index < target.tagCount()) target.set(index, value);
+					else target.appendTag(value);
+					break;
+				}
+				case OP_PATCH_COMPOUND:
+					applyPatch(input, target.getCompoundTagAt(index));
+					break;
+				default:
+					throw new IllegalArgumentException("Invalid NBT list patch operation: " + op);
+			}
+		}
+	}
+
+	/**
+	 * Compact encoding of single tag. Type is not included, since it's known from context.
+	 */
+	public static void writeTag(PacketBuffer output, NBTBase tag) {
+		switch (tag.getId()) {
+			case Constants.NBT.TAG_BYTE:
+				output.writeByte(((NBTTagByte)tag).getByte());
+				break;
+			case Constants.NBT.TAG_SHORT:
+				output.writeShort(((NBTTagShort)tag).getShort());
+				break;
+			case Constants.NBT.TAG_INT:
+				output.writeVarInt(ByteUtils.zigzagEncode(((NBTTagInt)tag).getInt()));
+				break;
+			case Constants.NBT.TAG_LONG:
+				output.writeLong(((NBTTagLong)tag).getLong());
+				break;
+			case Constants.NBT.TAG_FLOAT:
+				output.writeFloat(((NBTTagFloat)tag).getFloat());
+				break;
+			case Constants.NBT.TAG_DOUBLE:
+				output.writeDouble(((NBTTagDouble)tag).getDouble());
+				break;
+			case Constants.NBT.TAG_BYTE_ARRAY:
+				output.writeByteArray(((NBTTagByteArray)tag).getByteArray());
+				break;
+			case Constants.NBT.TAG_STRING:
+				output.writeString(((NBTTagString)tag).getString());
+				break;
+			case Constants.NBT.TAG_INT_ARRAY:
+				output.writeVarIntArray(((NBTTagIntArray)tag).getIntArray());
+				break;
+			case Constants.NBT.TAG_LIST: {
+				final NBTTagList list = (NBTTagList)tag;
+				final int count = list.tagCount();
+				output.writeByte(list.getTagType());
+				output.writeVarInt(count);
+				for (int i = 0; i < count; i++)
+					writeTag(output, list.get(i));
+				break;
+			}
+			case Constants.NBT.TAG_COMPOUND: {
+				final NBTTagCompound compound = (NBTTagCompound)tag;
+				for (String key : compound.getKeySet()) {
+					final NBTBase value = compound.getTag(key);
+					output.writeByte(value.getId());
+					output.writeString(key);
+					writeTag(output, value);
+				}
+				output.writeByte(Constants.NBT.TAG_END);
+				break;
+			}
+			default: {
+				// no public accessors (i.e. long arrays), use vanilla format
+				final NBTTagCompound wrapper = new NBTTagCompound();
+				wrapper.setTag(WRAPPER_KEY, tag);
+				output.writeCompoundTag(wrapper);
+			}
+		}
+	}
+
+	public static NBTBase readTag(PacketBuffer input, int type) throws IOException {
+		switch (type) {
+			case Constants.NBT.TAG_BYTE:
+				return new NBTTagByte(input.readByte());
+			case Constants.NBT.TAG_SHORT:
+				return new NBTTagShort(input.readShort());
+			case Constants.NBT.TAG_INT:
+				return new NBTTagInt(ByteUtils.zigzagDecode(input.readVarInt()));
+			case Constants.NBT.TAG_LONG:
+				return new NBTTagLong(input.readLong());
+			case Constants.NBT.TAG_FLOAT:
+				return new NBTTagFloat(input.readFloat());
+			case Constants.NBT.TAG_DOUBLE:
+				return new NBTTagDouble(input.readDouble());
+			case Constants.NBT.TAG_BYTE_ARRAY:
+				return new NBTTagByteArray(input.readByteArray());
+			case Constants.NBT.TAG_STRING:
+				return new NBTTagString(input.readString(Short.MAX_VALUE));
+			case Constants.NBT.TAG_INT_ARRAY:
+				return new NBTTagIntArray(input.readVarIntArray());
+			case Constants.NBT.TAG_LIST: {
+				final NBTTagList result = new NBTTagList();
+				final int elementType = input.readByte();
+				final int count = input.readVarInt();
+				for (int i = 0; i < count; i++)
+					result.appendTag(readTag(input, elementType));
+				return result;
+			}
+			case Constants.NBT.TAG_COMPOUND: {
+				final NBTTagCompound result = new NBTTagCompound();
+				int valueType;
+				while ((valueType = input.readByte()) != Constants.NBT.TAG_END) {
+					final String key = input.readString(Short.MAX_VALUE);
+					result.setTag(key, readTag(input, valueType));
+				}
+				return result;
+			}
+			default: {
+				final NBTTagCompound wrapper = input.readCompoundTag();
+				return wrapper.getTag(WRAPPER_KEY);
+			}
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package openmods.utils;
+
+import com.google.common.collect.ForwardingSet;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.Set;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraftforge.fml.common.network.handshake.NetworkDispatcher;
+
+/**
+ * Immutable set of players watching chunk or entity, shared by all callers until watchers change.
+ * Also caches resolved dispatchers, so they are looked up once per snapshot, not once per packet.
+ */
+public class WatcherSnapshot extends ForwardingSet<EntityPlayerMP> {
+
+	public static final WatcherSnapshot EMPTY = new WatcherSnapshot(ImmutableSet.of());
+
+	private final Set<EntityPlayerMP> players;
+
+	private ImmutableList<NetworkDispatcher> dispatchers;
+
+	public WatcherSnapshot(Set<EntityPlayerMP> players) {
+		this.players = ImmutableSet.copyOf(players);
+	}
+
+	@Override
+	protected Set<EntityPlayerMP> delegate() {
+		return players;
+	}
+
+	/**
+	 * Dispatchers of players that were connected when first called
+	 */
+	public ImmutableList<NetworkDispatcher> getDispatchers() {
+		if (dispatchers == null) {
+			final ImmutableList.Builder<NetworkDispatcher> result = ImmutableList.builder();
+			for (EntityPlayerMP player : players) {
+				final NetworkDispatcher dispatcher = NetUtils.getPlayerDispatcher(player);
+				if (dispatcher != null) result.add(dispatcher);
+			}
+			dispatchers = result.build();
+		}
+
+		return dispatchers;
+	}
+}
@@ -0,0 +1,144 @@
+package openmods.utils;
+
+import com.google.common.collect.Maps;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import java.util.Map;
+import java.util.Set;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.server.management.PlayerChunkMapEntry;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
+import net.minecraftforge.event.entity.EntityLeaveWorldEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.event.world.ChunkWatchEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.PlayerEvent.PlayerChangedDimensionEvent;
+import net.minecraftforge.fml.common.gameevent.PlayerEvent.PlayerLoggedOutEvent;
+
+/**
+ * Caches watcher sets of chunks and entities, so every sync map or packet target in same chunk shares single snapshot.
+ * Snapshots are dropped when chunk watch or entity tracking changes. Should only be used from server thread.
+ */
+public class WatcherSnapshotCache {
+
+	public static final WatcherSnapshotCache INSTANCE = new WatcherSnapshotCache();
+
+	private WatcherSnapshotCache() {}
+
+	private static class WorldCache {
+		private final TLongObjectMap<WatcherSnapshot> chunkWatchers = new TLongObjectHashMap<>();
+
+		private final TIntObjectMap<WatcherSnapshot> entityWatchers = new TIntObjectHashMap<>();
+	}
+
+	private final Map<World, WorldCache> worlds = Maps.newIdentityHashMap();
+
+	private WorldCache getWorldCache(World world) {
+		WorldCache result = worlds.get(world);
+		if (result == null) {
+			result = new WorldCache();
+			worlds.put(world, result);
+		}
+		return result;
+	}
+
+	public WatcherSnapshot getChunkWatchers(WorldServer world, int chunkX, int chunkZ) {
+		final PlayerChunkMapEntry entry = world.getPlayerChunkMap().getEntry(chunkX, chunkZ);
+		// no entry means nothing to invalidate cache later
+		if (entry == null) return WatcherSnapshot.EMPTY;
+
+		final TLongObjectMap<WatcherSnapshot> chunkWatchers = getWorldCache(world).chunkWatchers;
+		final long key = ChunkPos.asLong(chunkX, chunkZ);
+		WatcherSnapshot result = chunkWatchers.get(key);
+		if (result == null) {
+			result = new WatcherSnapshot(NetUtils.getPlayersWatchingChunk(world, chunkX, chunkZ));
+			chunkWatchers.put(key, result);
+		}
+
+		return result;
+	}
+
+	public WatcherSnapshot getBlockWatchers(WorldServer world, int blockX, int blockZ) {
+		return getChunkWatchers(world, blockX >> 4, blockZ >> 4);
+	}
+
+	public WatcherSnapshot getEntityWatchers(WorldServer world, Entity entity) {
+		final TIntObjectMap<WatcherSnapshot> entityWatchers = getWorldCache(world).entityWatchers;
+		final int key = entity.getEntityId();
+		WatcherSnapshot result = entityWatchers.get(key);
+		if (result == null) {
+			final Set<EntityPlayerMP> players = NetUtils.getPlayersWatchingEntity(world, entity);
+			// not tracked (yet), don't cache, since StartTracking may never arrive
+			if (players.isEmpty()) return WatcherSnapshot.EMPTY;
+			result = new WatcherSnapshot(players);
+			entityWatchers.put(key, result);
+		}
+
+		return result;
+	}
+
+	// player world is already changed when old chunks are unwatched during dimension change, so all worlds have to be checked
+	private void invalidateChunk(ChunkPos pos) {
+		final long key = ChunkPos.asLong(pos.x, pos.z);
+		for (WorldCache cache : worlds.values())
+			cache.chunkWatchers.remove(key);
+	}
+
+	private void invalidateEntity(World world, Entity entity) {
+		final WorldCache cache = worlds.get(world);
+		if (cache != null) cache.entityWatchers.remove(entity.getEntityId());
+	}
+
+	private void invalidateEntities(World world) {
+		final WorldCache cache = worlds.get(world);
+		if (cache != null) cache.entityWatchers.clear();
+	}
+
+	@SubscribeEvent
+	public void onChunkWatch(ChunkWatchEvent.Watch evt) {
+		invalidateChunk(evt.getChunk());
+	}
+
+	@SubscribeEvent
+	public void onChunkUnwatch(ChunkWatchEvent.UnWatch evt) {
+		invalidateChunk(evt.getChunk());
+	}
+
+	@SubscribeEvent
+	public void onStartTracking(PlayerEvent.StartTracking evt) {
+		invalidateEntity(evt.getEntityPlayer().world, evt.getTarget());
+	}
+
+	@SubscribeEvent
+	public void onStopTracking(PlayerEvent.StopTracking evt) {
+		invalidateEntity(evt.getEntityPlayer().world, evt.getTarget());
+	}
+
+	@SubscribeEvent
+	public void onEntityLeave(EntityLeaveWorldEvent evt) {
+		invalidateEntity(evt.getWorld(), evt.getEntity());
+	}
+
+	// some tracker removal paths don't fire StopTracking
+	@SubscribeEvent
+	public void onPlayerLogout(PlayerLoggedOutEvent evt) {
+		invalidateEntities(evt.player.world);
+	}
+
+	@SubscribeEvent
+	public void onPlayerChangedDimension(PlayerChangedDimensionEvent evt) {
+		for (World world : worlds.keySet())
+			invalidateEntities(world);
+	}
+
+	@SubscribeEvent
+	public void onWorldUnload(WorldEvent.Unload evt) {
+		worlds.remove(evt.getWorld());
+	}
+}
@@ -0,0 +1,85 @@
+package openmods.utils.io;
+
+import com.google.common.base.Preconditions;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import net.minecraft.network.PacketBuffer;
+
+/**
+ * Allocation of buffers used for packet encoding.
+ * <p>
+ * Scratch buffers ({@link #scratch(SizeHint)}) come from shared pool (direct, if platform supports it).
+ * Caller owns them and must {@link ByteBuf#release()} them, usually in {@code finally} block.
+ * They must never become packet payloads: vanilla pipeline doesn't release payloads and local connections pass them to receiver as-is.
+ * <p>
+ * Payload buffers ({@link #payload(SizeHint)}) are unpooled heap buffers. Ownership passes to packet (receiver may release them after decoding).
+ */
+public class PacketBuffers {
+
+	private static volatile ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+
+	/**
+	 * Expected buffer size for single message type, based on exponential moving average of previous sizes.
+	 * Updates are not synchronized, since lost update only makes estimate slightly worse.
+	 */
+	public static class SizeHint {
+		private static final int MIN_CAPACITY = 16;
+
+		private static final int MAX_CAPACITY = 1 << 20;
+
+		// average * 8, to keep some precision with weight 1/8
+		private int scaledAverage;
+
+		public SizeHint(int initialEstimate) {
+			Preconditions.checkArgument(initialEstimate >= 0, "Negative estimate: %s", initialEstimate);
+			this.scaledAverage = Math.min(initialEstimate, MAX_CAPACITY) << 3;
+		}
+
+		public SizeHint() {
+			this(64);
+		}
+
+		public int capacity() {
+			final int average = scaledAverage >> 3;
+			// sizes above average are common, leave some headroom
+			return Math.max(MIN_CAPACITY, Math.min(MAX_CAPACITY, average + (average >> 2)));
+		}
+
+		public void update(int size) {
+			scaledAverage += Math.min(size, MAX_CAPACITY) - (scaledAverage >> 3);
+		}
+	}
+
+	public static PacketBuffer scratch(SizeHint hint) {
+		return new PacketBuffer(allocator.directBuffer(hint.capacity()));
+	}
+
+	public static PacketBuffer scratch() {
+		return new PacketBuffer(allocator.directBuffer());
+	}
+
+	public static PacketBuffer payload(SizeHint hint) {
+		return new PacketBuffer(Unpooled.buffer(hint.capacity()));
+	}
+
+	/**
+	 * Releases scratch buffer and records its size in hint
+	 */
+	public static void release(ByteBuf buffer, SizeHint hint) {
+		hint.update(buffer.writerIndex());
+		buffer.release();
+	}
+
+	/**
+	 * Replaces allocator used for scratch buffers (i.e. for leak tracking in tests)
+	 *
+	 * @return previous allocator
+	 */
+	public static ByteBufAllocator setAllocator(ByteBufAllocator newAllocator) {
+		final ByteBufAllocator prev = allocator;
+		allocator = Preconditions.checkNotNull(newAllocator);
+		return prev;
+	}
+}
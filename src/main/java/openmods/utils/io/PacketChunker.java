@@ -1,108 +1,424 @@
 package openmods.utils.io;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Maps;
-import com.google.common.io.ByteArrayDataOutput;
-import com.google.common.io.ByteStreams;
-import com.google.common.primitives.UnsignedBytes;
+import com.google.common.base.Supplier;
+import com.google.common.base.Ticker;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import gnu.trove.iterator.TIntObjectIterator;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
 import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Map;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent.ClientTickEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent.Phase;
+import net.minecraftforge.fml.common.gameevent.TickEvent.ServerTickEvent;
 
+/**
+ * Splits large payloads into chunks and reassembles them on other side, without copying payload bytes.
+ * <p>
+ * Chunk format: varint chunk count, then (only if there is more than one chunk) varint chunk index and varint sequence id, followed by part of payload.
+ * <p>
+ * Receiver state is kept separately for every connection (any object, i.e. {@code NetworkManager}, weakly referenced).
+ * Incomplete sequences are dropped after timeout. Stale sequences are checked when chunk arrives on same connection and periodically by {@link EvictionTicker}
+ * (registered by OpenMods), so owners only need to call {@link #removeConnection(Object)} if they want to release state immediately after disconnect.
+ */
 public class PacketChunker {
 
-	private byte packetId = 0;
-
-	private final Map<Byte, byte[][]> chunks = Maps.newHashMap();
-
 	public static final int MAX_CHUNK_SIZE = Short.MAX_VALUE - 100;
 
 	public static final int PACKET_SIZE_S3F = 0x001FFFF0;
 	public static final int PACKET_SIZE_C17 = 0x00007FFF;
 
-	public byte[][] splitIntoChunks(byte[] data, int maxChunkSize) {
+	// chunk count, index and sequence id, all varints
+	private static final int MAX_HEADER_SIZE = 3 * 5;
 
-		final int numChunks = (data.length + maxChunkSize - 1) / maxChunkSize;
-		Preconditions.checkArgument(numChunks < 256, "%s chunks? Way too much data, man.", numChunks);
-		byte[][] result = new byte[numChunks][];
+	public static final int DEFAULT_MAX_CHUNKS = 1 << 16;
 
-		int chunkOffset = 0;
-		for (int chunkIndex = 0; chunkIndex < numChunks; chunkIndex++) {
-			// size of the current chunk
-			int chunkSize = Math.min(data.length - chunkOffset, maxChunkSize);
+	public static final long DEFAULT_TIMEOUT_SECONDS = 30;
 
-			ByteArrayDataOutput buf = ByteStreams.newDataOutput(maxChunkSize);
+	// limits memory used by partial sequences from single connection
+	private static final int MAX_PENDING_SEQUENCES = 64;
 
-			buf.writeByte(numChunks);
-			if (numChunks > 1) {
-				buf.writeByte(chunkIndex);
-				buf.writeByte(packetId);
-			}
+	/**
+	 * Receives payload of single sequence in order, possibly before all chunks are received.
+	 */
+	public interface IStreamConsumer {
+		/**
+		 * @param data next part of payload. It's released after call, so consumer must retain it if needed later
+		 */
+		public void onData(ByteBuf data) throws IOException;
+
+		public void onComplete() throws IOException;
+
+		/**
+		 * Called when sequence was evicted before completion
+		 */
+		public void onAbort();
+	}
 
-			buf.write(data, chunkOffset, chunkSize);
-			result[chunkIndex] = buf.toByteArray();
-			chunkOffset += chunkSize;
+	private static class Sequence {
+		private final IStreamConsumer consumer;
+
+		// chunks received out of order
+		private final ByteBuf[] pending;
+
+		private int nextIndex;
+
+		private long lastUpdate;
+
+		public Sequence(IStreamConsumer consumer, int chunkCount) {
+			this.consumer = consumer;
+			this.pending = new ByteBuf[chunkCount];
+		}
+
+		public void abort() {
+			for (int i = nextIndex; i < pending.length; i++)
+				if (pending[i] != null) pending[i].release();
+
+			consumer.onAbort();
 		}
-		packetId++;
-		return result;
 	}
 
-	public byte[] consumeChunk(byte[] payload) throws IOException {
-		return consumeChunk(ByteStreams.newDataInput(payload), payload.length);
+	private static class ConnectionState {
+		private final TIntObjectMap<Sequence> sequences = new TIntObjectHashMap<>();
+
+		private long lastEviction;
+
+		public ConnectionState(long now) {
+			this.lastEviction = now;
+		}
 	}
 
-	public byte[] consumeChunk(InputStream stream, int payloadLength) throws IOException {
-		DataInput data = new DataInputStream(stream);
-		return consumeChunk(data, payloadLength);
+	private static class CollectingConsumer implements IStreamConsumer {
+		private final CompositeByteBuf result = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+
+		@Override
+		public void onData(ByteBuf data) {
+			result.addComponent(true, data.retain());
+		}
+
+		@Override
+		public void onComplete() {}
+
+		@Override
+		public void onAbort() {
+			result.release();
+		}
 	}
 
-	/***
-	 * Get the bytes from the packet. If the total packet is not yet complete
-	 * (and we're waiting for more to complete the sequence), we return null.
-	 * Otherwise we return the full byte array
+	/**
+	 * Evicts stale sequences of all chunkers, since connection that stopped sending chunks would keep them forever
+	 */
+	public static class EvictionTicker {
+		public static final EvictionTicker INSTANCE = new EvictionTicker();
+
+		private EvictionTicker() {}
+
+		@SubscribeEvent
+		public void onServerTick(ServerTickEvent evt) {
+			if (evt.phase == Phase.END) evictAllStale();
+		}
+
+		@SubscribeEvent
+		public void onClientTick(ClientTickEvent evt) {
+			if (evt.phase == Phase.END) evictAllStale();
+		}
+	}
+
+	private static final Set<PacketChunker> instances = Collections.newSetFromMap(new MapMaker().weakKeys().<PacketChunker, Boolean> makeMap());
+
+	private final AtomicInteger nextSequenceId = new AtomicInteger();
+
+	private final ConcurrentMap<Object, ConnectionState> connections = new MapMaker().weakKeys().makeMap();
+
+	private final int maxChunks;
+
+	private final long timeoutNanos;
+
+	private final Ticker ticker;
+
+	public PacketChunker(int maxChunks, long timeout, TimeUnit unit, Ticker ticker) {
+		Preconditions.checkArgument(maxChunks > 0, "Invalid chunk limit: %s", maxChunks);
+		this.maxChunks = maxChunks;
+		this.timeoutNanos = unit.toNanos(timeout);
+		this.ticker = ticker;
+		instances.add(this);
+	}
+
+	public PacketChunker() {
+		this(DEFAULT_MAX_CHUNKS, DEFAULT_TIMEOUT_SECONDS, TimeUnit.SECONDS, Ticker.systemTicker());
+	}
+
+	/**
+	 * Splits readable bytes of {@code data} into chunks. Chunks contain slices of {@code data}, so it must not be modified until chunks are sent.
+	 * Caller keeps ownership of {@code data}, every returned chunk must be released separately (i.e. by being sent as packet payload).
+	 */
+	public List<ByteBuf> split(ByteBuf data, int maxChunkSize) {
+		Preconditions.checkArgument(maxChunkSize > MAX_HEADER_SIZE, "Chunk size too small: %s", maxChunkSize);
+
+		final int length = data.readableBytes();
+		final int maxPartSize = maxChunkSize - MAX_HEADER_SIZE;
+		final int chunkCount = Math.max(1, (length + maxPartSize - 1) / maxPartSize);
+		Preconditions.checkArgument(chunkCount <= maxChunks, "%s chunks? Way too much data, man.", chunkCount);
+
+		final List<ByteBuf> result = Lists.newArrayListWithCapacity(chunkCount);
+		final int sequenceId = chunkCount > 1? nextSequenceId.getAndIncrement() : 0;
+
+		int offset = data.readerIndex();
+		for (int chunkIndex = 0; chunkIndex < chunkCount; chunkIndex++) {
+			final int partSize = Math.min(length - (offset - data.readerIndex()), maxPartSize);
+
+			final PacketBuffer header = new PacketBuffer(Unpooled.buffer(MAX_HEADER_SIZE));
+			header.writeVarInt(chunkCount);
+			if (chunkCount > 1) {
+				header.writeVarInt(chunkIndex);
+				header.writeVarInt(sequenceId);
+			}
+
+			result.add(Unpooled.wrappedBuffer(header, data.retainedSlice(offset, partSize)));
+			offset += partSize;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Passes payload part from chunk to consumer of its sequence (created by {@code consumerFactory} on first received chunk).
+	 * Readable bytes of {@code chunk} are consumed, but it's not released.
+	 */
+	public void consumeChunk(Object connection, ByteBuf chunk, Supplier<? extends IStreamConsumer> consumerFactory) throws IOException {
+		accept(connection, chunk, consumerFactory);
+	}
+
+	/**
+	 * Collects whole payload before returning it. Shouldn't be mixed with streaming version on single connection.
 	 *
-	 * @param payload
-	 *            one of the chunks
-	 * @return the full byte array or null if not complete
+	 * @return reassembled payload (owned by caller) or null, if sequence is not complete yet
 	 */
-	public synchronized byte[] consumeChunk(DataInput input, int payloadLength) throws IOException {
-		int numChunks = UnsignedBytes.toInt(input.readByte());
+	public ByteBuf consumeChunk(Object connection, ByteBuf chunk) throws IOException {
+		final IStreamConsumer completed = accept(connection, chunk, CollectingConsumer::new);
+		Preconditions.checkState(completed == null || completed instanceof CollectingConsumer, "Streaming and collecting chunks mixed on single connection");
+		return completed != null? ((CollectingConsumer)completed).result : null;
+	}
+
+	// returns consumer of sequence completed by this chunk
+	private IStreamConsumer accept(Object connection, ByteBuf chunk, Supplier<? extends IStreamConsumer> consumerFactory) throws IOException {
+		final PacketBuffer input = new PacketBuffer(chunk);
+		final int chunkCount = input.readVarInt();
+
+		if (chunkCount == 1) {
+			final IStreamConsumer consumer = consumerFactory.get();
+			consumer.onData(input.readSlice(input.readableBytes()));
+			consumer.onComplete();
+			return consumer;
+		}
+
+		Preconditions.checkState(chunkCount > 1 && chunkCount <= maxChunks, "Invalid chunk count: %s", chunkCount);
+		final int chunkIndex = input.readVarInt();
+		Preconditions.checkState(chunkIndex >= 0 && chunkIndex < chunkCount, "Invalid chunk index: %s, count: %s", chunkIndex, chunkCount);
+		final int sequenceId = input.readVarInt();
+
+		final ConnectionState state = getConnectionState(connection);
+		synchronized (state) {
+			final long now = ticker.read();
+			evictStale(state, now, false);
+
+			Sequence sequence = state.sequences.get(sequenceId);
+			if (sequence == null) {
+				if (state.sequences.size() >= MAX_PENDING_SEQUENCES) evictOldest(state);
+				sequence = new Sequence(consumerFactory.get(), chunkCount);
+				state.sequences.put(sequenceId, sequence);
+			} else {
+				Preconditions.checkState(sequence.pending.length == chunkCount, "Chunk count changed in sequence %s: %s -> %s", sequenceId, sequence.pending.length, chunkCount);
+			}
+
+			sequence.lastUpdate = now;
+
+			try {
+				if (chunkIndex == sequence.nextIndex) {
+					sequence.consumer.onData(input.readSlice(input.readableBytes()));
+					sequence.nextIndex++;
+
+					// deliver chunks that arrived out of order
+					ByteBuf next;
+					while (sequence.nextIndex < chunkCount && (next = sequence.pending[sequence.nextIndex]) != null) {
+						sequence.pending[sequence.nextIndex++] = null;
+						try {
+							sequence.consumer.onData(next);
+						} finally {
+							next.release();
+						}
+					}
+				} else if (chunkIndex > sequence.nextIndex && sequence.pending[chunkIndex] == null) {
+					sequence.pending[chunkIndex] = input.readRetainedSlice(input.readableBytes());
+				} else {
+					// duplicate, ignore
+					input.skipBytes(input.readableBytes());
+				}
+
+				if (sequence.nextIndex == chunkCount) {
+					state.sequences.remove(sequenceId);
+					sequence.consumer.onComplete();
+					return sequence.consumer;
+				}
+
+				return null;
+			} catch (IOException | RuntimeException e) {
+				state.sequences.remove(sequenceId);
+				sequence.abort();
+				throw e;
+			}
+		}
+	}
+
+	private ConnectionState getConnectionState(Object connection) {
+		ConnectionState state = connections.get(connection);
+		if (state == null) {
+			final ConnectionState newState = new ConnectionState(ticker.read());
+			state = connections.putIfAbsent(connection, newState);
+			if (state == null) state = newState;
+		}
+		return state;
+	}
+
+	private void evictStale(ConnectionState state, long now, boolean force) {
+		// full scan only few times per timeout period
+		if (!force && now - state.lastEviction < timeoutNanos / 4) return;
+		state.lastEviction = now;
+
+		final TIntObjectIterator<Sequence> it = state.sequences.iterator();
+		while (it.hasNext()) {
+			it.advance();
+			final Sequence sequence = it.value();
+			if (now - sequence.lastUpdate > timeoutNanos) {
+				it.remove();
+				sequence.abort();
+			}
+		}
+	}
 
-		if (numChunks == 1) {
-			byte[] payload = new byte[payloadLength - 1];
-			input.readFully(payload);
-			return payload;
+	private static void evictOldest(ConnectionState state) {
+		int oldestId = 0;
+		Sequence oldest = null;
+
+		final TIntObjectIterator<Sequence> it = state.sequences.iterator();
+		while (it.hasNext()) {
+			it.advance();
+			final Sequence sequence = it.value();
+			if (oldest == null || sequence.lastUpdate - oldest.lastUpdate < 0) {
+				oldest = sequence;
+				oldestId = it.key();
+			}
 		}
 
-		int chunkIndex = UnsignedBytes.toInt(input.readByte());
-		byte incomingPacketId = input.readByte();
+		if (oldest != null) {
+			state.sequences.remove(oldestId);
+			oldest.abort();
+		}
+	}
 
-		byte[][] alreadyReceived = chunks.get(incomingPacketId);
+	/**
+	 * Drops incomplete sequences not updated for longer than timeout
+	 */
+	public void evictStale() {
+		final long now = ticker.read();
+		for (ConnectionState state : connections.values()) {
+			synchronized (state) {
+				evictStale(state, now, true);
+			}
+		}
+	}
 
-		if (alreadyReceived == null) {
-			alreadyReceived = new byte[numChunks][];
-			chunks.put(incomingPacketId, alreadyReceived);
+	// full scan of every connection is still done only few times per timeout period
+	private void evictStalePeriodic() {
+		final long now = ticker.read();
+		for (ConnectionState state : connections.values()) {
+			synchronized (state) {
+				evictStale(state, now, false);
+			}
 		}
+	}
 
-		byte[] chunkBytes = new byte[payloadLength - 3];
-		input.readFully(chunkBytes);
+	static void evictAllStale() {
+		for (PacketChunker chunker : instances)
+			chunker.evictStalePeriodic();
+	}
+
+	/**
+	 * Drops all state of connection (i.e. after disconnect)
+	 */
+	public void removeConnection(Object connection) {
+		final ConnectionState state = connections.remove(connection);
+		if (state != null) {
+			synchronized (state) {
+				state.sequences.forEachValue(sequence -> {
+					sequence.abort();
+					return true;
+				});
+				state.sequences.clear();
+			}
+		}
+	}
 
-		alreadyReceived[chunkIndex] = chunkBytes;
+	public int pendingSequenceCount(Object connection) {
+		final ConnectionState state = connections.get(connection);
+		if (state == null) return 0;
+		synchronized (state) {
+			return state.sequences.size();
+		}
+	}
 
-		for (byte[] s : alreadyReceived)
-			if (s == null) return null; // not completed yet
+	@Deprecated
+	public byte[][] splitIntoChunks(byte[] data, int maxChunkSize) {
+		final List<ByteBuf> chunks = split(Unpooled.wrappedBuffer(data), maxChunkSize);
+		final byte[][] result = new byte[chunks.size()][];
+		for (int i = 0; i < result.length; i++) {
+			final ByteBuf chunk = chunks.get(i);
+			result[i] = new byte[chunk.readableBytes()];
+			chunk.readBytes(result[i]);
+			chunk.release();
+		}
+		return result;
+	}
 
-		ByteArrayDataOutput fullPacket = ByteStreams.newDataOutput();
+	@Deprecated
+	public byte[] consumeChunk(byte[] payload) throws IOException {
+		final ByteBuf result = consumeChunk(this, Unpooled.wrappedBuffer(payload));
+		if (result == null) return null;
 
-		for (short i = 0; i < numChunks; i++) {
-			byte[] chunkPart = alreadyReceived[i];
-			fullPacket.write(chunkPart);
+		try {
+			final byte[] bytes = new byte[result.readableBytes()];
+			result.readBytes(bytes);
+			return bytes;
+		} finally {
+			result.release();
 		}
+	}
 
-		chunks.remove(incomingPacketId);
+	@Deprecated
+	public byte[] consumeChunk(InputStream stream, int payloadLength) throws IOException {
+		DataInput data = new DataInputStream(stream);
+		return consumeChunk(data, payloadLength);
+	}
 
-		return fullPacket.toByteArray();
+	@Deprecated
+	public byte[] consumeChunk(DataInput input, int payloadLength) throws IOException {
+		final byte[] payload = new byte[payloadLength];
+		input.readFully(payload);
+		return consumeChunk(payload);
 	}
 }
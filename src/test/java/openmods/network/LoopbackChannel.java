@@ -0,0 +1,112 @@
+package openmods.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.fml.common.network.NetworkRegistry;
+import net.minecraftforge.fml.common.network.internal.FMLProxyPacket;
+import net.minecraftforge.fml.relauncher.Side;
+
+/**
+ * Two in-memory channels connected back to back, configured like FML channels of both sides.
+ * Outbound packets of one side are copied (like after network transfer) and passed as inbound packets to other side.
+ * Messages decoded by receiver stay in its inbound queue.
+ * <p>
+ * Handlers run on calling thread. Handlers given to both sides must be {@link ChannelHandler.Sharable}.
+ */
+public class LoopbackChannel {
+
+	private final String name;
+
+	private final EmbeddedChannel server;
+
+	private final EmbeddedChannel client;
+
+	private long packetCount;
+
+	private long byteCount;
+
+	public LoopbackChannel(String name, ChannelHandler[] serverHandlers, ChannelHandler[] clientHandlers) {
+		this.name = name;
+		this.server = createChannel(Side.SERVER, serverHandlers);
+		this.client = createChannel(Side.CLIENT, clientHandlers);
+	}
+
+	public LoopbackChannel(String name, ChannelHandler... handlers) {
+		this(name, handlers, handlers);
+	}
+
+	private EmbeddedChannel createChannel(Side side, ChannelHandler[] handlers) {
+		final EmbeddedChannel channel = new EmbeddedChannel(handlers);
+		channel.attr(NetworkRegistry.FML_CHANNEL).set(name);
+		channel.attr(NetworkRegistry.CHANNEL_SOURCE).set(side);
+		return channel;
+	}
+
+	public EmbeddedChannel serverChannel() {
+		return server;
+	}
+
+	public EmbeddedChannel clientChannel() {
+		return client;
+	}
+
+	public void sendToClient(Object msg) {
+		server.writeOutbound(msg);
+		transfer(server, client);
+	}
+
+	public void sendToServer(Object msg) {
+		client.writeOutbound(msg);
+		transfer(client, server);
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> T readOnClient() {
+		return (T)client.readInbound();
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> T readOnServer() {
+		return (T)server.readInbound();
+	}
+
+	private void transfer(EmbeddedChannel from, EmbeddedChannel to) {
+		Object msg;
+		while ((msg = from.readOutbound()) != null) {
+			if (!(msg instanceof FMLProxyPacket)) throw new IllegalStateException("Unexpected outbound message: " + msg);
+
+			final ByteBuf payload = ((FMLProxyPacket)msg).payload();
+			packetCount++;
+			byteCount += payload.readableBytes();
+
+			to.writeInbound(new FMLProxyPacket(new PacketBuffer(Unpooled.copiedBuffer(payload)), name));
+		}
+	}
+
+	/**
+	 * Number of packets that were transferred between sides
+	 */
+	public long packetCount() {
+		return packetCount;
+	}
+
+	/**
+	 * Total size of payloads of transferred packets
+	 */
+	public long byteCount() {
+		return byteCount;
+	}
+
+	public void resetCounters() {
+		packetCount = 0;
+		byteCount = 0;
+	}
+
+	public void close() {
+		server.finish();
+		client.finish();
+	}
+}
@@ -0,0 +1,163 @@
+package openmods.network;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.fml.relauncher.Side;
+import openmods.OpenMods;
+import openmods.network.event.EventDirection;
+import openmods.network.event.NetworkEvent;
+import openmods.network.event.NetworkEventCodec;
+import openmods.network.event.NetworkEventEntry;
+import openmods.network.rpc.IRpcTarget;
+import openmods.network.rpc.MethodEntry;
+import openmods.network.rpc.RpcCall;
+import openmods.network.rpc.RpcCallCodec;
+import openmods.network.rpc.TargetTypeProvider;
+import openmods.proxy.IOpenModsProxy;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LoopbackChannelTest {
+
+	public interface ITestRpc {
+		public void call(int a, String b);
+	}
+
+	public static class RecordingTarget implements ITestRpc {
+		private int a;
+		private String b;
+
+		@Override
+		public void call(int a, String b) {
+			this.a = a;
+			this.b = b;
+		}
+	}
+
+	public static class TestRpcTarget implements IRpcTarget {
+		@Override
+		public Object getTarget() {
+			return null;
+		}
+
+		@Override
+		public void writeToStream(PacketBuffer output) {}
+
+		@Override
+		public void readFromStreamStream(Side side, EntityPlayer player, PacketBuffer input) {}
+
+		@Override
+		public void afterCall() {}
+	}
+
+	public static class TestEvent extends NetworkEvent {
+		public int a;
+		public String b;
+
+		@Override
+		protected void readFromStream(PacketBuffer input) {
+			a = input.readVarInt();
+			b = input.readString(Short.MAX_VALUE);
+		}
+
+		@Override
+		protected void writeToStream(PacketBuffer output) {
+			output.writeVarInt(a);
+			output.writeString(b);
+		}
+	}
+
+	private IOpenModsProxy prevProxy;
+
+	@Before
+	public void setup() {
+		prevProxy = StubPlayers.installProxy(StubPlayers.create(5));
+	}
+
+	@After
+	public void cleanup() {
+		OpenMods.proxy = prevProxy;
+	}
+
+	@Test
+	public void testRpcRoundTrip() throws Exception {
+		final StubRegistry<Class<?>, TargetTypeProvider> targets = new StubRegistry<>();
+		targets.register(TestRpcTarget.class, new TargetTypeProvider() {
+			@Override
+			public IRpcTarget createRpcTarget() {
+				return new TestRpcTarget();
+			}
+
+			@Override
+			public Class<? extends IRpcTarget> getTargetClass() {
+				return TestRpcTarget.class;
+			}
+		});
+
+		final Method method = ITestRpc.class.getMethod("call", int.class, String.class);
+		final StubRegistry<Method, MethodEntry> methods = new StubRegistry<>();
+		final MethodEntry entry = new MethodEntry(method);
+		methods.register(method, entry);
+
+		final LoopbackChannel channel = new LoopbackChannel("test", new RpcCallCodec(targets.get(), methods.get()));
+		channel.sendToServer(new RpcCall(new TestRpcTarget(), entry, new Object[] { 42, "hello" }));
+
+		final RpcCall call = channel.readOnServer();
+		Assert.assertNotNull(call);
+		Assert.assertSame(entry, call.method);
+		Assert.assertTrue(call.target instanceof TestRpcTarget);
+
+		final RecordingTarget target = new RecordingTarget();
+		if (call.invocation != null) call.invocation.invoke(target);
+		else method.invoke(target, call.args);
+
+		Assert.assertEquals(42, target.a);
+		Assert.assertEquals("hello", target.b);
+
+		Assert.assertNull(channel.readOnServer());
+		Assert.assertEquals(1, channel.packetCount());
+		channel.close();
+	}
+
+	@Test
+	public void testEventRoundTrip() throws IOException {
+		final StubRegistry<Class<?>, NetworkEventEntry> events = new StubRegistry<>();
+		events.register(TestEvent.class, new NetworkEventEntry() {
+			@Override
+			public Class<? extends NetworkEvent> getPacketType() {
+				return TestEvent.class;
+			}
+
+			@Override
+			public NetworkEvent createPacket() {
+				return new TestEvent();
+			}
+
+			@Override
+			public EventDirection getDirection() {
+				return EventDirection.S2C;
+			}
+		});
+
+		final LoopbackChannel channel = new LoopbackChannel("test", new NetworkEventCodec(events.get()));
+		final TestEvent sent = new TestEvent();
+		sent.a = 1234;
+		sent.b = "world";
+		channel.sendToClient(sent);
+
+		final TestEvent received = channel.readOnClient();
+		Assert.assertNotNull(received);
+		Assert.assertNotSame(sent, received);
+		Assert.assertEquals(1234, received.a);
+		Assert.assertEquals("world", received.b);
+		Assert.assertEquals(Side.CLIENT, received.side);
+
+		Assert.assertEquals(1, channel.packetCount());
+		Assert.assertTrue(channel.byteCount() > 0);
+		channel.close();
+	}
+}
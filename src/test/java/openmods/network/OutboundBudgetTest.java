@@ -0,0 +1,63 @@
+package openmods.network;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import net.minecraft.network.NetworkManager;
+import openmods.LibConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class OutboundBudgetTest {
+
+	private int prevBudget;
+
+	@Before
+	public void setup() {
+		prevBudget = LibConfig.outboundBytesPerTick;
+		LibConfig.outboundBytesPerTick = 100;
+		OutboundBudget.resetCounters();
+	}
+
+	@After
+	public void tearDown() {
+		LibConfig.outboundBytesPerTick = prevBudget;
+		OutboundBudget.resetCounters();
+	}
+
+	private static NetworkManager createManager() {
+		final NetworkManager manager = Mockito.mock(NetworkManager.class);
+		Mockito.when(manager.channel()).thenReturn(new EmbeddedChannel());
+		Mockito.when(manager.isLocalChannel()).thenReturn(false);
+		return manager;
+	}
+
+	@Test
+	public void testThrottledConnectionCountedOnce() {
+		final NetworkManager manager = createManager();
+		Assert.assertFalse(OutboundBudget.isThrottled(manager));
+
+		OutboundBudget.record(manager, 200);
+		for (int i = 0; i < 5; i++)
+			Assert.assertTrue(OutboundBudget.isThrottled(manager));
+
+		Assert.assertEquals(1, OutboundBudget.getThrottledBudgetCount());
+		Assert.assertEquals(0, OutboundBudget.getThrottledUnwritableCount());
+	}
+
+	@Test
+	public void testEachConnectionCounted() {
+		final NetworkManager managerA = createManager();
+		final NetworkManager managerB = createManager();
+
+		OutboundBudget.record(managerA, 200);
+		OutboundBudget.record(managerB, 200);
+		for (int i = 0; i < 5; i++) {
+			Assert.assertTrue(OutboundBudget.isThrottled(managerA));
+			Assert.assertTrue(OutboundBudget.isThrottled(managerB));
+		}
+
+		Assert.assertEquals(2, OutboundBudget.getThrottledBudgetCount());
+	}
+}
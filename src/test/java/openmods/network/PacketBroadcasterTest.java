@@ -0,0 +1,216 @@
+package openmods.network;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.EventLoop;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import net.minecraft.network.EnumConnectionState;
+import net.minecraft.network.EnumPacketDirection;
+import net.minecraft.network.NettyPacketEncoder;
+import net.minecraft.network.NetworkManager;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.network.play.server.SPacketCustomPayload;
+import net.minecraftforge.fml.common.network.handshake.NetworkDispatcher;
+import net.minecraftforge.fml.common.network.internal.FMLProxyPacket;
+import openmods.reflection.FieldAccess;
+import openmods.utils.io.PacketBuffers;
+import openmods.utils.io.TrackingAllocator;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+public class PacketBroadcasterTest {
+
+	private static final FieldAccess<NetworkManager> DISPATCHER_MANAGER = FieldAccess.create(NetworkDispatcher.class, "manager");
+
+	/**
+	 * Event loop that only collects tasks, so test can check how writes were grouped
+	 */
+	private static class StubLoop {
+		private final List<Runnable> tasks = Lists.newArrayList();
+
+		private int executeCount;
+
+		private final EventLoop loop = Mockito.mock(EventLoop.class);
+
+		public StubLoop(boolean reject) {
+			// tasks are run by test thread, which is also embedded channel thread
+			Mockito.when(loop.inEventLoop()).thenReturn(true);
+			Mockito.doAnswer(invocation -> {
+				executeCount++;
+				if (reject) throw new RejectedExecutionException();
+				tasks.add((Runnable)invocation.getArguments()[0]);
+				return null;
+			}).when(loop).execute(Matchers.any(Runnable.class));
+		}
+
+		public void runTasks() {
+			for (Runnable task : tasks)
+				task.run();
+			tasks.clear();
+		}
+	}
+
+	private static class CountingFlushHandler extends ChannelOutboundHandlerAdapter {
+		private int flushCount;
+
+		@Override
+		public void flush(ChannelHandlerContext ctx) throws Exception {
+			flushCount++;
+			super.flush(ctx);
+		}
+	}
+
+	// embedded channel that reports shared loop, so multiple connections can be grouped together
+	private static class StubChannel extends EmbeddedChannel {
+		private final EventLoop loop;
+
+		private final CountingFlushHandler flushes;
+
+		public StubChannel(StubLoop loop, CountingFlushHandler flushes) {
+			super(flushes);
+			this.loop = loop.loop;
+			this.flushes = flushes;
+			attr(NetworkManager.PROTOCOL_ATTRIBUTE_KEY).set(EnumConnectionState.PLAY);
+		}
+
+		public StubChannel(StubLoop loop) {
+			this(loop, new CountingFlushHandler());
+		}
+
+		@Override
+		public EventLoop eventLoop() {
+			// called during registration, before field is set
+			return loop != null? loop : super.eventLoop();
+		}
+	}
+
+	private static NetworkDispatcher createDispatcher(StubChannel channel) {
+		final NetworkManager manager = Mockito.mock(NetworkManager.class);
+		Mockito.when(manager.channel()).thenReturn(channel);
+		Mockito.when(manager.isChannelOpen()).thenReturn(true);
+		Mockito.when(manager.isLocalChannel()).thenReturn(false);
+
+		final NetworkDispatcher dispatcher = Mockito.mock(NetworkDispatcher.class);
+		DISPATCHER_MANAGER.set(dispatcher, manager);
+		return dispatcher;
+	}
+
+	private static FMLProxyPacket createPacket() {
+		final PacketBuffer payload = new PacketBuffer(Unpooled.buffer());
+		for (int i = 0; i < 100; i++)
+			payload.writeVarInt(i * 31);
+		return new FMLProxyPacket(payload, "test");
+	}
+
+	// same bytes as produced by vanilla pipeline for packet sent via NetworkDispatcher.sendProxy
+	private static byte[] encodeWithVanilla(FMLProxyPacket pkt) {
+		final EmbeddedChannel channel = new EmbeddedChannel(new NettyPacketEncoder(EnumPacketDirection.CLIENTBOUND));
+		channel.attr(NetworkManager.PROTOCOL_ATTRIBUTE_KEY).set(EnumConnectionState.PLAY);
+		channel.writeOutbound(new SPacketCustomPayload(pkt.channel(), new PacketBuffer(pkt.payload().duplicate())));
+		final ByteBuf encoded = channel.readOutbound();
+		try {
+			return ByteBufUtil.getBytes(encoded);
+		} finally {
+			encoded.release();
+			channel.close();
+		}
+	}
+
+	private static byte[] readWritten(EmbeddedChannel channel) {
+		final ByteBuf written = channel.readOutbound();
+		Assert.assertNotNull(written);
+		Assert.assertNull(channel.readOutbound());
+		try {
+			return ByteBufUtil.getBytes(written);
+		} finally {
+			written.release();
+		}
+	}
+
+	private TrackingAllocator allocator;
+
+	private ByteBufAllocator prevAllocator;
+
+	@Before
+	public void setup() {
+		allocator = new TrackingAllocator();
+		prevAllocator = PacketBuffers.setAllocator(allocator);
+	}
+
+	@After
+	public void tearDown() {
+		PacketBuffers.setAllocator(prevAllocator);
+	}
+
+	@Test
+	public void testWritesGroupedPerLoop() {
+		final StubLoop sharedLoop = new StubLoop(false);
+		final StubLoop otherLoop = new StubLoop(false);
+		final List<StubChannel> channels = ImmutableList.of(
+				new StubChannel(sharedLoop),
+				new StubChannel(sharedLoop),
+				new StubChannel(otherLoop));
+
+		final List<NetworkDispatcher> dispatchers = Lists.newArrayList();
+		for (StubChannel channel : channels)
+			dispatchers.add(createDispatcher(channel));
+
+		final FMLProxyPacket pkt = createPacket();
+		PacketBroadcaster.sendToDispatchers(pkt, dispatchers);
+
+		for (NetworkDispatcher dispatcher : dispatchers)
+			Mockito.verify(dispatcher, Mockito.never()).sendProxy(Matchers.any(FMLProxyPacket.class));
+
+		Assert.assertEquals(1, sharedLoop.tasks.size());
+		Assert.assertEquals(1, otherLoop.tasks.size());
+
+		sharedLoop.runTasks();
+		otherLoop.runTasks();
+
+		final byte[] expected = encodeWithVanilla(pkt);
+		for (StubChannel channel : channels) {
+			Assert.assertEquals(1, channel.flushes.flushCount);
+			Assert.assertArrayEquals(expected, readWritten(channel));
+		}
+
+		Assert.assertEquals(1, allocator.allocatedCount());
+		allocator.assertAllReleased();
+	}
+
+	@Test
+	public void testBufferReleasedWhenLoopRejectsTask() {
+		final StubLoop loop = new StubLoop(false);
+		final StubLoop rejectingLoop = new StubLoop(true);
+		final StubChannel channel = new StubChannel(loop);
+		final StubChannel rejectedChannelA = new StubChannel(rejectingLoop);
+		final StubChannel rejectedChannelB = new StubChannel(rejectingLoop);
+
+		final FMLProxyPacket pkt = createPacket();
+		PacketBroadcaster.sendToDispatchers(pkt, ImmutableList.of(
+				createDispatcher(channel),
+				createDispatcher(rejectedChannelA),
+				createDispatcher(rejectedChannelB)));
+
+		Assert.assertEquals(1, rejectingLoop.executeCount);
+		Assert.assertNull(rejectedChannelA.readOutbound());
+		Assert.assertNull(rejectedChannelB.readOutbound());
+
+		loop.runTasks();
+		Assert.assertArrayEquals(encodeWithVanilla(pkt), readWritten(channel));
+
+		Assert.assertEquals(1, allocator.allocatedCount());
+		allocator.assertAllReleased();
+	}
+}
@@ -0,0 +1,35 @@
+package openmods.network;
+
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.network.INetHandler;
+import openmods.OpenMods;
+import openmods.proxy.IOpenModsProxy;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+/**
+ * Players without world or connection, for code that only needs identity of sender or receiver.
+ */
+public class StubPlayers {
+
+	public static EntityPlayerMP create(int entityId) {
+		final EntityPlayerMP player = Mockito.mock(EntityPlayerMP.class);
+		Mockito.when(player.getEntityId()).thenReturn(entityId);
+		return player;
+	}
+
+	/**
+	 * Replaces {@link OpenMods#proxy} with one that returns given player as sender of every packet
+	 *
+	 * @return previous proxy
+	 */
+	public static IOpenModsProxy installProxy(EntityPlayer sender) {
+		final IOpenModsProxy proxy = Mockito.mock(IOpenModsProxy.class);
+		Mockito.when(proxy.getPlayerFromHandler(Matchers.any(INetHandler.class))).thenReturn(sender);
+
+		final IOpenModsProxy prev = OpenMods.proxy;
+		OpenMods.proxy = proxy;
+		return prev;
+	}
+}
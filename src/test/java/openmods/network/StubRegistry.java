@@ -0,0 +1,66 @@
+package openmods.network;
+
+import com.google.common.base.Function;
+import com.google.common.collect.BiMap;
+import com.google.common.collect.HashBiMap;
+import com.google.common.collect.Maps;
+import java.util.Map;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.registries.IForgeRegistry;
+import net.minecraftforge.registries.IForgeRegistryEntry;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+/**
+ * Forge registry replacement that provides only slave maps used by {@link openmods.utils.CommonRegistryCallbacks}.
+ * Entries can be added directly or (if key function is given) with {@link IForgeRegistry#register(IForgeRegistryEntry)}.
+ */
+public class StubRegistry<T, E extends IForgeRegistryEntry<E>> {
+
+	private final Map<T, E> objectToEntry = Maps.newHashMap();
+
+	private final BiMap<E, Integer> entryToId = HashBiMap.create();
+
+	private final IForgeRegistry<E> registry;
+
+	private int nextId;
+
+	@SuppressWarnings("unchecked")
+	public StubRegistry(int firstId, Function<E, T> keyFunction) {
+		this.nextId = firstId;
+		this.registry = Mockito.mock(IForgeRegistry.class);
+		Mockito.when(registry.getSlaveMap(Matchers.any(ResourceLocation.class), Matchers.eq(Map.class))).thenReturn(objectToEntry);
+		Mockito.when(registry.getSlaveMap(Matchers.any(ResourceLocation.class), Matchers.eq(BiMap.class))).thenReturn(entryToId);
+
+		if (keyFunction != null) {
+			Mockito.doAnswer(invocation -> {
+				final E entry = (E)invocation.getArguments()[0];
+				register(keyFunction.apply(entry), entry);
+				return null;
+			}).when(registry).register(Matchers.any());
+		}
+	}
+
+	public StubRegistry(int firstId) {
+		this(firstId, null);
+	}
+
+	public StubRegistry() {
+		this(0);
+	}
+
+	public int register(T object, E entry) {
+		final int id = nextId++;
+		objectToEntry.put(object, entry);
+		entryToId.put(entry, id);
+		return id;
+	}
+
+	public int getId(E entry) {
+		return entryToId.get(entry);
+	}
+
+	public IForgeRegistry<E> get() {
+		return registry;
+	}
+}
@@ -0,0 +1,44 @@
+package openmods.network.event;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.network.NetworkRegistry;
+import net.minecraftforge.fml.relauncher.Side;
+import openmods.network.event.NetworkEventPoolTest.TestEvent;
+import openmods.reflection.ConstructorAccessorFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NetworkEventInboundHandlerTest {
+
+	public static class FailingHandler {
+		@SubscribeEvent
+		public void onEvent(TestEvent evt) {
+			throw new IllegalStateException("test failure");
+		}
+	}
+
+	@Test
+	public void testNetworkThreadHandlerFailureContained() {
+		final NetworkEventPool pool = new NetworkEventPool(ConstructorAccessorFactory.create(TestEvent.class));
+		final NetworkEvent event = pool.acquire();
+		event.handledOnNetworkThread = true;
+
+		// codec is only used for replies
+		final EmbeddedChannel channel = new EmbeddedChannel(new NetworkEventInboundHandler(null));
+		channel.attr(NetworkRegistry.CHANNEL_SOURCE).set(Side.SERVER);
+
+		final FailingHandler handler = new FailingHandler();
+		NetworkEventManager.NETWORK_THREAD_BUS.register(handler);
+		try {
+			channel.writeInbound(event);
+		} finally {
+			NetworkEventManager.NETWORK_THREAD_BUS.unregister(handler);
+		}
+
+		// failure didn't reach pipeline and event went back to pool
+		channel.checkException();
+		Assert.assertTrue(channel.isOpen());
+		Assert.assertSame(event, pool.acquire());
+	}
+}
@@ -0,0 +1,123 @@
+package openmods.network.event;
+
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.fml.common.eventhandler.Cancelable;
+import net.minecraftforge.fml.common.eventhandler.EventBus;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.relauncher.Side;
+import openmods.LibConfig;
+import openmods.reflection.ConstructorAccessorFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NetworkEventPoolTest {
+
+	@Cancelable
+	public static class TestEvent extends NetworkEvent {
+		public int value;
+
+		@Override
+		protected void readFromStream(PacketBuffer input) {
+			value = input.readVarInt();
+		}
+
+		@Override
+		protected void writeToStream(PacketBuffer output) {
+			output.writeVarInt(value);
+		}
+
+		@Override
+		protected void reset() {
+			value = 0;
+		}
+	}
+
+	public static class CancellingHandler {
+		@SubscribeEvent
+		public void onEvent(TestEvent evt) {
+			evt.setCanceled(true);
+		}
+	}
+
+	private boolean prevChecks;
+
+	private NetworkEventPool pool;
+
+	@Before
+	public void setup() {
+		prevChecks = LibConfig.checkPooledEvents;
+		LibConfig.checkPooledEvents = true;
+		pool = new NetworkEventPool(ConstructorAccessorFactory.create(TestEvent.class));
+	}
+
+	@After
+	public void cleanup() {
+		LibConfig.checkPooledEvents = prevChecks;
+	}
+
+	@Test
+	public void testInstanceReused() {
+		final NetworkEvent event = pool.acquire();
+		event.recycle();
+		Assert.assertSame(event, pool.acquire());
+		Assert.assertNotSame(event, pool.acquire());
+	}
+
+	@Test
+	public void testStateReset() {
+		final TestEvent event = (TestEvent)pool.acquire();
+		event.value = 5;
+		event.side = Side.SERVER;
+		event.replies.add(new TestEvent());
+
+		final EventBus bus = new EventBus();
+		bus.register(new CancellingHandler());
+		Assert.assertTrue(bus.post(event));
+		event.recycle();
+
+		final TestEvent reused = (TestEvent)pool.acquire();
+		Assert.assertSame(event, reused);
+		Assert.assertEquals(0, reused.value);
+		Assert.assertNull(reused.side);
+		Assert.assertTrue(reused.replies.isEmpty());
+		Assert.assertFalse(reused.isCanceled());
+
+		// posting again must not fail on leftover phase
+		Assert.assertTrue(bus.post(reused));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testUseAfterRecycle() {
+		final NetworkEvent event = pool.acquire();
+		event.recycle();
+		event.checkNotRecycled();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testDoubleRecycle() {
+		final NetworkEvent event = pool.acquire();
+		event.recycle();
+		event.recycle();
+	}
+
+	@Test
+	public void testDoubleRecycleWithoutChecks() {
+		LibConfig.checkPooledEvents = false;
+		final NetworkEvent event = pool.acquire();
+		event.recycle();
+		event.recycle();
+		Assert.assertSame(event, pool.acquire());
+		Assert.assertNotSame(event, pool.acquire());
+	}
+
+	@Test
+	public void testNotPooledEventIgnored() {
+		final TestEvent event = new TestEvent();
+		event.value = 3;
+		event.recycle();
+		event.checkNotRecycled();
+		Assert.assertEquals(3, event.value);
+	}
+}
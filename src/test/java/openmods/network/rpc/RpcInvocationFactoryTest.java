@@ -0,0 +1,89 @@
+package openmods.network.rpc;
+
+import io.netty.buffer.Unpooled;
+import java.util.List;
+import net.minecraft.network.PacketBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RpcInvocationFactoryTest {
+
+	public interface ITestRpc {
+		public void empty();
+
+		public void primitives(int a, long b, short c, byte d, boolean e, char f, float g, double h);
+
+		public void objects(String a, @NullableArg String b, int[] c, @NullableArg Integer d, List<String> e);
+	}
+
+	public static class Recorder implements ITestRpc {
+		public Object[] args;
+
+		@Override
+		public void empty() {
+			args = new Object[0];
+		}
+
+		@Override
+		public void primitives(int a, long b, short c, byte d, boolean e, char f, float g, double h) {
+			args = new Object[] { a, b, c, d, e, f, g, h };
+		}
+
+		@Override
+		public void objects(String a, String b, int[] c, Integer d, List<String> e) {
+			args = new Object[] { a, b, c, d, e };
+		}
+	}
+
+	private static MethodEntry entry(String name) {
+		for (java.lang.reflect.Method m : ITestRpc.class.getMethods())
+			if (m.getName().equals(name)) return new MethodEntry(m);
+		throw new AssertionError(name);
+	}
+
+	private static Object[] roundTrip(String method, Object... args) {
+		final MethodEntry entry = entry(method);
+		final PacketBuffer buffer = new PacketBuffer(Unpooled.buffer());
+		entry.paramsCodec.writeArgs(buffer, args);
+
+		final RpcInvocation invocation = entry.createInvocation();
+		Assert.assertNotNull(invocation);
+		invocation.read(buffer);
+		Assert.assertEquals(0, buffer.readableBytes());
+
+		final Recorder target = new Recorder();
+		invocation.invoke(target);
+		return target.args;
+	}
+
+	@Test
+	public void testNoArgs() {
+		Assert.assertArrayEquals(new Object[0], roundTrip("empty"));
+	}
+
+	@Test
+	public void testPrimitives() {
+		final Object[] args = { 1, -5L, (short)300, (byte)-1, true, 'q', 0.5f, 1e100 };
+		Assert.assertArrayEquals(args, roundTrip("primitives", args));
+	}
+
+	@Test
+	public void testObjects() {
+		final Object[] args = { "a", null, new int[] { 4, 5 }, 9, java.util.Arrays.asList("x", "y") };
+		final Object[] result = roundTrip("objects", args);
+		Assert.assertEquals("a", result[0]);
+		Assert.assertNull(result[1]);
+		Assert.assertArrayEquals(new int[] { 4, 5 }, (int[])result[2]);
+		Assert.assertEquals(9, result[3]);
+		Assert.assertEquals(args[4], result[4]);
+	}
+
+	@Test
+	public void testInvocationsAreIndependent() {
+		final MethodEntry entry = entry("primitives");
+		final RpcInvocation first = entry.createInvocation();
+		final RpcInvocation second = entry.createInvocation();
+		Assert.assertNotSame(first, second);
+		Assert.assertSame(first.getClass(), second.getClass());
+	}
+}
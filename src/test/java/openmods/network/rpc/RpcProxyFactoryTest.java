@@ -0,0 +1,311 @@
+package openmods.network.rpc;
+
+import com.google.common.collect.BiMap;
+import com.google.common.collect.HashBiMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import io.netty.buffer.ByteBufAllocator;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.fml.common.network.internal.FMLProxyPacket;
+import net.minecraftforge.fml.relauncher.Side;
+import net.minecraftforge.registries.IForgeRegistry;
+import openmods.network.senders.IPacketSender;
+import openmods.utils.io.PacketBuffers;
+import openmods.utils.io.TrackingAllocator;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+public class RpcProxyFactoryTest {
+
+	public interface ITestRpc {
+		public void primitives(int a, long b, short c, byte d, boolean e, char f, float g, double h);
+
+		public void objects(String a, @NullableArg String b, int[] c, @NullableArg Integer d);
+
+		@RpcIgnore
+		public int ignored(int a);
+	}
+
+	public interface IOtherRpc {
+		public void other(long a);
+	}
+
+	public static class TestTarget implements IRpcTarget {
+		private final int id;
+
+		public TestTarget(int id) {
+			this.id = id;
+		}
+
+		public TestTarget() {
+			this(42);
+		}
+
+		@Override
+		public Object getTarget() {
+			return null;
+		}
+
+		@Override
+		public void writeToStream(PacketBuffer output) throws IOException {
+			// negative ids are used to simulate broken targets
+			if (id < 0) throw new IOException("Invalid target");
+			output.writeByte(id);
+		}
+
+		@Override
+		public void readFromStreamStream(Side side, EntityPlayer player, PacketBuffer input) {}
+
+		@Override
+		public void afterCall() {}
+	}
+
+	private static class CapturingSender implements IPacketSender {
+		private final List<Object> sent = Lists.newArrayList();
+
+		@Override
+		public void sendMessage(Object msg) {
+			sent.add(msg);
+		}
+
+		@Override
+		public void sendMessages(Collection<Object> msg) {
+			sent.addAll(msg);
+		}
+	}
+
+	private final Map<Method, MethodEntry> methods = Maps.newHashMap();
+
+	private final BiMap<MethodEntry, Integer> methodIds = HashBiMap.create();
+
+	private IForgeRegistry<MethodEntry> methodRegistry;
+
+	private IForgeRegistry<TargetTypeProvider> targetRegistry;
+
+	private RpcProxyFactory factory;
+
+	@SuppressWarnings("unchecked")
+	private static <E extends net.minecraftforge.registries.IForgeRegistryEntry<E>> IForgeRegistry<E> createRegistry(Map<?, E> objectToEntry, BiMap<E, Integer> entryToId) {
+		final IForgeRegistry<E> registry = Mockito.mock(IForgeRegistry.class);
+		Mockito.when(registry.getSlaveMap(Matchers.any(ResourceLocation.class), Matchers.eq(Map.class))).thenReturn(objectToEntry);
+		Mockito.when(registry.getSlaveMap(Matchers.any(ResourceLocation.class), Matchers.eq(BiMap.class))).thenReturn(entryToId);
+		return registry;
+	}
+
+	@Before
+	public void setup() {
+		int id = 5;
+		for (Class<?> intf : new Class<?>[] { ITestRpc.class, IOtherRpc.class }) {
+			for (Method m : intf.getMethods()) {
+				if (m.isAnnotationPresent(RpcIgnore.class)) continue;
+				final MethodEntry entry = new MethodEntry(m);
+				methods.put(m, entry);
+				methodIds.put(entry, id++);
+			}
+		}
+
+		final TargetTypeProvider targetType = new TargetTypeProvider() {
+			@Override
+			public IRpcTarget createRpcTarget() {
+				return new TestTarget();
+			}
+
+			@Override
+			public Class<? extends IRpcTarget> getTargetClass() {
+				return TestTarget.class;
+			}
+		};
+
+		final Map<Class<?>, TargetTypeProvider> targets = Maps.newHashMap();
+		targets.put(TestTarget.class, targetType);
+		final BiMap<TargetTypeProvider, Integer> targetIds = HashBiMap.create();
+		targetIds.put(targetType, 3);
+
+		methodRegistry = createRegistry(methods, methodIds);
+		targetRegistry = createRegistry(targets, targetIds);
+		factory = new RpcProxyFactory(methodRegistry, targetRegistry);
+	}
+
+	private Object[] readCall(Object msg, String expectedMethod) throws IOException {
+		Assert.assertTrue(msg instanceof FMLProxyPacket);
+		final PacketBuffer input = new PacketBuffer(((FMLProxyPacket)msg).payload());
+		Assert.assertEquals(3, input.readVarInt());
+		Assert.assertEquals(42, input.readByte());
+
+		final MethodEntry entry = methodIds.inverse().get(input.readVarInt());
+		Assert.assertEquals(expectedMethod, entry.method.getName());
+		final Object[] args = entry.paramsCodec.readArgs(input);
+		Assert.assertEquals(0, input.readableBytes());
+		return args;
+	}
+
+	private ITestRpc createProxy(IPacketSender sender, TestTarget target) {
+		return factory.createProxy(getClass().getClassLoader(), sender, target, ITestRpc.class, IOtherRpc.class);
+	}
+
+	private ITestRpc createProxy(IPacketSender sender) {
+		return createProxy(sender, new TestTarget());
+	}
+
+	@Test
+	public void testGeneratedClass() {
+		final ITestRpc proxy = createProxy(new CapturingSender());
+		Assert.assertFalse(java.lang.reflect.Proxy.isProxyClass(proxy.getClass()));
+		Assert.assertTrue(proxy instanceof IOtherRpc);
+		Assert.assertSame(proxy.getClass(), createProxy(new CapturingSender()).getClass());
+	}
+
+	@Test
+	public void testPrimitiveArgs() throws IOException {
+		final CapturingSender sender = new CapturingSender();
+		createProxy(sender).primitives(-1, Long.MAX_VALUE, (short)-3, (byte)4, true, 'x', 1.5f, -2.25);
+
+		Assert.assertEquals(1, sender.sent.size());
+		final Object[] args = readCall(sender.sent.get(0), "primitives");
+		Assert.assertArrayEquals(new Object[] { -1, Long.MAX_VALUE, (short)-3, (byte)4, true, 'x', 1.5f, -2.25 }, args);
+	}
+
+	@Test
+	public void testObjectArgs() throws IOException {
+		final CapturingSender sender = new CapturingSender();
+		final ITestRpc proxy = createProxy(sender);
+		proxy.objects("a", null, new int[] { 1, 2 }, 7);
+		proxy.objects("b", "c", new int[0], null);
+
+		Assert.assertEquals(2, sender.sent.size());
+
+		final Object[] first = readCall(sender.sent.get(0), "objects");
+		Assert.assertEquals("a", first[0]);
+		Assert.assertNull(first[1]);
+		Assert.assertArrayEquals(new int[] { 1, 2 }, (int[])first[2]);
+		Assert.assertEquals(7, first[3]);
+
+		final Object[] second = readCall(sender.sent.get(1), "objects");
+		Assert.assertEquals("b", second[0]);
+		Assert.assertEquals("c", second[1]);
+		Assert.assertNull(second[3]);
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testNonNullableArg() {
+		createProxy(new CapturingSender()).objects(null, null, new int[0], null);
+	}
+
+	@Test
+	public void testBufferReusedAfterFailure() throws IOException {
+		final CapturingSender sender = new CapturingSender();
+		final ITestRpc proxy = createProxy(sender);
+		try {
+			proxy.objects(null, null, new int[0], null);
+		} catch (RuntimeException e) {}
+
+		proxy.objects("a", null, new int[0], null);
+		Assert.assertEquals(1, sender.sent.size());
+		readCall(sender.sent.get(0), "objects");
+	}
+
+	@Test
+	public void testBufferReusedAfterTargetFailure() throws IOException {
+		final CapturingSender sender = new CapturingSender();
+		try {
+			createProxy(sender, new TestTarget(-1)).objects("a", null, new int[0], null);
+			Assert.fail();
+		} catch (RuntimeException e) {}
+
+		// if failed call left thread-local buffer marked as used, next call would allocate separate scratch buffer
+		final TrackingAllocator allocator = new TrackingAllocator();
+		final ByteBufAllocator prevAllocator = PacketBuffers.setAllocator(allocator);
+		try {
+			createProxy(sender).objects("b", null, new int[0], null);
+		} finally {
+			PacketBuffers.setAllocator(prevAllocator);
+		}
+
+		Assert.assertEquals(0, allocator.allocatedCount());
+		allocator.assertAllReleased();
+
+		Assert.assertEquals(1, sender.sent.size());
+		Assert.assertEquals("b", readCall(sender.sent.get(0), "objects")[0]);
+	}
+
+	@Test
+	public void testExtraInterface() throws IOException {
+		final CapturingSender sender = new CapturingSender();
+		((IOtherRpc)createProxy(sender)).other(12345678912L);
+		Assert.assertArrayEquals(new Object[] { 12345678912L }, readCall(sender.sent.get(0), "other"));
+	}
+
+	@Test
+	public void testIgnoredMethod() {
+		final CapturingSender sender = new CapturingSender();
+		Assert.assertEquals(0, createProxy(sender).ignored(5));
+		Assert.assertTrue(sender.sent.isEmpty());
+	}
+
+	private Object[] readBatchedCall(PacketBuffer input, String expectedMethod) {
+		final MethodEntry entry = methodIds.inverse().get(input.readVarInt() - 1);
+		Assert.assertEquals(expectedMethod, entry.method.getName());
+		return entry.paramsCodec.readArgs(input);
+	}
+
+	@Test
+	public void testBatchedCalls() {
+		final CapturingSender sender = new CapturingSender();
+		final RpcBatchingSender batchingSender = new RpcBatchingSender(sender, targetRegistry, methodRegistry);
+		final ITestRpc proxy = createProxy(batchingSender);
+		proxy.objects("a", null, new int[] { 1 }, 7);
+		((IOtherRpc)proxy).other(5);
+		createProxy(batchingSender, new TestTarget(43)).other(6);
+		proxy.primitives(1, 2, (short)3, (byte)4, false, 'y', 0, 0);
+
+		Assert.assertTrue(sender.sent.isEmpty());
+		batchingSender.flush();
+		Assert.assertEquals(1, sender.sent.size());
+
+		final PacketBuffer input = new PacketBuffer(((FMLProxyPacket)sender.sent.get(0)).payload());
+		Assert.assertEquals(RpcCallCodec.BATCH_MARKER, input.readVarInt());
+
+		Assert.assertEquals(3, input.readVarInt());
+		Assert.assertEquals(42, input.readByte());
+		Assert.assertEquals("a", readBatchedCall(input, "objects")[0]);
+		Assert.assertArrayEquals(new Object[] { 5L }, readBatchedCall(input, "other"));
+		Assert.assertEquals(0, input.readVarInt());
+
+		Assert.assertEquals(3, input.readVarInt());
+		Assert.assertEquals(43, input.readByte());
+		Assert.assertArrayEquals(new Object[] { 6L }, readBatchedCall(input, "other"));
+		Assert.assertEquals(0, input.readVarInt());
+
+		Assert.assertEquals(3, input.readVarInt());
+		Assert.assertEquals(42, input.readByte());
+		Assert.assertEquals('y', readBatchedCall(input, "primitives")[5]);
+		Assert.assertEquals(0, input.readVarInt());
+
+		Assert.assertEquals(0, input.readableBytes());
+
+		batchingSender.flush();
+		Assert.assertEquals(1, sender.sent.size());
+	}
+
+	@Test
+	public void testBatchFlushedBeforeOtherMessages() {
+		final CapturingSender sender = new CapturingSender();
+		final RpcBatchingSender batchingSender = new RpcBatchingSender(sender, targetRegistry, methodRegistry);
+		createProxy(batchingSender).other(1);
+		batchingSender.sendMessage("test");
+
+		Assert.assertEquals(2, sender.sent.size());
+		Assert.assertTrue(sender.sent.get(0) instanceof FMLProxyPacket);
+		Assert.assertEquals("test", sender.sent.get(1));
+	}
+}
@@ -0,0 +1,49 @@
+package openmods.reflection;
+
+import com.google.common.base.Supplier;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConstructorAccessorFactoryTest {
+
+	public static class Public {
+		public final int value;
+
+		public Public() {
+			this.value = 42;
+		}
+	}
+
+	private static class Private {
+		public final int value;
+
+		public Private() {
+			this.value = 24;
+		}
+	}
+
+	public static class NoDefault {
+		public NoDefault(int value) {}
+	}
+
+	@Test
+	public void testPublicClass() {
+		final Supplier<Public> ctor = ConstructorAccessorFactory.create(Public.class);
+		final Public a = ctor.get();
+		final Public b = ctor.get();
+		Assert.assertEquals(42, a.value);
+		Assert.assertNotSame(a, b);
+		Assert.assertNotEquals(ctor.getClass().getClassLoader(), Public.class.getClassLoader());
+	}
+
+	@Test
+	public void testPrivateClassFallback() {
+		final Supplier<Private> ctor = ConstructorAccessorFactory.create(Private.class);
+		Assert.assertEquals(24, ctor.get().value);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoDefaultConstructor() {
+		ConstructorAccessorFactory.create(NoDefault.class);
+	}
+}
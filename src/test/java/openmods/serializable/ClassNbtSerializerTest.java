@@ -0,0 +1,213 @@
+package openmods.serializable;
+
+import java.util.Arrays;
+import java.util.Collection;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.util.math.BlockPos;
+import net.minecraftforge.common.util.Constants;
+import openmods.serializable.cls.ClassNbtSerializersProvider;
+import openmods.serializable.cls.Serialize;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+@RunWith(Parameterized.class)
+public class ClassNbtSerializerTest {
+
+	@Parameters(name = "generated={0}")
+	public static Collection<Object[]> backends() {
+		return Arrays.asList(new Object[] { false }, new Object[] { true });
+	}
+
+	private final ClassNbtSerializersProvider provider;
+
+	public ClassNbtSerializerTest(boolean generated) {
+		this.provider = new ClassNbtSerializersProvider(generated);
+	}
+
+	public enum TestEnum {
+		A, B, C
+	}
+
+	public static class PrimitiveClass {
+		@Serialize
+		public boolean boolField;
+		@Serialize
+		public byte byteField;
+		@Serialize
+		public short shortField;
+		@Serialize
+		public int intField;
+		@Serialize
+		public long longField;
+		@Serialize
+		public float floatField;
+		@Serialize
+		public double doubleField;
+
+		public int notSerialized = -1;
+	}
+
+	@Test
+	public void testPrimitives() {
+		final IObjectNbtSerializer<PrimitiveClass> serializer = provider.getSerializer(PrimitiveClass.class);
+
+		final PrimitiveClass source = new PrimitiveClass();
+		source.boolField = true;
+		source.byteField = -3;
+		source.shortField = 1234;
+		source.intField = -123456;
+		source.longField = Long.MAX_VALUE - 5;
+		source.floatField = 1.5f;
+		source.doubleField = -0.25;
+		source.notSerialized = 5;
+
+		final NBTTagCompound tag = new NBTTagCompound();
+		serializer.writeToNBT(source, tag);
+
+		Assert.assertEquals(7, tag.getSize());
+		Assert.assertTrue(tag.hasKey("byteField", Constants.NBT.TAG_BYTE));
+		Assert.assertTrue(tag.hasKey("intField", Constants.NBT.TAG_INT));
+		Assert.assertEquals(-123456, tag.getInteger("intField"));
+
+		final PrimitiveClass target = new PrimitiveClass();
+		serializer.readFromNBT(target, tag);
+
+		Assert.assertEquals(source.boolField, target.boolField);
+		Assert.assertEquals(source.byteField, target.byteField);
+		Assert.assertEquals(source.shortField, target.shortField);
+		Assert.assertEquals(source.intField, target.intField);
+		Assert.assertEquals(source.longField, target.longField);
+		Assert.assertEquals(source.floatField, target.floatField, 0);
+		Assert.assertEquals(source.doubleField, target.doubleField, 0);
+		Assert.assertEquals(-1, target.notSerialized);
+	}
+
+	public static class ObjectClass {
+		@Serialize
+		public Integer boxedField = 5;
+		@Serialize
+		public String stringField = "dummy";
+		@Serialize
+		public TestEnum enumField = TestEnum.A;
+		@Serialize
+		public BlockPos posField = BlockPos.ORIGIN;
+	}
+
+	@Test
+	public void testObjects() {
+		final IObjectNbtSerializer<ObjectClass> serializer = provider.getSerializer(ObjectClass.class);
+
+		final ObjectClass source = new ObjectClass();
+		source.boxedField = 42;
+		source.stringField = "hello";
+		source.enumField = TestEnum.C;
+		source.posField = new BlockPos(1, 2, 3);
+
+		final NBTTagCompound tag = new NBTTagCompound();
+		serializer.writeToNBT(source, tag);
+
+		Assert.assertEquals(42, tag.getInteger("boxedField"));
+		Assert.assertEquals("hello", tag.getString("stringField"));
+		Assert.assertEquals(TestEnum.C.ordinal(), tag.getInteger("enumField"));
+
+		final ObjectClass target = new ObjectClass();
+		serializer.readFromNBT(target, tag);
+
+		Assert.assertEquals(source.boxedField, target.boxedField);
+		Assert.assertEquals(source.stringField, target.stringField);
+		Assert.assertEquals(source.enumField, target.enumField);
+		Assert.assertEquals(source.posField, target.posField);
+	}
+
+	@Test
+	public void testNullValuesNotStored() {
+		final IObjectNbtSerializer<ObjectClass> serializer = provider.getSerializer(ObjectClass.class);
+
+		final ObjectClass source = new ObjectClass();
+		source.boxedField = null;
+		source.stringField = null;
+		source.enumField = null;
+		source.posField = null;
+
+		final NBTTagCompound tag = new NBTTagCompound();
+		tag.setString("stringField", "stale");
+		serializer.writeToNBT(source, tag);
+		Assert.assertTrue(tag.hasNoTags());
+	}
+
+	@Test
+	public void testAbsentEntriesSkipped() {
+		final IObjectNbtSerializer<ObjectClass> serializer = provider.getSerializer(ObjectClass.class);
+
+		final NBTTagCompound tag = new NBTTagCompound();
+		tag.setString("stringField", "hello");
+		// wrong type
+		tag.setString("boxedField", "12");
+		// invalid ordinal
+		tag.setInteger("enumField", 10);
+
+		final ObjectClass target = new ObjectClass();
+		serializer.readFromNBT(target, tag);
+
+		Assert.assertEquals("hello", target.stringField);
+		Assert.assertEquals(Integer.valueOf(5), target.boxedField);
+		Assert.assertEquals(TestEnum.A, target.enumField);
+		Assert.assertEquals(BlockPos.ORIGIN, target.posField);
+	}
+
+	public static class NonNullableClass {
+		@Serialize(nullable = false)
+		public String stringField = null;
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testNonNullableFail() {
+		provider.getSerializer(NonNullableClass.class).writeToNBT(new NonNullableClass(), new NBTTagCompound());
+	}
+
+	@Test
+	public void testSameFormatAsReflection() {
+		final ObjectClass source = new ObjectClass();
+		source.stringField = null;
+		source.posField = new BlockPos(-4, 5, 6);
+
+		final NBTTagCompound expected = new NBTTagCompound();
+		new ClassNbtSerializersProvider(false).writeToNBT(source, expected);
+
+		final NBTTagCompound actual = new NBTTagCompound();
+		provider.writeToNBT(source, actual);
+
+		Assert.assertEquals(expected, actual);
+	}
+
+	static class PrivateClass {
+		@Serialize
+		public int value;
+	}
+
+	@Test
+	public void testPrivateClass() {
+		final PrivateClass source = new PrivateClass();
+		source.value = 17;
+
+		final NBTTagCompound tag = new NBTTagCompound();
+		provider.writeToNBT(source, tag);
+
+		final PrivateClass target = new PrivateClass();
+		provider.readFromNBT(target, tag);
+		Assert.assertEquals(17, target.value);
+	}
+
+	public static class InvalidClass {
+		@Serialize
+		public char value;
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidType() {
+		provider.getSerializer(InvalidClass.class);
+	}
+}
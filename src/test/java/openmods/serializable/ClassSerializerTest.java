@@ -1,17 +1,48 @@
 package openmods.serializable;
 
+import com.google.common.collect.Lists;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import net.minecraft.network.PacketBuffer;
 import openmods.serializable.cls.ClassSerializersProvider;
+import openmods.serializable.cls.FieldEncoding;
 import openmods.serializable.cls.Serialize;
+import openmods.utils.io.PacketBuffers;
+import openmods.utils.io.TrackingAllocator;
 import org.junit.Assert;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
 
+@RunWith(Parameterized.class)
 public class ClassSerializerTest {
 
 	private static final int DUMMY_INT = -1;
 
+	@Parameters(name = "generated={0}")
+	public static Collection<Object[]> backends() {
+		return Arrays.asList(new Object[] { false }, new Object[] { true });
+	}
+
+	private final boolean generated;
+
+	private final ClassSerializersProvider provider;
+
+	public ClassSerializerTest(boolean generated) {
+		this.generated = generated;
+		this.provider = new ClassSerializersProvider(generated);
+	}
+
 	private static <T> void testSerializer(final IObjectSerializer<T> serializer, T source, T target) {
 		try {
 			final PacketBuffer buffer = new PacketBuffer(Unpooled.buffer());
@@ -39,7 +70,7 @@ public class ClassSerializerTest {
 
 	@Test
 	public void testNonNullable() {
-		IObjectSerializer<NonNullableClass> serializer = ClassSerializersProvider.instance.getSerializer(NonNullableClass.class);
+		IObjectSerializer<NonNullableClass> serializer = provider.getSerializer(NonNullableClass.class);
 
 		NonNullableClass source = new NonNullableClass();
 		source.intField = 4;
@@ -57,7 +88,7 @@ public class ClassSerializerTest {
 
 	@Test(expected = NullPointerException.class)
 	public void testNonNullableFail() {
-		IObjectSerializer<NonNullableClass> serializer = ClassSerializersProvider.instance.getSerializer(NonNullableClass.class);
+		IObjectSerializer<NonNullableClass> serializer = provider.getSerializer(NonNullableClass.class);
 
 		NonNullableClass source = new NonNullableClass();
 		source.stringField = null;
@@ -82,7 +113,7 @@ public class ClassSerializerTest {
 
 	@Test
 	public void testNullable() {
-		IObjectSerializer<NullableClass> serializer = ClassSerializersProvider.instance.getSerializer(NullableClass.class);
+		IObjectSerializer<NullableClass> serializer = provider.getSerializer(NullableClass.class);
 
 		NullableClass source = new NullableClass();
 		source.intField = 4;
@@ -100,6 +131,73 @@ public class ClassSerializerTest {
 		Assert.assertEquals(DUMMY_INT, target.notSerialized);
 	}
 
+	@Test
+	public void testNullableReleasesBuffers() throws IOException {
+		final TrackingAllocator allocator = new TrackingAllocator();
+		final ByteBufAllocator prevAllocator = PacketBuffers.setAllocator(allocator);
+		try {
+			IObjectSerializer<NullableClass> serializer = provider.getSerializer(NullableClass.class);
+			testSerializer(serializer, new NullableClass(), new NullableClass());
+			// null bits are written without intermediate buffer
+			Assert.assertEquals(0, allocator.allocatedCount());
+			allocator.assertAllReleased();
+		} finally {
+			PacketBuffers.setAllocator(prevAllocator);
+		}
+	}
+
+	@Test
+	public void testNullableHeaderInGrowingBuffer() throws IOException {
+		IObjectSerializer<NullableClass> serializer = provider.getSerializer(NullableClass.class);
+
+		NullableClass source = new NullableClass();
+		source.stringField = null;
+		source.nullField = "something quite a bit longer than initial capacity";
+
+		// header is reserved after existing data, before buffer is expanded by payload
+		final PacketBuffer buffer = new PacketBuffer(Unpooled.buffer(2));
+		buffer.writeByte(0x5A);
+		serializer.writeToStream(source, buffer);
+
+		Assert.assertEquals(0x5A, buffer.readByte());
+		NullableClass target = new NullableClass();
+		serializer.readFromStream(target, buffer);
+		Assert.assertEquals(0, buffer.readableBytes());
+
+		Assert.assertNull(target.stringField);
+		Assert.assertEquals(source.nullField, target.nullField);
+		Assert.assertEquals(source.intField, target.intField);
+	}
+
+	public static class PartiallyNullableClass {
+		@Serialize
+		public String nullableField = "dummy";
+
+		// boxed type, since String serializer may write null as empty string instead of failing
+		@Serialize(nullable = false)
+		public Integer nonNullableField = null;
+	}
+
+	@Test
+	public void testNullableReleasesBuffersOnFailure() throws IOException {
+		final TrackingAllocator allocator = new TrackingAllocator();
+		final ByteBufAllocator prevAllocator = PacketBuffers.setAllocator(allocator);
+		try {
+			IObjectSerializer<PartiallyNullableClass> serializer = provider.getSerializer(PartiallyNullableClass.class);
+			boolean failed = false;
+			try {
+				serializer.writeToStream(new PartiallyNullableClass(), new PacketBuffer(Unpooled.buffer()));
+			} catch (RuntimeException e) {
+				failed = true;
+			}
+
+			Assert.assertTrue("Null value in non-nullable field should not be serialized", failed);
+			allocator.assertAllReleased();
+		} finally {
+			PacketBuffers.setAllocator(prevAllocator);
+		}
+	}
+
 	public static class CompatibleSourceClass {
 		@Serialize(rank = 1, nullable = false)
 		public int field1 = 10;
@@ -134,13 +232,13 @@ public class ClassSerializerTest {
 
 	@Test
 	public void testReorderedClasses() throws IOException {
-		IObjectSerializer<CompatibleSourceClass> serializerA = ClassSerializersProvider.instance.getSerializer(CompatibleSourceClass.class);
+		IObjectSerializer<CompatibleSourceClass> serializerA = provider.getSerializer(CompatibleSourceClass.class);
 
 		CompatibleSourceClass source = new CompatibleSourceClass();
 		final PacketBuffer buffer = new PacketBuffer(Unpooled.buffer());
 		serializerA.writeToStream(source, buffer);
 
-		IObjectSerializer<CompatibleTargetClass> serializerB = ClassSerializersProvider.instance.getSerializer(CompatibleTargetClass.class);
+		IObjectSerializer<CompatibleTargetClass> serializerB = provider.getSerializer(CompatibleTargetClass.class);
 
 		CompatibleTargetClass target = new CompatibleTargetClass();
 		serializerB.readFromStream(target, buffer);
@@ -175,7 +273,7 @@ public class ClassSerializerTest {
 
 	@Test
 	public void testClassWithGenericBase() {
-		IObjectSerializer<GenericDerrived> serializer = ClassSerializersProvider.instance.getSerializer(GenericDerrived.class);
+		IObjectSerializer<GenericDerrived> serializer = provider.getSerializer(GenericDerrived.class);
 
 		GenericDerrived source = new GenericDerrived();
 		source.fieldA = false;
@@ -191,4 +289,269 @@ public class ClassSerializerTest {
 
 		testSerializer(serializer, source, target);
 	}
+
+	public static class ManyFieldsClass {
+		@Serialize
+		public String s0 = "a";
+		@Serialize
+		public String s1 = null;
+		@Serialize
+		public String s2 = "c";
+		@Serialize
+		public Integer s3 = null;
+		@Serialize
+		public Integer s4 = 5;
+		@Serialize
+		public String s5 = null;
+		@Serialize
+		public String s6 = "g";
+		@Serialize
+		public String s7 = null;
+		@Serialize
+		public String s8 = "i";
+		@Serialize
+		public String s9 = null;
+		@Serialize
+		public byte b = -3;
+		@Serialize
+		public short sh = -300;
+		@Serialize
+		public char c = 'x';
+		@Serialize
+		public long l = Long.MIN_VALUE;
+		@Serialize
+		public float f = 1.5f;
+		@Serialize
+		public double d = -2.25;
+		@Serialize
+		public boolean z = true;
+	}
+
+	private static void assertManyFieldsEqual(ManyFieldsClass expected, ManyFieldsClass actual) {
+		Assert.assertEquals(expected.s0, actual.s0);
+		Assert.assertEquals(expected.s1, actual.s1);
+		Assert.assertEquals(expected.s2, actual.s2);
+		Assert.assertEquals(expected.s3, actual.s3);
+		Assert.assertEquals(expected.s4, actual.s4);
+		Assert.assertEquals(expected.s5, actual.s5);
+		Assert.assertEquals(expected.s6, actual.s6);
+		Assert.assertEquals(expected.s7, actual.s7);
+		Assert.assertEquals(expected.s8, actual.s8);
+		Assert.assertEquals(expected.s9, actual.s9);
+		Assert.assertEquals(expected.b, actual.b);
+		Assert.assertEquals(expected.sh, actual.sh);
+		Assert.assertEquals(expected.c, actual.c);
+		Assert.assertEquals(expected.l, actual.l);
+		Assert.assertEquals(expected.f, actual.f, 0);
+		Assert.assertEquals(expected.d, actual.d, 0);
+		Assert.assertEquals(expected.z, actual.z);
+	}
+
+	private static ManyFieldsClass createEmptyManyFields() {
+		final ManyFieldsClass result = new ManyFieldsClass();
+		result.s0 = null;
+		result.s1 = "dummy";
+		result.s3 = 99;
+		result.b = 0;
+		result.z = false;
+		return result;
+	}
+
+	@Test
+	public void testManyNullableFields() {
+		final ManyFieldsClass source = new ManyFieldsClass();
+		final ManyFieldsClass target = createEmptyManyFields();
+		testSerializer(provider.getSerializer(ManyFieldsClass.class), source, target);
+		assertManyFieldsEqual(source, target);
+	}
+
+	@Test
+	public void testSameFormatAsReflection() throws IOException {
+		final IObjectSerializer<ManyFieldsClass> reflective = new ClassSerializersProvider(false).getSerializer(ManyFieldsClass.class);
+		final IObjectSerializer<ManyFieldsClass> serializer = provider.getSerializer(ManyFieldsClass.class);
+
+		final ManyFieldsClass source = new ManyFieldsClass();
+		final PacketBuffer expected = new PacketBuffer(Unpooled.buffer());
+		reflective.writeToStream(source, expected);
+
+		final PacketBuffer actual = new PacketBuffer(Unpooled.buffer());
+		serializer.writeToStream(source, actual);
+		Assert.assertEquals(expected, actual);
+
+		final ManyFieldsClass target = createEmptyManyFields();
+		serializer.readFromStream(target, expected);
+		assertFullyRead(expected);
+		assertManyFieldsEqual(source, target);
+	}
+
+	@Test
+	public void testBackendSelection() {
+		final IObjectSerializer<ManyFieldsClass> serializer = provider.getSerializer(ManyFieldsClass.class);
+		Assert.assertEquals(generated, serializer.getClass().getName().contains("$$serializer$"));
+	}
+
+	private static class PrivateClass {
+		@Serialize
+		public int intField = 3;
+	}
+
+	@Test
+	public void testInaccessibleClassFallback() {
+		final PrivateClass source = new PrivateClass();
+		source.intField = 5;
+		final PrivateClass target = new PrivateClass();
+		testSerializer(provider.getSerializer(PrivateClass.class), source, target);
+		Assert.assertEquals(5, target.intField);
+	}
+
+	public static class DefaultEncodingClass {
+		@Serialize(nullable = false)
+		public boolean flag = true;
+
+		@Serialize(nullable = false)
+		public int value = 1;
+	}
+
+	@Test
+	public void testDefaultEncodingUnchanged() throws IOException {
+		final PacketBuffer buffer = new PacketBuffer(Unpooled.buffer());
+		provider.getSerializer(DefaultEncodingClass.class).writeToStream(new DefaultEncodingClass(), buffer);
+		Assert.assertEquals(new PacketBuffer(Unpooled.wrappedBuffer(new byte[] { 1, 0, 0, 0, 1 })), buffer);
+	}
+
+	public enum SmallEnum {
+		A, B, C
+	}
+
+	public static class EncodedClass {
+		@Serialize(encoding = FieldEncoding.VARINT)
+		public int varInt = 300;
+
+		@Serialize(encoding = FieldEncoding.ZIGZAG)
+		public int zigzag = -2;
+
+		@Serialize(encoding = FieldEncoding.VARINT)
+		public long varLong = 1L << 40;
+
+		@Serialize(encoding = FieldEncoding.ZIGZAG)
+		public short zigzagShort = -100;
+
+		@Serialize(encoding = FieldEncoding.ZIGZAG)
+		public Integer boxedZigzag = -5;
+
+		@Serialize(encoding = FieldEncoding.PACKED)
+		public boolean flag1 = true;
+
+		@Serialize(encoding = FieldEncoding.PACKED)
+		public boolean flag2 = false;
+
+		@Serialize(encoding = FieldEncoding.PACKED)
+		public SmallEnum small = SmallEnum.C;
+
+		@Serialize(encoding = FieldEncoding.PACKED)
+		public SmallEnum nullSmall = null;
+
+		@Serialize(encoding = FieldEncoding.PACKED)
+		public Boolean boxedFlag = true;
+
+		@Serialize(encoding = FieldEncoding.FIXED)
+		public SmallEnum fixedEnum = SmallEnum.B;
+
+		@Serialize
+		public String text = "x";
+	}
+
+	private static EncodedClass createEmptyEncoded() {
+		final EncodedClass result = new EncodedClass();
+		result.varInt = 0;
+		result.zigzag = 0;
+		result.varLong = 0;
+		result.zigzagShort = 0;
+		result.boxedZigzag = null;
+		result.flag1 = false;
+		result.flag2 = true;
+		result.small = null;
+		result.nullSmall = SmallEnum.A;
+		result.boxedFlag = null;
+		result.fixedEnum = SmallEnum.C;
+		result.text = null;
+		return result;
+	}
+
+	@Test
+	public void testEncodedFields() throws IOException {
+		final IObjectSerializer<EncodedClass> serializer = provider.getSerializer(EncodedClass.class);
+		final EncodedClass source = new EncodedClass();
+
+		final PacketBuffer buffer = new PacketBuffer(Unpooled.buffer());
+		serializer.writeToStream(source, buffer);
+		// 6 null bits + 7 packed bits, then 1 (boxedZigzag) + 1 (fixedEnum) + 2 (text) + 2 (varInt) + 6 (varLong) + 1 (zigzag) + 2 (zigzagShort)
+		Assert.assertEquals(2 + 15, buffer.readableBytes());
+
+		final EncodedClass target = createEmptyEncoded();
+		serializer.readFromStream(target, buffer);
+		assertFullyRead(buffer);
+
+		Assert.assertEquals(source.varInt, target.varInt);
+		Assert.assertEquals(source.zigzag, target.zigzag);
+		Assert.assertEquals(source.varLong, target.varLong);
+		Assert.assertEquals(source.zigzagShort, target.zigzagShort);
+		Assert.assertEquals(source.boxedZigzag, target.boxedZigzag);
+		Assert.assertEquals(source.flag1, target.flag1);
+		Assert.assertEquals(source.flag2, target.flag2);
+		Assert.assertEquals(source.small, target.small);
+		Assert.assertNull(target.nullSmall);
+		Assert.assertEquals(source.boxedFlag, target.boxedFlag);
+		Assert.assertEquals(source.fixedEnum, target.fixedEnum);
+		Assert.assertEquals(source.text, target.text);
+	}
+
+	@Test
+	public void testEncodedSameFormatAsReflection() throws IOException {
+		final IObjectSerializer<EncodedClass> reflective = new ClassSerializersProvider(false).getSerializer(EncodedClass.class);
+		final IObjectSerializer<EncodedClass> serializer = provider.getSerializer(EncodedClass.class);
+
+		final EncodedClass source = new EncodedClass();
+		source.nullSmall = SmallEnum.B;
+		source.boxedFlag = null;
+		source.flag1 = false;
+
+		final PacketBuffer expected = new PacketBuffer(Unpooled.buffer());
+		reflective.writeToStream(source, expected);
+
+		final PacketBuffer actual = new PacketBuffer(Unpooled.buffer());
+		serializer.writeToStream(source, actual);
+		Assert.assertEquals(expected, actual);
+	}
+
+	public static class InvalidPackedClass {
+		@Serialize(encoding = FieldEncoding.PACKED)
+		public int value;
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidEncoding() {
+		provider.getSerializer(InvalidPackedClass.class);
+	}
+
+	@Test
+	public void testConcurrentLookupReturnsSameInstance() throws Exception {
+		final int threadCount = 8;
+		final CyclicBarrier barrier = new CyclicBarrier(threadCount);
+		final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			final List<Future<IObjectSerializer<ManyFieldsClass>>> results = Lists.newArrayList();
+			for (int i = 0; i < threadCount; i++)
+				results.add(executor.submit(() -> {
+					barrier.await();
+					return provider.getSerializer(ManyFieldsClass.class);
+				}));
+
+			final IObjectSerializer<ManyFieldsClass> expected = provider.getSerializer(ManyFieldsClass.class);
+			for (Future<IObjectSerializer<ManyFieldsClass>> result : results)
+				Assert.assertSame(expected, result.get(10, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
 }
@@ -0,0 +1,93 @@
+package openmods.serializable;
+
+import com.google.common.collect.Lists;
+import com.google.common.reflect.TypeToken;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import openmods.utils.io.IStreamSerializer;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SerializerRegistryTest {
+
+	public static class Holder {
+		public List<Integer> values;
+	}
+
+	public enum Dummy {
+		A, B
+	}
+
+	@Test
+	public void testGenericTypeIsCached() throws Exception {
+		final SerializerRegistry registry = new SerializerRegistry();
+		final Type tokenType = new TypeToken<List<Integer>>() {}.getType();
+
+		final IStreamSerializer<Object> first = registry.findSerializer(tokenType);
+		Assert.assertNotNull(first);
+		Assert.assertEquals(0, registry.cacheHits());
+		Assert.assertEquals(1, registry.cacheMisses());
+
+		// type from JDK reflection should be equal to one created by Guava
+		final Type fieldType = Holder.class.getField("values").getGenericType();
+		Assert.assertSame(first, registry.findSerializer(fieldType));
+		Assert.assertEquals(1, registry.cacheHits());
+		Assert.assertEquals(1, registry.cacheMisses());
+	}
+
+	@Test
+	public void testClassIsCached() {
+		final SerializerRegistry registry = new SerializerRegistry();
+		final IStreamSerializer<Dummy> first = registry.findSerializer(Dummy.class);
+		Assert.assertNotNull(first);
+		Assert.assertSame(first, registry.findSerializer(Dummy.class));
+		Assert.assertEquals(1, registry.cacheHits());
+		Assert.assertEquals(1, registry.cacheMisses());
+
+		registry.resetCounters();
+		Assert.assertEquals(0, registry.cacheHits());
+		Assert.assertEquals(0, registry.cacheMisses());
+	}
+
+	@Test
+	public void testMissingSerializerNotCached() {
+		final SerializerRegistry registry = new SerializerRegistry();
+		Assert.assertNull(registry.findSerializer(Object.class));
+		Assert.assertNull(registry.findSerializer(Object.class));
+		Assert.assertEquals(0, registry.cacheHits());
+		Assert.assertEquals(2, registry.cacheMisses());
+	}
+
+	@Test
+	public void testConcurrentLookupsReturnSameInstance() throws Exception {
+		final SerializerRegistry registry = new SerializerRegistry();
+		final Type type = new TypeToken<Map<String, List<Integer>>>() {}.getType();
+
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			final List<Future<IStreamSerializer<Object>>> results = Lists.newArrayList();
+			for (int i = 0; i < 64; i++)
+				results.add(executor.submit((Callable<IStreamSerializer<Object>>)() -> registry.findSerializer(type)));
+
+			final IStreamSerializer<Object> expected = registry.findSerializer(type);
+			Assert.assertNotNull(expected);
+			for (Future<IStreamSerializer<Object>> result : results)
+				Assert.assertSame(expected, result.get());
+		} finally {
+			executor.shutdown();
+		}
+
+		Assert.assertEquals(65, registry.cacheHits() + registry.cacheMisses());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testDuplicateRegistration() {
+		final SerializerRegistry registry = new SerializerRegistry();
+		registry.register(Integer.class, registry.findSerializer(Integer.class));
+	}
+}
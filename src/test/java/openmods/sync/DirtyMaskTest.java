@@ -0,0 +1,140 @@
+package openmods.sync;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import openmods.utils.bitstream.OutputBitStream;
+import openmods.utils.io.StreamAdapters;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DirtyMaskTest {
+
+	private static void checkSetBits(DirtyMask mask, int... expected) {
+		int count = 0;
+		for (int i = mask.nextSetBit(0); i >= 0; i = mask.nextSetBit(i + 1)) {
+			Assert.assertTrue("Too many bits: " + mask, count < expected.length);
+			Assert.assertEquals(expected[count++], i);
+		}
+
+		Assert.assertEquals(expected.length, count);
+		Assert.assertEquals(expected.length, mask.cardinality());
+	}
+
+	@Test
+	public void testEmpty() {
+		final DirtyMask mask = new DirtyMask(10);
+		Assert.assertTrue(mask.isEmpty());
+		Assert.assertEquals(-1, mask.nextSetBit(0));
+		checkSetBits(mask);
+	}
+
+	@Test
+	public void testSetClear() {
+		final DirtyMask mask = new DirtyMask(130);
+		mask.set(0);
+		mask.set(63);
+		mask.set(64);
+		mask.set(129);
+		checkSetBits(mask, 0, 63, 64, 129);
+
+		mask.clear(63);
+		checkSetBits(mask, 0, 64, 129);
+		Assert.assertFalse(mask.get(63));
+		Assert.assertTrue(mask.get(64));
+
+		mask.clear();
+		Assert.assertTrue(mask.isEmpty());
+	}
+
+	@Test
+	public void testGrowKeepsBits() {
+		final DirtyMask mask = new DirtyMask();
+		mask.ensureSize(3);
+		mask.set(2);
+		mask.ensureSize(200);
+		mask.set(199);
+		checkSetBits(mask, 2, 199);
+	}
+
+	@Test
+	public void testNextClearBit() {
+		final DirtyMask mask = new DirtyMask(128);
+		for (int i = 3; i < 70; i++)
+			mask.set(i);
+
+		Assert.assertEquals(0, mask.nextClearBit(0));
+		Assert.assertEquals(70, mask.nextClearBit(3));
+		Assert.assertEquals(70, mask.nextClearBit(64));
+
+		for (int i = 70; i < 128; i++)
+			mask.set(i);
+		Assert.assertEquals(128, mask.nextClearBit(100));
+	}
+
+	@Test
+	public void testSubset() {
+		final DirtyMask mask = new DirtyMask(100);
+		final DirtyMask other = new DirtyMask(100);
+		Assert.assertTrue(mask.isSubsetOf(other));
+
+		mask.set(70);
+		Assert.assertFalse(mask.isSubsetOf(other));
+
+		other.set(70);
+		other.set(3);
+		Assert.assertTrue(mask.isSubsetOf(other));
+		Assert.assertFalse(other.isSubsetOf(mask));
+	}
+
+	@Test
+	public void testIntersects() {
+		final DirtyMask mask = new DirtyMask(100);
+		final DirtyMask other = new DirtyMask(10);
+		Assert.assertFalse(mask.intersects(other));
+
+		mask.set(70);
+		other.set(3);
+		Assert.assertFalse(mask.intersects(other));
+		Assert.assertFalse(other.intersects(mask));
+
+		mask.set(3);
+		Assert.assertTrue(mask.intersects(other));
+		Assert.assertTrue(other.intersects(mask));
+	}
+
+	@Test
+	public void testDrain() {
+		final DirtyMask source = new DirtyMask(70);
+		final DirtyMask target = new DirtyMask(70);
+		target.set(5);
+		source.set(1);
+		source.set(69);
+		source.drainTo(target);
+
+		Assert.assertTrue(source.isEmpty());
+		checkSetBits(target, 1, 69);
+	}
+
+	@Test
+	public void testBitmapMatchesBitStream() throws IOException {
+		final int size = 75;
+		final DirtyMask mask = new DirtyMask(size);
+		final boolean[] bits = new boolean[size];
+		for (int i : new int[] { 0, 3, 7, 8, 30, 63, 64, 65, 74 }) {
+			mask.set(i);
+			bits[i] = true;
+		}
+
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		final OutputBitStream stream = new OutputBitStream(StreamAdapters.createSink(output));
+		for (boolean bit : bits)
+			stream.writeBit(bit);
+		stream.flush();
+
+		final byte[] expected = output.toByteArray();
+		Assert.assertEquals(expected.length, mask.bitmapLength());
+
+		for (int i = 0; i < expected.length; i++)
+			Assert.assertEquals("Byte " + i, expected[i] & 0xFF, mask.getBitmapByte(i));
+	}
+}
@@ -0,0 +1,31 @@
+package openmods.sync;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SyncEncoderTest {
+
+	@Test(timeout = 10000)
+	public void testDrainWaitsForQueuedTasks() throws InterruptedException {
+		final Object owner = new Object();
+		final CountDownLatch started = new CountDownLatch(1);
+		final AtomicInteger finished = new AtomicInteger();
+
+		SyncEncoder.INSTANCE.execute(owner, () -> {
+			started.countDown();
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			finished.incrementAndGet();
+		});
+		SyncEncoder.INSTANCE.execute(owner, finished::incrementAndGet);
+
+		started.await();
+		SyncEncoder.INSTANCE.drain(owner);
+		Assert.assertEquals(2, finished.get());
+	}
+}
@@ -0,0 +1,208 @@
+package openmods.sync;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.fml.common.network.internal.FMLProxyPacket;
+import openmods.network.LoopbackChannel;
+import openmods.network.StubPlayers;
+import openmods.network.StubRegistry;
+
+/**
+ * Connects server sync maps to client maps without world or network.
+ * Records sent by server maps are delivered (one record per packet) through {@link LoopbackChannel} to real {@link InboundSyncHandler}.
+ * Everything runs on calling thread, so async encoding must be disabled.
+ */
+public class SyncLoopback {
+
+	private static final int OWNER_TYPE = 0x7F;
+
+	private static boolean typesRegistered;
+
+	/**
+	 * Registers standard syncable types, same as OpenMods does on startup
+	 */
+	public static synchronized void registerTypes() {
+		if (typesRegistered) return;
+
+		final StubRegistry<Class<? extends ISyncableObject>, SyncableObjectType> registry = new StubRegistry<>(0, SyncableObjectType::getObjectClass);
+		SyncableObjectTypeRegistry.startRegistration(registry.get(), "openmods")
+				.register(SyncableBoolean.class)
+				.register(SyncableByte.class)
+				.register(SyncableByteArray.class)
+				.register(SyncableDouble.class)
+				.register(SyncableFloat.class)
+				.register(SyncableInt.class)
+				.register(SyncableIntArray.class)
+				.register(SyncableNBT.class)
+				.register(SyncableShort.class)
+				.register(SyncableString.class)
+				.register(SyncableUnsignedByte.class)
+				.register(SyncableUUID.class)
+				.register(SyncableVarInt.class);
+
+		try {
+			final Field registryField = SyncableObjectTypeRegistry.class.getDeclaredField("REGISTRY");
+			registryField.setAccessible(true);
+			registryField.set(null, registry.get());
+		} catch (ReflectiveOperationException e) {
+			throw Throwables.propagate(e);
+		}
+
+		typesRegistered = true;
+	}
+
+	public static class ClientMapProvider implements ISyncMapProvider {
+		private final SyncMapClient map = new SyncMapClient();
+
+		@Override
+		public SyncMapClient getSyncMap() {
+			return map;
+		}
+	}
+
+	public class ServerMap extends SyncMapServer {
+		private final int id;
+
+		private double distanceSq;
+
+		public ServerMap(UpdateStrategy strategy) {
+			super(strategy);
+			this.id = serverMaps.size();
+			serverMaps.add(this);
+			clientMaps.add(new ClientMapProvider());
+		}
+
+		public SyncMapClient getClientMap() {
+			return clientMaps.get(id).getSyncMap();
+		}
+
+		/**
+		 * Sends initialization packet to client map (for strategies with separate initialization packet)
+		 */
+		public void connect() throws IOException {
+			final PacketBuffer buffer = new PacketBuffer(Unpooled.buffer());
+			writeInitializationData(buffer);
+			getClientMap().readIntializationData(buffer);
+		}
+
+		@Override
+		protected int getOwnerType() {
+			return OWNER_TYPE;
+		}
+
+		@Override
+		protected void writeOwnerData(PacketBuffer output) {
+			output.writeVarInt(id);
+		}
+
+		@Override
+		protected Set<EntityPlayerMP> getPlayersWatching() {
+			return players;
+		}
+
+		@Override
+		protected boolean isInvalid() {
+			return false;
+		}
+
+		@Override
+		protected long getCurrentTick() {
+			return tick;
+		}
+
+		/**
+		 * Distance of all players, used by distance tiered strategy
+		 */
+		public void setDistanceSq(double distanceSq) {
+			this.distanceSq = distanceSq;
+		}
+
+		@Override
+		protected double getDistanceSq(EntityPlayerMP player) {
+			return distanceSq;
+		}
+
+		@Override
+		protected void sendRecord(PacketBuffer record, Collection<EntityPlayerMP> targets) {
+			// same framing as SyncChannelHolder.writeRecord
+			final int length = record.readableBytes();
+			final PacketBuffer payload = new PacketBuffer(Unpooled.buffer(length + 5));
+			payload.writeVarInt(length);
+			payload.writeBytes(record, record.readerIndex(), length);
+			channel.sendToClient(new FMLProxyPacket(payload, SyncChannelHolder.CHANNEL_NAME));
+		}
+	}
+
+	private class LoopbackInboundHandler extends InboundSyncHandler {
+		@Override
+		protected void execute(ChannelHandlerContext ctx, Runnable task) {
+			task.run();
+		}
+
+		@Override
+		protected ISyncMapProvider findSyncMapProvider(int ownerType, PacketBuffer payload) {
+			if (ownerType != OWNER_TYPE) throw new IllegalArgumentException("Unknown sync map owner type: " + ownerType);
+			return clientMaps.get(payload.readVarInt());
+		}
+
+		@Override
+		protected void requestInitialization(int ownerType, ByteBuf ownerData) {
+			// there is no client to server channel, so request is delivered directly
+			final PacketBuffer request = new PacketBuffer(ownerData.duplicate());
+			initializationRequests++;
+			final ServerMap map = serverMaps.get(request.readVarInt());
+			for (EntityPlayerMP player : players)
+				map.resendInitialization(player);
+		}
+	}
+
+	private final List<ServerMap> serverMaps = Lists.newArrayList();
+
+	private final List<ClientMapProvider> clientMaps = Lists.newArrayList();
+
+	private final Set<EntityPlayerMP> players;
+
+	private final LoopbackChannel channel = new LoopbackChannel(SyncChannelHolder.CHANNEL_NAME,
+			new ChannelHandler[] {},
+			new ChannelHandler[] { new LoopbackInboundHandler() });
+
+	private long tick;
+
+	private int initializationRequests;
+
+	public SyncLoopback() {
+		// only single client is connected, so single watcher is enough
+		this.players = ImmutableSet.of(StubPlayers.create(1));
+		registerTypes();
+	}
+
+	public ServerMap createMap(SyncMapServer.UpdateStrategy strategy) {
+		return new ServerMap(strategy);
+	}
+
+	public void tick() {
+		tick++;
+		for (ServerMap map : serverMaps)
+			map.sendUpdates();
+	}
+
+	public LoopbackChannel channel() {
+		return channel;
+	}
+
+	public int initializationRequestCount() {
+		return initializationRequests;
+	}
+}
@@ -0,0 +1,202 @@
+package openmods.sync;
+
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.fml.common.network.internal.FMLProxyPacket;
+import openmods.LibConfig;
+import openmods.sync.SyncMapServer.UpdateStrategy;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SyncLoopbackTest {
+
+	@Test
+	public void testUpdateRoundTrip() throws IOException {
+		final SyncLoopback loopback = new SyncLoopback();
+		final SyncLoopback.ServerMap serverMap = loopback.createMap(UpdateStrategy.WITH_INITIAL_PACKET);
+
+		final SyncableInt serverInt = new SyncableInt(3);
+		final SyncableString serverString = new SyncableString("a");
+		serverMap.registerObject("int", serverInt);
+		serverMap.registerObject("string", serverString);
+
+		final SyncableInt clientInt = new SyncableInt();
+		final SyncableString clientString = new SyncableString();
+		final SyncMapClient clientMap = serverMap.getClientMap();
+		clientMap.registerObject("int", clientInt);
+		clientMap.registerObject("string", clientString);
+
+		serverMap.connect();
+		Assert.assertEquals(3, clientInt.get());
+		Assert.assertEquals("a", clientString.getValue());
+
+		serverInt.set(42);
+		loopback.tick();
+		Assert.assertEquals(42, clientInt.get());
+		Assert.assertEquals("a", clientString.getValue());
+		Assert.assertEquals(1, loopback.channel().packetCount());
+
+		loopback.tick();
+		Assert.assertEquals(1, loopback.channel().packetCount());
+
+		serverString.setValue("b");
+		loopback.tick();
+		Assert.assertEquals("b", clientString.getValue());
+		Assert.assertEquals(2, loopback.channel().packetCount());
+	}
+
+	@Test
+	public void testUpdateForUninitializedMapDropped() {
+		final SyncLoopback loopback = new SyncLoopback();
+		final SyncLoopback.ServerMap serverMap = loopback.createMap(UpdateStrategy.WITH_INITIAL_PACKET);
+		serverMap.registerObject("int", new SyncableInt(3));
+
+		final SyncableInt clientInt = new SyncableInt(5);
+		final SyncMapClient clientMap = serverMap.getClientMap();
+		clientMap.registerObject("int", clientInt);
+
+		// update record with empty bitmap, same prefix as full initialization
+		final PacketBuffer record = new PacketBuffer(Unpooled.buffer());
+		record.writeVarInt(0x7F);
+		record.writeVarInt(0);
+		record.writeByte(0);
+		serverMap.sendRecord(record, null);
+		serverMap.sendRecord(record, null);
+
+		Assert.assertFalse(clientMap.isInitialized());
+		Assert.assertEquals(5, clientInt.get());
+		// second update doesn't repeat request
+		Assert.assertEquals(1, loopback.initializationRequestCount());
+	}
+
+	@Test
+	public void testFailedRecordDoesNotAffectOthers() throws IOException {
+		final SyncLoopback loopback = new SyncLoopback();
+		final SyncLoopback.ServerMap brokenMap = loopback.createMap(UpdateStrategy.WITH_INITIAL_PACKET);
+		final SyncLoopback.ServerMap validMap = loopback.createMap(UpdateStrategy.WITH_INITIAL_PACKET);
+
+		brokenMap.registerObject("int", new SyncableInt(1));
+		validMap.registerObject("int", new SyncableInt(2));
+
+		final SyncableInt brokenInt = new SyncableInt();
+		final SyncableInt validInt = new SyncableInt();
+		brokenMap.getClientMap().registerObject("int", brokenInt);
+		validMap.getClientMap().registerObject("int", validInt);
+
+		brokenMap.connect();
+		validMap.connect();
+
+		// changed bit set, but value is missing
+		final PacketBuffer brokenRecord = new PacketBuffer(Unpooled.buffer());
+		brokenRecord.writeVarInt(0x7F);
+		brokenRecord.writeVarInt(0);
+		brokenRecord.writeByte(1);
+
+		final PacketBuffer validRecord = new PacketBuffer(Unpooled.buffer());
+		validRecord.writeVarInt(0x7F);
+		validRecord.writeVarInt(1);
+		validRecord.writeByte(1);
+		new SyncableInt(42).writeToStream(validRecord);
+
+		final PacketBuffer payload = new PacketBuffer(Unpooled.buffer());
+		SyncChannelHolder.writeRecord(payload, brokenRecord);
+		SyncChannelHolder.writeRecord(payload, validRecord);
+		loopback.channel().sendToClient(new FMLProxyPacket(payload, SyncChannelHolder.CHANNEL_NAME));
+
+		Assert.assertEquals(42, validInt.get());
+		Assert.assertFalse(brokenMap.getClientMap().isInitialized());
+		Assert.assertEquals(1, loopback.initializationRequestCount());
+	}
+
+	@Test
+	public void testDeltaObjectsInitialization() throws IOException {
+		final SyncLoopback loopback = new SyncLoopback();
+		final SyncLoopback.ServerMap serverMap = loopback.createMap(UpdateStrategy.WITH_INITIAL_PACKET);
+
+		final NBTTagCompound tag = new NBTTagCompound();
+		tag.setString("owner", "test");
+
+		// plain field after delta objects fails if any of them is misparsed
+		serverMap.registerObject("ints", new SyncableIntArray(new int[] { 1, 2, 3 }));
+		serverMap.registerObject("bytes", new SyncableByteArray(new byte[] { 4, 5 }));
+		serverMap.registerObject("nbt", new SyncableNBT(tag));
+		serverMap.registerObject("int", new SyncableInt(42));
+
+		final SyncableIntArray clientInts = new SyncableIntArray();
+		final SyncableByteArray clientBytes = new SyncableByteArray();
+		final SyncableNBT clientNbt = new SyncableNBT();
+		final SyncableInt clientInt = new SyncableInt();
+		final SyncMapClient clientMap = serverMap.getClientMap();
+		clientMap.registerObject("ints", clientInts);
+		clientMap.registerObject("bytes", clientBytes);
+		clientMap.registerObject("nbt", clientNbt);
+		clientMap.registerObject("int", clientInt);
+
+		serverMap.connect();
+		Assert.assertArrayEquals(new int[] { 1, 2, 3 }, clientInts.getValue());
+		Assert.assertArrayEquals(new byte[] { 4, 5 }, clientBytes.getValue());
+		Assert.assertEquals(tag, clientNbt.getValue());
+		Assert.assertEquals(42, clientInt.get());
+	}
+
+	@Test
+	public void testFarTierDeltaObjectsRoundTrip() throws IOException {
+		final SyncLoopback loopback = new SyncLoopback();
+		final SyncLoopback.ServerMap serverMap = loopback.createMap(UpdateStrategy.WITH_INITIAL_PACKET_DISTANCE_TIERED);
+		// far tier updates are cumulative, so delta objects are sent in full form
+		serverMap.setDistanceSq(LibConfig.syncFarTierDistance * LibConfig.syncFarTierDistance * 4);
+
+		final SyncableIntArray serverInts = new SyncableIntArray(new int[] { 1, 2, 3 });
+		final SyncableNBT serverNbt = new SyncableNBT();
+		serverMap.registerObject("ints", serverInts);
+		serverMap.registerObject("nbt", serverNbt);
+
+		final SyncableIntArray clientInts = new SyncableIntArray();
+		final SyncableNBT clientNbt = new SyncableNBT();
+		final SyncMapClient clientMap = serverMap.getClientMap();
+		clientMap.registerObject("ints", clientInts);
+		clientMap.registerObject("nbt", clientNbt);
+
+		serverMap.connect();
+		Assert.assertArrayEquals(new int[] { 1, 2, 3 }, clientInts.getValue());
+		Assert.assertEquals(new NBTTagCompound(), clientNbt.getValue());
+
+		serverInts.setValue(1, 42);
+		final NBTTagCompound tag = new NBTTagCompound();
+		tag.setString("owner", "test");
+		serverNbt.setValue(tag);
+		loopback.tick();
+
+		Assert.assertEquals(1, loopback.channel().packetCount());
+		Assert.assertArrayEquals(new int[] { 1, 42, 3 }, clientInts.getValue());
+		Assert.assertEquals(tag, clientNbt.getValue());
+
+		// next changes wait for far tier interval
+		serverInts.setValue(2, 7);
+		tag.setInteger("progress", 5);
+		serverNbt.setValue(tag);
+		for (int i = 0; i < LibConfig.syncFarTierInterval; i++)
+			loopback.tick();
+
+		Assert.assertEquals(2, loopback.channel().packetCount());
+		Assert.assertArrayEquals(new int[] { 1, 42, 7 }, clientInts.getValue());
+		Assert.assertEquals(tag, clientNbt.getValue());
+	}
+
+	@Test
+	public void testFullSnapshotReadableAsDelta() throws IOException {
+		final NBTTagCompound tag = new NBTTagCompound();
+		tag.setInteger("progress", 5);
+		final SyncableNBT source = new SyncableNBT(tag);
+
+		final PacketBuffer buffer = new PacketBuffer(Unpooled.buffer());
+		source.createSnapshot(false).writeToStream(buffer);
+
+		final SyncableNBT target = new SyncableNBT();
+		target.readDeltaFromStream(buffer);
+		Assert.assertEquals(tag, target.getValue());
+		Assert.assertFalse(buffer.isReadable());
+	}
+}
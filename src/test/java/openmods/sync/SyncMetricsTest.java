@@ -0,0 +1,68 @@
+package openmods.sync;
+
+import openmods.sync.SyncMetrics.Histogram;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SyncMetricsTest {
+
+	@After
+	public void cleanup() {
+		SyncMetrics.setEnabled(false);
+		SyncMetrics.reset();
+	}
+
+	@Test
+	public void testEmptyHistogram() {
+		final Histogram histogram = new Histogram();
+		Assert.assertEquals(0, histogram.count());
+		Assert.assertEquals(0, histogram.mean());
+		Assert.assertEquals(0, histogram.percentileUpperBound(0.99));
+	}
+
+	@Test
+	public void testHistogramBounds() {
+		final Histogram histogram = new Histogram();
+		for (int i = 0; i < 99; i++)
+			histogram.record(10);
+		histogram.record(1000);
+
+		Assert.assertEquals(100, histogram.count());
+		Assert.assertEquals(1990 / 10, histogram.mean());
+		Assert.assertEquals(1000, histogram.max());
+		// 10 is in [8, 16) bucket
+		Assert.assertEquals(15, histogram.percentileUpperBound(0.5));
+		Assert.assertEquals(15, histogram.percentileUpperBound(0.99));
+		Assert.assertEquals(1000, histogram.percentileUpperBound(1.0));
+	}
+
+	@Test
+	public void testZeroValue() {
+		final Histogram histogram = new Histogram();
+		histogram.record(0);
+		Assert.assertEquals(1, histogram.count());
+		Assert.assertEquals(0, histogram.percentileUpperBound(1.0));
+	}
+
+	@Test
+	public void testDisabledCountsNothing() {
+		SyncMetrics.count(SyncMetrics.GROUP_PACKETS, SyncMetrics.PACKET_INIT, 5);
+		Assert.assertEquals(0, SyncMetrics.startTimer());
+		Assert.assertTrue(SyncMetrics.getGroup(SyncMetrics.GROUP_PACKETS).isEmpty());
+	}
+
+	@Test
+	public void testSendCounters() {
+		SyncMetrics.setEnabled(true);
+		SyncMetrics.recordSend(String.class, SyncMetrics.PACKET_DELTA, 10, 3);
+		SyncMetrics.recordSend(String.class, SyncMetrics.PACKET_INIT, 100, 1);
+		SyncMetrics.recordSend(Integer.class, SyncMetrics.PACKET_DELTA, 10, 0);
+
+		Assert.assertEquals(3, SyncMetrics.getGroup(SyncMetrics.GROUP_PACKETS).get(SyncMetrics.PACKET_DELTA).get());
+		Assert.assertEquals(1, SyncMetrics.getGroup(SyncMetrics.GROUP_PACKETS).get(SyncMetrics.PACKET_INIT).get());
+		Assert.assertEquals(4, SyncMetrics.getGroup(SyncMetrics.GROUP_OWNER_PACKETS).get(String.class.getName()).get());
+		Assert.assertEquals(130, SyncMetrics.getGroup(SyncMetrics.GROUP_OWNER_BYTES).get(String.class.getName()).get());
+		Assert.assertFalse(SyncMetrics.getGroup(SyncMetrics.GROUP_OWNER_BYTES).containsKey(Integer.class.getName()));
+	}
+}
@@ -0,0 +1,157 @@
+package openmods.utils;
+
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.nbt.NBTTagString;
+import net.minecraft.network.PacketBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NbtDiffTest {
+
+	private static int checkPatch(NBTTagCompound prev, NBTTagCompound current) throws IOException {
+		final PacketBuffer buffer = new PacketBuffer(Unpooled.buffer());
+		NbtDiff.writePatch(buffer, prev, current);
+		final int patchSize = buffer.readableBytes();
+
+		final NBTTagCompound target = prev.copy();
+		buffer.markReaderIndex();
+		NbtDiff.applyPatch(buffer, target);
+		Assert.assertEquals(0, buffer.readableBytes());
+		Assert.assertEquals(current, target);
+
+		// patches must be safe to apply twice
+		buffer.resetReaderIndex();
+		NbtDiff.applyPatch(buffer, target);
+		Assert.assertEquals(current, target);
+
+		return patchSize;
+	}
+
+	private static NBTTagCompound createItem(int slot, String id, int count, int damage) {
+		final NBTTagCompound result = new NBTTagCompound();
+		result.setByte("Slot", (byte)slot);
+		result.setString("id", id);
+		result.setByte("Count", (byte)count);
+		result.setShort("Damage", (short)damage);
+		return result;
+	}
+
+	private static NBTTagCompound createMachineTag() {
+		final NBTTagCompound result = new NBTTagCompound();
+		final NBTTagList items = new NBTTagList();
+		for (int i = 0; i < 27; i++) {
+			final NBTTagCompound item = createItem(i, "minecraft:cobblestone", 64, 0);
+			if (i % 3 == 0) {
+				final NBTTagCompound tag = new NBTTagCompound();
+				tag.setString("owner", "someone");
+				tag.setIntArray("history", new int[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+				item.setTag("tag", tag);
+			}
+			items.appendTag(item);
+		}
+		result.setTag("Items", items);
+		result.setInteger("progress", 12);
+		result.setDouble("energy", 1234.5);
+		result.setString("owner", "someone");
+
+		final NBTTagCompound config = new NBTTagCompound();
+		config.setByte("redstone", (byte)1);
+		config.setLong("lastChange", 4234523452345L);
+		result.setTag("config", config);
+		return result;
+	}
+
+	private static int fullSize(NBTTagCompound tag) {
+		final PacketBuffer buffer = new PacketBuffer(Unpooled.buffer());
+		buffer.writeCompoundTag(tag);
+		return buffer.readableBytes();
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		final NBTTagCompound tag = createMachineTag();
+		Assert.assertEquals(1, checkPatch(tag, tag.copy()));
+	}
+
+	@Test
+	public void testAddRemoveChange() throws IOException {
+		final NBTTagCompound prev = new NBTTagCompound();
+		prev.setInteger("a", 1);
+		prev.setString("b", "hello");
+		prev.setFloat("c", 3.0f);
+
+		final NBTTagCompound current = prev.copy();
+		current.removeTag("a");
+		current.setString("b", "world");
+		current.setLong("d", -5);
+		current.setInteger("c", 4);
+
+		checkPatch(prev, current);
+		checkPatch(current, prev);
+	}
+
+	@Test
+	public void testNestedCompound() throws IOException {
+		final NBTTagCompound prev = createMachineTag();
+		final NBTTagCompound current = prev.copy();
+		current.getCompoundTag("config").setByte("redstone", (byte)2);
+		current.getCompoundTag("config").setTag("extra", new NBTTagCompound());
+
+		checkPatch(prev, current);
+		checkPatch(current, prev);
+	}
+
+	@Test
+	public void testListChanges() throws IOException {
+		final NBTTagCompound prev = createMachineTag();
+
+		final NBTTagCompound appended = prev.copy();
+		appended.getTagList("Items", 10).appendTag(createItem(30, "minecraft:dirt", 1, 0));
+		checkPatch(prev, appended);
+		checkPatch(appended, prev);
+
+		final NBTTagCompound truncated = prev.copy();
+		truncated.getTagList("Items", 10).removeTag(26);
+		truncated.getTagList("Items", 10).removeTag(25);
+		checkPatch(prev, truncated);
+		checkPatch(truncated, prev);
+
+		final NBTTagCompound changedElement = prev.copy();
+		changedElement.getTagList("Items", 10).getCompoundTagAt(3).getCompoundTag("tag").setIntArray("history", new int[] { 9 });
+		checkPatch(prev, changedElement);
+	}
+
+	@Test
+	public void testListTypeChange() throws IOException {
+		final NBTTagCompound prev = new NBTTagCompound();
+		prev.setTag("list", new NBTTagList());
+
+		final NBTTagCompound current = new NBTTagCompound();
+		final NBTTagList list = new NBTTagList();
+		list.appendTag(new NBTTagString("a"));
+		list.appendTag(new NBTTagString("b"));
+		current.setTag("list", list);
+
+		checkPatch(prev, current);
+		checkPatch(current, prev);
+
+		final NBTTagCompound modified = current.copy();
+		modified.getTagList("list", 8).set(1, new NBTTagString("c"));
+		checkPatch(current, modified);
+	}
+
+	@Test
+	public void testPatchSizeOnRealisticTag() throws IOException {
+		final NBTTagCompound prev = createMachineTag();
+		final NBTTagCompound current = prev.copy();
+		current.setInteger("progress", 13);
+		current.getTagList("Items", 10).getCompoundTagAt(5).setByte("Count", (byte)63);
+
+		final int patchSize = checkPatch(prev, current);
+		final int fullSize = fullSize(current);
+		Assert.assertTrue(String.format("Patch: %d, full: %d", patchSize, fullSize), patchSize * 20 < fullSize);
+	}
+}
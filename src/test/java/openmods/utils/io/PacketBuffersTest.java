@@ -0,0 +1,73 @@
+package openmods.utils.io;
+
+import io.netty.buffer.ByteBufAllocator;
+import net.minecraft.network.PacketBuffer;
+import openmods.utils.io.PacketBuffers.SizeHint;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PacketBuffersTest {
+
+	private final TrackingAllocator allocator = new TrackingAllocator();
+
+	private ByteBufAllocator prevAllocator;
+
+	@Before
+	public void setup() {
+		prevAllocator = PacketBuffers.setAllocator(allocator);
+	}
+
+	@After
+	public void cleanup() {
+		PacketBuffers.setAllocator(prevAllocator);
+	}
+
+	@Test
+	public void testHintConvergesToAverage() {
+		final SizeHint hint = new SizeHint(16);
+		for (int i = 0; i < 100; i++)
+			hint.update(1000);
+
+		final int capacity = hint.capacity();
+		Assert.assertTrue("Capacity: " + capacity, capacity >= 1000 && capacity <= 1300);
+	}
+
+	@Test
+	public void testHintIgnoresSingleOutlier() {
+		final SizeHint hint = new SizeHint(100);
+		hint.update(100000);
+		Assert.assertTrue(hint.capacity() < 20000);
+	}
+
+	@Test
+	public void testHintLimits() {
+		final SizeHint hint = new SizeHint(0);
+		Assert.assertTrue(hint.capacity() > 0);
+
+		for (int i = 0; i < 100; i++)
+			hint.update(Integer.MAX_VALUE);
+		Assert.assertTrue(hint.capacity() > 0);
+		Assert.assertTrue(hint.capacity() <= 1 << 20);
+	}
+
+	@Test
+	public void testScratchUsesHintAndIsReleased() {
+		final SizeHint hint = new SizeHint(500);
+		final PacketBuffer buffer = PacketBuffers.scratch(hint);
+		Assert.assertTrue(buffer.capacity() >= 500);
+		buffer.writeLong(1);
+		PacketBuffers.release(buffer, hint);
+
+		Assert.assertEquals(1, allocator.allocatedCount());
+		allocator.assertAllReleased();
+	}
+
+	@Test
+	public void testPayloadIsNotPooled() {
+		final PacketBuffer buffer = PacketBuffers.payload(new SizeHint(100));
+		Assert.assertFalse(buffer.isDirect());
+		Assert.assertEquals(0, allocator.allocatedCount());
+	}
+}
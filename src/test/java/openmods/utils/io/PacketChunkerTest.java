@@ -0,0 +1,224 @@
+package openmods.utils.io;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.Lists;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import openmods.utils.io.PacketChunker.IStreamConsumer;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PacketChunkerTest {
+
+	private static class FakeTicker extends Ticker {
+		private long now;
+
+		@Override
+		public long read() {
+			return now;
+		}
+	}
+
+	private static class RecordingConsumer implements IStreamConsumer {
+		private final ByteBuf received = Unpooled.buffer();
+		private boolean completed;
+		private boolean aborted;
+
+		@Override
+		public void onData(ByteBuf data) {
+			received.writeBytes(data);
+		}
+
+		@Override
+		public void onComplete() {
+			completed = true;
+		}
+
+		@Override
+		public void onAbort() {
+			aborted = true;
+		}
+	}
+
+	private final FakeTicker ticker = new FakeTicker();
+
+	private final PacketChunker chunker = new PacketChunker(PacketChunker.DEFAULT_MAX_CHUNKS, 10, TimeUnit.SECONDS, ticker);
+
+	private static ByteBuf createPayload(int size) {
+		final byte[] data = new byte[size];
+		new Random(size).nextBytes(data);
+		return Unpooled.wrappedBuffer(data);
+	}
+
+	private static void releaseAll(List<ByteBuf> chunks) {
+		for (ByteBuf chunk : chunks)
+			chunk.release();
+	}
+
+	@Test
+	public void testSingleChunk() throws IOException {
+		final ByteBuf payload = createPayload(100);
+		final List<ByteBuf> chunks = chunker.split(payload, 1000);
+		Assert.assertEquals(1, chunks.size());
+
+		final ByteBuf result = chunker.consumeChunk("a", chunks.get(0));
+		Assert.assertEquals(payload, result);
+		result.release();
+		releaseAll(chunks);
+	}
+
+	@Test
+	public void testMultipleChunks() throws IOException {
+		final ByteBuf payload = createPayload(10000);
+		final List<ByteBuf> chunks = chunker.split(payload, 1000);
+		Assert.assertTrue(chunks.size() > 10);
+
+		// chunks share payload memory
+		Assert.assertEquals(1 + chunks.size(), payload.refCnt());
+
+		for (int i = 0; i < chunks.size() - 1; i++)
+			Assert.assertNull(chunker.consumeChunk("a", chunks.get(i)));
+
+		final ByteBuf result = chunker.consumeChunk("a", chunks.get(chunks.size() - 1));
+		Assert.assertEquals(payload, result);
+		Assert.assertEquals(0, chunker.pendingSequenceCount("a"));
+
+		result.release();
+		releaseAll(chunks);
+		Assert.assertEquals(1, payload.refCnt());
+	}
+
+	@Test
+	public void testManyChunks() throws IOException {
+		final ByteBuf payload = createPayload(20000);
+		final List<ByteBuf> chunks = chunker.split(payload, 16 + 50);
+		Assert.assertTrue(chunks.size() > 255);
+
+		ByteBuf result = null;
+		for (ByteBuf chunk : chunks)
+			result = chunker.consumeChunk("a", chunk);
+
+		Assert.assertEquals(payload, result);
+		result.release();
+		releaseAll(chunks);
+	}
+
+	@Test
+	public void testOutOfOrder() throws IOException {
+		final ByteBuf payload = createPayload(5000);
+		final List<ByteBuf> chunks = chunker.split(payload, 1000);
+		final List<ByteBuf> shuffled = Lists.newArrayList(chunks);
+		Collections.reverse(shuffled);
+
+		ByteBuf result = null;
+		for (ByteBuf chunk : shuffled)
+			result = chunker.consumeChunk("a", chunk);
+
+		Assert.assertEquals(payload, result);
+		result.release();
+		releaseAll(chunks);
+		Assert.assertEquals(1, payload.refCnt());
+	}
+
+	@Test
+	public void testInterleavedSequencesAndConnections() throws IOException {
+		final ByteBuf payload1 = createPayload(3000);
+		final ByteBuf payload2 = createPayload(4000);
+		final List<ByteBuf> chunks1 = chunker.split(payload1, 1000);
+		final List<ByteBuf> chunks2 = chunker.split(payload2, 1000);
+		final List<ByteBuf> chunks1Copy = chunker.split(payload1, 1000);
+
+		ByteBuf result1 = null;
+		ByteBuf result2 = null;
+		ByteBuf result3 = null;
+		for (int i = 0; i < chunks2.size(); i++) {
+			if (i < chunks1.size()) result1 = chunker.consumeChunk("a", chunks1.get(i));
+			result2 = chunker.consumeChunk("a", chunks2.get(i));
+			if (i < chunks1Copy.size()) result3 = chunker.consumeChunk("b", chunks1Copy.get(i));
+		}
+
+		Assert.assertEquals(payload1, result1);
+		Assert.assertEquals(payload2, result2);
+		Assert.assertEquals(payload1, result3);
+	}
+
+	@Test
+	public void testStreaming() throws IOException {
+		final ByteBuf payload = createPayload(3000);
+		final List<ByteBuf> chunks = chunker.split(payload, 1000);
+
+		final RecordingConsumer consumer = new RecordingConsumer();
+		chunker.consumeChunk("a", chunks.get(0), () -> consumer);
+		Assert.assertTrue(consumer.received.readableBytes() > 0);
+		Assert.assertFalse(consumer.completed);
+
+		for (int i = 1; i < chunks.size(); i++)
+			chunker.consumeChunk("a", chunks.get(i), () -> {
+				throw new AssertionError("Consumer should be created only once");
+			});
+
+		Assert.assertTrue(consumer.completed);
+		Assert.assertEquals(payload, consumer.received);
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		final ByteBuf payload = createPayload(3000);
+		final List<ByteBuf> chunks = chunker.split(payload, 1000);
+
+		final RecordingConsumer consumer = new RecordingConsumer();
+		chunker.consumeChunk("a", chunks.get(0), () -> consumer);
+		// out of order chunk is held until eviction
+		chunker.consumeChunk("a", chunks.get(2), () -> consumer);
+		releaseAll(chunks);
+		Assert.assertEquals(1, chunker.pendingSequenceCount("a"));
+		Assert.assertTrue(payload.refCnt() > 1);
+
+		ticker.now += TimeUnit.SECONDS.toNanos(5);
+		chunker.evictStale();
+		Assert.assertEquals(1, chunker.pendingSequenceCount("a"));
+
+		ticker.now += TimeUnit.SECONDS.toNanos(6);
+		chunker.evictStale();
+		Assert.assertEquals(0, chunker.pendingSequenceCount("a"));
+		Assert.assertTrue(consumer.aborted);
+		Assert.assertEquals(1, payload.refCnt());
+	}
+
+	@Test
+	public void testPeriodicEviction() throws IOException {
+		final ByteBuf payload = createPayload(3000);
+		final List<ByteBuf> chunks = chunker.split(payload, 1000);
+
+		final RecordingConsumer consumer = new RecordingConsumer();
+		chunker.consumeChunk("a", chunks.get(0), () -> consumer);
+		releaseAll(chunks);
+
+		PacketChunker.evictAllStale();
+		Assert.assertEquals(1, chunker.pendingSequenceCount("a"));
+
+		// no more chunks arrive on connection, sequence is dropped by tick handler
+		ticker.now += TimeUnit.SECONDS.toNanos(11);
+		PacketChunker.evictAllStale();
+		Assert.assertEquals(0, chunker.pendingSequenceCount("a"));
+		Assert.assertTrue(consumer.aborted);
+	}
+
+	@Test
+	public void testLegacyArrays() throws IOException {
+		final byte[] payload = new byte[5000];
+		new Random(0).nextBytes(payload);
+
+		final byte[][] chunks = chunker.splitIntoChunks(payload, 1000);
+		byte[] result = null;
+		for (byte[] chunk : chunks)
+			result = chunker.consumeChunk(chunk);
+
+		Assert.assertArrayEquals(payload, result);
+	}
+}
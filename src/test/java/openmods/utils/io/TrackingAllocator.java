@@ -0,0 +1,46 @@
+package openmods.utils.io;
+
+import com.google.common.collect.Lists;
+import io.netty.buffer.AbstractByteBufAllocator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.List;
+import org.junit.Assert;
+
+/**
+ * Allocator that remembers all allocated buffers, so tests can check if they were released.
+ * Use with {@link PacketBuffers#setAllocator}.
+ */
+public class TrackingAllocator extends AbstractByteBufAllocator {
+
+	private final List<ByteBuf> allocated = Lists.newArrayList();
+
+	@Override
+	protected ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity) {
+		return track(UnpooledByteBufAllocator.DEFAULT.heapBuffer(initialCapacity, maxCapacity));
+	}
+
+	@Override
+	protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+		return track(UnpooledByteBufAllocator.DEFAULT.directBuffer(initialCapacity, maxCapacity));
+	}
+
+	private ByteBuf track(ByteBuf buffer) {
+		allocated.add(buffer);
+		return buffer;
+	}
+
+	@Override
+	public boolean isDirectBufferPooled() {
+		return false;
+	}
+
+	public int allocatedCount() {
+		return allocated.size();
+	}
+
+	public void assertAllReleased() {
+		for (ByteBuf buffer : allocated)
+			Assert.assertEquals("Leaked buffer: " + buffer, 0, buffer.refCnt());
+	}
+}